@@ -25,6 +25,8 @@ const (
 	MDKeyObserverResetTraffic = "observer.resetTraffic"
 	MDKeyObserverPeriod       = "observer.period"
 
+	MDKeyByteBudget = "budget"
+
 	MDKeyNetns    = "netns"
 	MDKeyNetnsOut = "netns.out"
 
@@ -113,6 +113,9 @@ func ParseService(cfg *config.ServiceConfig) (service.Service, error) {
 	var limiterCleanupInterval time.Duration
 	var limiterScope string
 
+	// 面板分配的流量预算，-1表示不限
+	byteBudget := int64(-1)
+
 	enableStats := true
 	observerPeriod = 5 * time.Second
 
@@ -149,6 +152,10 @@ func ParseService(cfg *config.ServiceConfig) (service.Service, error) {
 		limiterRefreshInterval = mdutil.GetDuration(md, parsing.MDKeyLimiterRefreshInterval)
 		limiterCleanupInterval = mdutil.GetDuration(md, parsing.MDKeyLimiterCleanupInterval)
 		limiterScope = mdutil.GetString(md, parsing.MDKeyLimiterScope)
+
+		if md.IsExists(parsing.MDKeyByteBudget) {
+			byteBudget = int64(mdutil.GetInt(md, parsing.MDKeyByteBudget))
+		}
 	}
 
 	if enableStats {
@@ -367,6 +374,7 @@ func ParseService(cfg *config.ServiceConfig) (service.Service, error) {
 		xservice.StatsOption(pStats),
 		xservice.ObserverOption(observer),
 		xservice.ObserverPeriodOption(observerPeriod),
+		xservice.ByteBudgetOption(byteBudget),
 		xservice.LoggerOption(serviceLogger),
 	)
 
@@ -0,0 +1,54 @@
+package service
+
+import (
+	"crypto/sha256"
+	"encoding/hex"
+	"sort"
+	"strconv"
+	"strings"
+
+	"github.com/go-gost/x/config"
+)
+
+// configHash 计算面板管理的配置项哈希，与面板端期望配置哈希的计算规则一致：
+// 服务和链只统计 转发ID_用户ID_用户隧道ID_类型 格式的名称，限流器只统计限速规则（数字）和用户总带宽（u+用户ID）的名称，
+// 覆盖面板对账时比较的字段（服务的名称、监听地址、限流器和暂停状态，链的名称，限流器的名称和规则），
+// 按 s:/c:/l: 前缀排序后以换行拼接做 SHA-256
+func configHash(c *config.Config) string {
+	var items []string
+	for _, s := range c.Services {
+		if s != nil && strings.Count(s.Name, "_") == 3 {
+			item := "s:" + s.Name + "|" + s.Addr + "|" + s.Limiter
+			if s.Metadata != nil && s.Metadata["paused"] == true {
+				item += "|p"
+			}
+			items = append(items, item)
+		}
+	}
+	for _, ch := range c.Chains {
+		if ch != nil && strings.Count(ch.Name, "_") == 3 {
+			items = append(items, "c:"+ch.Name)
+		}
+	}
+	for _, l := range c.Limiters {
+		if l != nil && isManagedLimiter(l.Name) {
+			items = append(items, "l:"+l.Name+"|"+strings.Join(l.Limits, ","))
+		}
+	}
+	sort.Strings(items)
+
+	sum := sha256.Sum256([]byte(strings.Join(items, "\n")))
+	return hex.EncodeToString(sum[:])
+}
+
+// isManagedLimiter 判断限流器是否由面板管理：限速规则的限流器以规则ID命名，用户总带宽的限流器以 u+用户ID 命名
+func isManagedLimiter(name string) bool {
+	if _, err := strconv.ParseUint(name, 10, 64); err == nil {
+		return true
+	}
+	if strings.HasPrefix(name, "u") {
+		_, err := strconv.ParseUint(name[1:], 10, 64)
+		return err == nil
+	}
+	return false
+}
@@ -0,0 +1,57 @@
+package service
+
+import (
+	"testing"
+
+	"github.com/go-gost/x/config"
+	"github.com/stretchr/testify/assert"
+)
+
+// 与面板端 NodeConfigServiceImplTest 使用同一份配置和期望值，两端哈希规则不一致时其中一端的测试会失败
+const expectedConfigHash = "d6ce289b4847df5483a1ae999053aa339806b9a78ac94e18f93dfe2e1e723932"
+
+func testHashConfig() *config.Config {
+	return &config.Config{
+		Services: []*config.ServiceConfig{
+			{Name: "1_1_3_tcp", Addr: "0.0.0.0:10000", Limiter: "u1"},
+			{Name: "1_1_3_udp", Addr: "0.0.0.0:10000", Limiter: "u1"},
+			{Name: "web_api", Addr: ":18080"},
+		},
+		Chains: []*config.ChainConfig{
+			{Name: "1_1_3_chains"},
+		},
+		Limiters: []*config.LimiterConfig{
+			{Name: "5", Limits: []string{"$ 1.0MB 1.0MB"}},
+			{Name: "u1", Limits: []string{"$ 512KB 512KB"}},
+			{Name: "local", Limits: []string{"$ 1MB 1MB"}},
+		},
+	}
+}
+
+func TestConfigHash(t *testing.T) {
+	assert.Equal(t, expectedConfigHash, configHash(testHashConfig()))
+}
+
+func TestConfigHashCoversComparedFields(t *testing.T) {
+	c := testHashConfig()
+	c.Limiters[1].Limits = []string{"$ 1MB 1MB"}
+	assert.NotEqual(t, expectedConfigHash, configHash(c))
+
+	c = testHashConfig()
+	c.Services[0].Limiter = "5"
+	assert.NotEqual(t, expectedConfigHash, configHash(c))
+}
+
+func TestConfigHashCoversPaused(t *testing.T) {
+	c := testHashConfig()
+	c.Services[0].Metadata = map[string]any{"paused": true}
+	assert.Equal(t, "a28b9affb66431154070e514c2df049df7f9892a1a2044129d97c716dd5ddb02", configHash(c))
+}
+
+func TestIsManagedLimiter(t *testing.T) {
+	assert.True(t, isManagedLimiter("5"))
+	assert.True(t, isManagedLimiter("u1"))
+	assert.False(t, isManagedLimiter("u"))
+	assert.False(t, isManagedLimiter("u-1"))
+	assert.False(t, isManagedLimiter("local"))
+}
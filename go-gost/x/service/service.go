@@ -41,6 +41,7 @@ type options struct {
 	stats          stats.Stats
 	observer       observer.Observer
 	observerPeriod time.Duration
+	byteBudget     int64
 	logger         logger.Logger
 }
 
@@ -117,6 +118,13 @@ func ObserverPeriodOption(period time.Duration) Option {
 	}
 }
 
+// ByteBudgetOption 面板分配的流量预算（字节），-1表示不限
+func ByteBudgetOption(budget int64) Option {
+	return func(opts *options) {
+		opts.byteBudget = budget
+	}
+}
+
 func LoggerOption(logger logger.Logger) Option {
 	return func(opts *options) {
 		opts.logger = logger
@@ -344,6 +352,9 @@ func (s *defaultService) setState(state State) {
 	}
 }
 
+// 服务关闭后未确认的流量报告最多重试的次数，间隔为统计周期
+const closeReportRetries = 12
+
 func (s *defaultService) observeStats(ctx context.Context) {
 	if s.options.observer == nil {
 		return
@@ -359,6 +370,18 @@ func (s *defaultService) observeStats(ctx context.Context) {
 
 	var events []observer.Event
 
+	// 未确认的流量报告，重发时序号和字节数保持不变，面板据此去重；
+	// 序号只在本实例内递增，服务重建后旧实例关闭时补发的报告按实例标识与新实例区分
+	var pendingReport *TrafficReportItem
+	epoch := uint64(time.Now().UnixNano())
+	reportSeq := epoch
+	// 面板对本服务建议的上报策略，收到之前使用默认策略
+	var reportPolicy *ReportPolicy
+	lastReport := time.Now()
+	// 面板分配的流量预算，未上报的流量达到预算时先上报，面板不再追加则在本地暂停服务
+	budget := s.options.byteBudget
+	exhausted := false
+
 	ticker := time.NewTicker(d)
 	defer ticker.Stop()
 
@@ -395,32 +418,99 @@ func (s *defaultService) observeStats(ctx context.Context) {
 						TotalErrs:    st.Get(stats.KindTotalErrs),
 					},
 				}
-				if outputBytes > 0 || inputBytes > 0 {
-					reportItems := TrafficReportItem{
+				if err := s.options.observer.Observe(ctx, evs); err != nil {
+					fmt.Printf("发送观察器事件失败: %v", err)
+					events = evs
+				}
+			}
+
+			// 空闲或离配额较远的服务按面板建议降低上报频率；预算用尽后仍继续上报和重试，已用的流量照常计费
+			if pendingReport == nil {
+				inputBytes := st.Get(stats.KindInputBytes)
+				outputBytes := st.Get(stats.KindOutputBytes)
+				policy := getDefaultReportPolicy()
+				if reportPolicy != nil {
+					policy = *reportPolicy
+				}
+				overBudget := budget > 0 && int64(inputBytes+outputBytes) >= budget
+				if overBudget || policy.due(int64(inputBytes+outputBytes), time.Since(lastReport)) {
+					reportSeq++
+					pendingReport = &TrafficReportItem{
 						N: s.name,
 						U: int64(outputBytes),
 						D: int64(inputBytes),
+						S: reportSeq,
+						E: epoch,
+					}
+				}
+			}
+
+			if pendingReport != nil {
+				success, policy, err := sendTrafficReport(ctx, *pendingReport)
+				if err != nil {
+					fmt.Printf("发送流量报告失败: %v", err)
+				} else if success {
+					if xstats, ok := st.(*xstats.Stats); ok {
+						xstats.ResetTraffic(st.Get(stats.KindInputBytes)-uint64(pendingReport.D), st.Get(stats.KindOutputBytes)-uint64(pendingReport.U))
 					}
-					success, err := sendTrafficReport(ctx, reportItems)
-					if err != nil {
-						fmt.Printf("发送流量报告失败: %v", err)
-					} else if success {
-						if xstats, ok := st.(*xstats.Stats); ok {
-							xstats.ResetTraffic(st.Get(stats.KindInputBytes)-inputBytes, st.Get(stats.KindOutputBytes)-outputBytes)
-						}
+					pendingReport = nil
+					lastReport = time.Now()
+					if policy != nil {
+						reportPolicy = policy
+						budget = policy.Budget
 					}
 				}
+			}
 
-				if err := s.options.observer.Observe(ctx, evs); err != nil {
-					fmt.Printf("发送观察器事件失败: %v", err)
-					events = evs
+			// 预算用尽且面板没有追加（或面板无法访问）时在本地暂停服务，不必等待面板下发暂停
+			if !exhausted && budget >= 0 && int64(st.Get(stats.KindInputBytes)+st.Get(stats.KindOutputBytes)) >= budget && (budget == 0 || pendingReport != nil) {
+				if handler := budgetExhaustedHandler; handler != nil {
+					fmt.Printf("服务 %s 流量预算已用尽，本地暂停\n", s.name)
+					exhausted = true
+					go handler(s.name)
 				}
 			}
 
 		case <-ctx.Done():
+			// 服务关闭（包括预算用尽后的本地暂停）时补发未确认和未上报的流量
+			s.flushTrafficReport(pendingReport, epoch, reportSeq+1, d)
+			return
+		}
+	}
+}
+
+// flushTrafficReport 服务关闭后发送最后一次流量报告，没有未确认的报告时上报剩余的字节数，失败时按统计周期重试
+func (s *defaultService) flushTrafficReport(pending *TrafficReportItem, epoch, seq uint64, period time.Duration) {
+	if pending == nil {
+		st := s.status.Stats()
+		if st == nil {
+			return
+		}
+		inputBytes := st.Get(stats.KindInputBytes)
+		outputBytes := st.Get(stats.KindOutputBytes)
+		if inputBytes+outputBytes == 0 {
 			return
 		}
+		pending = &TrafficReportItem{
+			N: s.name,
+			U: int64(outputBytes),
+			D: int64(inputBytes),
+			S: seq,
+			E: epoch,
+		}
+	}
+
+	for i := 0; i < closeReportRetries; i++ {
+		success, _, err := sendTrafficReport(context.Background(), *pending)
+		if success {
+			return
+		}
+		if err != nil {
+			fmt.Printf("发送流量报告失败: %v", err)
+		}
+		time.Sleep(period)
 	}
+	fmt.Printf("服务 %s 关闭后的流量报告未送达，%d 字节未上报\n", s.name, pending.U+pending.D)
 }
 
 type ServiceEvent struct {
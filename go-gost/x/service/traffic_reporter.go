@@ -6,7 +6,9 @@ import (
 	"encoding/json"
 	"fmt"
 	"net/http"
+	"strconv"
 	"strings"
+	"sync/atomic"
 	"time"
 
 	"github.com/go-gost/core/observer/stats"
@@ -18,12 +20,73 @@ import (
 var httpReportURL string
 var configReportURL string
 var httpAESCrypto *crypto.AESCrypto // 新增：HTTP上报加密器
+var defaultReportPolicy atomic.Value // 面板通过WebSocket下发的默认上报策略
+var budgetExhaustedHandler func(name string)
 
 // TrafficReportItem 流量报告项（压缩格式）
 type TrafficReportItem struct {
 	N string `json:"n"` // 服务名（name缩写）
 	U int64  `json:"u"` // 上行流量（up缩写）
 	D int64  `json:"d"` // 下行流量（down缩写）
+	S uint64 `json:"s"` // 上报序号，重发时不变
+	E uint64 `json:"e"` // 服务实例标识，服务重建后变化，面板按 (服务名, 实例) 分别去重
+}
+
+// ReportPolicy 面板建议的上报策略，零值表示每个统计周期都上报
+type ReportPolicy struct {
+	Interval  time.Duration // 距上次上报超过该时长时上报
+	Threshold int64         // 累计字节数达到该值时提前上报，0表示不提前
+	Budget    int64         // 本次上报之后还可以使用的字节数，-1表示不限
+}
+
+// SetBudgetExhaustedHandler 设置流量预算用尽时暂停服务的方法
+func SetBudgetExhaustedHandler(handler func(name string)) {
+	budgetExhaustedHandler = handler
+}
+
+// due 判断累计的流量是否需要上报
+func (p ReportPolicy) due(bytes int64, sinceLast time.Duration) bool {
+	if bytes <= 0 {
+		return false
+	}
+	if p.Interval <= 0 || sinceLast >= p.Interval {
+		return true
+	}
+	return p.Threshold > 0 && bytes >= p.Threshold
+}
+
+// SetDefaultReportPolicy 设置尚未收到面板单独建议的服务使用的上报策略
+func SetDefaultReportPolicy(p ReportPolicy) {
+	defaultReportPolicy.Store(p)
+}
+
+func getDefaultReportPolicy() ReportPolicy {
+	if p, ok := defaultReportPolicy.Load().(ReportPolicy); ok {
+		return p
+	}
+	return ReportPolicy{}
+}
+
+// parseReportPolicy 从上报响应头读取面板对该服务的建议，旧版面板没有这两个响应头
+func parseReportPolicy(header http.Header) *ReportPolicy {
+	interval, err := strconv.ParseInt(header.Get("X-Report-Interval"), 10, 64)
+	if err != nil {
+		return nil
+	}
+	threshold, _ := strconv.ParseInt(header.Get("X-Report-Threshold"), 10, 64)
+	budget, err := strconv.ParseInt(header.Get("X-Byte-Budget"), 10, 64)
+	if err != nil {
+		budget = -1
+	}
+	// 预算过半时提前上报，留出追加预算的时间
+	if budget >= 0 && (threshold <= 0 || threshold > budget/2) {
+		threshold = budget / 2
+	}
+	return &ReportPolicy{
+		Interval:  time.Duration(interval) * time.Second,
+		Threshold: threshold,
+		Budget:    budget,
+	}
 }
 
 func SetHTTPReportURL(addr string, secret string) {
@@ -41,11 +104,11 @@ func SetHTTPReportURL(addr string, secret string) {
 	}
 }
 
-// sendTrafficReport 发送流量报告到HTTP接口
-func sendTrafficReport(ctx context.Context, reportItems TrafficReportItem) (bool, error) {
+// sendTrafficReport 发送流量报告到HTTP接口，返回面板对该服务建议的上报策略（可能为nil）
+func sendTrafficReport(ctx context.Context, reportItems TrafficReportItem) (bool, *ReportPolicy, error) {
 	jsonData, err := json.Marshal(reportItems)
 	if err != nil {
-		return false, fmt.Errorf("序列化报告数据失败: %v", err)
+		return false, nil, fmt.Errorf("序列化报告数据失败: %v", err)
 	}
 
 	var requestBody []byte
@@ -75,7 +138,7 @@ func sendTrafficReport(ctx context.Context, reportItems TrafficReportItem) (bool
 
 	req, err := http.NewRequestWithContext(ctx, "POST", httpReportURL, bytes.NewBuffer(requestBody))
 	if err != nil {
-		return false, fmt.Errorf("创建HTTP请求失败: %v", err)
+		return false, nil, fmt.Errorf("创建HTTP请求失败: %v", err)
 	}
 
 	req.Header.Set("Content-Type", "application/json")
@@ -87,28 +150,28 @@ func sendTrafficReport(ctx context.Context, reportItems TrafficReportItem) (bool
 
 	resp, err := client.Do(req)
 	if err != nil {
-		return false, fmt.Errorf("发送HTTP请求失败: %v", err)
+		return false, nil, fmt.Errorf("发送HTTP请求失败: %v", err)
 	}
 	defer resp.Body.Close()
 
 	if resp.StatusCode != http.StatusOK {
-		return false, fmt.Errorf("HTTP响应错误: %d %s", resp.StatusCode, resp.Status)
+		return false, nil, fmt.Errorf("HTTP响应错误: %d %s", resp.StatusCode, resp.Status)
 	}
 
 	// 读取响应内容
 	var responseBytes bytes.Buffer
 	_, err = responseBytes.ReadFrom(resp.Body)
 	if err != nil {
-		return false, fmt.Errorf("读取响应内容失败: %v", err)
+		return false, nil, fmt.Errorf("读取响应内容失败: %v", err)
 	}
 
 	responseText := strings.TrimSpace(responseBytes.String())
 
 	// 检查响应是否为"ok"
 	if responseText == "ok" {
-		return true, nil
+		return true, parseReportPolicy(resp.Header), nil
 	} else {
-		return false, fmt.Errorf("服务器响应: %s (期望: ok)", responseText)
+		return false, nil, fmt.Errorf("服务器响应: %s (期望: ok)", responseText)
 	}
 }
 
@@ -283,5 +346,12 @@ func getConfigData() ([]byte, error) {
 
 	buf := &bytes.Buffer{}
 	resp.Config.Write(buf, "json")
-	return buf.Bytes(), nil
+
+	// 附带配置哈希，面板哈希一致时跳过对账
+	var report map[string]interface{}
+	if err := json.Unmarshal(buf.Bytes(), &report); err != nil {
+		return buf.Bytes(), nil
+	}
+	report["configHash"] = configHash(resp.Config)
+	return json.Marshal(report)
 }
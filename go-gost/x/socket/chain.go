@@ -107,5 +107,6 @@ type updateChainRequest struct {
 }
 
 type deleteChainRequest struct {
-	Chain string `json:"chain"`
+	Chain  string   `json:"chain"`
+	Chains []string `json:"chains"`
 }
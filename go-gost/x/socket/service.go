@@ -11,8 +11,21 @@ import (
 	parser "github.com/go-gost/x/config/parsing/service"
 	kill "github.com/go-gost/x/internal/util/port"
 	"github.com/go-gost/x/registry"
+	xservice "github.com/go-gost/x/service"
 )
 
+func init() {
+	// 流量预算用尽时按面板下发暂停的方式暂停服务，暂停状态计入配置哈希并随配置上报，
+	// 面板对账时恢复面板未暂停的服务（例如上报超时而用户仍有剩余流量）
+	xservice.SetBudgetExhaustedHandler(func(name string) {
+		if _, err := pauseServices(pauseServicesRequest{Services: []string{name}}); err != nil {
+			fmt.Printf("❌ 暂停流量预算用尽的服务 %s 失败: %v\n", name, err)
+			return
+		}
+		saveConfig()
+	})
+}
+
 func createServices(req createServicesRequest) error {
 
 	if len(req.Data) == 0 {
@@ -147,10 +160,11 @@ func updateServices(req updateServicesRequest) error {
 	return nil
 }
 
-func deleteServices(req deleteServicesRequest) error {
+// deleteServices 删除服务，批量模式下跳过不存在的服务并返回其名称，配置中残留的同名条目一并清除
+func deleteServices(req deleteServicesRequest) ([]string, error) {
 
 	if len(req.Services) == 0 {
-		return errors.New("services list cannot be empty")
+		return nil, errors.New("services list cannot be empty")
 	}
 
 	// 第一阶段：验证所有服务是否存在
@@ -158,16 +172,21 @@ func deleteServices(req deleteServicesRequest) error {
 		name    string
 		service service.Service
 	}
+	var missing []string
 
 	for _, serviceName := range req.Services {
 		name := strings.TrimSpace(serviceName)
 		if name == "" {
-			return errors.New("service name is required")
+			return nil, errors.New("service name is required")
 		}
 
 		svc := registry.ServiceRegistry().Get(name)
 		if svc == nil {
-			return errors.New("service " + name + " not found")
+			if req.Batch {
+				missing = append(missing, name)
+				continue
+			}
+			return nil, errors.New("service " + name + " not found")
 		}
 
 		servicesToDelete = append(servicesToDelete, struct {
@@ -183,31 +202,32 @@ func deleteServices(req deleteServicesRequest) error {
 	}
 
 	// 第三阶段：更新配置
+	removed := make(map[string]bool, len(servicesToDelete)+len(missing))
+	for _, std := range servicesToDelete {
+		removed[std.name] = true
+	}
+	for _, name := range missing {
+		removed[name] = true
+	}
 	config.OnUpdate(func(c *config.Config) error {
 		services := c.Services
 		c.Services = nil
 		for _, s := range services {
-			shouldDelete := false
-			for _, std := range servicesToDelete {
-				if s.Name == std.name {
-					shouldDelete = true
-					break
-				}
-			}
-			if !shouldDelete {
+			if !removed[s.Name] {
 				c.Services = append(c.Services, s)
 			}
 		}
 		return nil
 	})
 
-	return nil
+	return missing, nil
 }
 
-func pauseServices(req pauseServicesRequest) error {
+// pauseServices 暂停服务，批量模式下跳过不存在的服务并返回其名称
+func pauseServices(req pauseServicesRequest) ([]string, error) {
 
 	if len(req.Services) == 0 {
-		return errors.New("services list cannot be empty")
+		return nil, errors.New("services list cannot be empty")
 	}
 
 	// 第一阶段：验证所有服务是否存在，并筛选需要暂停的服务
@@ -216,17 +236,22 @@ func pauseServices(req pauseServicesRequest) error {
 		service service.Service
 	}
 	//var skippedServices []string
+	var missing []string
 
 	cfg := config.Global()
 	for _, serviceName := range req.Services {
 		name := strings.TrimSpace(serviceName)
 		if name == "" {
-			return errors.New("service name is required")
+			return nil, errors.New("service name is required")
 		}
 
 		svc := registry.ServiceRegistry().Get(name)
 		if svc == nil {
-			return errors.New(fmt.Sprintf("service %s not found", name))
+			if req.Batch {
+				missing = append(missing, name)
+				continue
+			}
+			return nil, errors.New(fmt.Sprintf("service %s not found", name))
 		}
 
 		//// 检查服务是否已经暂停
@@ -271,7 +296,7 @@ func pauseServices(req pauseServicesRequest) error {
 		if serviceConfig == nil {
 			// 找不到配置，回滚已暂停的服务
 			rollbackPausedServices(pausedServices)
-			return errors.New(fmt.Sprintf("service %s configuration not found", stp.name))
+			return nil, errors.New(fmt.Sprintf("service %s configuration not found", stp.name))
 		}
 
 		// 暂停服务
@@ -309,10 +334,10 @@ func pauseServices(req pauseServicesRequest) error {
 	if err != nil {
 		// 配置更新失败，需要回滚所有暂停的服务
 		rollbackPausedServices(pausedServices)
-		return errors.New(fmt.Sprintf("Failed to update config, rolling back paused services: %v", err))
+		return nil, errors.New(fmt.Sprintf("Failed to update config, rolling back paused services: %v", err))
 	}
 
-	return nil
+	return missing, nil
 }
 
 func resumeServices(req resumeServicesRequest) error {
@@ -440,6 +465,104 @@ func resumeServices(req resumeServicesRequest) error {
 	return nil
 }
 
+// setServicesLimiter 只替换服务引用的限流器，其余配置保持不变
+// 不存在的服务跳过，单个服务重建失败时恢复原配置并继续处理其余服务，跳过和失败的服务名在结果中返回
+func setServicesLimiter(req setServicesLimiterRequest) (*setServicesLimiterResult, error) {
+
+	if len(req.Services) == 0 {
+		return nil, errors.New("services list cannot be empty")
+	}
+
+	serviceConfigs := make(map[string]*config.ServiceConfig)
+	for _, s := range config.Global().Services {
+		serviceConfigs[s.Name] = s
+	}
+
+	result := &setServicesLimiterResult{}
+
+	// 第一阶段：筛选存在且限流器发生变化的服务
+	var servicesToUpdate []*config.ServiceConfig
+	for _, serviceName := range req.Services {
+		name := strings.TrimSpace(serviceName)
+		if name == "" {
+			return nil, errors.New("service name is required")
+		}
+
+		serviceConfig := serviceConfigs[name]
+		if registry.ServiceRegistry().Get(name) == nil || serviceConfig == nil {
+			result.Missing = append(result.Missing, name)
+			continue
+		}
+		if serviceConfig.Limiter == req.Limiter {
+			continue
+		}
+
+		newConfig := *serviceConfig
+		newConfig.Limiter = req.Limiter
+		servicesToUpdate = append(servicesToUpdate, &newConfig)
+	}
+
+	// 第二阶段：重建服务，已暂停的服务只更新配置，恢复时按新配置启动
+	var updated []*config.ServiceConfig
+	var errs []string
+	for _, serviceConfig := range servicesToUpdate {
+		if serviceConfig.Metadata != nil && serviceConfig.Metadata["paused"] == true {
+			updated = append(updated, serviceConfig)
+			continue
+		}
+
+		if err := rebuildService(serviceConfig); err != nil {
+			// 按原配置恢复服务，保持与配置文件一致
+			if restoreErr := rebuildService(serviceConfigs[serviceConfig.Name]); restoreErr != nil {
+				err = fmt.Errorf("%v; restore failed: %v", err, restoreErr)
+			}
+			result.Failed = append(result.Failed, serviceConfig.Name)
+			errs = append(errs, err.Error())
+			continue
+		}
+		updated = append(updated, serviceConfig)
+	}
+
+	// 第三阶段：只更新成功切换的服务的配置
+	config.OnUpdate(func(c *config.Config) error {
+		for _, serviceConfig := range updated {
+			for i := range c.Services {
+				if c.Services[i].Name == serviceConfig.Name {
+					c.Services[i] = serviceConfig
+					break
+				}
+			}
+		}
+		return nil
+	})
+
+	if len(errs) > 0 {
+		return result, errors.New("set service limiter failed: " + strings.Join(errs, "; "))
+	}
+	return result, nil
+}
+
+// rebuildService 关闭并按给定配置重新创建服务
+func rebuildService(serviceConfig *config.ServiceConfig) error {
+	if old := registry.ServiceRegistry().Get(serviceConfig.Name); old != nil {
+		old.Close()
+		registry.ServiceRegistry().Unregister(serviceConfig.Name)
+	}
+
+	svc, err := parser.ParseService(serviceConfig)
+	if err != nil {
+		return errors.New("create service " + serviceConfig.Name + " failed: " + err.Error())
+	}
+
+	if err := registry.ServiceRegistry().Register(serviceConfig.Name, svc); err != nil {
+		svc.Close()
+		return errors.New("service " + serviceConfig.Name + " already exists")
+	}
+
+	go svc.Serve()
+	return nil
+}
+
 func rollbackPausedServices(pausedServices []struct {
 	name          string
 	service       service.Service
@@ -504,16 +627,30 @@ func rollbackResumedServices(resumedServices []struct {
 	}
 }
 
+type setServicesLimiterRequest struct {
+	Services []string `json:"services"`
+	Limiter  string   `json:"limiter"`
+}
+
+type setServicesLimiterResult struct {
+	Missing []string `json:"missing,omitempty"`
+	Failed  []string `json:"failed,omitempty"`
+}
+
 type resumeServicesRequest struct {
 	Services []string `json:"services"`
 }
 
 type pauseServicesRequest struct {
 	Services []string `json:"services"`
+	// 批量模式：不存在的服务跳过，不中断整批
+	Batch    bool     `json:"batch"`
 }
 
 type deleteServicesRequest struct {
 	Services []string `json:"services"`
+	// 批量模式：不存在的服务视为已删除，不中断整批
+	Batch    bool     `json:"batch"`
 }
 
 type updateServicesRequest struct {
@@ -0,0 +1,155 @@
+package socket
+
+import (
+	"errors"
+	"fmt"
+	"strconv"
+	"strings"
+	"sync"
+
+	"github.com/go-gost/x/config"
+	"github.com/go-gost/x/registry"
+)
+
+var (
+	snapshotMu      sync.Mutex
+	snapshotVersion int64
+)
+
+// syncConfig 应用面板推送的期望配置快照
+// 限流器和链按快照覆盖，缺失的服务按快照创建，已存在的服务保持运行，
+// 面板管理但不在快照中的服务、链和限流器会被删除，最后按快照同步暂停状态
+func syncConfig(req syncConfigRequest) error {
+	snapshotMu.Lock()
+	defer snapshotMu.Unlock()
+
+	// 忽略比已应用版本更旧的快照，避免并发推送时旧快照覆盖新快照
+	if req.Version <= snapshotVersion {
+		return nil
+	}
+
+	var errs []string
+	cfg := config.Global()
+
+	// 第一阶段：限流器，服务创建时需要引用
+	limiterNames := make(map[string]bool)
+	for _, limiterConfig := range req.Limiters {
+		name := strings.TrimSpace(limiterConfig.Name)
+		limiterNames[name] = true
+		var err error
+		if registry.TrafficLimiterRegistry().IsRegistered(name) {
+			err = updateLimiter(updateLimiterRequest{Limiter: name, Data: limiterConfig})
+		} else {
+			err = createLimiter(createLimiterRequest{Data: limiterConfig})
+		}
+		if err != nil {
+			errs = append(errs, err.Error())
+		}
+	}
+
+	// 第二阶段：链，服务通过名称引用链，替换链不需要重启服务
+	chainNames := make(map[string]bool)
+	for _, chainConfig := range req.Chains {
+		name := strings.TrimSpace(chainConfig.Name)
+		chainNames[name] = true
+		var err error
+		if registry.ChainRegistry().IsRegistered(name) {
+			err = updateChain(updateChainRequest{Chain: name, Data: chainConfig})
+		} else {
+			err = createChain(createChainRequest{Data: chainConfig})
+		}
+		if err != nil {
+			errs = append(errs, err.Error())
+		}
+	}
+
+	// 第三阶段：创建缺失的服务，逐个创建避免单个失败影响其他服务
+	serviceNames := make(map[string]bool)
+	for _, serviceConfig := range req.Services {
+		name := strings.TrimSpace(serviceConfig.Name)
+		serviceNames[name] = true
+		if registry.ServiceRegistry().IsRegistered(name) {
+			continue
+		}
+		if err := createServices(createServicesRequest{Data: []config.ServiceConfig{serviceConfig}}); err != nil {
+			errs = append(errs, err.Error())
+		}
+	}
+
+	// 第四阶段：删除面板已不再需要的配置
+	var staleServices []string
+	for _, s := range cfg.Services {
+		if isManagedName(s.Name) && !serviceNames[s.Name] {
+			staleServices = append(staleServices, s.Name)
+		}
+	}
+	if len(staleServices) > 0 {
+		if _, err := deleteServices(deleteServicesRequest{Services: staleServices, Batch: true}); err != nil {
+			errs = append(errs, err.Error())
+		}
+	}
+	for _, c := range cfg.Chains {
+		if isManagedName(c.Name) && !chainNames[c.Name] {
+			if err := deleteChain(deleteChainRequest{Chain: c.Name}); err != nil {
+				errs = append(errs, err.Error())
+			}
+		}
+	}
+	for _, l := range cfg.Limiters {
+		if _, err := strconv.ParseInt(l.Name, 10, 64); err == nil && !limiterNames[l.Name] {
+			if err := deleteLimiter(deleteLimiterRequest{Limiter: l.Name}); err != nil {
+				errs = append(errs, err.Error())
+			}
+		}
+	}
+
+	// 第五阶段：同步暂停状态
+	paused := make(map[string]bool)
+	for _, name := range req.Paused {
+		paused[name] = true
+	}
+	var toPause, toResume []string
+	for _, s := range config.Global().Services {
+		if !serviceNames[s.Name] {
+			continue
+		}
+		isPaused := s.Metadata != nil && s.Metadata["paused"] == true
+		if paused[s.Name] && !isPaused {
+			toPause = append(toPause, s.Name)
+		} else if !paused[s.Name] && isPaused {
+			toResume = append(toResume, s.Name)
+		}
+	}
+	if len(toPause) > 0 {
+		if _, err := pauseServices(pauseServicesRequest{Services: toPause}); err != nil {
+			errs = append(errs, err.Error())
+		}
+	}
+	if len(toResume) > 0 {
+		if err := resumeServices(resumeServicesRequest{Services: toResume}); err != nil {
+			errs = append(errs, err.Error())
+		}
+	}
+
+	snapshotVersion = req.Version
+	fmt.Printf("📦 配置快照 %d 已应用: %d 个服务, %d 条链, %d 个限流器\n",
+		req.Version, len(req.Services), len(req.Chains), len(req.Limiters))
+
+	if len(errs) > 0 {
+		return errors.New(strings.Join(errs, "; "))
+	}
+	return nil
+}
+
+// isManagedName 判断是否为面板管理的服务或链，名称格式为 转发ID_用户ID_用户隧道ID_类型
+func isManagedName(name string) bool {
+	return strings.Count(name, "_") == 3
+}
+
+type syncConfigRequest struct {
+	Version  int64                  `json:"version"`
+	Limiters []config.LimiterConfig `json:"limiters"`
+	Chains   []config.ChainConfig   `json:"chains"`
+	Services []config.ServiceConfig `json:"services"`
+	Paused   []string               `json:"paused"`
+}
@@ -6,14 +6,17 @@ import (
 	"context"
 	"encoding/json"
 	"fmt"
+	"math/rand"
 	"net"
 	"net/url"
+	"strconv"
 	"strings"
 	"sync" // 新增：用于管理连接状态的互斥锁
 	"time"
 
 	"github.com/go-gost/x/config"
 	"github.com/go-gost/x/internal/util/crypto"
+	xservice "github.com/go-gost/x/service"
 	"github.com/gorilla/websocket"
 	"github.com/shirou/gopsutil/v3/cpu"
 	"github.com/shirou/gopsutil/v3/host"
@@ -86,6 +89,9 @@ type WebSocketReporter struct {
 	url            string
 	conn           *websocket.Conn
 	reconnectTime  time.Duration
+	maxBackoff     time.Duration // 重连退避上限
+	failures       int           // 连续连接失败次数
+	retryAfter     time.Duration // 面板拒绝连接时建议的等待时间
 	pingInterval   time.Duration
 	configInterval time.Duration
 	ctx            context.Context
@@ -112,6 +118,7 @@ func NewWebSocketReporter(serverURL string, secret string) *WebSocketReporter {
 	return &WebSocketReporter{
 		url:            serverURL,
 		reconnectTime:  5 * time.Second,  // 重连间隔
+		maxBackoff:     2 * time.Minute,  // 重连退避上限
 		pingInterval:   2 * time.Second,  // 发送间隔改为2秒
 		configInterval: 10 * time.Minute, // 配置上报间隔
 		ctx:            ctx,
@@ -150,9 +157,10 @@ func (w *WebSocketReporter) run() {
 
 			if needConnect {
 				if err := w.connect(); err != nil {
-					fmt.Printf("❌ WebSocket连接失败: %v，%v后重试\n", err, w.reconnectTime)
+					delay := w.nextBackoff()
+					fmt.Printf("❌ WebSocket连接失败: %v，%v后重试\n", err, delay)
 					select {
-					case <-time.After(w.reconnectTime):
+					case <-time.After(delay):
 						continue
 					case <-w.ctx.Done():
 						return
@@ -166,7 +174,7 @@ func (w *WebSocketReporter) run() {
 			} else {
 				// 如果连接失败，等待重试
 				select {
-				case <-time.After(w.reconnectTime):
+				case <-time.After(w.nextBackoff()):
 					continue
 				case <-w.ctx.Done():
 					return
@@ -200,8 +208,15 @@ func (w *WebSocketReporter) connect() error {
 	dialer := websocket.DefaultDialer
 	dialer.HandshakeTimeout = 10 * time.Second
 
-	conn, _, err := dialer.Dial(u.String(), nil)
+	conn, resp, err := dialer.Dial(u.String(), nil)
 	if err != nil {
+		// 面板限流时返回503和Retry-After，记录下来作为退避的下限
+		w.retryAfter = 0
+		if resp != nil {
+			if seconds, convErr := strconv.Atoi(resp.Header.Get("Retry-After")); convErr == nil && seconds > 0 {
+				w.retryAfter = time.Duration(seconds) * time.Second
+			}
+		}
 		return fmt.Errorf("连接WebSocket失败: %v", err)
 	}
 
@@ -213,6 +228,8 @@ func (w *WebSocketReporter) connect() error {
 
 	w.conn = conn
 	w.connected = true
+	w.failures = 0
+	w.retryAfter = 0
 
 	// 设置关闭处理器来检测连接状态
 	w.conn.SetCloseHandler(func(code int, text string) error {
@@ -226,6 +243,25 @@ func (w *WebSocketReporter) connect() error {
 	return nil
 }
 
+// nextBackoff 计算下次重连等待时间
+// 按连续失败次数指数退避，不低于面板建议的Retry-After，并在[d/2, d)内随机抖动，
+// 避免面板重启后所有节点在同一时刻重连
+func (w *WebSocketReporter) nextBackoff() time.Duration {
+	delay := w.reconnectTime
+	for i := 0; i < w.failures && delay < w.maxBackoff; i++ {
+		delay *= 2
+	}
+	if delay > w.maxBackoff {
+		delay = w.maxBackoff
+	}
+	if w.retryAfter > delay {
+		delay = w.retryAfter
+	}
+	w.failures++
+	half := delay / 2
+	return half + time.Duration(rand.Int63n(int64(half)+1))
+}
+
 // handleConnection 处理WebSocket连接
 func (w *WebSocketReporter) handleConnection() {
 	defer func() {
@@ -477,6 +513,14 @@ func (w *WebSocketReporter) routeCommand(cmd CommandMessage) {
 	// 传递 requestId
 	response.RequestId = cmd.RequestId
 
+	// 上报策略只影响内存中的上报节奏，不需要保存配置和回复
+	if cmd.Type == "ReportPolicy" {
+		if err := w.handleReportPolicy(cmd.Data); err != nil {
+			fmt.Printf("❌ 更新上报策略失败: %v\n", err)
+		}
+		return
+	}
+
 	switch cmd.Type {
 	// Service 相关命令
 	case "AddService":
@@ -486,14 +530,34 @@ func (w *WebSocketReporter) routeCommand(cmd CommandMessage) {
 		err = w.handleUpdateService(cmd.Data)
 		response.Type = "UpdateServiceResponse"
 	case "DeleteService":
-		err = w.handleDeleteService(cmd.Data)
+		var missing []string
+		missing, err = w.handleDeleteService(cmd.Data)
 		response.Type = "DeleteServiceResponse"
+		if len(missing) > 0 {
+			response.Data = map[string]interface{}{"missing": missing}
+		}
 	case "PauseService":
-		err = w.handlePauseService(cmd.Data)
+		var missing []string
+		missing, err = w.handlePauseService(cmd.Data)
 		response.Type = "PauseServiceResponse"
+		if len(missing) > 0 {
+			response.Data = map[string]interface{}{"missing": missing}
+		}
 	case "ResumeService":
 		err = w.handleResumeService(cmd.Data)
 		response.Type = "ResumeServiceResponse"
+	case "SetServiceLimiter":
+		var result *setServicesLimiterResult
+		result, err = w.handleSetServiceLimiter(cmd.Data)
+		response.Type = "SetServiceLimiterResponse"
+		if result != nil && (len(result.Missing) > 0 || len(result.Failed) > 0) {
+			response.Data = result
+		}
+
+	// 配置快照命令
+	case "SyncConfig":
+		err = w.handleSyncConfig(cmd.Data)
+		response.Type = "SyncConfigResponse"
 
 	// Chain 相关命令
 	case "AddChains":
@@ -587,29 +651,31 @@ func (w *WebSocketReporter) handleUpdateService(data interface{}) error {
 	return updateServices(req)
 }
 
-func (w *WebSocketReporter) handleDeleteService(data interface{}) error {
+// handleDeleteService 返回批量模式下被跳过的不存在的服务
+func (w *WebSocketReporter) handleDeleteService(data interface{}) ([]string, error) {
 	jsonData, err := json.Marshal(data)
 	if err != nil {
-		return fmt.Errorf("序列化数据失败: %v", err)
+		return nil, fmt.Errorf("序列化数据失败: %v", err)
 	}
 
 	var req deleteServicesRequest
 	if err := json.Unmarshal(jsonData, &req); err != nil {
-		return fmt.Errorf("解析删除请求失败: %v", err)
+		return nil, fmt.Errorf("解析删除请求失败: %v", err)
 	}
 
 	return deleteServices(req)
 }
 
-func (w *WebSocketReporter) handlePauseService(data interface{}) error {
+// handlePauseService 返回批量模式下被跳过的不存在的服务
+func (w *WebSocketReporter) handlePauseService(data interface{}) ([]string, error) {
 	jsonData, err := json.Marshal(data)
 	if err != nil {
-		return fmt.Errorf("序列化数据失败: %v", err)
+		return nil, fmt.Errorf("序列化数据失败: %v", err)
 	}
 
 	var req pauseServicesRequest
 	if err := json.Unmarshal(jsonData, &req); err != nil {
-		return fmt.Errorf("解析暂停请求失败: %v", err)
+		return nil, fmt.Errorf("解析暂停请求失败: %v", err)
 	}
 
 	return pauseServices(req)
@@ -629,6 +695,62 @@ func (w *WebSocketReporter) handleResumeService(data interface{}) error {
 	return resumeServices(req)
 }
 
+func (w *WebSocketReporter) handleSetServiceLimiter(data interface{}) (*setServicesLimiterResult, error) {
+	jsonData, err := json.Marshal(data)
+	if err != nil {
+		return nil, fmt.Errorf("序列化数据失败: %v", err)
+	}
+
+	var req setServicesLimiterRequest
+	if err := json.Unmarshal(jsonData, &req); err != nil {
+		return nil, fmt.Errorf("解析限速设置请求失败: %v", err)
+	}
+
+	return setServicesLimiter(req)
+}
+
+func (w *WebSocketReporter) handleSyncConfig(data interface{}) error {
+	jsonData, err := json.Marshal(data)
+	if err != nil {
+		return fmt.Errorf("序列化数据失败: %v", err)
+	}
+
+	// 预处理：将字符串格式的 duration 转换为纳秒数
+	processedData, err := w.preprocessDurationFields(jsonData)
+	if err != nil {
+		return fmt.Errorf("预处理duration字段失败: %v", err)
+	}
+
+	var req syncConfigRequest
+	if err := json.Unmarshal(processedData, &req); err != nil {
+		return fmt.Errorf("解析配置快照失败: %v", err)
+	}
+
+	return syncConfig(req)
+}
+
+// handleReportPolicy 更新面板下发的默认上报策略
+func (w *WebSocketReporter) handleReportPolicy(data interface{}) error {
+	jsonData, err := json.Marshal(data)
+	if err != nil {
+		return fmt.Errorf("序列化数据失败: %v", err)
+	}
+
+	var req struct {
+		Interval  int64 `json:"interval"`  // 秒
+		Threshold int64 `json:"threshold"` // 字节
+	}
+	if err := json.Unmarshal(jsonData, &req); err != nil {
+		return fmt.Errorf("解析上报策略失败: %v", err)
+	}
+
+	xservice.SetDefaultReportPolicy(xservice.ReportPolicy{
+		Interval:  time.Duration(req.Interval) * time.Second,
+		Threshold: req.Threshold,
+	})
+	return nil
+}
+
 // Chain 命令处理函数
 func (w *WebSocketReporter) handleAddChain(data interface{}) error {
 	jsonData, err := json.Marshal(data)
@@ -694,6 +816,16 @@ func (w *WebSocketReporter) handleDeleteChain(data interface{}) error {
 		deleteReq.Chain = chainName
 	}
 
+	// 批量删除: {"chains": ["name1", "name2"]}，不存在的链直接跳过
+	if len(deleteReq.Chains) > 0 {
+		for _, name := range deleteReq.Chains {
+			if err := deleteChain(deleteChainRequest{Chain: name}); err != nil && !strings.HasSuffix(err.Error(), "not found") {
+				return err
+			}
+		}
+		return nil
+	}
+
 	return deleteChain(deleteReq)
 }
 
@@ -23,6 +23,35 @@ SET time_zone = "+00:00";
 
 -- --------------------------------------------------------
 
+--
+-- 表的结构 `flow_rollup`
+-- 流量汇总：scope 1转发 2用户隧道 3隧道 4节点，resolution 1分钟 2小时 3天
+--
+
+CREATE TABLE `flow_rollup` (
+  `id` bigint(20) NOT NULL,
+  `scope` tinyint(4) NOT NULL,
+  `target_id` bigint(20) NOT NULL,
+  `resolution` tinyint(4) NOT NULL,
+  `bucket_time` bigint(20) NOT NULL,
+  `in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `out_flow` bigint(20) NOT NULL DEFAULT '0'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
+--
+-- 表的结构 `flow_wal_state`
+-- 流量日志写库进度：代号小于 generation 的日志段已写入隧道、节点流量计数
+--
+
+CREATE TABLE `flow_wal_state` (
+  `id` tinyint(4) NOT NULL,
+  `generation` bigint(20) NOT NULL DEFAULT '0'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
 --
 -- 表的结构 `forward`
 --
@@ -61,6 +90,11 @@ CREATE TABLE `node` (
   `port_sta` int(10) NOT NULL,
   `port_end` int(10) NOT NULL,
   `version` varchar(100) DEFAULT NULL,
+  `in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `out_flow` bigint(20) NOT NULL DEFAULT '0',
+  `raw_in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `raw_out_flow` bigint(20) NOT NULL DEFAULT '0',
+  `bandwidth` int(10) NOT NULL DEFAULT '0' COMMENT '上行带宽（Mbps），0为未设置',
   `created_time` bigint(20) NOT NULL,
   `updated_time` bigint(20) DEFAULT NULL,
   `status` int(10) NOT NULL
@@ -78,6 +112,7 @@ CREATE TABLE `speed_limit` (
   `speed` int(10) NOT NULL,
   `tunnel_id` int(10) NOT NULL,
   `tunnel_name` varchar(100) NOT NULL,
+  `adaptive` int(10) NOT NULL DEFAULT '0' COMMENT '入口节点拥塞时是否自动收紧',
   `created_time` bigint(20) NOT NULL,
   `updated_time` bigint(20) DEFAULT NULL,
   `status` int(10) NOT NULL
@@ -118,6 +153,12 @@ CREATE TABLE `tunnel` (
   `tcp_listen_addr` varchar(100) NOT NULL DEFAULT '[::]',
   `udp_listen_addr` varchar(100) NOT NULL DEFAULT '[::]',
   `interface_name` varchar(200) DEFAULT NULL,
+  `auto_out` int(10) NOT NULL DEFAULT '0',
+  `out_node_ids` varchar(500) DEFAULT NULL,
+  `in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `out_flow` bigint(20) NOT NULL DEFAULT '0',
+  `raw_in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `raw_out_flow` bigint(20) NOT NULL DEFAULT '0',
   `created_time` bigint(20) NOT NULL,
   `updated_time` bigint(20) NOT NULL,
   `status` int(10) NOT NULL
@@ -140,6 +181,7 @@ CREATE TABLE `user` (
   `out_flow` bigint(20) NOT NULL DEFAULT '0',
   `flow_reset_time` bigint(20) NOT NULL,
   `num` int(10) NOT NULL,
+  `speed` int(10) NOT NULL DEFAULT '0' COMMENT '所有节点合计的带宽上限（Mbps），0为不限',
   `created_time` bigint(20) NOT NULL,
   `updated_time` bigint(20) DEFAULT NULL,
   `status` int(10) NOT NULL
@@ -154,6 +196,19 @@ INSERT INTO `user` (`id`, `user`, `pwd`, `role_id`, `exp_time`, `flow`, `in_flow
 
 -- --------------------------------------------------------
 
+--
+-- 表的结构 `user_flow_shard`
+--
+
+CREATE TABLE `user_flow_shard` (
+  `user_id` int(10) NOT NULL,
+  `shard` tinyint(4) NOT NULL,
+  `in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `out_flow` bigint(20) NOT NULL DEFAULT '0'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
 --
 -- 表的结构 `user_tunnel`
 --
@@ -196,11 +251,26 @@ INSERT INTO `vite_config` (`id`, `name`, `value`, `time`) VALUES
 -- 转储表的索引
 --
 
+--
+-- 表的索引 `flow_rollup`
+--
+ALTER TABLE `flow_rollup`
+  ADD PRIMARY KEY (`id`),
+  ADD UNIQUE KEY `uk_bucket` (`scope`,`target_id`,`resolution`,`bucket_time`),
+  ADD KEY `idx_resolution_time` (`resolution`,`bucket_time`);
+
+--
+-- 表的索引 `flow_wal_state`
+--
+ALTER TABLE `flow_wal_state`
+  ADD PRIMARY KEY (`id`);
+
 --
 -- 表的索引 `forward`
 --
 ALTER TABLE `forward`
-  ADD PRIMARY KEY (`id`);
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `idx_tunnel_id` (`tunnel_id`);
 
 --
 -- 表的索引 `node`
@@ -218,7 +288,8 @@ ALTER TABLE `speed_limit`
 -- 表的索引 `statistics_flow`
 --
 ALTER TABLE `statistics_flow`
-  ADD PRIMARY KEY (`id`);
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `idx_user_id` (`user_id`,`id`);
 
 --
 -- 表的索引 `tunnel`
@@ -232,6 +303,12 @@ ALTER TABLE `tunnel`
 ALTER TABLE `user`
   ADD PRIMARY KEY (`id`);
 
+--
+-- 表的索引 `user_flow_shard`
+--
+ALTER TABLE `user_flow_shard`
+  ADD PRIMARY KEY (`user_id`,`shard`);
+
 --
 -- 表的索引 `user_tunnel`
 --
@@ -249,6 +326,12 @@ ALTER TABLE `vite_config`
 -- 在导出的表使用AUTO_INCREMENT
 --
 
+--
+-- 使用表AUTO_INCREMENT `flow_rollup`
+--
+ALTER TABLE `flow_rollup`
+  MODIFY `id` bigint(20) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=1;
+
 --
 -- 使用表AUTO_INCREMENT `forward`
 --
@@ -805,6 +805,42 @@ PREPARE stmt FROM @sql;
 EXECUTE stmt;
 DEALLOCATE PREPARE stmt;
 
+-- tunnel 表：添加 auto_out 字段（是否自动选择出口节点）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'tunnel'
+        AND column_name = 'auto_out'
+    ),
+    'ALTER TABLE \`tunnel\` ADD COLUMN \`auto_out\` INT(10) NOT NULL DEFAULT 0;',
+    'SELECT "Column \`auto_out\` already exists in \`tunnel\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- tunnel 表：添加 out_node_ids 字段（候选出口节点）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'tunnel'
+        AND column_name = 'out_node_ids'
+    ),
+    'ALTER TABLE \`tunnel\` ADD COLUMN \`out_node_ids\` VARCHAR(500) DEFAULT NULL;',
+    'SELECT "Column \`out_node_ids\` already exists in \`tunnel\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
 -- 创建 vite_config 表（如果不存在）
 CREATE TABLE IF NOT EXISTS \`vite_config\` (
   \`id\` int(10) NOT NULL AUTO_INCREMENT,
@@ -815,6 +851,20 @@ CREATE TABLE IF NOT EXISTS \`vite_config\` (
   UNIQUE KEY \`unique_name\` (\`name\`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- 创建 flow_rollup 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`flow_rollup\` (
+  \`id\` bigint(20) NOT NULL AUTO_INCREMENT,
+  \`scope\` tinyint(4) NOT NULL,
+  \`target_id\` bigint(20) NOT NULL,
+  \`resolution\` tinyint(4) NOT NULL,
+  \`bucket_time\` bigint(20) NOT NULL,
+  \`in_flow\` bigint(20) NOT NULL DEFAULT '0',
+  \`out_flow\` bigint(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (\`id\`),
+  UNIQUE KEY \`uk_bucket\` (\`scope\`,\`target_id\`,\`resolution\`,\`bucket_time\`),
+  KEY \`idx_resolution_time\` (\`resolution\`,\`bucket_time\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- 创建 statistics_flow 表（如果不存在）
 CREATE TABLE IF NOT EXISTS \`statistics_flow\` (
   \`id\` bigint(20) NOT NULL AUTO_INCREMENT,
@@ -844,11 +894,261 @@ PREPARE stmt FROM @sql;
 EXECUTE stmt;
 DEALLOCATE PREPARE stmt;
 
+-- statistics_flow 表：添加 idx_user_id 索引（按用户查询统计）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.STATISTICS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'statistics_flow'
+        AND index_name = 'idx_user_id'
+    ),
+    'ALTER TABLE \`statistics_flow\` ADD KEY \`idx_user_id\` (\`user_id\`,\`id\`);',
+    'SELECT "Index \`idx_user_id\` already exists in \`statistics_flow\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
 -- 为现有记录设置当前毫秒时间戳（仅当 created_time 为 0 或 NULL 时）
 UPDATE \`statistics_flow\`
 SET \`created_time\` = UNIX_TIMESTAMP() * 1000
 WHERE \`created_time\` = 0 OR \`created_time\` IS NULL;
 
+-- tunnel 表：添加 in_flow 字段（累计计费入站流量）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'tunnel'
+        AND column_name = 'in_flow'
+    ),
+    'ALTER TABLE \`tunnel\` ADD COLUMN \`in_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计计费入站流量";',
+    'SELECT "Column \`in_flow\` already exists in \`tunnel\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- tunnel 表：添加 out_flow 字段（累计计费出站流量）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'tunnel'
+        AND column_name = 'out_flow'
+    ),
+    'ALTER TABLE \`tunnel\` ADD COLUMN \`out_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计计费出站流量";',
+    'SELECT "Column \`out_flow\` already exists in \`tunnel\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- tunnel 表：添加 raw_in_flow 字段（累计实际入站字节数）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'tunnel'
+        AND column_name = 'raw_in_flow'
+    ),
+    'ALTER TABLE \`tunnel\` ADD COLUMN \`raw_in_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计实际入站字节数";',
+    'SELECT "Column \`raw_in_flow\` already exists in \`tunnel\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- tunnel 表：添加 raw_out_flow 字段（累计实际出站字节数）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'tunnel'
+        AND column_name = 'raw_out_flow'
+    ),
+    'ALTER TABLE \`tunnel\` ADD COLUMN \`raw_out_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计实际出站字节数";',
+    'SELECT "Column \`raw_out_flow\` already exists in \`tunnel\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- node 表：添加 in_flow 字段（累计计费入站流量）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'node'
+        AND column_name = 'in_flow'
+    ),
+    'ALTER TABLE \`node\` ADD COLUMN \`in_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计计费入站流量";',
+    'SELECT "Column \`in_flow\` already exists in \`node\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- node 表：添加 out_flow 字段（累计计费出站流量）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'node'
+        AND column_name = 'out_flow'
+    ),
+    'ALTER TABLE \`node\` ADD COLUMN \`out_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计计费出站流量";',
+    'SELECT "Column \`out_flow\` already exists in \`node\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- node 表：添加 raw_in_flow 字段（累计实际入站字节数）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'node'
+        AND column_name = 'raw_in_flow'
+    ),
+    'ALTER TABLE \`node\` ADD COLUMN \`raw_in_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计实际入站字节数";',
+    'SELECT "Column \`raw_in_flow\` already exists in \`node\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- node 表：添加 raw_out_flow 字段（累计实际出站字节数）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'node'
+        AND column_name = 'raw_out_flow'
+    ),
+    'ALTER TABLE \`node\` ADD COLUMN \`raw_out_flow\` BIGINT(20) NOT NULL DEFAULT 0 COMMENT "累计实际出站字节数";',
+    'SELECT "Column \`raw_out_flow\` already exists in \`node\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- forward 表：添加 tunnel_id 索引（如果不存在）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.STATISTICS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'forward'
+        AND index_name = 'idx_tunnel_id'
+    ),
+    'ALTER TABLE \`forward\` ADD KEY \`idx_tunnel_id\` (\`tunnel_id\`);',
+    'SELECT "Index \`idx_tunnel_id\` already exists in \`forward\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- user 表：添加 speed 字段（所有节点合计的带宽上限）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'user'
+        AND column_name = 'speed'
+    ),
+    'ALTER TABLE \`user\` ADD COLUMN \`speed\` INT(10) NOT NULL DEFAULT 0 COMMENT "所有节点合计的带宽上限（Mbps），0为不限";',
+    'SELECT "Column \`speed\` already exists in \`user\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- node 表：添加 bandwidth 字段（上行带宽）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'node'
+        AND column_name = 'bandwidth'
+    ),
+    'ALTER TABLE \`node\` ADD COLUMN \`bandwidth\` INT(10) NOT NULL DEFAULT 0 COMMENT "上行带宽（Mbps），0为未设置";',
+    'SELECT "Column \`bandwidth\` already exists in \`node\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- speed_limit 表：添加 adaptive 字段（自适应限速开关）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.COLUMNS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'speed_limit'
+        AND column_name = 'adaptive'
+    ),
+    'ALTER TABLE \`speed_limit\` ADD COLUMN \`adaptive\` INT(10) NOT NULL DEFAULT 0 COMMENT "入口节点拥塞时是否自动收紧";',
+    'SELECT "Column \`adaptive\` already exists in \`speed_limit\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 创建 user_flow_shard 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`user_flow_shard\` (
+  \`user_id\` int(10) NOT NULL,
+  \`shard\` tinyint(4) NOT NULL,
+  \`in_flow\` bigint(20) NOT NULL DEFAULT '0',
+  \`out_flow\` bigint(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (\`user_id\`,\`shard\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 创建 flow_wal_state 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`flow_wal_state\` (
+  \`id\` tinyint(4) NOT NULL,
+  \`generation\` bigint(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (\`id\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 EOF
 
   # 检查数据库容器
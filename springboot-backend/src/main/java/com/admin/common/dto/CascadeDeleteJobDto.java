@@ -0,0 +1,48 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * 级联删除任务进度DTO
+ * </p>
+ */
+@Data
+public class CascadeDeleteJobDto {
+
+    private String jobId;
+
+    /**
+     * 删除对象描述，如 user:12、user_tunnel:5
+     */
+    private String target;
+
+    /**
+     * 任务状态（0-执行中，1-完成，2-部分节点清理失败）
+     */
+    private Integer status;
+
+    /**
+     * 删除的转发数量
+     */
+    private Integer forwardCount;
+
+    /**
+     * 需要下发删除命令的节点数 / 已完成的节点数
+     */
+    private Integer totalNodes;
+
+    private Integer finishedNodes;
+
+    /**
+     * 节点清理失败信息
+     */
+    private List<String> errors = new ArrayList<>();
+
+    private Long createdTime;
+
+    private Long finishedTime;
+}
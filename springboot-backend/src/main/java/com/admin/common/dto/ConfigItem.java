@@ -3,9 +3,27 @@ package com.admin.common.dto;
 
 import lombok.Data;
 
+import java.util.List;
+import java.util.Map;
+
 @Data
 public class ConfigItem {
     private String name;
+
+    // 服务监听地址和引用的限流器
+    private String addr;
+
+    private String limiter;
+
+    // 限流器规则
+    private List<String> limits;
+
+    // 服务元数据，暂停中的服务带有 paused=true
+    private Map<String, Object> metadata;
+
+    public boolean isPaused() {
+        return metadata != null && Boolean.TRUE.equals(metadata.get("paused"));
+    }
 }
 
 
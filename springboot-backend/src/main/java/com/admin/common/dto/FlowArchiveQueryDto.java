@@ -0,0 +1,30 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class FlowArchiveQueryDto {
+
+    // 报表对象类型：1用户 2转发
+    @NotNull(message = "对象类型不能为空")
+    @Min(value = 1, message = "对象类型错误")
+    @Max(value = 2, message = "对象类型错误")
+    private Integer type;
+
+    @NotNull(message = "对象ID不能为空")
+    private Long targetId;
+
+    @NotNull(message = "年份不能为空")
+    @Min(value = 2000, message = "年份错误")
+    @Max(value = 2100, message = "年份错误")
+    private Integer year;
+
+    // 月份，为空时查询全年
+    @Min(value = 1, message = "月份错误")
+    @Max(value = 12, message = "月份错误")
+    private Integer month;
+}
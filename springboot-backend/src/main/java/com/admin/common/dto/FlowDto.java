@@ -13,4 +13,10 @@ public class FlowDto {
 
     // 下载流量
     private Long d;
+
+    // 上报序号，节点重发同一份上报时不变，可为空
+    private Long s;
+
+    // 服务实例标识，服务重建后变化，序号只在同一实例内递增，可为空
+    private Long e;
 }
@@ -0,0 +1,25 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class FlowRollupQueryDto {
+
+    // 汇总对象类型：1转发 2用户隧道 3隧道 4节点
+    @NotNull(message = "对象类型不能为空")
+    @Min(value = 1, message = "对象类型错误")
+    @Max(value = 4, message = "对象类型错误")
+    private Integer scope;
+
+    @NotNull(message = "对象ID不能为空")
+    private Long targetId;
+
+    // 查询范围（毫秒时间戳），为空时默认最近24小时
+    private Long startTime;
+
+    private Long endTime;
+}
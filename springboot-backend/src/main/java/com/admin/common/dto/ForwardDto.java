@@ -14,7 +14,9 @@ public class ForwardDto {
     @NotBlank(message = "转发名称不能为空")
     private String name;
     
-    @NotNull(message = "隧道ID不能为空")
+    /**
+     * 隧道ID（可选，为空时按节点负载自动选择隧道）
+     */
     private Integer tunnelId;
     
     @NotBlank(message = "远程地址不能为空")
@@ -84,6 +84,16 @@ public class ForwardWithTunnelDto {
      */
     private Long outFlow;
 
+    /**
+     * 当前入站速率（字节/秒），由内存中的速率估算填充
+     */
+    private Long inRate;
+
+    /**
+     * 当前出站速率（字节/秒）
+     */
+    private Long outRate;
+
     private String strategy;
 
     private Integer inx;
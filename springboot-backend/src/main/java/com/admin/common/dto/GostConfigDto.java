@@ -14,6 +14,11 @@ public class GostConfigDto {
 
     private List<ConfigItem> services;
 
+    /**
+     * 节点已应用配置的哈希，旧版本节点不上报
+     */
+    private String configHash;
+
 
 }
 
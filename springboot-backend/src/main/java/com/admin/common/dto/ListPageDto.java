@@ -0,0 +1,17 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ListPageDto<T> {
+
+    private List<T> list;
+
+    // 下一页的游标，没有下一页时为空
+    private Long nextCursor;
+
+    // 符合筛选条件的总数
+    private Integer total;
+}
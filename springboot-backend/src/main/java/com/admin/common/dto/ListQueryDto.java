@@ -0,0 +1,28 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+@Data
+public class ListQueryDto {
+
+    // 上一页最后一条记录的ID，为空时从第一页开始
+    private Long cursor;
+
+    // 每页条数，默认50
+    @Min(value = 1, message = "每页条数错误")
+    @Max(value = 500, message = "每页条数不能超过500")
+    private Integer size;
+
+    // 关键字，匹配名称、地址等文本字段
+    private String keyword;
+
+    private Integer status;
+
+    // 以下筛选条件只用于转发列表
+    private Integer userId;
+
+    private Integer tunnelId;
+}
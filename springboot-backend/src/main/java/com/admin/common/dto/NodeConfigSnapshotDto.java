@@ -0,0 +1,33 @@
+package com.admin.common.dto;
+
+import com.alibaba.fastjson.JSONArray;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * 节点期望配置快照DTO
+ * 由数据库中的隧道、转发和限速规则计算得到，节点连接后一次性下发
+ * </p>
+ */
+@Data
+public class NodeConfigSnapshotDto {
+
+    /**
+     * 快照版本，节点忽略比已应用版本更旧的快照
+     */
+    private Long version;
+
+    private JSONArray limiters = new JSONArray();
+
+    private JSONArray chains = new JSONArray();
+
+    private JSONArray services = new JSONArray();
+
+    /**
+     * 需要处于暂停状态的服务名称
+     */
+    private List<String> paused = new ArrayList<>();
+}
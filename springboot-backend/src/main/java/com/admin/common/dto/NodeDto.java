@@ -28,4 +28,7 @@ public class NodeDto {
     @Min(value = 1, message = "结束端口必须大于0")
     @Max(value = 65535, message = "结束端口不能超过65535")
     private Integer portEnd;
+
+    @Min(value = 0, message = "上行带宽不能小于0")
+    private Integer bandwidth; // 上行带宽（Mbps），0或为空表示未设置
 } 
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+public class NodeHistoryQueryDto {
+
+    @NotNull(message = "节点ID不能为空")
+    private Long id;
+
+    // 数据粒度：1s（最近10分钟）或 1m（最近24小时），默认1s
+    private String resolution;
+
+    // 查询范围（毫秒时间戳），为空时返回该粒度保留的全部数据
+    private Long startTime;
+
+    private Long endTime;
+}
@@ -0,0 +1,47 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+/**
+ * <p>
+ * 节点负载信息DTO
+ * </p>
+ */
+@Data
+public class NodeLoadDto {
+
+    private Long nodeId;
+
+    private String nodeName;
+
+    /**
+     * 节点是否在线
+     */
+    private boolean online;
+
+    /**
+     * 该节点承载的转发数量（作为入口或出口）
+     */
+    private Integer forwardCount;
+
+    /**
+     * 已占用端口数 / 端口范围大小
+     */
+    private Integer usedPorts;
+
+    private Integer totalPorts;
+
+    /**
+     * 实时带宽（字节/秒，收发之和）
+     */
+    private Long bandwidth;
+
+    private Double cpuUsage;
+
+    private Double memoryUsage;
+
+    /**
+     * 负载得分（0-100），越低越空闲
+     */
+    private Double score;
+}
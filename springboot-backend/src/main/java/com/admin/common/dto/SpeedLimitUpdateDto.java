@@ -23,4 +23,6 @@ public class SpeedLimitUpdateDto {
 
     @NotBlank(message = "隧道名称不能为空")
     private String tunnelName;
+
+    private Integer adaptive; // 1为开启自适应，为空时不开启
 } 
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+@Data
+public class TopTrafficQueryDto {
+
+    // 排行维度：1转发 2用户 3隧道
+    @NotNull(message = "排行类型不能为空")
+    @Min(value = 1, message = "排行类型错误")
+    @Max(value = 3, message = "排行类型错误")
+    private Integer type;
+
+    // 统计窗口：1m、5m、1h，默认1m
+    @Pattern(regexp = "1m|5m|1h", message = "统计窗口错误")
+    private String window;
+
+    // 返回条数，默认10
+    @Min(value = 1, message = "返回条数错误")
+    @Max(value = 50, message = "返回条数不能超过50")
+    private Integer limit;
+}
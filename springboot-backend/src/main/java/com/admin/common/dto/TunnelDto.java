@@ -8,6 +8,7 @@ import javax.validation.constraints.Max;
 import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.DecimalMax;
 import java.math.BigDecimal;
+import java.util.List;
 
 @Data
 public class TunnelDto {
@@ -42,4 +43,10 @@ public class TunnelDto {
     
     // UDP监听地址，默认为0.0.0.0
     private String udpListenAddr = "0.0.0.0";
+
+    // 自动选择出口节点，仅隧道转发有效，默认关闭
+    private Integer autoOut = 0;
+
+    // 候选出口节点ID，开启自动选择出口节点时必填
+    private List<Long> outNodeIds;
 } 
\ No newline at end of file
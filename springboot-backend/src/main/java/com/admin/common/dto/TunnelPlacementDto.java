@@ -0,0 +1,39 @@
+package com.admin.common.dto;
+
+import lombok.Data;
+
+/**
+ * <p>
+ * 隧道放置建议DTO
+ * </p>
+ */
+@Data
+public class TunnelPlacementDto {
+
+    private Long tunnelId;
+
+    private String tunnelName;
+
+    private Integer tunnelType;
+
+    private Long inNodeId;
+
+    private Long outNodeId;
+
+    /**
+     * 是否可以在该隧道上创建转发（节点在线且有空闲端口）
+     */
+    private boolean available;
+
+    /**
+     * 负载得分，取入口和出口节点中较高的得分，越低越空闲
+     */
+    private Double score;
+
+    /**
+     * 是否为推荐隧道
+     */
+    private boolean recommended;
+
+    private String reason;
+}
@@ -10,6 +10,7 @@ import javax.validation.constraints.Max;
 import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.DecimalMax;
 import java.math.BigDecimal;
+import java.util.List;
 
 @Data
 public class TunnelUpdateDto {
@@ -41,4 +42,10 @@ public class TunnelUpdateDto {
 
     @TableField(updateStrategy = FieldStrategy.IGNORED)
     private String interfaceName;
+
+    // 自动选择出口节点，为空时保持不变
+    private Integer autoOut;
+
+    // 候选出口节点ID
+    private List<Long> outNodeIds;
 } 
\ No newline at end of file
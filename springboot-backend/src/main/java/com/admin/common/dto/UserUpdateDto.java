@@ -31,5 +31,8 @@ public class UserUpdateDto {
     @NotNull(message = "流量重置时间不能为空")
     private Long flowResetTime;
 
+    @Min(value = 0, message = "带宽上限不能小于0")
+    private Integer speed; // 所有节点合计的带宽上限（Mbps），0或为空不限
+
     private Integer status;
 } 
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.admin.common.interceptor;
+
+import com.admin.common.utils.NodeConfigVersion;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+/**
+ * 节点配置变更拦截器
+ * 转发、隧道、限速规则和用户隧道权限的增删以及实体更新会改变节点的期望配置，执行后递增配置版本号。
+ * 流量统计使用的条件更新（setSql累加流量）不影响节点配置，不会触发版本变化
+ */
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class NodeConfigChangeInterceptor implements Interceptor {
+
+    private static final String[] CONFIG_MAPPERS = {
+            "com.admin.mapper.ForwardMapper.",
+            "com.admin.mapper.TunnelMapper.",
+            "com.admin.mapper.SpeedLimitMapper.",
+            "com.admin.mapper.UserTunnelMapper."
+    };
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        if (affectsNodeConfig(ms)) {
+            NodeConfigVersion.bump();
+        }
+        return result;
+    }
+
+    private boolean affectsNodeConfig(MappedStatement ms) {
+        String id = ms.getId();
+        for (String mapper : CONFIG_MAPPERS) {
+            if (id.startsWith(mapper)) {
+                return ms.getSqlCommandType() != SqlCommandType.UPDATE || id.endsWith(".updateById");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+package com.admin.common.interceptor;
+
+import com.admin.common.utils.ReadModelVersion;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 列表读模型变更拦截器
+ * 转发、用户、隧道表的写入执行后递增对应读模型的版本号。转发列表包含隧道名称等字段，隧道变更同时使转发列表失效。
+ * 流量上报产生的累加（setSql形如 in_flow = in_flow + n 的条件更新，以及批量累加语句）由读模型自行计入，不触发重新加载；
+ * 清零等其他流量写入仍会使读模型失效
+ */
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class ReadModelChangeInterceptor implements Interceptor {
+
+    private static final String FORWARD_MAPPER = "com.admin.mapper.ForwardMapper.";
+    private static final String USER_MAPPER = "com.admin.mapper.UserMapper.";
+    private static final String TUNNEL_MAPPER = "com.admin.mapper.TunnelMapper.";
+
+    // 只累加流量计数的自定义语句
+    private static final String[] FLOW_STATEMENTS = {".addFlows", ".addFlowBatch"};
+
+    private static final Pattern FLOW_INCREMENT = Pattern.compile(
+            "\\s*(in_flow|out_flow|raw_in_flow|raw_out_flow)\\s*=\\s*\\1\\s*\\+\\s*-?\\d+\\s*");
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        String id = ms.getId();
+        if (!id.startsWith(FORWARD_MAPPER) && !id.startsWith(USER_MAPPER) && !id.startsWith(TUNNEL_MAPPER)) {
+            return result;
+        }
+        if (isFlowIncrement(id, invocation.getArgs()[1])) {
+            return result;
+        }
+        if (id.startsWith(FORWARD_MAPPER)) {
+            ReadModelVersion.bump(ReadModelVersion.FORWARD);
+        } else if (id.startsWith(USER_MAPPER)) {
+            ReadModelVersion.bump(ReadModelVersion.USER);
+        } else {
+            ReadModelVersion.bump(ReadModelVersion.TUNNEL);
+            ReadModelVersion.bump(ReadModelVersion.FORWARD);
+        }
+        return result;
+    }
+
+    private boolean isFlowIncrement(String id, Object parameter) {
+        for (String statement : FLOW_STATEMENTS) {
+            if (id.endsWith(statement)) {
+                return true;
+            }
+        }
+        if (!(parameter instanceof Map) || !((Map<?, ?>) parameter).containsKey(Constants.WRAPPER)) {
+            return false;
+        }
+        Object wrapper = ((Map<?, ?>) parameter).get(Constants.WRAPPER);
+        if (!(wrapper instanceof Wrapper) || ((Map<?, ?>) parameter).get(Constants.ENTITY) != null) {
+            return false;
+        }
+        String sqlSet = ((Wrapper<?>) wrapper).getSqlSet();
+        if (sqlSet == null || sqlSet.isEmpty()) {
+            return false;
+        }
+        for (String part : sqlSet.split(",")) {
+            if (!FLOW_INCREMENT.matcher(part).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.*;
+import com.admin.entity.Node;
+import com.admin.entity.SpeedLimit;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.service.NodeService;
+import com.admin.service.SpeedLimitService;
+import com.admin.service.TunnelService;
+import com.admin.service.UserTunnelService;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 自适应限速任务
+ * 按入口节点的发送速率和上行带宽判断拥塞，由AdaptiveLimiter决定收紧或放宽哪些规则，
+ * 结果通过UpdateLimiters下发到节点。节点未设置上行带宽时不判断拥塞，已收紧的规则逐步恢复。
+ * 收紧状态只保存在面板内存中，面板启动后首次评估到在线节点时先按配置值下发该节点的自适应规则，
+ * 避免重启前收紧的限速一直停留在节点上
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class AdaptiveLimitAsync {
+
+    private static final int ADAPTIVE_ENABLED = 1;
+
+    // 判断拥塞使用的发送速率平均窗口（毫秒）
+    private static final long UTILIZATION_WINDOW_MS = 15 * 1000L;
+
+    // Mbps 换算为 字节/秒，与限速规则的换算一致
+    private static final long MBPS_TO_BYTES = 1024L * 1024 / 8;
+
+    private static final double BITS_TO_BYTES_RATIO = 8.0;
+
+    @Resource
+    SpeedLimitService speedLimitService;
+
+    @Resource
+    TunnelService tunnelService;
+
+    @Resource
+    NodeService nodeService;
+
+    @Resource
+    UserTunnelService userTunnelService;
+
+    // 启动后已按配置值恢复过自适应规则的节点
+    private final Set<Long> restoredNodes = new HashSet<>();
+
+    /**
+     * 每5秒评估一次
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void adjustAdaptiveLimits() {
+        List<SpeedLimit> rules = speedLimitService.list(new QueryWrapper<SpeedLimit>().eq("adaptive", ADAPTIVE_ENABLED));
+        if (rules.isEmpty()) {
+            return;
+        }
+        Set<Long> tunnelIds = rules.stream().map(SpeedLimit::getTunnelId).collect(Collectors.toSet());
+        Map<Long, Tunnel> tunnels = tunnelService.listByIds(tunnelIds).stream()
+                .collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+        Set<Long> nodeIds = tunnels.values().stream().map(Tunnel::getInNodeId).collect(Collectors.toSet());
+        Map<Long, Node> nodes = nodeService.listByIds(nodeIds).stream()
+                .collect(Collectors.toMap(Node::getId, Function.identity()));
+
+        // 规则的当前速率：引用该规则的用户隧道在每个方向上的速率之和，设置了总带宽的用户不经过规则限流器
+        Map<Long, long[]> ruleRates = new HashMap<>();
+        Set<Long> cappedUsers = UserBandwidth.cappedUsers();
+        List<Long> ruleIds = rules.stream().map(SpeedLimit::getId).collect(Collectors.toList());
+        for (UserTunnel userTunnel : userTunnelService.list(new QueryWrapper<UserTunnel>().in("speed_id", ruleIds))) {
+            if (cappedUsers.contains(userTunnel.getUserId().longValue())) {
+                continue;
+            }
+            long[] rate = FlowRateEstimator.rate(FlowRateEstimator.TYPE_USER_TUNNEL, userTunnel.getId());
+            long[] sum = ruleRates.computeIfAbsent(userTunnel.getSpeedId().longValue(), k -> new long[2]);
+            sum[0] += rate[0];
+            sum[1] += rate[1];
+        }
+
+        // 按入口节点分组，限流器的限速作用于每个方向，规则速率取上下行中较大的一个
+        Map<Long, Map<Long, long[]>> rulesByNode = new HashMap<>();
+        Map<Long, List<SpeedLimit>> configuredByNode = new HashMap<>();
+        for (SpeedLimit rule : rules) {
+            Tunnel tunnel = tunnels.get(rule.getTunnelId());
+            if (tunnel == null) {
+                continue;
+            }
+            long[] rate = ruleRates.getOrDefault(rule.getId(), new long[2]);
+            rulesByNode.computeIfAbsent(tunnel.getInNodeId(), k -> new HashMap<>())
+                    .put(rule.getId(), new long[]{rule.getSpeed() * MBPS_TO_BYTES, Math.max(rate[0], rate[1])});
+            configuredByNode.computeIfAbsent(tunnel.getInNodeId(), k -> new ArrayList<>()).add(rule);
+        }
+
+        Set<Long> online = WebSocketServer.onlineNodeIds();
+        for (Map.Entry<Long, Map<Long, long[]>> entry : rulesByNode.entrySet()) {
+            Long nodeId = entry.getKey();
+            if (online.contains(nodeId) && restoredNodes.add(nodeId)) {
+                restoreConfigured(nodeId, configuredByNode.get(nodeId));
+                NodeConfigVersion.bump();
+            }
+            double utilization = utilization(nodes.get(nodeId));
+            Map<Long, Long> changes = AdaptiveLimiter.adjust(nodeId, utilization, entry.getValue());
+            if (changes.isEmpty()) {
+                continue;
+            }
+            // 收紧状态计入节点期望配置，版本号递增后配置哈希重新计算
+            NodeConfigVersion.bump();
+            log.info("节点 {} 上行负载 {}%，调整自适应限速: {}", nodeId, Math.round(utilization * 100), changes);
+            if (!online.contains(nodeId)) {
+                continue;
+            }
+            Map<Long, SpeedLimit> ruleMap = configuredByNode.get(nodeId).stream()
+                    .collect(Collectors.toMap(SpeedLimit::getId, Function.identity()));
+            for (Map.Entry<Long, Long> change : changes.entrySet()) {
+                // 恢复为配置值的规则按配置格式下发，与节点配置快照保持一致
+                pushLimiter(nodeId, AdaptiveLimiter.current(change.getKey()) == null
+                        ? configuredLimiter(ruleMap.get(change.getKey()))
+                        : GostUtil.createLimiterData(change.getKey().toString(), change.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 节点最近一段时间的平均发送速率与上行带宽之比，未设置带宽或没有数据时为0
+     */
+    private double utilization(Node node) {
+        if (node == null || node.getBandwidth() == null || node.getBandwidth() <= 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        NodeTelemetryStore.NodeHistory history = NodeTelemetryStore.query(node.getId(),
+                NodeTelemetryStore.RESOLUTION_SECOND, now - UTILIZATION_WINDOW_MS, now);
+        if (history == null) {
+            return 0;
+        }
+        return (double) history.getAvgTransmitRate() / (node.getBandwidth() * MBPS_TO_BYTES);
+    }
+
+    /**
+     * 按配置值下发节点上未被收紧的自适应规则，覆盖面板重启前收紧后留在节点上的限速
+     */
+    private void restoreConfigured(Long nodeId, List<SpeedLimit> rules) {
+        for (SpeedLimit rule : rules) {
+            if (AdaptiveLimiter.current(rule.getId()) == null) {
+                pushLimiter(nodeId, configuredLimiter(rule));
+            }
+        }
+    }
+
+    private JSONObject configuredLimiter(SpeedLimit rule) {
+        return GostUtil.createLimiterData(rule.getId(), convertBitsToMBps(rule.getSpeed()));
+    }
+
+    private String convertBitsToMBps(Integer speedInBits) {
+        double mbs = speedInBits / BITS_TO_BYTES_RATIO;
+        BigDecimal bd = new BigDecimal(mbs).setScale(1, RoundingMode.HALF_UP);
+        return bd.doubleValue() + "";
+    }
+
+    private void pushLimiter(Long nodeId, JSONObject limiter) {
+        try {
+            GostDto result = GostUtil.UpdateLimiters(nodeId, limiter);
+            if (!Objects.equals(result.getMsg(), "OK")) {
+                log.info("节点 {} 限流器 {} 调整失败: {}", nodeId, limiter.getString("name"), result.getMsg());
+            }
+        } catch (Exception e) {
+            log.error("节点 {} 限流器 {} 调整异常: {}", nodeId, limiter.getString("name"), e.getMessage());
+        }
+    }
+}
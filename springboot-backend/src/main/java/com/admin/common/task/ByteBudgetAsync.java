@@ -0,0 +1,25 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.ByteBudget;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * 流量预算租约回收
+ * 长时间没有上报的服务（已删除、暂停或空闲）不再占用用户的剩余流量
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class ByteBudgetAsync {
+
+    @Scheduled(fixedDelay = 60000)
+    public void expireLeases() {
+        int expired = ByteBudget.expire();
+        if (expired > 0) {
+            log.debug("回收 {} 个过期的流量预算租约", expired);
+        }
+    }
+}
@@ -1,242 +1,246 @@
 package com.admin.common.task;
 
 import com.admin.common.dto.*;
-import com.admin.common.lang.R;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.UserBandwidth;
 import com.admin.entity.*;
 import com.admin.service.*;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
+/**
+ * 节点配置对账
+ * 以数据库计算出的期望配置为准，与节点上报的配置做集合比较，生成新增/更新/删除计划后按批下发
+ */
 @Slf4j
 @Service
 public class CheckGostConfigAsync {
 
-    @Resource
-    private NodeService nodeService;
-
-    @Resource
-    @Lazy
-    private ForwardService forwardService;
+    private static final String GOST_SUCCESS_MSG = "OK";
+    private static final String CHAIN_SUFFIX = "_chains";
 
     @Resource
-    @Lazy
-    private SpeedLimitService speedLimitService;
+    private NodeService nodeService;
 
     @Resource
     @Lazy
-    private TunnelService tunnelService;
+    private NodeConfigService nodeConfigService;
 
 
 
     /**
-     * 清理孤立的Gost配置项
+     * 对账节点配置：补齐缺失项、更新差异项、删除孤立项
      */
     @Async
     public void cleanNodeConfigs(String node_id, GostConfigDto gostConfig) {
-        System.out.println(JSONObject.toJSONString(gostConfig));
-        Node node = nodeService.getById(node_id);
-        if (node != null) {
-            cleanOrphanedServices(gostConfig, node);
-            cleanOrphanedChains(gostConfig, node);
-            cleanOrphanedLimiters(gostConfig, node);
-            syncLimiters(gostConfig, node);
-            syncServices(gostConfig, node);
+        Long nodeId = Long.valueOf(node_id);
+        // 节点上报的配置哈希与期望一致时无需对账
+        if (gostConfig.getConfigHash() != null
+                && Objects.equals(gostConfig.getConfigHash(), nodeConfigService.getDesiredHash(nodeId))) {
+            return;
         }
-    }
-
-    /**
-     * 清理孤立的服务
-     */
-    private void cleanOrphanedServices(GostConfigDto gostConfig, Node node) {
-        if (gostConfig.getServices() == null) {
+        Node node = nodeService.getById(nodeId);
+        if (node == null) {
             return;
         }
 
-        for (ConfigItem service : gostConfig.getServices()) {
-            safeExecute(() -> {
-                if (Objects.equals(service.getName(), "web_api")) {
-                    return; // 排除API服务
-                }
+        long start = System.currentTimeMillis();
+        ReconcilePlan plan = buildPlan(gostConfig, nodeConfigService.buildSnapshot(nodeId));
+        long planned = System.currentTimeMillis();
+        if (plan.isEmpty()) {
+            return;
+        }
 
-                String[] serviceIds = parseServiceName(service.getName());
-                if (serviceIds.length == 4) {
-                    String forwardId = serviceIds[0];
-                    String userId = serviceIds[1];
-                    String userTunnelId = serviceIds[2];
-                    String type = serviceIds[3];
+        log.info("节点 {} 配置对账计划: 服务 +{} ~{} -{} 暂停{} 恢复{}，链 +{} -{}，限流器 +{} ~{} -{}，计划耗时 {}ms", nodeId,
+                plan.addServices.size(), plan.updateServices.size(), plan.deleteServices.size(),
+                plan.pauseServices.size(), plan.resumeServices.size(),
+                plan.addChains.size(), plan.deleteChains.size(),
+                plan.addLimiters.size(), plan.updateLimiters.size(), plan.deleteLimiters.size(),
+                planned - start);
+        executePlan(nodeId, plan);
+        log.info("节点 {} 配置对账完成，下发耗时 {}ms", nodeId, System.currentTimeMillis() - planned);
+    }
 
-                    if (Objects.equals(type, "tcp")) { // 只处理TCP，避免重复处理
-                        Forward forward = forwardService.getById(forwardId);
-                        if (forward == null) {
-                            log.info("删除孤立的服务: {} (节点: {})", service.getName(), node.getId());
-                            GostDto gostDto = GostUtil.DeleteService(node.getId(), forwardId + "_" + userId + "_" + userTunnelId);
-                            System.out.println(gostDto);
-                        }
-                    }
+    /**
+     * 比较期望配置和节点上报配置，生成对账计划
+     */
+    private ReconcilePlan buildPlan(GostConfigDto gostConfig, NodeConfigSnapshotDto snapshot) {
+        ReconcilePlan plan = new ReconcilePlan();
 
+        // 限流器
+        Map<String, ConfigItem> reportedLimiters = indexItems(gostConfig.getLimiters());
+        Set<String> desiredLimiters = new HashSet<>();
+        for (Object item : snapshot.getLimiters()) {
+            JSONObject limiter = (JSONObject) item;
+            String name = limiter.getString("name");
+            desiredLimiters.add(name);
+            ConfigItem reported = reportedLimiters.get(name);
+            if (reported == null) {
+                plan.addLimiters.add(limiter);
+            } else if (!Objects.equals(reported.getLimits(), limiter.getJSONArray("limits").toJavaList(String.class))) {
+                plan.updateLimiters.add(limiter);
+            }
+        }
+        for (String name : reportedLimiters.keySet()) {
+            // 限速规则和用户总带宽的限流器由面板管理，节点自有的限流器不参与对账
+            if ((StringUtils.isNumeric(name) || UserBandwidth.isLimiterName(name)) && !desiredLimiters.contains(name)) {
+                plan.deleteLimiters.add(name);
+            }
+        }
 
-                    if (Objects.equals(type, "tls")) {
-                        Forward forward = forwardService.getById(forwardId);
-                        if (forward == null) {
-                            log.info("删除孤立的服务: {} (节点: {})", service.getName(), node.getId());
-                            GostUtil.DeleteRemoteService(node.getId(), forwardId+"_"+userId+"_"+userTunnelId);
-                        }
-                    }
+        // 链
+        Map<String, ConfigItem> reportedChains = indexItems(gostConfig.getChains());
+        Set<String> desiredChains = new HashSet<>();
+        for (Object item : snapshot.getChains()) {
+            JSONObject chain = (JSONObject) item;
+            String name = chain.getString("name");
+            desiredChains.add(name);
+            if (!reportedChains.containsKey(name)) {
+                plan.addChains.add(chain);
+            }
+        }
+        for (String name : reportedChains.keySet()) {
+            if (isManagedName(name) && name.endsWith(CHAIN_SUFFIX) && !desiredChains.contains(name)) {
+                plan.deleteChains.add(name.substring(0, name.length() - CHAIN_SUFFIX.length()));
+            }
+        }
 
+        // 服务
+        Map<String, ConfigItem> reportedServices = indexItems(gostConfig.getServices());
+        Set<String> desiredServices = new HashSet<>();
+        Set<String> pausedServices = new HashSet<>(snapshot.getPaused());
+        for (Object item : snapshot.getServices()) {
+            JSONObject service = (JSONObject) item;
+            String name = service.getString("name");
+            desiredServices.add(name);
+            ConfigItem reported = reportedServices.get(name);
+            if (reported == null) {
+                plan.addServices.add(service);
+                // 重新创建的服务默认运行，暂停中的转发需要在创建后再次暂停
+                if (pausedServices.contains(name)) {
+                    plan.pauseServices.add(name);
+                }
+            } else {
+                // 暂停状态以面板为准：节点因流量预算用尽自行暂停、而面板未暂停的服务在这里恢复
+                if (reported.isPaused() && !pausedServices.contains(name)) {
+                    plan.resumeServices.add(name);
+                } else if (!reported.isPaused() && pausedServices.contains(name)) {
+                    plan.pauseServices.add(name);
                 }
-            }, "清理服务 " + service.getName());
+                if (!pausedServices.contains(name) // 更新服务会重新启动，暂停中的服务保持原样
+                        && (!Objects.equals(reported.getAddr(), service.getString("addr"))
+                        || !Objects.equals(StringUtils.defaultString(reported.getLimiter()), StringUtils.defaultString(service.getString("limiter"))))) {
+                    plan.updateServices.add(service);
+                }
+            }
         }
-
+        for (String name : reportedServices.keySet()) {
+            if (isManagedName(name) && !desiredServices.contains(name)) {
+                plan.deleteServices.add(name);
+            }
+        }
+        return plan;
     }
 
     /**
-     * 清理孤立的链
+     * 按依赖顺序执行对账计划：限流器和链先于引用它们的服务创建，删除顺序相反
      */
-    private void cleanOrphanedChains(GostConfigDto gostConfig, Node node) {
-        if (gostConfig.getChains() == null) {
-            return;
+    private void executePlan(Long nodeId, ReconcilePlan plan) {
+        for (JSONObject limiter : plan.addLimiters) {
+            safeExecute(() -> checkResult(GostUtil.AddLimiters(nodeId, limiter)), "新增限流器 " + limiter.getString("name"));
+        }
+        for (JSONObject limiter : plan.updateLimiters) {
+            safeExecute(() -> checkResult(GostUtil.UpdateLimiters(nodeId, limiter)), "更新限流器 " + limiter.getString("name"));
+        }
+        for (JSONObject chain : plan.addChains) {
+            safeExecute(() -> checkResult(GostUtil.AddChains(nodeId, chain)), "新增链 " + chain.getString("name"));
         }
-        
 
-        for (ConfigItem chain : gostConfig.getChains()) {
-            safeExecute(() -> {
-                String[] serviceIds = parseServiceName(chain.getName());
-                if (serviceIds.length == 4) {
-                    String forwardId = serviceIds[0];
-                    String userId = serviceIds[1];
-                    String userTunnelId = serviceIds[2];
-                    String type = serviceIds[3];
-                    
-                    if (Objects.equals(type, "chains")) {
-                        Forward forward = forwardService.getById(forwardId);
-                        if (forward == null) {
-                            log.info("删除孤立的链: {} (节点: {})", chain.getName(), node.getId());
-                            GostUtil.DeleteChains(node.getId(), forwardId+"_"+userId+"_"+userTunnelId);
-                        }
-                    }
-                }
-            }, "清理链 " + chain.getName());
+        if (!plan.addServices.isEmpty()) {
+            safeExecute(() -> sendServicesBatch(nodeId, plan.addServices, true), "新增服务");
+        }
+        if (!plan.pauseServices.isEmpty()) {
+            safeExecute(() -> checkResult(GostUtil.PauseServices(nodeId, plan.pauseServices)), "暂停服务");
+        }
+        if (!plan.resumeServices.isEmpty()) {
+            safeExecute(() -> checkResult(GostUtil.ResumeServices(nodeId, plan.resumeServices)), "恢复服务");
+        }
+        if (!plan.updateServices.isEmpty()) {
+            safeExecute(() -> sendServicesBatch(nodeId, plan.updateServices, false), "更新服务");
+        }
+        if (!plan.deleteServices.isEmpty()) {
+            safeExecute(() -> checkResult(GostUtil.DeleteServices(nodeId, plan.deleteServices)), "删除服务");
+        }
+
+        if (!plan.deleteChains.isEmpty()) {
+            safeExecute(() -> deleteChains(nodeId, plan.deleteChains), "删除链");
+        }
+        for (String limiter : plan.deleteLimiters) {
+            safeExecute(() -> checkResult(GostUtil.DeleteLimiters(nodeId, limiter)), "删除限流器 " + limiter);
         }
     }
 
     /**
-     * 清理孤立的限流器
+     * 批量下发服务，节点端批量操作是原子的，整批失败时逐个重试以隔离出错的服务
      */
-    private void cleanOrphanedLimiters(GostConfigDto gostConfig, Node node) {
-        if (gostConfig.getLimiters() == null) {
+    private void sendServicesBatch(Long nodeId, JSONArray services, boolean add) {
+        GostDto result = add ? GostUtil.AddServices(nodeId, services) : GostUtil.UpdateServices(nodeId, services);
+        if (Objects.equals(result.getMsg(), GOST_SUCCESS_MSG)) {
             return;
         }
-        
-
-        for (ConfigItem limiter : gostConfig.getLimiters()) {
-            safeExecute(() -> {
-                SpeedLimit speedLimit = speedLimitService.getById(limiter.getName());
-                if (speedLimit == null) {
-                    log.info("删除孤立的限流器: {} (节点: {})", limiter.getName(), node.getId());
-                    GostUtil.DeleteLimiters(node.getId(), Long.parseLong(limiter.getName()));
-                }
-            }, "清理限流器 " + limiter.getName());
+        log.info("节点 {} 批量{}服务失败，逐个重试: {}", nodeId, add ? "新增" : "更新", result.getMsg());
+        for (Object service : services) {
+            JSONArray single = new JSONArray();
+            single.add(service);
+            safeExecute(() -> checkResult(add ? GostUtil.AddServices(nodeId, single) : GostUtil.UpdateServices(nodeId, single)),
+                    (add ? "新增服务 " : "更新服务 ") + ((JSONObject) service).getString("name"));
         }
     }
 
     /**
-     * 同步限流器
+     * 批量删除链，旧版本节点不支持批量删除时逐个删除
      */
-    private void syncLimiters(GostConfigDto gostConfig, Node node) {
-        List<Tunnel> tunnelList = tunnelService.list(new QueryWrapper<Tunnel>().eq("in_node_id", node.getId()));
-        if (tunnelList == null || tunnelList.isEmpty()) return;
-        safeExecute(() -> {
-            StringBuilder tunnelIds = new StringBuilder();
-            for (Tunnel tunnel : tunnelList) {
-                tunnelIds.append(tunnel.getId()).append(",");
-            }
-            String ids = tunnelIds.deleteCharAt(tunnelIds.length() - 1).toString();
-            List<SpeedLimit> speedLimits = speedLimitService.list(new QueryWrapper<SpeedLimit>().in("tunnel_id", ids));
-            if (speedLimits != null && !speedLimits.isEmpty()) {
-                List<ConfigItem> limiters = gostConfig.getLimiters();
-                List<Long> limiters_ids = new ArrayList<>();
-                List<Long>  speedLimits_ids = new ArrayList<>();
-                if (limiters != null){
-                    for (ConfigItem limiter : limiters) {
-                        limiters_ids.add(Long.valueOf(limiter.getName()));
-                    }
-                }
-                for (SpeedLimit speedLimit : speedLimits) {
-                    speedLimits_ids.add(speedLimit.getId());
-                }
-                List<Long> diff = new ArrayList<>(speedLimits_ids);
-                diff.removeAll(limiters_ids);
-                System.out.println(diff);
-                if (!diff.isEmpty()) {
+    private void deleteChains(Long nodeId, List<String> names) {
+        GostDto result = GostUtil.DeleteChainsBatch(nodeId, names);
+        if (Objects.equals(result.getMsg(), GOST_SUCCESS_MSG)) {
+            return;
+        }
+        for (String name : names) {
+            safeExecute(() -> checkResult(GostUtil.DeleteChains(nodeId, name)), "删除链 " + name);
+        }
+    }
+
+    private void checkResult(GostDto result) {
+        if (!Objects.equals(result.getMsg(), GOST_SUCCESS_MSG)) {
+            throw new IllegalStateException(result.getMsg());
+        }
+    }
 
-                    for (Long speed_id : diff) {
-                        SpeedLimit speedLimit = speedLimitService.getById(speed_id);
-                        if (speedLimit != null) {
-                            SpeedLimitUpdateDto speedLimitUpdateDto = new SpeedLimitUpdateDto();
-                            speedLimitUpdateDto.setId(speed_id);
-                            speedLimitUpdateDto.setName(speedLimit.getName());
-                            speedLimitUpdateDto.setSpeed(speedLimit.getSpeed());
-                            speedLimitUpdateDto.setTunnelId(speedLimit.getTunnelId());
-                            speedLimitUpdateDto.setTunnelName(speedLimit.getTunnelName());
-                            speedLimitService.updateSpeedLimit(speedLimitUpdateDto);
-                        }
-                    }
+    private Map<String, ConfigItem> indexItems(List<ConfigItem> items) {
+        Map<String, ConfigItem> index = new HashMap<>();
+        if (items != null) {
+            for (ConfigItem item : items) {
+                if (item != null && item.getName() != null) {
+                    index.put(item.getName(), item);
                 }
             }
-        }, "同步限流器 ");
+        }
+        return index;
     }
 
     /**
-     * 同步服务
+     * 判断是否为面板管理的服务或链，名称格式为 转发ID_用户ID_用户隧道ID_类型，web_api等节点自有服务不参与对账
      */
-    private void syncServices(GostConfigDto gostConfig, Node node) {
-        List<Tunnel> tunnelList = tunnelService.list(new QueryWrapper<Tunnel>().eq("in_node_id", node.getId()));
-        if (tunnelList == null || tunnelList.isEmpty()) return;
-        safeExecute(() -> {
-            StringBuilder tunnelIds = new StringBuilder();
-            for (Tunnel tunnel : tunnelList) {
-                tunnelIds.append(tunnel.getId()).append(",");
-            }
-            String ids = tunnelIds.deleteCharAt(tunnelIds.length() - 1).toString();
-            List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().in("tunnel_id", ids));
-            if (forwardList != null && !forwardList.isEmpty()) {
-                List<ConfigItem> services = gostConfig.getServices();
-                List<Long> services_ids = new ArrayList<>();
-                List<Long>  forward_ids = new ArrayList<>();
-                if (services != null){
-                    for (ConfigItem limiter : services) {
-                        String[] strings = parseServiceName(limiter.getName());
-                        services_ids.add(Long.valueOf(strings[0]));
-                    }
-                }
-                for (Forward forward : forwardList) {
-                    forward_ids.add(forward.getId());
-                }
-                List<Long> diff = new ArrayList<>(forward_ids);
-                diff.removeAll(services_ids);
-                System.out.println(diff);
-                if (!diff.isEmpty()) {
-                    for (Long forward_id : diff) {
-                        Forward forward = forwardService.getById(forward_id);
-                        if (forward != null) {
-                            forwardService.updateForwardA(forward);
-                        }
-
-                    }
-                }
-
-            }
-        }, "同步限流器 ");
+    private boolean isManagedName(String name) {
+        return StringUtils.countMatches(name, '_') == 3;
     }
 
     /**
@@ -246,15 +250,30 @@ public class CheckGostConfigAsync {
         try {
             operation.run();
         } catch (Exception e) {
-            log.info("执行操作失败: {}", operationDesc, e);
+            log.info("执行操作失败: {} {}", operationDesc, e.getMessage());
         }
     }
 
-
     /**
-     * 解析服务名称
+     * 节点对账计划
      */
-    private String[] parseServiceName(String serviceName) {
-        return serviceName.split("_");
+    private static class ReconcilePlan {
+        private final List<JSONObject> addLimiters = new ArrayList<>();
+        private final List<JSONObject> updateLimiters = new ArrayList<>();
+        private final List<String> deleteLimiters = new ArrayList<>();
+        private final List<JSONObject> addChains = new ArrayList<>();
+        private final List<String> deleteChains = new ArrayList<>();
+        private final JSONArray addServices = new JSONArray();
+        private final JSONArray updateServices = new JSONArray();
+        private final List<String> pauseServices = new ArrayList<>();
+        private final List<String> resumeServices = new ArrayList<>();
+        private final List<String> deleteServices = new ArrayList<>();
+
+        private boolean isEmpty() {
+            return addLimiters.isEmpty() && updateLimiters.isEmpty() && deleteLimiters.isEmpty()
+                    && addChains.isEmpty() && deleteChains.isEmpty()
+                    && addServices.isEmpty() && updateServices.isEmpty() && deleteServices.isEmpty()
+                    && pauseServices.isEmpty() && resumeServices.isEmpty();
+        }
     }
 }
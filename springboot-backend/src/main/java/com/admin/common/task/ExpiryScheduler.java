@@ -0,0 +1,179 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.TaskMetrics;
+import com.admin.entity.User;
+import com.admin.entity.UserTunnel;
+import com.admin.service.UserService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户和用户隧道到期调度
+ * 启动时按exp_time加载所有启用中的到期时间，创建/更新时刷新，到期时刻立即暂停对应转发并停用，
+ * 不再依赖每天0点的集中扫描；0点任务保留作为兜底
+ */
+@Slf4j
+@Configuration
+public class ExpiryScheduler {
+
+    private static final int TYPE_USER = 1;
+    private static final int TYPE_USER_TUNNEL = 2;
+
+    private final DelayQueue<ExpiryTask> queue = new DelayQueue<>();
+
+    // 每个对象当前有效的到期时间，key为 类型_ID；到期时间被修改后旧任务出队时忽略
+    private final ConcurrentHashMap<String, Long> scheduled = new ConcurrentHashMap<>();
+
+    private volatile Thread worker;
+
+    @Resource
+    UserService userService;
+
+    @Resource
+    UserTunnelService userTunnelService;
+
+    @Resource
+    @Lazy
+    ResetFlowAsync resetFlowAsync;
+
+    /**
+     * 应用启动完成后加载到期时间并启动调度线程，已过期的记录会立即处理
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        List<User> users = userService.list(new QueryWrapper<User>().select("id", "exp_time")
+                .ne("role_id", 0).eq("status", 1).isNotNull("exp_time"));
+        for (User user : users) {
+            scheduleUser(user.getId(), user.getExpTime());
+        }
+        List<UserTunnel> userTunnels = userTunnelService.list(new QueryWrapper<UserTunnel>().select("id", "exp_time")
+                .eq("status", 1).isNotNull("exp_time"));
+        for (UserTunnel userTunnel : userTunnels) {
+            scheduleUserTunnel(userTunnel.getId(), userTunnel.getExpTime());
+        }
+        log.info("到期调度已加载 {} 个用户、{} 个用户隧道", users.size(), userTunnels.size());
+
+        worker = new Thread(this::run, "expiry-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * 登记用户到期时间，到期时间为空时取消调度
+     */
+    public void scheduleUser(Long userId, Long expTime) {
+        schedule(TYPE_USER, userId, expTime);
+    }
+
+    /**
+     * 登记用户隧道到期时间，到期时间为空时取消调度
+     */
+    public void scheduleUserTunnel(Integer userTunnelId, Long expTime) {
+        schedule(TYPE_USER_TUNNEL, userTunnelId.longValue(), expTime);
+    }
+
+    private void schedule(int type, Long id, Long expTime) {
+        if (id == null) {
+            return;
+        }
+        String key = type + "_" + id;
+        if (expTime == null) {
+            scheduled.remove(key);
+            return;
+        }
+        Long previous = scheduled.put(key, expTime);
+        if (!expTime.equals(previous)) {
+            queue.put(new ExpiryTask(type, id, expTime));
+        }
+    }
+
+    /**
+     * 调度线程：取出到期任务，连同同一时刻已到期的任务一起按批处理
+     */
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<ExpiryTask> due = new ArrayList<>();
+                due.add(queue.take());
+                queue.drainTo(due);
+
+                List<Integer> userIds = new ArrayList<>();
+                List<Integer> userTunnelIds = new ArrayList<>();
+                for (ExpiryTask task : due) {
+                    // 只处理仍然有效的任务，被改期或取消的旧任务直接丢弃
+                    if (!scheduled.remove(task.type + "_" + task.id, task.expTime)) {
+                        continue;
+                    }
+                    if (task.type == TYPE_USER) {
+                        userIds.add((int) task.id);
+                    } else {
+                        userTunnelIds.add((int) task.id);
+                    }
+                }
+                if (userIds.isEmpty() && userTunnelIds.isEmpty()) {
+                    continue;
+                }
+
+                TaskMetrics.TaskRun run = TaskMetrics.start("expiry_scheduler");
+                try {
+                    if (!userIds.isEmpty()) {
+                        resetFlowAsync.expireUsers(userIds, run);
+                    }
+                    if (!userTunnelIds.isEmpty()) {
+                        resetFlowAsync.expireUserTunnels(userTunnelIds, run);
+                    }
+                } finally {
+                    run.finish();
+                }
+                log.info("到期调度处理完成，耗时 {}ms: {}", run.getDurationMs(), run.getCounters());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.info("到期调度处理失败", e);
+            }
+        }
+    }
+
+    private static class ExpiryTask implements Delayed {
+        private final int type;
+        private final long id;
+        private final long expTime;
+
+        private ExpiryTask(int type, long id, long expTime) {
+            this.type = type;
+            this.id = id;
+            this.expTime = expTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expTime, ((ExpiryTask) other).expTime);
+        }
+    }
+}
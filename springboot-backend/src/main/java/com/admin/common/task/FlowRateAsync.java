@@ -0,0 +1,35 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.FlowRateEstimator;
+import com.admin.common.utils.WebSocketServer;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * 实时速率推送
+ * 每5秒向在线的管理员页面广播有流量的转发、用户隧道和隧道的当前速率
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class FlowRateAsync {
+
+    @Scheduled(fixedRate = 5000)
+    public void broadcastFlowRates() {
+        if (!WebSocketServer.hasAdminSessions()) {
+            return;
+        }
+        JSONObject data = new JSONObject();
+        data.put("forward", FlowRateEstimator.active(FlowRateEstimator.TYPE_FORWARD));
+        data.put("userTunnel", FlowRateEstimator.active(FlowRateEstimator.TYPE_USER_TUNNEL));
+        data.put("tunnel", FlowRateEstimator.active(FlowRateEstimator.TYPE_TUNNEL));
+
+        JSONObject res = new JSONObject();
+        res.put("type", "flow_rate");
+        res.put("data", data);
+        WebSocketServer.broadcastToAdmins(res.toJSONString());
+    }
+}
@@ -0,0 +1,54 @@
+package com.admin.common.task;
+
+import com.admin.service.FlowRollupService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+/**
+ * 流量汇总写入和清理任务
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class FlowRollupAsync {
+
+    @Resource
+    FlowRollupService flowRollupService;
+
+    /**
+     * 每10秒把内存中合并的流量写入汇总表
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void flushRollups() {
+        try {
+            flowRollupService.flush();
+        } catch (Exception e) {
+            log.info("写入流量汇总失败", e);
+        }
+    }
+
+    /**
+     * 每小时按保留时间清理过期的汇总数据
+     */
+    @Scheduled(cron = "0 30 * * * ?")
+    public void cleanupRollups() {
+        try {
+            flowRollupService.cleanup();
+        } catch (Exception e) {
+            log.info("清理流量汇总失败", e);
+        }
+    }
+
+    /**
+     * 停机前写入尚未落库的流量
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flowRollupService.flush();
+    }
+}
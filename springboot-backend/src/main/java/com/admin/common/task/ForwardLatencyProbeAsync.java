@@ -0,0 +1,257 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.Forward;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.service.ForwardService;
+import com.admin.service.TunnelService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 多目标转发测速任务
+ * 周期性地从实际发起转发的节点对每个目标执行TcpPing，按延迟和健康状态计算目标权重，
+ * 权重排名发生明显变化时通过UpdateService下发带权重的转发配置。
+ * 权重按比例分配流量只在rand策略下生效，其他策略只受目标排序和不可达目标的备用标记影响
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class ForwardLatencyProbeAsync {
+
+    private static final int TUNNEL_TYPE_PORT_FORWARD = 1;
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+    private static final int FORWARD_STATUS_ACTIVE = 1;
+
+    // 单个目标的探测次数和超时时间（毫秒）
+    private static final int PING_COUNT = 3;
+    private static final int PING_TIMEOUT = 1000;
+    // 权重分档，最快的目标为MAX_WEIGHT，不可达的目标为0
+    private static final int MAX_WEIGHT = 10;
+    // 延迟平滑系数，避免网络抖动导致配置频繁下发
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int PROBE_THREADS = 8;
+
+    private final ExecutorService probeExecutor = Executors.newFixedThreadPool(PROBE_THREADS);
+
+    // 每个转发服务的测速状态，key为服务名称
+    private final Map<String, ProbeState> probeStates = new ConcurrentHashMap<>();
+
+    @Resource
+    ForwardService forwardService;
+
+    @Resource
+    TunnelService tunnelService;
+
+    @Resource
+    UserTunnelService userTunnelService;
+
+    /**
+     * 每分钟探测一次多目标转发的各个目标
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void probeForwardTargets() {
+        List<Forward> forwards = forwardService.list(new QueryWrapper<Forward>()
+                .eq("status", FORWARD_STATUS_ACTIVE)
+                .like("remote_addr", ","));
+        if (forwards.isEmpty()) {
+            clearStaleStates(Collections.emptySet());
+            return;
+        }
+
+        Set<Integer> tunnelIds = forwards.stream().map(Forward::getTunnelId).collect(Collectors.toSet());
+        Map<Long, Tunnel> tunnelMap = tunnelService.listByIds(tunnelIds).stream()
+                .collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+        Map<String, UserTunnel> userTunnelMap = userTunnelService.list(new QueryWrapper<UserTunnel>().in("tunnel_id", tunnelIds))
+                .stream()
+                .collect(Collectors.toMap(ut -> ut.getUserId() + "_" + ut.getTunnelId(), Function.identity(), (a, b) -> a));
+
+        Set<String> activeNames = new HashSet<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Forward forward : forwards) {
+            Tunnel tunnel = tunnelMap.get(forward.getTunnelId().longValue());
+            if (tunnel == null) {
+                continue;
+            }
+            UserTunnel userTunnel = userTunnelMap.get(forward.getUserId() + "_" + forward.getTunnelId());
+            String serviceName = buildServiceName(forward, userTunnel);
+            activeNames.add(serviceName);
+
+            Long probeNodeId = tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD ? tunnel.getOutNodeId() : tunnel.getInNodeId();
+            if (!WebSocketServer.isNodeOnline(probeNodeId)) {
+                continue;
+            }
+            futures.add(probeExecutor.submit(() -> probeForward(forward, tunnel, userTunnel, serviceName, probeNodeId)));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                log.error("转发目标测速失败: {}", e.getMessage());
+            }
+        }
+        clearStaleStates(activeNames);
+    }
+
+    /**
+     * 探测单个转发的全部目标，并在权重变化时下发配置
+     */
+    private void probeForward(Forward forward, Tunnel tunnel, UserTunnel userTunnel, String serviceName, Long probeNodeId) {
+        String remoteAddr = forward.getRemoteAddr();
+        String[] targets = remoteAddr.split(",");
+
+        ProbeState state = probeStates.compute(serviceName, (k, v) ->
+                v == null || !Objects.equals(v.remoteAddr, remoteAddr) || !Objects.equals(v.updatedTime, forward.getUpdatedTime())
+                        ? new ProbeState(remoteAddr, forward.getUpdatedTime(), targets.length) : v);
+
+        for (int i = 0; i < targets.length; i++) {
+            double latency = tcpPing(probeNodeId, targets[i].trim());
+            if (latency < 0) {
+                state.latency[i] = -1;
+            } else if (state.latency[i] < 0) {
+                state.latency[i] = latency;
+            } else {
+                state.latency[i] = EWMA_ALPHA * latency + (1 - EWMA_ALPHA) * state.latency[i];
+            }
+        }
+
+        int[] weights = calculateWeights(state.latency);
+        if (!isMaterialChange(state.pushedWeights, weights)) {
+            return;
+        }
+
+        GostUtil.setTargetWeights(serviceName, remoteAddr, weights);
+        GostDto result;
+        if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+            result = GostUtil.UpdateRemoteService(probeNodeId, serviceName, forward.getOutPort(), remoteAddr,
+                    tunnel.getProtocol(), forward.getStrategy(), forward.getInterfaceName());
+        } else {
+            Integer limiter = userTunnel != null ? userTunnel.getSpeedId() : null;
+            result = GostUtil.UpdateService(probeNodeId, serviceName, forward.getInPort(), limiter, remoteAddr,
+                    TUNNEL_TYPE_PORT_FORWARD, tunnel, forward.getStrategy(), forward.getInterfaceName());
+        }
+
+        if (result != null && Objects.equals(result.getMsg(), "OK")) {
+            state.pushedWeights = weights;
+            log.info("转发 {} 目标权重已更新: {}", serviceName, Arrays.toString(weights));
+        } else {
+            log.info("转发 {} 目标权重下发失败: {}", serviceName, result != null ? result.getMsg() : "节点无响应");
+        }
+    }
+
+    /**
+     * 对目标执行TcpPing
+     * @return 平均延迟（毫秒），不可达时返回-1
+     */
+    private double tcpPing(Long nodeId, String target) {
+        int idx = target.lastIndexOf(':');
+        if (idx <= 0) {
+            return -1;
+        }
+        String ip = target.substring(0, idx);
+        if (ip.startsWith("[") && ip.endsWith("]")) {
+            ip = ip.substring(1, ip.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(target.substring(idx + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return GostUtil.TcpPing(nodeId, ip, port, PING_COUNT, PING_TIMEOUT);
+    }
+
+    /**
+     * 按延迟计算目标权重：最快目标为MAX_WEIGHT，其余按延迟比例递减，不可达目标为0
+     */
+    private int[] calculateWeights(double[] latency) {
+        double fastest = Double.MAX_VALUE;
+        for (double l : latency) {
+            if (l >= 0 && l < fastest) {
+                fastest = l;
+            }
+        }
+        int[] weights = new int[latency.length];
+        for (int i = 0; i < latency.length; i++) {
+            if (latency[i] < 0) {
+                weights[i] = 0;
+            } else {
+                double ratio = Math.max(fastest, 1.0) / Math.max(latency[i], 1.0);
+                weights[i] = Math.max(1, (int) Math.round(ratio * MAX_WEIGHT));
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * 判断权重是否发生明显变化：目标健康状态变化、最优目标变化或任一权重变化超过一档
+     */
+    private boolean isMaterialChange(int[] pushed, int[] weights) {
+        if (pushed == null || pushed.length != weights.length) {
+            return true;
+        }
+        int pushedBest = 0;
+        int best = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if ((pushed[i] == 0) != (weights[i] == 0)) {
+                return true;
+            }
+            if (Math.abs(pushed[i] - weights[i]) > 1) {
+                return true;
+            }
+            if (pushed[i] > pushed[pushedBest]) {
+                pushedBest = i;
+            }
+            if (weights[i] > weights[best]) {
+                best = i;
+            }
+        }
+        return weights[best] > weights[pushedBest];
+    }
+
+    /**
+     * 清理已删除、已暂停或不再是多目标转发的测速状态
+     */
+    private void clearStaleStates(Set<String> activeNames) {
+        probeStates.keySet().removeIf(name -> {
+            if (activeNames.contains(name)) {
+                return false;
+            }
+            GostUtil.removeTargetWeights(name);
+            return true;
+        });
+    }
+
+    private String buildServiceName(Forward forward, UserTunnel userTunnel) {
+        int userTunnelId = (userTunnel != null) ? userTunnel.getId() : 0;
+        return forward.getId() + "_" + forward.getUserId() + "_" + userTunnelId;
+    }
+
+    private static class ProbeState {
+        private final String remoteAddr;
+        private final Long updatedTime;
+        private final double[] latency;
+        private volatile int[] pushedWeights;
+
+        private ProbeState(String remoteAddr, Long updatedTime, int targetCount) {
+            this.remoteAddr = remoteAddr;
+            this.updatedTime = updatedTime;
+            this.latency = new double[targetCount];
+            Arrays.fill(this.latency, -1);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.Node;
+import com.admin.service.NodeService;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点在线状态批量写入
+ * WebSocket连接建立/关闭时只登记节点的最新状态，由定时任务合并后按批写库并广播，
+ * 大量节点同时重连时每个窗口只产生少量UPDATE和一条状态广播
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class NodeStatusFlushAsync {
+
+    // 待写入的节点状态，同一窗口内多次变化只保留最后一次
+    private final ConcurrentHashMap<Long, PendingStatus> pendingStatus = new ConcurrentHashMap<>();
+
+    // 最近一次广播给管理员的节点状态，窗口内上线又下线的抖动不重复广播
+    private final ConcurrentHashMap<Long, Integer> broadcastStatus = new ConcurrentHashMap<>();
+
+    @Resource
+    NodeService nodeService;
+
+    /**
+     * 登记节点状态变化
+     * @param nodeId 节点ID
+     * @param status 1在线 0离线
+     * @param version 节点版本，离线时为null
+     */
+    public void submit(Long nodeId, int status, String version) {
+        pendingStatus.merge(nodeId, new PendingStatus(status, version),
+                (old, cur) -> cur.version == null && status == 1 ? new PendingStatus(status, old.version) : cur);
+    }
+
+    /**
+     * 每秒合并写入一次节点状态
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flushNodeStatus() {
+        if (pendingStatus.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        Map<Long, PendingStatus> batch = new HashMap<>();
+        for (Long nodeId : new ArrayList<>(pendingStatus.keySet())) {
+            PendingStatus status = pendingStatus.remove(nodeId);
+            if (status != null) {
+                batch.put(nodeId, status);
+            }
+        }
+
+        // 按状态和版本分组，同一批重连的节点版本通常相同，每组一条UPDATE
+        Map<String, List<Long>> groups = new HashMap<>();
+        Map<String, PendingStatus> groupStatus = new HashMap<>();
+        for (Map.Entry<Long, PendingStatus> entry : batch.entrySet()) {
+            String key = entry.getValue().status + "|" + entry.getValue().version;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(entry.getKey());
+            groupStatus.putIfAbsent(key, entry.getValue());
+        }
+        for (Map.Entry<String, List<Long>> group : groups.entrySet()) {
+            PendingStatus status = groupStatus.get(group.getKey());
+            try {
+                UpdateWrapper<Node> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.in("id", group.getValue()).set("status", status.status);
+                if (status.version != null) {
+                    updateWrapper.set("version", status.version);
+                }
+                nodeService.update(null, updateWrapper);
+            } catch (Exception e) {
+                log.info("批量更新节点状态失败，下个窗口重试: {}", e.getMessage());
+                // 写入失败的状态放回队列，期间有更新的状态则以新状态为准
+                for (Long nodeId : group.getValue()) {
+                    pendingStatus.putIfAbsent(nodeId, status);
+                }
+            }
+        }
+
+        // 只广播与上次广播不同的状态，合并为一条消息
+        JSONArray changes = new JSONArray();
+        for (Map.Entry<Long, PendingStatus> entry : batch.entrySet()) {
+            Integer status = entry.getValue().status;
+            if (!Objects.equals(broadcastStatus.put(entry.getKey(), status), status)) {
+                JSONObject change = new JSONObject();
+                change.put("id", entry.getKey());
+                change.put("status", status);
+                changes.add(change);
+            }
+        }
+        if (!changes.isEmpty()) {
+            JSONObject res = new JSONObject();
+            res.put("type", "status_batch");
+            res.put("data", changes);
+            WebSocketServer.broadcastMessage(res.toJSONString());
+        }
+
+        if (batch.size() > 1) {
+            log.info("批量写入 {} 个节点状态，{} 条UPDATE，广播 {} 个变化，耗时 {}ms",
+                    batch.size(), groups.size(), changes.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingStatus {
+        private final int status;
+        private final String version;
+    }
+}
@@ -0,0 +1,70 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.ReportPolicy;
+import com.admin.common.utils.WebSocketServer;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 节点默认上报策略下发
+ * 上报响应头只能调整已上报服务的节奏，面板上报负载变化时通过WebSocket向所有在线节点下发默认间隔，
+ * 节点上尚未收到单独建议的服务按该间隔上报
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class ReportPolicyAsync {
+
+    private static final String MESSAGE_TYPE = "ReportPolicy";
+
+    @Value("${report-policy.target-rate:200}")
+    private double targetRate;
+
+    // 最近一次下发的间隔，节点默认即为最小间隔
+    private volatile int pushedInterval = ReportPolicy.MIN_INTERVAL;
+
+    @PostConstruct
+    public void init() {
+        ReportPolicy.setTargetRate(targetRate);
+    }
+
+    /**
+     * 每30秒检查一次，间隔变化时下发
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void pushReportPolicy() {
+        int interval = ReportPolicy.baseInterval();
+        if (interval == pushedInterval) {
+            return;
+        }
+        log.info("上报速率 {}/s，默认上报间隔调整为 {} 秒", String.format("%.1f", ReportPolicy.uploadRate()), interval);
+        for (Long nodeId : WebSocketServer.onlineNodeIds()) {
+            WebSocketServer.sendToNode(nodeId, policy(interval), MESSAGE_TYPE);
+        }
+        pushedInterval = interval;
+    }
+
+    /**
+     * 节点连接后补发当前的默认策略
+     */
+    public void pushTo(Long nodeId) {
+        int interval = pushedInterval;
+        if (interval != ReportPolicy.MIN_INTERVAL) {
+            WebSocketServer.sendToNode(nodeId, policy(interval), MESSAGE_TYPE);
+        }
+    }
+
+    private static JSONObject policy(int interval) {
+        JSONObject data = new JSONObject();
+        data.put("interval", interval);
+        // 默认策略不提前上报，单独的阈值由上报响应给出
+        data.put("threshold", 0);
+        return data;
+    }
+}
@@ -1,16 +1,22 @@
 package com.admin.common.task;
 
+import com.admin.common.dto.GostDto;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.NodeConfigVersion;
+import com.admin.common.utils.TaskMetrics;
 import com.admin.entity.Forward;
 import com.admin.entity.Tunnel;
 import com.admin.entity.User;
 import com.admin.entity.UserTunnel;
 import com.admin.service.ForwardService;
 import com.admin.service.TunnelService;
+import com.admin.service.UserFlowShardService;
 import com.admin.service.UserService;
 import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -18,14 +24,32 @@ import org.springframework.scheduling.annotation.Scheduled;
 
 import javax.annotation.Resource;
 import java.time.LocalDate;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Configuration
 @EnableScheduling
 public class ResetFlowAsync {
 
+    private static final int STATUS_ACTIVE = 1;
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+    private static final String GOST_SUCCESS_MSG = "OK";
+
+    // 流量重置按主键区间分块，限制单条UPDATE锁定的行数
+    private static final int ID_RANGE_SIZE = 5000;
+    // IN条件单批最多的ID数量
+    private static final int IN_BATCH_SIZE = 1000;
+    // 单条暂停命令最多包含的服务数量
+    private static final int PAUSE_BATCH_SIZE = 500;
+    private static final int PAUSE_THREADS = 8;
+
+    private final ExecutorService pauseExecutor = Executors.newFixedThreadPool(PAUSE_THREADS);
+
     @Resource
     UserService userService;
 
@@ -38,203 +62,300 @@ public class ResetFlowAsync {
     @Resource
     TunnelService tunnelService;
 
+    @Resource
+    UserFlowShardService userFlowShardService;
+
     /**
-     * 每天0点执行流量重置任务
+     * 每天0点执行流量重置任务，并兜底处理到期调度遗漏的过期用户和用户隧道
      * 查询出用户和隧道的重置流量日期是今天的数据，将上下流量重置为0
      * 考虑当月是29、30天，但是选择是31的这种边界情况
-     * 
+     *
      * 并发安全说明：
      * - 使用setSql()进行原子SQL更新，只更新流量字段(in_flow, out_flow)
-     * - 不会影响DelayQueueManager的到期任务对status等其他字段的更新
+     * - 不会影响ExpiryScheduler的到期任务对status等其他字段的更新
      * - 避免了并发修改导致的数据覆盖问题
      */
     @Scheduled(cron = "5 0 0 * * ?")
     public void reset_flow(){
         log.info("开始执行流量重置任务");
-        
+        TaskMetrics.TaskRun run = TaskMetrics.start("reset_flow");
+
         try {
             // 获取当前日期信息
             LocalDate today = LocalDate.now();
             int currentDay = today.getDayOfMonth(); // 当前是几号
             int lastDayOfMonth = today.lengthOfMonth(); // 当月最后一天
-            
+
             log.info("当前日期: {}, 当月第{}天, 当月最后一天: {}", today, currentDay, lastDayOfMonth);
-            
-            // 重置用户流量
-            resetUserFlow(currentDay, lastDayOfMonth);
-            
+
+            // 重置用户流量，用户尚未合并的分片在同一事务中一起清零
+            long phaseStart = System.currentTimeMillis();
+            long users = userFlowShardService.resetByResetDay(currentDay, lastDayOfMonth,
+                    () -> resetFlowByIdRange(userService.getBaseMapper(), currentDay, lastDayOfMonth));
+            run.put("resetUsers", users).put("resetUsersMs", System.currentTimeMillis() - phaseStart);
+
             // 重置用户隧道流量
-            resetUserTunnelFlow(currentDay, lastDayOfMonth);
-            
-            log.info("流量重置任务执行完成");
+            phaseStart = System.currentTimeMillis();
+            long userTunnels = resetFlowByIdRange(userTunnelService.getBaseMapper(), currentDay, lastDayOfMonth);
+            run.put("resetUserTunnels", userTunnels).put("resetUserTunnelsMs", System.currentTimeMillis() - phaseStart);
+
+            log.info("流量重置任务执行完成，用户 {} 个，用户隧道 {} 个", users, userTunnels);
 
 
             // 处理过期账号
-            user();
+            phaseStart = System.currentTimeMillis();
+            user(run);
+            run.put("expireUsersMs", System.currentTimeMillis() - phaseStart);
 
             // 处理过期隧道
-            userTunnel();
+            phaseStart = System.currentTimeMillis();
+            userTunnel(run);
+            run.put("expireUserTunnelsMs", System.currentTimeMillis() - phaseStart);
 
             log.info("到期任务执行完成");
-            
+
         } catch (Exception e) {
             log.info("定时任务执行失败", e);
+        } finally {
+            run.finish();
+            log.info("流量重置及到期任务耗时 {}ms: {}", run.getDurationMs(), run.getCounters());
         }
     }
-    
+
     /**
-     * 重置用户流量
-     * @param currentDay 当前日期（几号）
-     * @param lastDayOfMonth 当月最后一天
+     * 按主键区间分块重置流量
+     * 先取满足重置条件的最小/最大ID，再按区间逐块执行一条UPDATE，不把数据加载到内存
+     * @return 重置的记录数
      */
-    private void resetUserFlow(int currentDay, int lastDayOfMonth) {
-        try {
-            // flowResetTime字段存储的是0-31的数字，0表示不重置，1-31表示每月第几号重置
-            // 构建查询条件：重置日期等于今天，或者重置日期大于当月最大天数且今天是月末
-            // 排除flowResetTime为0的记录（不重置）
-            QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-            queryWrapper.ne("flow_reset_time", 0); // 排除不重置的用户
-            
-            if (currentDay == lastDayOfMonth) {
-                // 如果今天是月末，查询重置日期等于今天或者大于当月最大天数的记录
-                // 例如：当月30天，但用户设置31号重置，则在30号执行重置
-                queryWrapper.and(wrapper -> wrapper.eq("flow_reset_time", currentDay)
-                                                  .or().gt("flow_reset_time", lastDayOfMonth));
-            } else {
-                // 否则只查询重置日期等于今天的记录
-                queryWrapper.eq("flow_reset_time", currentDay);
-            }
-            
-            // 查询需要重置的用户
-            List<User> usersToReset = userService.list(queryWrapper);
-            
-            if (usersToReset.isEmpty()) {
-                log.info("没有需要重置流量的用户");
-                return;
-            }
-            
-            log.info("找到{}个需要重置流量的用户", usersToReset.size());
-            
-            // 批量重置用户流量 - 使用SQL原子操作避免与到期任务的并发冲突
-            for (User user : usersToReset) {
-                UpdateWrapper<User> updateWrapper = new UpdateWrapper<>();
-                updateWrapper.eq("id", user.getId())
-                           .setSql("in_flow = 0, out_flow = 0"); // 使用SQL原子操作，只更新流量字段
-                
-                boolean success = userService.update(null, updateWrapper);
-                if (success) {
-                    log.info("用户[ID: {}, 用户名: {}]流量重置成功，重置日期: 每月{}号", 
-                           user.getId(), user.getUser(), user.getFlowResetTime());
-                } else {
-                    log.info("用户[ID: {}, 用户名: {}]流量重置失败", user.getId(), user.getUser());
-                }
-            }
-            
-        } catch (Exception e) {
-            log.info("重置用户流量失败", e);
+    private <T> long resetFlowByIdRange(BaseMapper<T> mapper, int currentDay, int lastDayOfMonth) {
+        QueryWrapper<T> rangeQuery = new QueryWrapper<T>().select("MIN(id) AS min_id", "MAX(id) AS max_id");
+        applyResetDay(rangeQuery, currentDay, lastDayOfMonth);
+        List<Map<String, Object>> rows = mapper.selectMaps(rangeQuery);
+        if (rows.isEmpty() || rows.get(0) == null || rows.get(0).get("min_id") == null) {
+            return 0;
         }
+        long minId = ((Number) rows.get(0).get("min_id")).longValue();
+        long maxId = ((Number) rows.get(0).get("max_id")).longValue();
+
+        long total = 0;
+        for (long from = minId; from <= maxId; from += ID_RANGE_SIZE) {
+            UpdateWrapper<T> updateWrapper = new UpdateWrapper<>();
+            applyResetDay(updateWrapper, currentDay, lastDayOfMonth);
+            updateWrapper.ge("id", from)
+                    .lt("id", from + ID_RANGE_SIZE)
+                    .setSql("in_flow = 0, out_flow = 0"); // 使用SQL原子操作，只更新流量字段
+            total += mapper.update(null, updateWrapper);
+        }
+        return total;
     }
-    
+
     /**
-     * 重置用户隧道流量
-     * @param currentDay 当前日期（几号）
-     * @param lastDayOfMonth 当月最后一天
+     * 重置日期条件
+     * flowResetTime字段存储的是0-31的数字，0表示不重置，1-31表示每月第几号重置
+     * 月末时同时匹配重置日期大于当月天数的记录，例如：当月30天，但设置31号重置，则在30号执行重置
      */
-    private void resetUserTunnelFlow(int currentDay, int lastDayOfMonth) {
-        try {
-            // flowResetTime字段存储的是0-31的数字，0表示不重置，1-31表示每月第几号重置
-            // 构建查询条件：重置日期等于今天，或者重置日期大于当月最大天数且今天是月末
-            // 排除flowResetTime为0的记录（不重置）
-            QueryWrapper<UserTunnel> queryWrapper = new QueryWrapper<>();
-            queryWrapper.ne("flow_reset_time", 0); // 排除不重置的用户隧道
-            
-            if (currentDay == lastDayOfMonth) {
-                // 如果今天是月末，查询重置日期等于今天或者大于当月最大天数的记录
-                // 例如：当月30天，但用户设置31号重置，则在30号执行重置
-                queryWrapper.and(wrapper -> wrapper.eq("flow_reset_time", currentDay)
-                                                  .or().gt("flow_reset_time", lastDayOfMonth));
-            } else {
-                // 否则只查询重置日期等于今天的记录
-                queryWrapper.eq("flow_reset_time", currentDay);
-            }
-            
-            // 查询需要重置的用户隧道
-            List<UserTunnel> userTunnelsToReset = userTunnelService.list(queryWrapper);
-            
-            if (userTunnelsToReset.isEmpty()) {
-                log.info("没有需要重置流量的用户隧道");
-                return;
-            }
-            
-            log.info("找到{}个需要重置流量的用户隧道", userTunnelsToReset.size());
-            
-            // 批量重置用户隧道流量 - 使用SQL原子操作避免与到期任务的并发冲突
-            for (UserTunnel userTunnel : userTunnelsToReset) {
-                UpdateWrapper<UserTunnel> updateWrapper = new UpdateWrapper<>();
-                updateWrapper.eq("id", userTunnel.getId())
-                           .setSql("in_flow = 0, out_flow = 0"); // 使用SQL原子操作，只更新流量字段
-                
-                boolean success = userTunnelService.update(null, updateWrapper);
-                if (success) {
-                    log.info("用户隧道[ID: {}, 用户ID: {}, 隧道ID: {}]流量重置成功，重置日期: 每月{}号", 
-                           userTunnel.getId(), userTunnel.getUserId(), userTunnel.getTunnelId(), userTunnel.getFlowResetTime());
-                } else {
-                    log.info("用户隧道[ID: {}, 用户ID: {}, 隧道ID: {}]流量重置失败",
-                            userTunnel.getId(), userTunnel.getUserId(), userTunnel.getTunnelId());
-                }
-            }
-            
-        } catch (Exception e) {
-            log.info("重置用户隧道流量失败", e);
+    private <T, W extends AbstractWrapper<T, String, W>> void applyResetDay(W wrapper, int currentDay, int lastDayOfMonth) {
+        wrapper.ne("flow_reset_time", 0);
+        if (currentDay == lastDayOfMonth) {
+            wrapper.and(w -> w.eq("flow_reset_time", currentDay).or().gt("flow_reset_time", lastDayOfMonth));
+        } else {
+            wrapper.eq("flow_reset_time", currentDay);
         }
     }
 
 
-    public void user(){
+    /**
+     * 处理过期用户：暂停其所有转发后停用账号
+     */
+    public void user(TaskMetrics.TaskRun run){
+        expireUsers(null, run);
+    }
+
+    /**
+     * 停用已到期的用户
+     * @param candidateIds 候选用户ID，为null时处理所有到期用户；候选用户会重新按到期条件过滤
+     */
+    public void expireUsers(Collection<Integer> candidateIds, TaskMetrics.TaskRun run){
         // 查询过期用户
-        List<User> user_list = userService.list(new QueryWrapper<User>().ne("role_id", 0).eq("status", 1).isNotNull("exp_time").lt("exp_time", new Date().getTime()));
-        for (User user : user_list) {
-            // 查询对应转发
-            List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().eq("user_id", user.getId()).eq("status", 1));
-            for (Forward forward : forwardList) {
-                UserTunnel userTunnel = userTunnelService.getOne(new QueryWrapper<UserTunnel>().eq("user_id", forward.getUserId()).eq("tunnel_id", forward.getTunnelId()));
-                if (userTunnel != null) {
-                    pauseForwardService(forward, userTunnel.getId());
-                    forward.setStatus(0);
-                    forwardService.updateById(forward);
-                }
+        QueryWrapper<User> queryWrapper = new QueryWrapper<User>().select("id")
+                .ne("role_id", 0).eq("status", 1).isNotNull("exp_time").le("exp_time", System.currentTimeMillis());
+        if (candidateIds != null) {
+            queryWrapper.in("id", candidateIds);
+        }
+        List<Integer> userIds = toIntList(userService.listObjs(queryWrapper));
+        run.put("expiredUsers", userIds.size());
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        // 批量加载这些用户的转发和用户隧道权限
+        List<Forward> forwardList = new ArrayList<>();
+        Map<String, Integer> userTunnelIds = new HashMap<>();
+        for (List<Integer> batch : partition(userIds, IN_BATCH_SIZE)) {
+            forwardList.addAll(forwardService.list(new QueryWrapper<Forward>().in("user_id", batch).eq("status", STATUS_ACTIVE)));
+            for (UserTunnel userTunnel : userTunnelService.list(new QueryWrapper<UserTunnel>()
+                    .select("id", "user_id", "tunnel_id").in("user_id", batch))) {
+                userTunnelIds.putIfAbsent(userTunnel.getUserId() + "_" + userTunnel.getTunnelId(), userTunnel.getId());
             }
-            user.setStatus(0);
-            userService.updateById(user);
+        }
+        // 没有隧道权限的转发保持原状
+        forwardList.removeIf(forward -> !userTunnelIds.containsKey(forward.getUserId() + "_" + forward.getTunnelId()));
+        pauseForwards(forwardList, forward -> userTunnelIds.get(forward.getUserId() + "_" + forward.getTunnelId()), run);
+
+        for (List<Integer> batch : partition(userIds, IN_BATCH_SIZE)) {
+            userService.update(null, new UpdateWrapper<User>().in("id", batch).eq("status", 1).set("status", 0));
         }
     }
 
 
-    public void userTunnel(){
+    /**
+     * 处理过期用户隧道：暂停该用户在该隧道上的转发后停用权限
+     */
+    public void userTunnel(TaskMetrics.TaskRun run){
+        expireUserTunnels(null, run);
+    }
+
+    /**
+     * 停用已到期的用户隧道权限
+     * @param candidateIds 候选用户隧道ID，为null时处理所有到期权限；候选权限会重新按到期条件过滤
+     */
+    public void expireUserTunnels(Collection<Integer> candidateIds, TaskMetrics.TaskRun run){
         // 查询过期隧道
-        List<UserTunnel> user_tunnel_list = userTunnelService.list(new QueryWrapper<UserTunnel>().eq("status", 1).isNotNull("exp_time").lt("exp_time", new Date().getTime()));
-        // 查询对应转发
+        QueryWrapper<UserTunnel> queryWrapper = new QueryWrapper<UserTunnel>().select("id", "user_id", "tunnel_id")
+                .eq("status", 1).isNotNull("exp_time").le("exp_time", System.currentTimeMillis());
+        if (candidateIds != null) {
+            queryWrapper.in("id", candidateIds);
+        }
+        List<UserTunnel> user_tunnel_list = userTunnelService.list(queryWrapper);
+        run.put("expiredUserTunnels", user_tunnel_list.size());
+        if (user_tunnel_list.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> userTunnelIds = new HashMap<>();
         for (UserTunnel userTunnel : user_tunnel_list) {
-            List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().eq("tunnel_id", userTunnel.getTunnelId()).eq("status", 1));
-            for (Forward forward : forwardList) {
-                pauseForwardService(forward, userTunnel.getId());
-                forward.setStatus(0);
-                forwardService.updateById(forward);
+            userTunnelIds.put(userTunnel.getUserId() + "_" + userTunnel.getTunnelId(), userTunnel.getId());
+        }
+        List<Integer> tunnelIds = user_tunnel_list.stream().map(UserTunnel::getTunnelId).distinct().collect(Collectors.toList());
+
+        // 按隧道批量加载转发，只保留属于过期权限对应用户的转发
+        List<Forward> forwardList = new ArrayList<>();
+        for (List<Integer> batch : partition(tunnelIds, IN_BATCH_SIZE)) {
+            for (Forward forward : forwardService.list(new QueryWrapper<Forward>().in("tunnel_id", batch).eq("status", STATUS_ACTIVE))) {
+                if (userTunnelIds.containsKey(forward.getUserId() + "_" + forward.getTunnelId())) {
+                    forwardList.add(forward);
+                }
+            }
+        }
+        pauseForwards(forwardList, forward -> userTunnelIds.get(forward.getUserId() + "_" + forward.getTunnelId()), run);
+
+        List<Integer> ids = user_tunnel_list.stream().map(UserTunnel::getId).collect(Collectors.toList());
+        for (List<Integer> batch : partition(ids, IN_BATCH_SIZE)) {
+            userTunnelService.update(null, new UpdateWrapper<UserTunnel>().in("id", batch).eq("status", 1).set("status", 0));
+        }
+    }
+
+
+    /**
+     * 暂停转发并将状态置为暂停
+     * 暂停命令按节点分组，每个节点按批发送，不同节点并行下发
+     */
+    private void pauseForwards(List<Forward> forwardList, Function<Forward, Integer> userTunnelIdOf, TaskMetrics.TaskRun run) {
+        if (forwardList.isEmpty()) {
+            return;
+        }
+        Set<Integer> tunnelIds = forwardList.stream().map(Forward::getTunnelId).collect(Collectors.toSet());
+        Map<Long, Tunnel> tunnelMap = tunnelService.listByIds(tunnelIds).stream()
+                .collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+
+        Map<Long, List<String>> servicesByNode = new HashMap<>();
+        for (Forward forward : forwardList) {
+            Tunnel tunnel = tunnelMap.get(forward.getTunnelId().longValue());
+            if (tunnel == null) continue;
+            String name = buildServiceName(forward.getId(), forward.getUserId(), userTunnelIdOf.apply(forward));
+            List<String> inServices = servicesByNode.computeIfAbsent(tunnel.getInNodeId(), k -> new ArrayList<>());
+            inServices.add(name + "_tcp");
+            inServices.add(name + "_udp");
+            if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+                servicesByNode.computeIfAbsent(tunnel.getOutNodeId(), k -> new ArrayList<>()).add(name + "_tls");
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int failedNodes = pauseServicesByNode(servicesByNode);
+        run.put("pauseCommandsMs", run.getCounters().getOrDefault("pauseCommandsMs", 0L) + System.currentTimeMillis() - start);
+        run.put("pauseNodes", run.getCounters().getOrDefault("pauseNodes", 0L) + servicesByNode.size());
+        run.put("pauseFailedNodes", run.getCounters().getOrDefault("pauseFailedNodes", 0L) + failedNodes);
+
+        List<Long> forwardIds = forwardList.stream().map(Forward::getId).collect(Collectors.toList());
+        long updated = 0;
+        for (List<Long> batch : partition(forwardIds, IN_BATCH_SIZE)) {
+            updated += forwardService.getBaseMapper().update(null,
+                    new UpdateWrapper<Forward>().in("id", batch).eq("status", STATUS_ACTIVE).set("status", 0));
+        }
+        run.put("pausedForwards", run.getCounters().getOrDefault("pausedForwards", 0L) + updated);
+        // 批量条件更新不经过updateById，手动通知节点期望配置已变化
+        NodeConfigVersion.bump();
+    }
+
+    /**
+     * 按节点并行发送暂停命令
+     * 节点离线时暂停失败，节点重连后由配置快照同步暂停状态
+     * @return 暂停失败的节点数
+     */
+    private int pauseServicesByNode(Map<Long, List<String>> servicesByNode) {
+        Map<Long, Future<Boolean>> futures = new HashMap<>();
+        for (Map.Entry<Long, List<String>> entry : servicesByNode.entrySet()) {
+            futures.put(entry.getKey(), pauseExecutor.submit(() -> {
+                boolean success = true;
+                for (List<String> batch : partition(entry.getValue(), PAUSE_BATCH_SIZE)) {
+                    success &= pauseServices(entry.getKey(), batch);
+                }
+                return success;
+            }));
+        }
+        int failed = 0;
+        for (Map.Entry<Long, Future<Boolean>> entry : futures.entrySet()) {
+            try {
+                if (!entry.getValue().get()) {
+                    failed++;
+                }
+            } catch (Exception e) {
+                failed++;
+                log.info("节点 {} 暂停服务失败: {}", entry.getKey(), e.getMessage());
             }
-            userTunnel.setStatus(0);
-            userTunnelService.updateById(userTunnel);
         }
+        return failed;
     }
 
+    /**
+     * 批量暂停服务，节点以批量模式跳过已不存在的服务
+     */
+    private boolean pauseServices(Long nodeId, List<String> services) {
+        GostDto result = GostUtil.PauseServices(nodeId, services);
+        if (Objects.equals(result.getMsg(), GOST_SUCCESS_MSG)) {
+            return true;
+        }
+        log.info("节点 {} 暂停 {} 个服务失败: {}", nodeId, services.size(), result.getMsg());
+        return false;
+    }
 
-    private void pauseForwardService(Forward forward, Integer userTunnelId) {
-        Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
-        if (tunnel == null) return;
+    private List<Integer> toIntList(List<Object> values) {
+        List<Integer> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                result.add(((Number) value).intValue());
+            }
+        }
+        return result;
+    }
 
-        GostUtil.PauseService(tunnel.getInNodeId(), buildServiceName(forward.getId(), forward.getUserId(), userTunnelId));
-        if (tunnel.getType() == 2){
-            GostUtil.PauseRemoteService(tunnel.getOutNodeId(), buildServiceName(forward.getId(), forward.getUserId(), userTunnelId));
+    private static <E> List<List<E>> partition(List<E> list, int size) {
+        List<List<E>> batches = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            batches.add(list.subList(i, Math.min(i + size, list.size())));
         }
+        return batches;
     }
 
 
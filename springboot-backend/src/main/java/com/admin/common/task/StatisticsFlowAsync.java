@@ -1,11 +1,17 @@
 package com.admin.common.task;
 
 
+import com.admin.common.utils.LongLongMap;
+import com.admin.common.utils.TaskMetrics;
 import com.admin.entity.StatisticsFlow;
 import com.admin.entity.User;
+import com.admin.mapper.StatisticsFlowMapper;
+import com.admin.service.FlowArchiveService;
 import com.admin.service.StatisticsFlowService;
+import com.admin.service.UserFlowShardService;
 import com.admin.service.UserService;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -13,78 +19,122 @@ import org.springframework.scheduling.annotation.Scheduled;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+/**
+ * 用户每小时流量统计
+ * 上一次记录的累计流量保存在内存中，启动时用一条分组查询加载，
+ * 每小时只查询一次用户流量并批量写入增量，不再逐个用户查询统计表
+ */
 @Slf4j
 @Configuration
 @EnableScheduling
 public class StatisticsFlowAsync {
 
+    private static final int INSERT_BATCH_SIZE = 1000;
+
     @Resource
     UserService userService;
 
     @Resource
     StatisticsFlowService statisticsFlowService;
 
+    @Resource
+    StatisticsFlowMapper statisticsFlowMapper;
+
+    @Resource
+    FlowArchiveService flowArchiveService;
+
+    @Resource
+    UserFlowShardService userFlowShardService;
+
+    // 用户ID -> 上一次统计记录的累计流量，只在整点任务中访问
+    private LongLongMap lastTotalFlows;
+
+    /**
+     * 启动时加载每个用户最近一条统计记录的累计流量
+     */
+    @PostConstruct
+    public void loadLastTotalFlows() {
+        long start = System.currentTimeMillis();
+        List<StatisticsFlow> latest = statisticsFlowMapper.selectLatestTotalFlows();
+        LongLongMap totals = new LongLongMap(latest.size());
+        for (StatisticsFlow record : latest) {
+            totals.put(record.getUserId(), record.getTotalFlow());
+        }
+        lastTotalFlows = totals;
+        log.info("加载 {} 个用户的上次统计流量，耗时 {}ms", totals.size(), System.currentTimeMillis() - start);
+    }
+
     @Scheduled(cron = "0 0 * * * ?")
     public void statistics_flow() {
+        TaskMetrics.TaskRun run = TaskMetrics.start("statistics_flow");
         LocalDateTime currentHour = LocalDateTime.now().withMinute(0).withSecond(0).withNano(0);
         String hourString = currentHour.format(DateTimeFormatter.ofPattern("HH:mm"));
         long time = new Date().getTime();
 
-        // 删除48小时前的数据
-        long nowMs = new Date().getTime();
-        long cutoffMs = nowMs - 48L * 60 * 60 * 1000;
-        statisticsFlowService.remove(
-                new LambdaQueryWrapper<StatisticsFlow>()
-                        .lt(StatisticsFlow::getCreatedTime, cutoffMs)
-        );
-
-
-
+        // 48小时前的数据按整天写入归档后删除，归档失败时保留到下次重试
+        long phaseStart = System.currentTimeMillis();
+        long cutoffMs = LocalDate.now().minusDays(2).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int archived = flowArchiveService.archiveUserFlows(cutoffMs);
+        if (archived >= 0) {
+            statisticsFlowService.remove(
+                    new LambdaQueryWrapper<StatisticsFlow>()
+                            .lt(StatisticsFlow::getCreatedTime, cutoffMs)
+            );
+        }
+        run.put("archivedRows", archived).put("cleanupMs", System.currentTimeMillis() - phaseStart);
 
+        // 只取计算所需的字段
+        phaseStart = System.currentTimeMillis();
+        List<User> list = userService.list(new QueryWrapper<User>().select("id", "in_flow", "out_flow"));
+        userFlowShardService.applyUnmerged(list);
+        run.put("users", list.size()).put("loadUsersMs", System.currentTimeMillis() - phaseStart);
 
-        List<User> list = userService.list();
-        List<StatisticsFlow> statisticsFlowList = new ArrayList<>();
+        List<StatisticsFlow> statisticsFlowList = new ArrayList<>(list.size());
+        // 每次重建，已删除用户的记录随之淘汰
+        LongLongMap currentTotalFlows = new LongLongMap(list.size());
 
         for (User user : list) {
-            long currentFlow = user.getInFlow() + user.getOutFlow();
-
-            // 从数据库获取上一次记录
-            StatisticsFlow lastFlowRecord = statisticsFlowService.getOne(
-                    new LambdaQueryWrapper<StatisticsFlow>()
-                            .eq(StatisticsFlow::getUserId, user.getId()) 
-                            .orderByDesc(StatisticsFlow::getId)         
-                            .last("LIMIT 1")                     
-            );
-
-            long currentTotalFlow = currentFlow;
+            long currentTotalFlow = user.getInFlow() + user.getOutFlow();
             long incrementFlow = currentTotalFlow;
-            
-            if (lastFlowRecord != null) {
-                long lastTotalFlow = lastFlowRecord.getTotalFlow();
-                incrementFlow = currentTotalFlow - lastTotalFlow;
-                
+
+            if (lastTotalFlows.containsKey(user.getId())) {
+                incrementFlow = currentTotalFlow - lastTotalFlows.get(user.getId(), 0);
+                // 累计流量变小说明流量已被重置，本小时增量取当前累计值
                 if (incrementFlow < 0) {
-                    incrementFlow = currentTotalFlow; 
+                    incrementFlow = currentTotalFlow;
                 }
             }
+            currentTotalFlows.put(user.getId(), currentTotalFlow);
 
             StatisticsFlow statisticsFlow = new StatisticsFlow();
             statisticsFlow.setUserId(user.getId());
-            statisticsFlow.setFlow(incrementFlow);        
-            statisticsFlow.setTotalFlow(currentTotalFlow); 
+            statisticsFlow.setFlow(incrementFlow);
+            statisticsFlow.setTotalFlow(currentTotalFlow);
             statisticsFlow.setTime(hourString);
             statisticsFlow.setCreatedTime(time);
 
             statisticsFlowList.add(statisticsFlow);
         }
 
-        statisticsFlowService.saveBatch(statisticsFlowList);
+        phaseStart = System.currentTimeMillis();
+        try {
+            statisticsFlowService.saveBatch(statisticsFlowList, INSERT_BATCH_SIZE);
+            // 写入成功后才推进内存中的基准，失败时下一小时仍以上次记录为基准
+            lastTotalFlows = currentTotalFlows;
+        } catch (Exception e) {
+            log.error("写入流量统计失败", e);
+        }
+        run.put("insertMs", System.currentTimeMillis() - phaseStart);
+        run.finish();
+        log.info("流量统计完成，{} 个用户，耗时 {}ms", list.size(), run.getDurationMs());
     }
 
 }
@@ -0,0 +1,380 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.FlowWal;
+import com.admin.entity.FlowWalState;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.mapper.FlowWalStateMapper;
+import com.admin.mapper.NodeMapper;
+import com.admin.mapper.TunnelMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 隧道和节点流量计数批量写入
+ * 流量上报时只在内存中累加增量，定时合并后每批一条UPDATE累加到tunnel、node表，
+ * 列表接口直接读取表中的计数，不再需要按转发聚合。
+ * <p>
+ * 增量在确认上报前先写入预写日志（FlowWal），启动时重放；每次写库前切换日志段，写库完成后删除旧段。
+ * 一轮的全部计数与写库进度（flow_wal_state）在同一事务中提交，写库后删除旧段前崩溃时重放跳过已写库的段。
+ * 节点上报带序号时按 (节点, 服务名, 服务实例) 记录最近处理的序号，重发的上报直接确认，不重复计数
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class TrafficCounterAsync {
+
+    private static final int UPDATE_BATCH_SIZE = 500;
+    private static final int WAL_INITIAL_CAPACITY = 4 * 1024 * 1024;
+
+    // 上报序号保留时长，节点重发间隔远小于该值
+    private static final long SEQUENCE_RETAIN_MS = 10 * 60 * 1000L;
+
+    private static final int WAL_STATE_ID = 1;
+
+    // 待写入的增量，value为 [计费入站, 计费出站, 实际入站, 实际出站]
+    private final ConcurrentHashMap<Long, long[]> pendingTunnels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, long[]> pendingNodes = new ConcurrentHashMap<>();
+
+    // 上报流 -> [最近处理的序号, 处理时间, 之前的序号]
+    private final ConcurrentHashMap<Long, long[]> sequences = new ConcurrentHashMap<>();
+
+    // 登记增量时持读锁，切换日志段并取出待写入增量时持写锁，保证旧段中的增量都已被取出
+    private final ReentrantReadWriteLock walLock = new ReentrantReadWriteLock();
+    private FlowWal wal;
+
+    @Value("${flow-wal.dir:${log-dir:logs}/flow-wal}")
+    private String walDir;
+
+    @Resource
+    TunnelMapper tunnelMapper;
+
+    @Resource
+    NodeMapper nodeMapper;
+
+    @Resource
+    FlowWalStateMapper flowWalStateMapper;
+
+    @Resource
+    TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() throws IOException {
+        wal = new FlowWal(Paths.get(walDir), WAL_INITIAL_CAPACITY);
+        FlowWalState state = flowWalStateMapper.selectById(WAL_STATE_ID);
+        long flushed = state != null && state.getGeneration() != null ? state.getGeneration() : 0;
+        int[] records = {0};
+        wal.replay((generation, record) -> {
+            if (generation < flushed) {
+                // 该段的增量已随写库进度一起提交，只恢复上报序号
+                record.setInFlow(0);
+                record.setOutFlow(0);
+                record.setRawInFlow(0);
+                record.setRawOutFlow(0);
+            } else {
+                records[0]++;
+            }
+            apply(record);
+        });
+        wal.skipTo(flushed);
+        wal.rotate();
+        if (records[0] > 0) {
+            log.info("从流量日志 {} 恢复 {} 条未写库的记录", walDir, records[0]);
+        }
+    }
+
+    /**
+     * 占用节点上报的序号
+     * @param service 上报流：服务名，节点带服务实例标识时为 服务名#实例
+     * @param seq 节点上报序号，为空时不去重
+     * @return false表示该序号已处理过，是重发的上报
+     */
+    public boolean claimSequence(Long nodeId, String service, Long seq) {
+        if (seq == null || seq <= 0) {
+            return true;
+        }
+        boolean[] claimed = {false};
+        sequences.compute(streamKey(nodeId, service), (key, current) -> {
+            if (current != null && current[0] >= seq) {
+                return current;
+            }
+            claimed[0] = true;
+            return new long[]{seq, System.currentTimeMillis(), current == null ? 0 : current[0]};
+        });
+        return claimed[0];
+    }
+
+    /**
+     * 上报处理失败时释放序号，节点重发时重新处理
+     */
+    public void releaseSequence(Long nodeId, String service, Long seq) {
+        if (seq == null || seq <= 0) {
+            return;
+        }
+        sequences.computeIfPresent(streamKey(nodeId, service), (key, current) -> {
+            if (current[0] != seq) {
+                return current;
+            }
+            return current[2] > 0 ? new long[]{current[2], current[1], 0} : null;
+        });
+    }
+
+    /**
+     * 尚未写入隧道表的流量增量副本：隧道ID -> [入站, 出站, 原始入站, 原始出站]
+     */
+    public Map<Long, long[]> pendingTunnelFlows() {
+        Map<Long, long[]> copy = new HashMap<>();
+        pendingTunnels.forEach((id, delta) -> copy.put(id, delta.clone()));
+        return copy;
+    }
+
+    /**
+     * 登记一次上报的流量，写入日志后返回
+     * @param tunnelId 隧道ID，转发已不存在时为null
+     * @param nodeId 上报节点ID
+     * @param service 上报流，与claimSequence一致
+     * @param seq 节点上报序号，没有时为null
+     */
+    public void submit(Long tunnelId, Long nodeId, String service, Long seq,
+                       long inFlow, long outFlow, long rawInFlow, long rawOutFlow) {
+        boolean hasSeq = seq != null && seq > 0;
+        if (!hasSeq && inFlow == 0 && outFlow == 0 && rawInFlow == 0 && rawOutFlow == 0) {
+            return;
+        }
+        FlowWal.Record record = new FlowWal.Record();
+        record.setNodeId(nodeId);
+        record.setTunnelId(tunnelId != null ? tunnelId : -1);
+        if (hasSeq) {
+            record.setStream(streamKey(nodeId, service));
+            record.setSeq(seq);
+        }
+        record.setInFlow(inFlow);
+        record.setOutFlow(outFlow);
+        record.setRawInFlow(rawInFlow);
+        record.setRawOutFlow(rawOutFlow);
+
+        walLock.readLock().lock();
+        try {
+            appendToWal(record);
+            apply(record);
+        } finally {
+            walLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 每5秒合并写入一次
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushTrafficCounters() {
+        long generation;
+        Map<Long, long[]> tunnelBatch;
+        Map<Long, long[]> nodeBatch;
+        if (pendingTunnels.isEmpty() && pendingNodes.isEmpty()) {
+            return;
+        }
+        walLock.writeLock().lock();
+        try {
+            try {
+                generation = wal.rotate();
+            } catch (IOException e) {
+                // 无法切换日志段时本轮不写库，增量仍在内存和旧段中
+                log.error("切换流量日志段失败，跳过本轮写入", e);
+                return;
+            }
+            tunnelBatch = drain(pendingTunnels);
+            nodeBatch = drain(pendingNodes);
+            carrySequences();
+        } finally {
+            walLock.writeLock().unlock();
+        }
+
+        boolean flushed = flush(tunnelBatch, nodeBatch, generation);
+        // 写库失败的增量已重新写入新段，旧段可以删除
+        wal.truncateBefore(generation);
+        if (flushed && tunnelBatch.size() + nodeBatch.size() > 0) {
+            log.debug("批量累加 {} 个隧道、{} 个节点的流量计数", tunnelBatch.size(), nodeBatch.size());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushTrafficCounters();
+        wal.force();
+    }
+
+    private void apply(FlowWal.Record record) {
+        long[] delta = {record.getInFlow(), record.getOutFlow(), record.getRawInFlow(), record.getRawOutFlow()};
+        if (delta[0] != 0 || delta[1] != 0 || delta[2] != 0 || delta[3] != 0) {
+            if (record.getTunnelId() >= 0) {
+                pendingTunnels.merge(record.getTunnelId(), delta.clone(), TrafficCounterAsync::sum);
+            }
+            if (record.getNodeId() >= 0) {
+                pendingNodes.merge(record.getNodeId(), delta, TrafficCounterAsync::sum);
+            }
+        }
+        if (record.getSeq() > 0) {
+            long seq = record.getSeq();
+            sequences.merge(record.getStream(), new long[]{seq, System.currentTimeMillis(), 0},
+                    (current, value) -> current[0] >= seq ? current : value);
+        }
+    }
+
+    private void appendToWal(FlowWal.Record record) {
+        try {
+            wal.append(record);
+        } catch (IOException | RuntimeException e) {
+            // 日志写不进去时仍在内存中计数，只是失去崩溃保护
+            log.error("写入流量日志失败", e);
+        }
+    }
+
+    /**
+     * 把近期处理过的上报序号写入新段，删除旧段后重启仍能识别重发
+     */
+    private void carrySequences() {
+        long expire = System.currentTimeMillis() - SEQUENCE_RETAIN_MS;
+        sequences.entrySet().removeIf(entry -> entry.getValue()[1] < expire);
+        for (Map.Entry<Long, long[]> entry : sequences.entrySet()) {
+            FlowWal.Record record = new FlowWal.Record();
+            record.setStream(entry.getKey());
+            record.setSeq(entry.getValue()[0]);
+            appendToWal(record);
+        }
+    }
+
+    private static Map<Long, long[]> drain(ConcurrentHashMap<Long, long[]> pending) {
+        Map<Long, long[]> batch = new HashMap<>();
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            long[] delta = pending.remove(id);
+            if (delta != null) {
+                batch.put(id, delta);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 在同一事务中累加隧道、节点计数并记录写库进度，代号小于generation的段随之视为已写库
+     * @return 是否写库成功，失败时整轮增量重新登记
+     */
+    private boolean flush(Map<Long, long[]> tunnelBatch, Map<Long, long[]> nodeBatch, long generation) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                addFlows(tunnelBatch, true);
+                addFlows(nodeBatch, false);
+                FlowWalState state = new FlowWalState();
+                state.setId(WAL_STATE_ID);
+                state.setGeneration(generation);
+                if (flowWalStateMapper.updateById(state) == 0) {
+                    flowWalStateMapper.insert(state);
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            log.info("批量累加流量计数失败，下个窗口重试: {}", e.getMessage());
+            // 计数是累加值，失败的增量重新登记，与期间的新增量合并
+            tunnelBatch.forEach((id, delta) -> requeue(id, delta, true));
+            nodeBatch.forEach((id, delta) -> requeue(id, delta, false));
+            return false;
+        }
+    }
+
+    private void addFlows(Map<Long, long[]> batch, boolean tunnel) {
+        List<Map.Entry<Long, long[]>> entries = new ArrayList<>(batch.entrySet());
+        for (int i = 0; i < entries.size(); i += UPDATE_BATCH_SIZE) {
+            List<Map.Entry<Long, long[]>> chunk = entries.subList(i, Math.min(i + UPDATE_BATCH_SIZE, entries.size()));
+            if (tunnel) {
+                tunnelMapper.addFlows(toTunnels(chunk));
+            } else {
+                nodeMapper.addFlows(toNodes(chunk));
+            }
+        }
+    }
+
+    private void requeue(Long id, long[] delta, boolean tunnel) {
+        FlowWal.Record record = new FlowWal.Record();
+        if (tunnel) {
+            record.setTunnelId(id);
+        } else {
+            record.setNodeId(id);
+        }
+        record.setInFlow(delta[0]);
+        record.setOutFlow(delta[1]);
+        record.setRawInFlow(delta[2]);
+        record.setRawOutFlow(delta[3]);
+        walLock.readLock().lock();
+        try {
+            appendToWal(record);
+            apply(record);
+        } finally {
+            walLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 上报流标识：节点ID与服务名的64位FNV-1a散列
+     */
+    private static long streamKey(Long nodeId, String service) {
+        long hash = 0xcbf29ce484222325L;
+        byte[] bytes = (nodeId + ":" + service).getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static List<Tunnel> toTunnels(List<Map.Entry<Long, long[]>> chunk) {
+        List<Tunnel> list = new ArrayList<>(chunk.size());
+        for (Map.Entry<Long, long[]> entry : chunk) {
+            Tunnel tunnel = new Tunnel();
+            tunnel.setId(entry.getKey());
+            tunnel.setInFlow(entry.getValue()[0]);
+            tunnel.setOutFlow(entry.getValue()[1]);
+            tunnel.setRawInFlow(entry.getValue()[2]);
+            tunnel.setRawOutFlow(entry.getValue()[3]);
+            list.add(tunnel);
+        }
+        return list;
+    }
+
+    private static List<Node> toNodes(List<Map.Entry<Long, long[]>> chunk) {
+        List<Node> list = new ArrayList<>(chunk.size());
+        for (Map.Entry<Long, long[]> entry : chunk) {
+            Node node = new Node();
+            node.setId(entry.getKey());
+            node.setInFlow(entry.getValue()[0]);
+            node.setOutFlow(entry.getValue()[1]);
+            node.setRawInFlow(entry.getValue()[2]);
+            node.setRawOutFlow(entry.getValue()[3]);
+            list.add(node);
+        }
+        return list;
+    }
+
+    private static long[] sum(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] + b[i];
+        }
+        return result;
+    }
+}
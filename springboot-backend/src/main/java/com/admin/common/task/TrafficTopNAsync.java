@@ -0,0 +1,38 @@
+package com.admin.common.task;
+
+import com.admin.common.utils.TrafficTopN;
+import com.admin.common.utils.WebSocketServer;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * 实时流量排行推送
+ * 每5秒向在线的管理员页面广播最近1分钟流量最大的转发、用户和隧道
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class TrafficTopNAsync {
+
+    private static final int BROADCAST_LIMIT = 10;
+
+    @Scheduled(fixedRate = 5000)
+    public void broadcastTopTraffic() {
+        if (!WebSocketServer.hasAdminSessions()) {
+            return;
+        }
+        JSONObject data = new JSONObject();
+        data.put("window", TrafficTopN.WINDOW_1M);
+        data.put("forward", TrafficTopN.query(TrafficTopN.TYPE_FORWARD, TrafficTopN.WINDOW_1M, BROADCAST_LIMIT));
+        data.put("user", TrafficTopN.query(TrafficTopN.TYPE_USER, TrafficTopN.WINDOW_1M, BROADCAST_LIMIT));
+        data.put("tunnel", TrafficTopN.query(TrafficTopN.TYPE_TUNNEL, TrafficTopN.WINDOW_1M, BROADCAST_LIMIT));
+
+        JSONObject res = new JSONObject();
+        res.put("type", "top_traffic");
+        res.put("data", data);
+        WebSocketServer.broadcastToAdmins(res.toJSONString());
+    }
+}
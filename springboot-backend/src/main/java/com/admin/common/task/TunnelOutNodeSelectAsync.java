@@ -0,0 +1,201 @@
+package com.admin.common.task;
+
+import com.admin.common.lang.R;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.Forward;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.service.ForwardService;
+import com.admin.service.NodeService;
+import com.admin.service.TunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 隧道出口节点自动选择任务
+ * 对开启自动选择出口节点的隧道转发，从入口节点TcpPing各候选出口节点，
+ * 当其他候选节点连续多轮优于当前出口节点超过阈值时，将隧道切换到该出口节点。
+ * 探测端口使用候选节点上实际的转发出口端口，没有已知端口的节点不探测；
+ * 当前出口离线或探测失败时视为最差，仍需其他节点连续领先多轮才切换
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class TunnelOutNodeSelectAsync {
+
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+    private static final int TUNNEL_STATUS_ACTIVE = 1;
+    private static final int AUTO_OUT_ENABLED = 1;
+
+    private static final int PING_COUNT = 4;
+    private static final int PING_TIMEOUT = 2000;
+    private static final double EWMA_ALPHA = 0.3;
+
+    // 候选节点需要比当前出口节点快多少百分比才会切换
+    @Value("${tunnel-auto-out.margin:20}")
+    private int margin;
+
+    // 候选节点需要连续领先多少轮才会切换
+    @Value("${tunnel-auto-out.rounds:3}")
+    private int rounds;
+
+    // 每个隧道各候选出口节点的平滑后得分，key为隧道ID
+    private final Map<Long, Map<Long, Double>> pathScores = new HashMap<>();
+
+    // 每个隧道当前领先的候选节点及其连续领先轮数
+    private final Map<Long, long[]> leaders = new HashMap<>();
+
+    @Resource
+    TunnelService tunnelService;
+
+    @Resource
+    NodeService nodeService;
+
+    @Resource
+    ForwardService forwardService;
+
+    /**
+     * 每5分钟评估一次出口路径
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 120000)
+    public void selectOutNodes() {
+        List<Tunnel> tunnels = tunnelService.list(new QueryWrapper<Tunnel>()
+                .eq("type", TUNNEL_TYPE_TUNNEL_FORWARD)
+                .eq("status", TUNNEL_STATUS_ACTIVE)
+                .eq("auto_out", AUTO_OUT_ENABLED));
+        Set<Long> tunnelIds = tunnels.stream().map(Tunnel::getId).collect(Collectors.toSet());
+        pathScores.keySet().retainAll(tunnelIds);
+        leaders.keySet().retainAll(tunnelIds);
+        if (tunnels.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Node> nodeMap = nodeService.list().stream().collect(Collectors.toMap(Node::getId, Function.identity()));
+        for (Tunnel tunnel : tunnels) {
+            try {
+                evaluateTunnel(tunnel, nodeMap);
+            } catch (Exception e) {
+                log.error("隧道 {} 出口节点评估失败: {}", tunnel.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 评估单个隧道的候选出口节点，必要时切换出口
+     */
+    private void evaluateTunnel(Tunnel tunnel, Map<Long, Node> nodeMap) {
+        if (!WebSocketServer.isNodeOnline(tunnel.getInNodeId())) {
+            return;
+        }
+        List<Long> candidates = parseCandidates(tunnel.getOutNodeIds());
+        Map<Long, Double> scores = pathScores.computeIfAbsent(tunnel.getId(), k -> new HashMap<>());
+        scores.keySet().retainAll(candidates);
+        boolean currentProbed = false;
+
+        for (Long candidateId : candidates) {
+            Node candidate = nodeMap.get(candidateId);
+            if (candidate == null || !WebSocketServer.isNodeOnline(candidateId)) {
+                scores.remove(candidateId);
+                continue;
+            }
+            Integer port = getProbePort(tunnel, candidateId);
+            if (port == null) {
+                // 没有已知的转发端口，探测其他端口不能反映转发路径，不参与比较
+                scores.remove(candidateId);
+                continue;
+            }
+            if (Objects.equals(candidateId, tunnel.getOutNodeId())) {
+                currentProbed = true;
+            }
+            double score = GostUtil.TcpPing(tunnel.getInNodeId(), candidate.getServerIp(), port, PING_COUNT, PING_TIMEOUT);
+            if (score < 0) {
+                scores.remove(candidateId);
+            } else {
+                scores.merge(candidateId, score, (old, cur) -> EWMA_ALPHA * cur + (1 - EWMA_ALPHA) * old);
+            }
+        }
+
+        Map.Entry<Long, Double> best = scores.entrySet().stream().min(Map.Entry.comparingByValue()).orElse(null);
+        if (best == null || Objects.equals(best.getKey(), tunnel.getOutNodeId())) {
+            leaders.remove(tunnel.getId());
+            return;
+        }
+
+        // 当前出口没有已知端口时无从比较，保持不变
+        boolean currentOnline = nodeMap.containsKey(tunnel.getOutNodeId()) && WebSocketServer.isNodeOnline(tunnel.getOutNodeId());
+        if (currentOnline && !currentProbed) {
+            leaders.remove(tunnel.getId());
+            return;
+        }
+        // 当前出口离线或探测失败时没有得分，视为最差；单次探测失败由连续领先轮数把关，不会立即切换
+        Double currentScore = scores.get(tunnel.getOutNodeId());
+        if (currentScore != null && best.getValue() > currentScore * (100 - margin) / 100.0) {
+            leaders.remove(tunnel.getId());
+            return;
+        }
+
+        long[] leader = leaders.get(tunnel.getId());
+        if (leader == null || leader[0] != best.getKey()) {
+            leader = new long[]{best.getKey(), 0};
+            leaders.put(tunnel.getId(), leader);
+        }
+        leader[1]++;
+        if (leader[1] < rounds) {
+            return;
+        }
+
+        log.info("隧道 {} 出口节点 {} 连续 {} 轮优于当前出口 {}，开始切换", tunnel.getId(), best.getKey(), leader[1], tunnel.getOutNodeId());
+        R result = forwardService.switchTunnelOutNode(tunnel.getId(), best.getKey());
+        leaders.remove(tunnel.getId());
+        if (result.getCode() != 0) {
+            log.info("隧道 {} 自动切换出口节点失败: {}", tunnel.getId(), result.getMsg());
+        }
+    }
+
+    /**
+     * 获取候选节点上可用于探测的端口：本隧道或其他隧道在该节点上的转发出口端口，没有时返回null
+     */
+    private Integer getProbePort(Tunnel tunnel, Long candidateId) {
+        Long probeTunnelId = tunnel.getId();
+        if (!Objects.equals(tunnel.getOutNodeId(), candidateId)) {
+            Tunnel other = tunnelService.getOne(new QueryWrapper<Tunnel>()
+                    .eq("out_node_id", candidateId)
+                    .eq("type", TUNNEL_TYPE_TUNNEL_FORWARD)
+                    .last("LIMIT 1"));
+            if (other == null) {
+                return null;
+            }
+            probeTunnelId = other.getId();
+        }
+        Forward forward = forwardService.getOne(new QueryWrapper<Forward>()
+                .eq("tunnel_id", probeTunnelId)
+                .eq("status", TUNNEL_STATUS_ACTIVE)
+                .isNotNull("out_port")
+                .last("LIMIT 1"));
+        return forward != null ? forward.getOutPort() : null;
+    }
+
+    private List<Long> parseCandidates(String outNodeIds) {
+        if (StringUtils.isBlank(outNodeIds)) {
+            return Collections.emptyList();
+        }
+        List<Long> candidates = new ArrayList<>();
+        for (String id : outNodeIds.split(",")) {
+            if (StringUtils.isNotBlank(id)) {
+                candidates.add(Long.valueOf(id.trim()));
+            }
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,215 @@
+package com.admin.common.task;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.NodeConfigVersion;
+import com.admin.common.utils.UserBandwidth;
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.*;
+import com.admin.service.*;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 用户总带宽协调任务
+ * 定时读取设置了总带宽的用户及其转发所在的入口节点，由UserBandwidth重新分配各节点份额，
+ * 份额变化明显时更新对应节点上的用户限流器；用户开始或取消总带宽限制时切换其服务引用的限流器
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class UserBandwidthAsync {
+
+    private static final String GOST_NOT_FOUND_MSG = "not found";
+
+    // Mbps 换算为 字节/秒，与限速规则的换算一致
+    private static final long MBPS_TO_BYTES = 1024L * 1024 / 8;
+
+    @Resource
+    UserService userService;
+
+    @Resource
+    ForwardService forwardService;
+
+    @Resource
+    TunnelService tunnelService;
+
+    @Resource
+    UserTunnelService userTunnelService;
+
+    @Resource
+    SpeedLimitService speedLimitService;
+
+    /**
+     * 每10秒协调一次
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void coordinateUserBandwidth() {
+        Map<Long, Long> caps = new HashMap<>();
+        for (User user : userService.list(new QueryWrapper<User>().select("id", "speed").gt("speed", 0))) {
+            caps.put(user.getId(), user.getSpeed() * MBPS_TO_BYTES);
+        }
+        Set<Long> before = UserBandwidth.cappedUsers();
+        UserBandwidth.setCaps(caps);
+
+        Set<Long> added = new HashSet<>(caps.keySet());
+        added.removeAll(before);
+        Set<Long> removed = new HashSet<>(before);
+        removed.removeAll(caps.keySet());
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            // 服务引用的限流器和节点上的用户限流器随之变化
+            NodeConfigVersion.bump();
+        }
+
+        Set<Long> involved = new HashSet<>(caps.keySet());
+        involved.addAll(removed);
+        if (involved.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<Long, NodeServices>> layouts = loadLayouts(involved);
+        Set<Long> online = WebSocketServer.onlineNodeIds();
+
+        for (Long userId : caps.keySet()) {
+            Map<Long, NodeServices> nodes = layouts.getOrDefault(userId, Collections.emptyMap());
+            Map<Long, Long> ceilings = new HashMap<>();
+            nodes.forEach((nodeId, services) -> ceilings.put(nodeId, services.ceiling));
+
+            Map<Long, Long> changed = UserBandwidth.rebalance(userId, ceilings);
+            for (Map.Entry<Long, Long> entry : changed.entrySet()) {
+                if (online.contains(entry.getKey())) {
+                    pushLimiter(entry.getKey(), userId, entry.getValue());
+                }
+            }
+            if (!changed.isEmpty()) {
+                // 份额计入节点期望配置，版本号递增后配置哈希重新计算
+                NodeConfigVersion.bump();
+                log.debug("用户 {} 总带宽份额调整: {}", userId, changed);
+            }
+
+            if (added.contains(userId)) {
+                String limiter = UserBandwidth.LIMITER_PREFIX + userId;
+                nodes.forEach((nodeId, services) -> {
+                    if (online.contains(nodeId)) {
+                        setServicesLimiter(nodeId, services.allNames(), limiter);
+                    }
+                });
+            }
+        }
+
+        // 取消总带宽限制的用户恢复为各用户隧道的限速规则，再删除不再引用的用户限流器；
+        // 离线节点和已不在这些节点上的限流器由配置对账清理
+        for (Long userId : removed) {
+            String limiter = UserBandwidth.LIMITER_PREFIX + userId;
+            layouts.getOrDefault(userId, Collections.emptyMap()).forEach((nodeId, services) -> {
+                if (online.contains(nodeId)) {
+                    services.namesByRule.forEach((speedId, names) ->
+                            setServicesLimiter(nodeId, names, speedId != null ? speedId.toString() : null));
+                    deleteLimiter(nodeId, limiter);
+                }
+            });
+        }
+    }
+
+    /**
+     * 查询用户的转发在各入口节点上的服务，以及该节点上限速规则的最小值
+     */
+    private Map<Long, Map<Long, NodeServices>> loadLayouts(Set<Long> userIds) {
+        Map<Long, Map<Long, NodeServices>> layouts = new HashMap<>();
+        List<Forward> forwards = forwardService.list(new QueryWrapper<Forward>().in("user_id", userIds));
+        if (forwards.isEmpty()) {
+            return layouts;
+        }
+        Set<Integer> tunnelIds = forwards.stream().map(Forward::getTunnelId).collect(Collectors.toSet());
+        Map<Long, Tunnel> tunnels = tunnelService.listByIds(tunnelIds).stream()
+                .collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+        Map<String, UserTunnel> userTunnels = userTunnelService.list(new QueryWrapper<UserTunnel>().in("user_id", userIds))
+                .stream()
+                .collect(Collectors.toMap(ut -> ut.getUserId() + "_" + ut.getTunnelId(), Function.identity(), (a, b) -> a));
+        Set<Integer> speedIds = userTunnels.values().stream()
+                .map(UserTunnel::getSpeedId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, Integer> speeds = speedIds.isEmpty() ? Collections.emptyMap()
+                : speedLimitService.listByIds(speedIds).stream()
+                .collect(Collectors.toMap(SpeedLimit::getId, SpeedLimit::getSpeed, (a, b) -> a));
+
+        for (Forward forward : forwards) {
+            Tunnel tunnel = tunnels.get(forward.getTunnelId().longValue());
+            UserTunnel userTunnel = userTunnels.get(forward.getUserId() + "_" + forward.getTunnelId());
+            if (tunnel == null || userTunnel == null) {
+                continue;
+            }
+            NodeServices services = layouts.computeIfAbsent(forward.getUserId().longValue(), k -> new HashMap<>())
+                    .computeIfAbsent(tunnel.getInNodeId(), k -> new NodeServices());
+            services.namesByRule.computeIfAbsent(userTunnel.getSpeedId(), k -> new ArrayList<>())
+                    .add(forward.getId() + "_" + forward.getUserId() + "_" + userTunnel.getId());
+            Integer speed = userTunnel.getSpeedId() != null ? speeds.get(userTunnel.getSpeedId().longValue()) : null;
+            if (speed != null) {
+                // 用户限流器替代了限速规则，份额不超过该节点上最严格的规则
+                services.ceiling = Math.min(services.ceiling, speed * MBPS_TO_BYTES);
+            }
+        }
+        return layouts;
+    }
+
+    private void pushLimiter(Long nodeId, Long userId, long share) {
+        JSONObject limiter = GostUtil.createUserLimiterData(userId, share);
+        try {
+            GostDto result = GostUtil.UpdateLimiters(nodeId, limiter);
+            if (result.getMsg() != null && result.getMsg().contains(GOST_NOT_FOUND_MSG)) {
+                result = GostUtil.AddLimiters(nodeId, limiter);
+            }
+            if (!Objects.equals(result.getMsg(), "OK")) {
+                log.info("节点 {} 用户限流器 {} 更新失败: {}", nodeId, limiter.getString("name"), result.getMsg());
+            }
+        } catch (Exception e) {
+            log.error("节点 {} 用户限流器 {} 更新异常: {}", nodeId, limiter.getString("name"), e.getMessage());
+        }
+    }
+
+    private void deleteLimiter(Long nodeId, String limiter) {
+        try {
+            GostDto result = GostUtil.DeleteLimiters(nodeId, limiter);
+            if (!Objects.equals(result.getMsg(), "OK") && (result.getMsg() == null || !result.getMsg().contains(GOST_NOT_FOUND_MSG))) {
+                log.info("节点 {} 用户限流器 {} 删除失败: {}", nodeId, limiter, result.getMsg());
+            }
+        } catch (Exception e) {
+            log.error("节点 {} 用户限流器 {} 删除异常: {}", nodeId, limiter, e.getMessage());
+        }
+    }
+
+    private void setServicesLimiter(Long nodeId, List<String> names, String limiter) {
+        try {
+            GostDto result = GostUtil.SetServiceLimiter(nodeId, names, limiter);
+            if (!Objects.equals(result.getMsg(), "OK")) {
+                log.info("节点 {} 服务限流器切换为 {} 失败: {}", nodeId, limiter, result.getMsg());
+            }
+        } catch (Exception e) {
+            log.error("节点 {} 服务限流器切换异常: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 用户在单个入口节点上的服务
+     */
+    private static class NodeServices {
+        // 限速规则ID -> 服务基础名称，没有规则时key为null
+        private final Map<Integer, List<String>> namesByRule = new HashMap<>();
+        private long ceiling = Long.MAX_VALUE;
+
+        private List<String> allNames() {
+            List<String> names = new ArrayList<>();
+            namesByRule.values().forEach(names::addAll);
+            return names;
+        }
+    }
+}
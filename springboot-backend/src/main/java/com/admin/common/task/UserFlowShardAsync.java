@@ -0,0 +1,37 @@
+package com.admin.common.task;
+
+import com.admin.service.UserFlowShardService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.Resource;
+
+/**
+ * 用户流量分片合并任务
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class UserFlowShardAsync {
+
+    @Resource
+    UserFlowShardService userFlowShardService;
+
+    /**
+     * 每30秒把分片中的流量合并回用户表
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void compactUserFlowShards() {
+        try {
+            long start = System.currentTimeMillis();
+            int merged = userFlowShardService.compact();
+            if (merged > 0) {
+                log.debug("合并 {} 个用户流量分片，耗时 {}ms", merged, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.info("合并用户流量分片失败", e);
+        }
+    }
+}
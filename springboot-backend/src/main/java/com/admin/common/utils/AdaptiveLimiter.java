@@ -0,0 +1,131 @@
+package com.admin.common.utils;
+
+import java.util.*;
+
+/**
+ * 自适应限速
+ * 开启自适应的限速规则在入口节点上行拥塞（发送速率达到上行带宽的90%）时，
+ * 占用最高的规则按当前速率收紧到七成，每次收紧后观察一段时间再决定是否继续；
+ * 节点负载降到七成以下后每轮放宽25%，直到恢复为规则配置的速度。
+ * 只在内存中记录被收紧的规则，面板重启后由AdaptiveLimitAsync按配置值重新下发
+ */
+public class AdaptiveLimiter {
+
+    private static final double SATURATED = 0.9;
+    private static final double RELIEVED = 0.7;
+
+    // 速率达到节点上自适应规则总速率该比例的规则视为占用大户
+    private static final double HEAVY_SHARE = 0.25;
+
+    private static final double TIGHTEN_FACTOR = 0.7;
+    private static final double RELAX_FACTOR = 1.25;
+
+    // 收紧后的速度不低于配置值的该比例
+    private static final double MIN_FACTOR = 0.2;
+
+    // 同一节点两次收紧之间的最短间隔（毫秒），等待上一次收紧生效
+    private static final long HOLD_MS = 15 * 1000L;
+
+    // 规则ID -> [当前限速, 收紧时的配置限速]（字节/秒）
+    private static final Map<Long, long[]> tightened = new HashMap<>();
+
+    // 节点ID -> 最近一次收紧的时间
+    private static final Map<Long, Long> lastTighten = new HashMap<>();
+
+    /**
+     * 规则当前被收紧后的限速（字节/秒），未收紧时返回null
+     */
+    public static synchronized Long current(Long ruleId) {
+        long[] state = tightened.get(ruleId);
+        return state == null ? null : state[0];
+    }
+
+    /**
+     * 规则被修改或删除后清除收紧状态，修改时已按配置值下发
+     */
+    public static synchronized void reset(Long ruleId) {
+        tightened.remove(ruleId);
+    }
+
+    /**
+     * 根据节点负载调整该节点上的自适应规则
+     * @param utilization 节点发送速率与上行带宽之比，未知时传0
+     * @param rules 该节点上开启自适应的规则：ID -> [配置的限速, 当前速率]（字节/秒），
+     *              限速作用于每个方向，当前速率取上下行中较大的一个
+     * @return 需要下发的规则限速，恢复为配置值的规则也包含在内
+     */
+    public static synchronized Map<Long, Long> adjust(long nodeId, double utilization, Map<Long, long[]> rules) {
+        Map<Long, Long> changes = new HashMap<>();
+        for (Map.Entry<Long, long[]> entry : rules.entrySet()) {
+            long[] state = tightened.get(entry.getKey());
+            if (state != null && state[1] != entry.getValue()[0]) {
+                // 配置值已被修改，以新配置为准重新开始
+                tightened.remove(entry.getKey());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (utilization >= SATURATED) {
+            if (now - lastTighten.getOrDefault(nodeId, 0L) < HOLD_MS) {
+                return changes;
+            }
+            for (Long ruleId : heaviest(rules)) {
+                long configured = rules.get(ruleId)[0];
+                long rate = rules.get(ruleId)[1];
+                long current = tightened.containsKey(ruleId) ? tightened.get(ruleId)[0] : configured;
+                long target = Math.max((long) (configured * MIN_FACTOR), (long) (Math.min(current, rate) * TIGHTEN_FACTOR));
+                if (target < current) {
+                    tightened.put(ruleId, new long[]{target, configured});
+                    changes.put(ruleId, target);
+                }
+            }
+            if (!changes.isEmpty()) {
+                lastTighten.put(nodeId, now);
+            }
+        } else if (utilization < RELIEVED) {
+            for (Long ruleId : rules.keySet()) {
+                long[] state = tightened.get(ruleId);
+                if (state == null) {
+                    continue;
+                }
+                long next = (long) (state[0] * RELAX_FACTOR);
+                if (next >= state[1]) {
+                    tightened.remove(ruleId);
+                    changes.put(ruleId, state[1]);
+                } else {
+                    state[0] = next;
+                    changes.put(ruleId, next);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * 占用大户：速率不低于总速率一定比例的规则，没有时取速率最高的一个
+     */
+    private static List<Long> heaviest(Map<Long, long[]> rules) {
+        long total = 0;
+        for (long[] value : rules.values()) {
+            total += value[1];
+        }
+        List<Long> heavy = new ArrayList<>();
+        if (total <= 0) {
+            return heavy;
+        }
+        Long top = null;
+        for (Map.Entry<Long, long[]> entry : rules.entrySet()) {
+            long rate = entry.getValue()[1];
+            if (rate >= total * HEAVY_SHARE) {
+                heavy.add(entry.getKey());
+            }
+            if (top == null || rate > rules.get(top)[1]) {
+                top = entry.getKey();
+            }
+        }
+        if (heavy.isEmpty()) {
+            heavy.add(top);
+        }
+        return heavy;
+    }
+}
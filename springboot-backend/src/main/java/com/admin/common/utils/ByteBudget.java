@@ -0,0 +1,105 @@
+package com.admin.common.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 节点本地流量预算
+ * 面板按服务（转发的_tcp/_udp服务）向节点分配可使用的字节数，节点未上报的流量达到预算时先上报，
+ * 面板不再追加时由节点自行暂停服务，超额不再取决于 上报-写库-检查-下发暂停 的往返耗时。
+ * <p>
+ * 分配出去而尚未上报的预算视为租约，同一用户、同一用户隧道下所有服务的租约之和不超过剩余流量；
+ * 每次上报用新的预算替换该服务的旧租约，长时间没有上报的租约过期后归还
+ */
+public class ByteBudget {
+
+    public static final long UNLIMITED = -1;
+
+    // 单次分配的上限
+    private static final long MAX_GRANT = 1024L * 1024 * 1024;
+
+    // 每次最多分配剩余可分配流量的几分之一，给同一用户的其他服务留出余量
+    private static final int GRANT_DIVISOR = 2;
+
+    private static final long LEASE_TTL_MS = 10 * 60 * 1000L;
+
+    private static final Map<String, Lease> leases = new HashMap<>();
+    private static final Map<Long, Long> userOutstanding = new HashMap<>();
+    private static final Map<Long, Long> userTunnelOutstanding = new HashMap<>();
+
+    /**
+     * 为一次上报后的服务分配新的预算，替换该服务原有的租约
+     * @param service 上报的服务名
+     * @param userRemaining 用户剩余流量（字节），不限时为Long.MAX_VALUE
+     * @param userTunnelRemaining 用户隧道剩余流量（字节），不限时为Long.MAX_VALUE
+     * @return 预算字节数，不限时为UNLIMITED；剩余流量已被其他服务的租约占满时为0，节点随即暂停该服务
+     */
+    public static synchronized long grant(String service, long userId, long userTunnelId,
+                                          long userRemaining, long userTunnelRemaining) {
+        Lease old = leases.remove(service);
+        if (old != null) {
+            release(old);
+        }
+        if (userRemaining == Long.MAX_VALUE && userTunnelRemaining == Long.MAX_VALUE) {
+            return UNLIMITED;
+        }
+
+        long available = Math.min(userRemaining - userOutstanding.getOrDefault(userId, 0L),
+                userTunnelRemaining - userTunnelOutstanding.getOrDefault(userTunnelId, 0L));
+        // 租约之和不能超过剩余流量，没有可分配的余量时不再分配
+        long budget = available > 0 ? Math.max(1, Math.min(MAX_GRANT, available / GRANT_DIVISOR)) : 0;
+
+        Lease lease = new Lease(userId, userTunnelId, budget, System.currentTimeMillis());
+        leases.put(service, lease);
+        userOutstanding.merge(userId, budget, Long::sum);
+        userTunnelOutstanding.merge(userTunnelId, budget, Long::sum);
+        return budget;
+    }
+
+    /**
+     * 服务当前持有的预算，下发服务配置时携带，没有租约时返回null
+     */
+    public static synchronized Long current(String service) {
+        Lease lease = leases.get(service);
+        return lease == null ? null : lease.bytes;
+    }
+
+    /**
+     * 归还过期的租约
+     * @return 归还的租约数
+     */
+    public static synchronized int expire() {
+        long deadline = System.currentTimeMillis() - LEASE_TTL_MS;
+        int count = 0;
+        Iterator<Lease> it = leases.values().iterator();
+        while (it.hasNext()) {
+            Lease lease = it.next();
+            if (lease.grantedAt < deadline) {
+                it.remove();
+                release(lease);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void release(Lease lease) {
+        userOutstanding.computeIfPresent(lease.userId, (k, v) -> v - lease.bytes > 0 ? v - lease.bytes : null);
+        userTunnelOutstanding.computeIfPresent(lease.userTunnelId, (k, v) -> v - lease.bytes > 0 ? v - lease.bytes : null);
+    }
+
+    private static class Lease {
+        private final long userId;
+        private final long userTunnelId;
+        private final long bytes;
+        private final long grantedAt;
+
+        private Lease(long userId, long userTunnelId, long bytes, long grantedAt) {
+            this.userId = userId;
+            this.userTunnelId = userTunnelId;
+            this.bytes = bytes;
+            this.grantedAt = grantedAt;
+        }
+    }
+}
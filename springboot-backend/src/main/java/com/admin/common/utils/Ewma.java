@@ -0,0 +1,31 @@
+package com.admin.common.utils;
+
+/**
+ * 按时间衰减的指数加权速率
+ * 每次更新时按距上次更新的时间对速率做指数衰减，再加上 本次数量/时间常数，
+ * 稳定输入下结果收敛到每秒的数量，且不受更新间隔的影响；
+ * 读取时再按距上次更新的时间衰减，停止输入后速率自然降为0
+ */
+public class Ewma {
+
+    // 时间常数（毫秒），约等于平滑窗口长度
+    public static final double TAU_MS = 30 * 1000.0;
+
+    /**
+     * 经过elapsedMs毫秒后的衰减系数
+     */
+    public static double decay(long elapsedMs) {
+        return elapsedMs <= 0 ? 1 : Math.exp(-elapsedMs / TAU_MS);
+    }
+
+    /**
+     * 在上次的速率上计入一次输入
+     * @param rate 上次更新后的速率（每秒）
+     * @param elapsedMs 距上次更新的毫秒数
+     * @param amount 本次输入的数量
+     * @return 更新后的速率（每秒）
+     */
+    public static double update(double rate, long elapsedMs, double amount) {
+        return rate * decay(elapsedMs) + amount * 1000.0 / TAU_MS;
+    }
+}
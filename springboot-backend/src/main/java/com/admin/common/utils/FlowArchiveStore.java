@@ -0,0 +1,400 @@
+package com.admin.common.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 流量归档段文件存储
+ * 超出数据库保留期的时间桶按批写成只追加的段文件，文件写入后不再修改。
+ * 段内按 (对象ID, 时间) 排序后按列存放：ID列和时间列存差值，数值列存zigzag编码，均为varint，
+ * 读取时通过内存映射访问，先解码ID列定位目标行，不包含目标对象的段不会解码其余列。
+ * <p>
+ * 文件名为 seg-最小时间-最大时间.seg，按时间范围查询时只需根据文件名筛选；
+ * 所有段的最大时间即归档水位，水位之前的数据以归档为准，之后的仍在数据库中
+ */
+@Slf4j
+public class FlowArchiveStore {
+
+    private static final int MAGIC = 0x46534547; // FSEG
+    private static final byte VERSION = 1;
+    private static final String SUFFIX = ".seg";
+
+    // 固定头部：魔数4 版本1 数值列数1 保留2 行数4 最小时间8 最大时间8 CRC8，之后每列一个int长度
+    private static final int FIXED_HEADER = 36;
+
+    private final Path dir;
+    private final int valueColumns;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Path, ByteBuffer> mapped = new ConcurrentHashMap<>();
+    private volatile long watermark = Long.MIN_VALUE;
+
+    /**
+     * @param dir 段文件目录，不存在时自动创建
+     * @param valueColumns 每行的数值列数
+     */
+    public FlowArchiveStore(Path dir, int valueColumns) throws IOException {
+        this.dir = dir;
+        this.valueColumns = valueColumns;
+        Files.createDirectories(dir);
+        List<Segment> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Segment segment = Segment.parse(file);
+                if (segment != null) {
+                    loaded.add(segment);
+                }
+            });
+        }
+        loaded.sort(Comparator.comparingLong(s -> s.minTime));
+        segments.addAll(loaded);
+        for (Segment segment : loaded) {
+            watermark = Math.max(watermark, segment.maxTime);
+        }
+    }
+
+    /**
+     * 归档水位：已归档数据的最大时间，没有归档数据时为Long.MIN_VALUE
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 写入一个新段
+     * @param batch 待归档的行，时间必须都大于当前水位
+     * @return 写入的段文件大小（字节），没有数据时返回0
+     */
+    public synchronized long append(Batch batch) throws IOException {
+        if (batch.size == 0) {
+            return 0;
+        }
+        if (batch.valueColumns != valueColumns) {
+            throw new IllegalArgumentException("数值列数不匹配");
+        }
+
+        Integer[] order = new Integer[batch.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> batch.ids[a] != batch.ids[b]
+                ? Long.compare(batch.ids[a], batch.ids[b]) : Long.compare(batch.times[a], batch.times[b]));
+
+        long minTime = Long.MAX_VALUE, maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < batch.size; i++) {
+            minTime = Math.min(minTime, batch.times[i]);
+            maxTime = Math.max(maxTime, batch.times[i]);
+        }
+        if (minTime <= watermark) {
+            throw new IllegalArgumentException("归档数据早于当前水位");
+        }
+
+        VarintWriter idColumn = new VarintWriter(batch.size * 2);
+        VarintWriter timeColumn = new VarintWriter(batch.size * 4);
+        VarintWriter[] valueColumnWriters = new VarintWriter[valueColumns];
+        for (int c = 0; c < valueColumns; c++) {
+            valueColumnWriters[c] = new VarintWriter(batch.size * 4);
+        }
+        long prevId = 0, prevTime = minTime;
+        for (int n = 0; n < order.length; n++) {
+            int row = order[n];
+            long id = batch.ids[row];
+            if (n == 0 || id != prevId) {
+                prevTime = minTime;
+            }
+            idColumn.write(id - prevId);
+            timeColumn.write(batch.times[row] - prevTime);
+            for (int c = 0; c < valueColumns; c++) {
+                valueColumnWriters[c].write(zigzag(batch.values[c][row]));
+            }
+            prevId = id;
+            prevTime = batch.times[row];
+        }
+
+        VarintWriter[] columns = new VarintWriter[2 + valueColumns];
+        columns[0] = idColumn;
+        columns[1] = timeColumn;
+        System.arraycopy(valueColumnWriters, 0, columns, 2, valueColumns);
+
+        int bodyLength = 0;
+        for (VarintWriter column : columns) {
+            bodyLength += column.size;
+        }
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        for (VarintWriter column : columns) {
+            body.put(column.buf, 0, column.size);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodyLength);
+
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER + 4 * columns.length);
+        header.putInt(MAGIC).put(VERSION).put((byte) valueColumns).putShort((short) 0)
+                .putInt(batch.size).putLong(minTime).putLong(maxTime).putLong(crc.getValue());
+        for (VarintWriter column : columns) {
+            header.putInt(column.size);
+        }
+        header.flip();
+        body.flip();
+
+        // 先写临时文件并刷盘，再原子改名，进程中断时不会留下不完整的段
+        Path target = dir.resolve("seg-" + minTime + "-" + maxTime + SUFFIX);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        segments.add(new Segment(target, minTime, maxTime));
+        watermark = maxTime;
+        return header.capacity() + bodyLength;
+    }
+
+    /**
+     * 扫描某个对象在时间范围内的归档行，按段的写入顺序回调
+     * @param startTime 开始时间（含）
+     * @param endTime 结束时间（不含）
+     */
+    public void scan(long targetId, long startTime, long endTime, RowConsumer consumer) {
+        long[] values = new long[valueColumns];
+        for (Segment segment : segments) {
+            if (segment.maxTime < startTime || segment.minTime >= endTime) {
+                continue;
+            }
+            ByteBuffer buffer = map(segment.path);
+            if (buffer != null) {
+                scanSegment(buffer, targetId, startTime, endTime, values, consumer);
+            }
+        }
+    }
+
+    private void scanSegment(ByteBuffer buffer, long targetId, long startTime, long endTime, long[] values, RowConsumer consumer) {
+        int rows = buffer.getInt(8);
+        long minTime = buffer.getLong(12);
+        int columnCount = 2 + valueColumns;
+        int[] offsets = new int[columnCount];
+        int offset = FIXED_HEADER + 4 * columnCount;
+        for (int c = 0; c < columnCount; c++) {
+            offsets[c] = offset;
+            offset += buffer.getInt(FIXED_HEADER + 4 * c);
+        }
+
+        // ID列有序，先找出目标对象所在的行区间
+        VarintReader idReader = new VarintReader(buffer, offsets[0]);
+        int first = -1, last = -1;
+        long id = 0;
+        for (int row = 0; row < rows; row++) {
+            id += idReader.next();
+            if (id == targetId) {
+                if (first < 0) {
+                    first = row;
+                }
+                last = row;
+            } else if (id > targetId) {
+                break;
+            }
+        }
+        if (first < 0) {
+            return;
+        }
+
+        VarintReader timeReader = new VarintReader(buffer, offsets[1]);
+        VarintReader[] valueReaders = new VarintReader[valueColumns];
+        for (int c = 0; c < valueColumns; c++) {
+            valueReaders[c] = new VarintReader(buffer, offsets[2 + c]);
+        }
+        for (int row = 0; row < first; row++) {
+            timeReader.next();
+            for (VarintReader reader : valueReaders) {
+                reader.next();
+            }
+        }
+        long time = minTime;
+        for (int row = first; row <= last; row++) {
+            time += timeReader.next();
+            for (int c = 0; c < valueColumns; c++) {
+                values[c] = unzigzag(valueReaders[c].next());
+            }
+            if (time >= startTime && time < endTime) {
+                consumer.accept(time, values);
+            }
+        }
+    }
+
+    /**
+     * 映射段文件并在首次映射时校验CRC，损坏的段记录日志后跳过
+     */
+    private ByteBuffer map(Path path) {
+        ByteBuffer cached = mapped.get(path);
+        if (cached != null) {
+            return cached.duplicate();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!verify(buffer)) {
+                log.error("归档段校验失败，已跳过: {}", path);
+                return null;
+            }
+            mapped.put(path, buffer);
+            return buffer.duplicate();
+        } catch (IOException e) {
+            log.error("读取归档段失败: {}", path, e);
+            return null;
+        }
+    }
+
+    private boolean verify(ByteBuffer buffer) {
+        if (buffer.capacity() < FIXED_HEADER || buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION
+                || buffer.get(5) != valueColumns) {
+            return false;
+        }
+        int bodyStart = FIXED_HEADER + 4 * (2 + valueColumns);
+        if (buffer.capacity() < bodyStart) {
+            return false;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(bodyStart);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return crc.getValue() == buffer.getLong(28);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 待归档的一批行，按列存放
+     */
+    public static class Batch {
+        private final int valueColumns;
+        private long[] ids;
+        private long[] times;
+        private long[][] values;
+        private int size;
+
+        public Batch(int valueColumns, int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            this.valueColumns = valueColumns;
+            this.ids = new long[capacity];
+            this.times = new long[capacity];
+            this.values = new long[valueColumns][capacity];
+        }
+
+        public void add(long id, long time, long... rowValues) {
+            if (size == ids.length) {
+                int capacity = size << 1;
+                ids = Arrays.copyOf(ids, capacity);
+                times = Arrays.copyOf(times, capacity);
+                for (int c = 0; c < valueColumns; c++) {
+                    values[c] = Arrays.copyOf(values[c], capacity);
+                }
+            }
+            ids[size] = id;
+            times[size] = time;
+            for (int c = 0; c < valueColumns; c++) {
+                values[c][size] = rowValues[c];
+            }
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(long time, long[] values);
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long minTime;
+        private final long maxTime;
+
+        private Segment(Path path, long minTime, long maxTime) {
+            this.path = path;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+
+        private static Segment parse(Path path) {
+            String name = path.getFileName().toString();
+            if (!name.startsWith("seg-") || !name.endsWith(SUFFIX)) {
+                return null;
+            }
+            String[] range = name.substring(4, name.length() - SUFFIX.length()).split("-");
+            try {
+                return new Segment(path, Long.parseLong(range[0]), Long.parseLong(range[1]));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class VarintWriter {
+        private byte[] buf;
+        private int size;
+
+        private VarintWriter(int capacity) {
+            buf = new byte[Math.max(16, capacity)];
+        }
+
+        private void write(long value) {
+            if (size + 10 > buf.length) {
+                buf = Arrays.copyOf(buf, buf.length << 1);
+            }
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+    }
+
+    private static class VarintReader {
+        private final ByteBuffer buffer;
+        private int position;
+
+        private VarintReader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private long next() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.admin.common.utils;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 转发、用户隧道、隧道的实时速率估算
+ * 每次流量上报按指数加权速率（Ewma）累计，稳定流量下结果收敛到实际的字节/秒，
+ * 且不受上报间隔和上报节点数量（tcp/udp分别上报）的影响，停止上报的对象速率自然降为0。
+ * 对象ID映射为连续下标，速率存放在基本类型数组中，只在内存中维护，不写数据库
+ */
+public class FlowRateEstimator {
+
+    public static final int TYPE_FORWARD = 1;
+    public static final int TYPE_USER_TUNNEL = 2;
+    public static final int TYPE_TUNNEL = 3;
+
+    // 低于该速率（字节/秒）视为空闲，不在推送中出现
+    private static final long IDLE_RATE = 1;
+
+    private static final RateTable forwards = new RateTable();
+    private static final RateTable userTunnels = new RateTable();
+    private static final RateTable tunnels = new RateTable();
+
+    /**
+     * 记录一次上报的字节数
+     * @param inBytes 入站（下载）字节数
+     * @param outBytes 出站（上传）字节数
+     */
+    public static void record(int type, long id, long inBytes, long outBytes) {
+        RateTable table = table(type);
+        if (table != null && (inBytes > 0 || outBytes > 0)) {
+            table.record(id, inBytes, outBytes, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 获取对象当前的入站、出站速率（字节/秒），没有记录时返回 [0, 0]
+     */
+    public static long[] rate(int type, long id) {
+        RateTable table = table(type);
+        return table == null ? new long[2] : table.rate(id, System.currentTimeMillis());
+    }
+
+    /**
+     * 获取某类对象中所有非空闲对象的速率
+     */
+    public static List<Rate> active(int type) {
+        RateTable table = table(type);
+        return table == null ? new ArrayList<>() : table.active(System.currentTimeMillis());
+    }
+
+    private static RateTable table(int type) {
+        switch (type) {
+            case TYPE_FORWARD:
+                return forwards;
+            case TYPE_USER_TUNNEL:
+                return userTunnels;
+            case TYPE_TUNNEL:
+                return tunnels;
+            default:
+                return null;
+        }
+    }
+
+    @Data
+    public static class Rate {
+        private long id;
+        // 字节/秒
+        private long inRate;
+        private long outRate;
+    }
+
+    /**
+     * 一类对象的速率表：ID到下标的映射加上按下标存放的数组，只增不减，
+     * 大小为启动以来出现过的对象数
+     */
+    private static class RateTable {
+        private final LongLongMap index = new LongLongMap(256);
+        private long[] ids = new long[256];
+        private double[] inRates = new double[256];
+        private double[] outRates = new double[256];
+        private long[] updated = new long[256];
+        private int size;
+
+        private synchronized void record(long id, long inBytes, long outBytes, long now) {
+            int i = (int) index.get(id, -1);
+            if (i < 0) {
+                i = size++;
+                if (i == ids.length) {
+                    int capacity = ids.length << 1;
+                    ids = Arrays.copyOf(ids, capacity);
+                    inRates = Arrays.copyOf(inRates, capacity);
+                    outRates = Arrays.copyOf(outRates, capacity);
+                    updated = Arrays.copyOf(updated, capacity);
+                }
+                ids[i] = id;
+                updated[i] = now;
+                index.put(id, i);
+            }
+            inRates[i] = Ewma.update(inRates[i], now - updated[i], inBytes);
+            outRates[i] = Ewma.update(outRates[i], now - updated[i], outBytes);
+            updated[i] = Math.max(updated[i], now);
+        }
+
+        private synchronized long[] rate(long id, long now) {
+            int i = (int) index.get(id, -1);
+            if (i < 0) {
+                return new long[2];
+            }
+            double decay = Ewma.decay(now - updated[i]);
+            return new long[]{(long) (inRates[i] * decay), (long) (outRates[i] * decay)};
+        }
+
+        private synchronized List<Rate> active(long now) {
+            List<Rate> list = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                double decay = Ewma.decay(now - updated[i]);
+                long inRate = (long) (inRates[i] * decay);
+                long outRate = (long) (outRates[i] * decay);
+                if (inRate >= IDLE_RATE || outRate >= IDLE_RATE) {
+                    Rate rate = new Rate();
+                    rate.setId(ids[i]);
+                    rate.setInRate(inRate);
+                    rate.setOutRate(outRate);
+                    list.add(rate);
+                }
+            }
+            return list;
+        }
+    }
+}
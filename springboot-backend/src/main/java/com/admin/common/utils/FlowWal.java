@@ -0,0 +1,231 @@
+package com.admin.common.utils;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 流量增量预写日志
+ * 内存中尚未写入数据库的流量增量，在确认节点上报前先以定长二进制记录追加到内存映射的日志段，
+ * 进程崩溃或被强制结束时已写入映射区的记录仍由操作系统落盘，启动时重放恢复。
+ * <p>
+ * 日志段文件名为 wal-代号.log，每次批量写库前切换到新代号的段，
+ * 写库完成（失败的增量已重新追加到新段）后删除旧代号的段，日志只保留尚未写库的增量。
+ * 写库与删除旧段之间崩溃时旧段仍在，由调用方根据与计数同一事务记录的写库进度判断是否已写库
+ */
+@Slf4j
+public class FlowWal {
+
+    private static final int MAGIC = 0x46574C47; // FWLG
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    // 段头：魔数4 保留4 代号8
+    private static final int HEADER = 16;
+
+    // 记录：类型4 节点8 上报流8 序号8 隧道8 计费入站8 计费出站8 实际入站8 实际出站8 CRC4
+    private static final int RECORD_SIZE = 72;
+    private static final int RECORD_TYPE = 1;
+
+    private final Path dir;
+    private final int initialCapacity;
+    private final TreeMap<Long, Path> sealed = new TreeMap<>();
+
+    private long generation;
+    private Path activePath;
+    private MappedByteBuffer active;
+
+    /**
+     * 打开日志目录，已有的段在重放并调用rotate之后才会被删除
+     * @param initialCapacity 新段的初始大小（字节），写满后按倍数扩容
+     */
+    public FlowWal(Path dir, int initialCapacity) throws IOException {
+        this.dir = dir;
+        this.initialCapacity = Math.max(initialCapacity, HEADER + RECORD_SIZE);
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Long gen = parseGeneration(file);
+                if (gen != null) {
+                    sealed.put(gen, file);
+                }
+            });
+        }
+        generation = sealed.isEmpty() ? 0 : sealed.lastKey();
+    }
+
+    /**
+     * 按代号顺序读出已有段中的记录，遇到不完整或校验失败的记录时该段后续内容作废
+     * @param consumer 参数为记录所在段的代号和记录
+     */
+    public synchronized int replay(BiConsumer<Long, Record> consumer) {
+        int count = 0;
+        for (Map.Entry<Long, Path> entry : sealed.entrySet()) {
+            try (FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+                    log.error("流量日志段头部无效，已跳过: {}", entry.getValue());
+                    continue;
+                }
+                for (int offset = HEADER; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+                    Record record = read(buffer, offset);
+                    if (record == null) {
+                        break;
+                    }
+                    consumer.accept(entry.getKey(), record);
+                    count++;
+                }
+            } catch (IOException e) {
+                log.error("读取流量日志段失败: {}", entry.getValue(), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 保证之后新建的段代号大于给定值，日志目录被清空而数据库中仍有写库进度时避免代号重复
+     */
+    public synchronized void skipTo(long gen) {
+        if (generation < gen) {
+            generation = gen;
+        }
+    }
+
+    /**
+     * 切换到新代号的段，此前的段都变为待删除
+     * @return 新段的代号，之后调用truncateBefore传入该代号即可删除旧段
+     */
+    public synchronized long rotate() throws IOException {
+        long next = generation + 1;
+        Path path = dir.resolve(PREFIX + next + SUFFIX);
+        MappedByteBuffer buffer = map(path, initialCapacity);
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(8, next);
+        buffer.position(HEADER);
+        if (active != null) {
+            sealed.put(generation, activePath);
+        }
+        generation = next;
+        activePath = path;
+        active = buffer;
+        return next;
+    }
+
+    /**
+     * 追加一条记录到当前段，段写满时扩容
+     */
+    public synchronized void append(Record record) throws IOException {
+        if (active == null) {
+            throw new IllegalStateException("流量日志尚未打开当前段");
+        }
+        if (active.remaining() < RECORD_SIZE) {
+            int position = active.position();
+            active = map(activePath, (long) active.capacity() << 1);
+            active.position(position);
+        }
+        int offset = active.position();
+        active.putLong(offset + 4, record.nodeId).putLong(offset + 12, record.stream)
+                .putLong(offset + 20, record.seq).putLong(offset + 28, record.tunnelId)
+                .putLong(offset + 36, record.inFlow).putLong(offset + 44, record.outFlow)
+                .putLong(offset + 52, record.rawInFlow).putLong(offset + 60, record.rawOutFlow);
+        active.putInt(offset + 68, (int) checksum(active, offset));
+        // 类型最后写入，进程在写记录中途中断时该位置仍为0，重放到此结束
+        active.putInt(offset, RECORD_TYPE);
+        active.position(offset + RECORD_SIZE);
+    }
+
+    /**
+     * 删除代号小于给定值的段
+     */
+    public synchronized void truncateBefore(long gen) {
+        Iterator<Map.Entry<Long, Path>> it = sealed.headMap(gen).entrySet().iterator();
+        while (it.hasNext()) {
+            Path path = it.next().getValue();
+            try {
+                Files.deleteIfExists(path);
+                it.remove();
+            } catch (IOException e) {
+                log.error("删除流量日志段失败: {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * 把当前段已写入的内容刷到磁盘，用于正常停机
+     */
+    public synchronized void force() {
+        if (active != null) {
+            active.force();
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static Record read(MappedByteBuffer buffer, int offset) {
+        if (buffer.getInt(offset) != RECORD_TYPE || buffer.getInt(offset + 68) != (int) checksum(buffer, offset)) {
+            return null;
+        }
+        Record record = new Record();
+        record.nodeId = buffer.getLong(offset + 4);
+        record.stream = buffer.getLong(offset + 12);
+        record.seq = buffer.getLong(offset + 20);
+        record.tunnelId = buffer.getLong(offset + 28);
+        record.inFlow = buffer.getLong(offset + 36);
+        record.outFlow = buffer.getLong(offset + 44);
+        record.rawInFlow = buffer.getLong(offset + 52);
+        record.rawOutFlow = buffer.getLong(offset + 60);
+        return record;
+    }
+
+    private static long checksum(MappedByteBuffer buffer, int offset) {
+        CRC32 crc = new CRC32();
+        for (int i = offset + 4; i < offset + 68; i += 8) {
+            long value = buffer.getLong(i);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                crc.update((int) (value >>> shift));
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static Long parseGeneration(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一条增量记录，不涉及的对象ID为-1，没有上报序号时seq为0
+     */
+    @Data
+    public static class Record {
+        private long nodeId = -1;
+        // 上报流标识（节点ID与服务名的散列），用于按序号去重
+        private long stream;
+        private long seq;
+        private long tunnelId = -1;
+        private long inFlow;
+        private long outFlow;
+        private long rawInFlow;
+        private long rawOutFlow;
+    }
+}
@@ -2,16 +2,26 @@ package com.admin.common.utils;
 
 import com.admin.common.dto.GostConfigDto;
 import com.admin.common.dto.GostDto;
+import com.admin.common.dto.NodeConfigSnapshotDto;
 import com.admin.entity.Tunnel;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.apache.bcel.generic.RET;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GostUtil {
 
+    private static final String WEIGHTED_FAIL_TIMEOUT = "30s";
+
+    // 多目标转发的测速权重，key为服务名称。
+    // 权重只在rand策略下影响选择，fifo/round/hash忽略权重；不可达的目标标记为backup，所有策略都只在其他目标全部失败时才使用它
+    private static final Map<String, TargetWeights> TARGET_WEIGHTS = new ConcurrentHashMap<>();
 
     public static GostDto AddLimiters(Long node_id, Long name, String speed) {
         JSONObject data = createLimiterData(name, speed);
@@ -27,29 +37,69 @@ public class GostUtil {
     }
 
     public static GostDto DeleteLimiters(Long node_id, Long name) {
+        return DeleteLimiters(node_id, name + "");
+    }
+
+    public static GostDto DeleteLimiters(Long node_id, String name) {
         JSONObject req = new JSONObject();
-        req.put("limiter", name + "");
+        req.put("limiter", name);
         return WebSocketServer.send_msg(node_id, req, "DeleteLimiters");
     }
 
+    /**
+     * 按已构建好的配置下发，用于配置对账
+     */
+    public static GostDto AddLimiters(Long node_id, JSONObject limiter) {
+        return WebSocketServer.send_msg(node_id, limiter, "AddLimiters");
+    }
+
+    public static GostDto UpdateLimiters(Long node_id, JSONObject limiter) {
+        JSONObject req = new JSONObject();
+        req.put("limiter", limiter.getString("name"));
+        req.put("data", limiter);
+        return WebSocketServer.send_msg(node_id, req, "UpdateLimiters");
+    }
+
+    public static GostDto AddChains(Long node_id, JSONObject chain) {
+        return WebSocketServer.send_msg(node_id, chain, "AddChains");
+    }
+
+    public static GostDto AddServices(Long node_id, JSONArray services) {
+        return WebSocketServer.send_msg(node_id, services, "AddService");
+    }
+
+    public static GostDto UpdateServices(Long node_id, JSONArray services) {
+        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+    }
+
+    /**
+     * 推送节点期望配置快照，节点据此补齐缺失项、删除多余项并同步暂停状态
+     */
+    public static GostDto SyncConfig(Long node_id, NodeConfigSnapshotDto snapshot) {
+        return WebSocketServer.send_msg(node_id, snapshot, "SyncConfig");
+    }
+
     public static GostDto AddService(Long node_id, String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
-        JSONArray services = new JSONArray();
-        String[] protocols = {"tcp", "udp"};
-        for (String protocol : protocols) {
-            JSONObject service = createServiceConfig(name, in_port, limiter, remoteAddr, protocol, fow_type, tunnel, strategy, interfaceName);
-            services.add(service);
-        }
+        JSONArray services = buildServiceConfigs(name, in_port, limiter, remoteAddr, fow_type, tunnel, strategy, interfaceName);
         return WebSocketServer.send_msg(node_id, services, "AddService");
     }
 
     public static GostDto UpdateService(Long node_id, String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
+        JSONArray services = buildServiceConfigs(name, in_port, limiter, remoteAddr, fow_type, tunnel, strategy, interfaceName);
+        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+    }
+
+    /**
+     * 构建转发主服务配置（_tcp和_udp两个服务）
+     */
+    public static JSONArray buildServiceConfigs(String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
         JSONArray services = new JSONArray();
         String[] protocols = {"tcp", "udp"};
         for (String protocol : protocols) {
             JSONObject service = createServiceConfig(name, in_port, limiter, remoteAddr, protocol, fow_type, tunnel, strategy, interfaceName);
             services.add(service);
         }
-        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+        return services;
     }
 
     public static GostDto DeleteService(Long node_id, String name) {
@@ -61,53 +111,54 @@ public class GostUtil {
         return WebSocketServer.send_msg(node_id, data, "DeleteService");
     }
 
-    public static GostDto AddRemoteService(Long node_id, String name, Integer out_port, String remoteAddr,  String protocol, String strategy, String interfaceName) {
+    /**
+     * 批量删除服务，节点跳过不存在的服务，跳过的名称在响应data的missing中返回
+     * @param services 完整的服务名称（含_tcp/_udp/_tls后缀）
+     */
+    public static GostDto DeleteServices(Long node_id, List<String> services) {
         JSONObject data = new JSONObject();
-        data.put("name", name + "_tls");
-        data.put("addr", ":" + out_port);
-
-        if (StringUtils.isNotBlank(interfaceName)) {
-            JSONObject metadata = new JSONObject();
-            metadata.put("interface", interfaceName);
-            data.put("metadata", metadata);
-        }
-
+        data.put("services", new JSONArray(new ArrayList<>(services)));
+        data.put("batch", true);
+        return WebSocketServer.send_msg(node_id, data, "DeleteService");
+    }
 
-        JSONObject handler = new JSONObject();
-        handler.put("type", "relay");
-        data.put("handler", handler);
-        JSONObject listener = new JSONObject();
-        listener.put("type", protocol);
-        data.put("listener", listener);
-        JSONObject forwarder = new JSONObject();
-        JSONArray nodes = new JSONArray();
+    /**
+     * 批量设置服务引用的限流器，只替换limiter字段
+     * @param names 服务基础名称，会同时设置_tcp和_udp服务
+     * @param limiter 限流器名称，为null时取消限速
+     */
+    public static GostDto SetServiceLimiter(Long node_id, List<String> names, Integer limiter) {
+        return SetServiceLimiter(node_id, names, limiter != null ? limiter.toString() : null);
+    }
 
-        String[] split = remoteAddr.split(",");
-        int num = 1;
-        for (String addr : split) {
-            JSONObject node = new JSONObject();
-            node.put("name", "node_" + num );
-            node.put("addr", addr);
-            nodes.add(node);
-            num ++;
-        }
-        if (strategy == null || strategy.equals("")){
-            strategy = "fifo";
+    public static GostDto SetServiceLimiter(Long node_id, List<String> names, String limiter) {
+        JSONArray services = new JSONArray();
+        for (String name : names) {
+            services.add(name + "_tcp");
+            services.add(name + "_udp");
         }
-        forwarder.put("nodes", nodes);
-        JSONObject selector = new JSONObject();
-        selector.put("strategy", strategy);
-        selector.put("maxFails", 1);
-        selector.put("failTimeout", "600s");
-        forwarder.put("selector", selector);
+        JSONObject data = new JSONObject();
+        data.put("services", services);
+        data.put("limiter", limiter != null ? limiter : "");
+        return WebSocketServer.send_msg(node_id, data, "SetServiceLimiter");
+    }
 
-        data.put("forwarder", forwarder);
+    public static GostDto AddRemoteService(Long node_id, String name, Integer out_port, String remoteAddr,  String protocol, String strategy, String interfaceName) {
         JSONArray services = new JSONArray();
-        services.add(data);
+        services.add(buildRemoteServiceConfig(name, out_port, remoteAddr, protocol, strategy, interfaceName));
         return WebSocketServer.send_msg(node_id, services, "AddService");
     }
 
     public static GostDto UpdateRemoteService(Long node_id, String name, Integer out_port, String remoteAddr,String protocol, String strategy, String interfaceName) {
+        JSONArray services = new JSONArray();
+        services.add(buildRemoteServiceConfig(name, out_port, remoteAddr, protocol, strategy, interfaceName));
+        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+    }
+
+    /**
+     * 构建隧道转发出口节点上的远程服务配置（_tls服务）
+     */
+    public static JSONObject buildRemoteServiceConfig(String name, Integer out_port, String remoteAddr, String protocol, String strategy, String interfaceName) {
         JSONObject data = new JSONObject();
         data.put("name", name + "_tls");
         data.put("addr", ":" + out_port);
@@ -125,32 +176,8 @@ public class GostUtil {
         JSONObject listener = new JSONObject();
         listener.put("type", protocol);
         data.put("listener", listener);
-        JSONObject forwarder = new JSONObject();
-        JSONArray nodes = new JSONArray();
-
-        String[] split = remoteAddr.split(",");
-        int num = 1;
-        for (String addr : split) {
-            JSONObject node = new JSONObject();
-            node.put("name", "node_" + num );
-            node.put("addr", addr);
-            nodes.add(node);
-            num ++;
-        }
-        if (strategy == null || strategy.equals("")){
-            strategy = "fifo";
-        }
-        forwarder.put("nodes", nodes);
-        JSONObject selector = new JSONObject();
-        selector.put("strategy", strategy);
-        selector.put("maxFails", 1);
-        selector.put("failTimeout", "600s");
-        forwarder.put("selector", selector);
-
-        data.put("forwarder", forwarder);
-        JSONArray services = new JSONArray();
-        services.add(data);
-        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+        data.put("forwarder", createForwarder(name, remoteAddr, strategy));
+        return data;
     }
 
     public static GostDto DeleteRemoteService(Long node_id, String name) {
@@ -179,6 +206,27 @@ public class GostUtil {
         return WebSocketServer.send_msg(node_id, data, "ResumeService");
     }
 
+    /**
+     * 批量暂停服务，节点跳过不存在的服务，跳过的名称在响应data的missing中返回
+     * @param services 完整的服务名称（含_tcp/_udp/_tls后缀）
+     */
+    public static GostDto PauseServices(Long node_id, List<String> services) {
+        JSONObject data = new JSONObject();
+        data.put("services", new JSONArray(new ArrayList<>(services)));
+        data.put("batch", true);
+        return WebSocketServer.send_msg(node_id, data, "PauseService");
+    }
+
+    /**
+     * 批量恢复服务，未暂停的服务由节点跳过
+     * @param services 完整的服务名称（含_tcp/_udp/_tls后缀）
+     */
+    public static GostDto ResumeServices(Long node_id, List<String> services) {
+        JSONObject data = new JSONObject();
+        data.put("services", new JSONArray(new ArrayList<>(services)));
+        return WebSocketServer.send_msg(node_id, data, "ResumeService");
+    }
+
     public static GostDto PauseRemoteService(Long node_id, String name) {
         JSONObject data = new JSONObject();
         JSONArray services = new JSONArray();
@@ -196,53 +244,24 @@ public class GostUtil {
     }
 
     public static GostDto AddChains(Long node_id, String name, String remoteAddr, String protocol, String interfaceName) {
-        JSONObject dialer = new JSONObject();
-        dialer.put("type", protocol);
-        if (Objects.equals(protocol, "quic")){
-            JSONObject metadata = new JSONObject();
-            metadata.put("keepAlive", true);
-            metadata.put("ttl", "10s");
-            dialer.put("metadata", metadata);
-        }
-
-
-
-
-        JSONObject connector = new JSONObject();
-        connector.put("type", "relay");
-
-        JSONObject node = new JSONObject();
-        node.put("name", "node-" + name);
-        node.put("addr", remoteAddr);
-        node.put("connector", connector);
-        node.put("dialer", dialer);
-
-        if (StringUtils.isNotBlank(interfaceName)) {
-            node.put("interface", interfaceName);
-        }
-
-
-        JSONArray nodes = new JSONArray();
-        nodes.add(node);
-
-        JSONObject hop = new JSONObject();
-        hop.put("name", "hop-" + name);
-        hop.put("nodes", nodes);
-
-        JSONArray hops = new JSONArray();
-        hops.add(hop);
-
-        JSONObject data = new JSONObject();
-        data.put("name", name + "_chains");
-        data.put("hops", hops);
-
+        JSONObject data = buildChainConfig(name, remoteAddr, protocol, interfaceName);
         return WebSocketServer.send_msg(node_id, data, "AddChains");
     }
 
     public static GostDto UpdateChains(Long node_id, String name, String remoteAddr, String protocol, String interfaceName) {
+        JSONObject data = buildChainConfig(name, remoteAddr, protocol, interfaceName);
+        JSONObject req = new JSONObject();
+        req.put("chain", name + "_chains");
+        req.put("data", data);
+       return WebSocketServer.send_msg(node_id, req, "UpdateChains");
+    }
+
+    /**
+     * 构建隧道转发入口节点上的链配置（_chains）
+     */
+    public static JSONObject buildChainConfig(String name, String remoteAddr, String protocol, String interfaceName) {
         JSONObject dialer = new JSONObject();
         dialer.put("type", protocol);
-
         if (Objects.equals(protocol, "quic")){
             JSONObject metadata = new JSONObject();
             metadata.put("keepAlive", true);
@@ -264,6 +283,7 @@ public class GostUtil {
             node.put("interface", interfaceName);
         }
 
+
         JSONArray nodes = new JSONArray();
         nodes.add(node);
 
@@ -277,10 +297,7 @@ public class GostUtil {
         JSONObject data = new JSONObject();
         data.put("name", name + "_chains");
         data.put("hops", hops);
-        JSONObject req = new JSONObject();
-        req.put("chain", name + "_chains");
-        req.put("data", data);
-       return WebSocketServer.send_msg(node_id, req, "UpdateChains");
+        return data;
     }
 
     public static GostDto DeleteChains(Long node_id, String name) {
@@ -289,7 +306,47 @@ public class GostUtil {
         return WebSocketServer.send_msg(node_id, data, "DeleteChains");
     }
 
-    private static JSONObject createLimiterData(Long name, String speed) {
+    /**
+     * 批量删除链，旧版本节点不支持时返回错误，由调用方逐个删除
+     * @param names 服务名称（不含_chains后缀）
+     */
+    public static GostDto DeleteChainsBatch(Long node_id, List<String> names) {
+        JSONArray chains = new JSONArray();
+        for (String name : names) {
+            chains.add(name + "_chains");
+        }
+        JSONObject data = new JSONObject();
+        data.put("chains", chains);
+        return WebSocketServer.send_msg(node_id, data, "DeleteChains");
+    }
+
+    /**
+     * 从节点对目标执行TcpPing
+     * @return 按丢包放大后的平均延迟（毫秒），丢包严重的目标排名靠后；不可达或节点无响应时返回-1
+     */
+    public static double TcpPing(Long node_id, String ip, int port, int count, int timeout) {
+        JSONObject data = new JSONObject();
+        data.put("ip", ip);
+        data.put("port", port);
+        data.put("count", count);
+        data.put("timeout", timeout);
+        GostDto gostResult = WebSocketServer.send_msg(node_id, data, "TcpPing");
+        if (gostResult == null || !Objects.equals(gostResult.getMsg(), "OK") || !(gostResult.getData() instanceof JSONObject)) {
+            return -1;
+        }
+        JSONObject response = (JSONObject) gostResult.getData();
+        if (!response.getBooleanValue("success")) {
+            return -1;
+        }
+        double packetLoss = response.getDoubleValue("packetLoss");
+        return response.getDoubleValue("averageTime") * (1 + packetLoss / 100.0 * 4);
+    }
+
+    /**
+     * 构建限流器配置
+     * @param speed 限速（MB/s）
+     */
+    public static JSONObject createLimiterData(Long name, String speed) {
         JSONObject data = new JSONObject();
         data.put("name", name.toString());
         JSONArray limits = new JSONArray();
@@ -298,6 +355,28 @@ public class GostUtil {
         return data;
     }
 
+    /**
+     * 构建用户总带宽在单个节点上的限流器配置
+     * @param bytesPerSecond 该节点的份额（字节/秒）
+     */
+    public static JSONObject createUserLimiterData(Long userId, long bytesPerSecond) {
+        return createLimiterData(UserBandwidth.LIMITER_PREFIX + userId, bytesPerSecond);
+    }
+
+    /**
+     * 构建按字节速率指定的限流器配置，用于自动调整的限速
+     * @param bytesPerSecond 限速（字节/秒）
+     */
+    public static JSONObject createLimiterData(String name, long bytesPerSecond) {
+        long kb = Math.max(1, bytesPerSecond / 1024);
+        JSONObject data = new JSONObject();
+        data.put("name", name);
+        JSONArray limits = new JSONArray();
+        limits.add("$ " + kb + "KB " + kb + "KB");
+        data.put("limits", limits);
+        return data;
+    }
+
     private static JSONObject createServiceConfig(String name, Integer in_port, Integer limiter, String remoteAddr, String protocol, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
         JSONObject service = new JSONObject();
         service.put("name", name + "_" + protocol);
@@ -307,16 +386,24 @@ public class GostUtil {
             service.put("addr", tunnel.getUdpListenAddr() + ":" + in_port);
         }
 
+        JSONObject metadata = new JSONObject();
         if (StringUtils.isNotBlank(interfaceName)) {
-            JSONObject metadata = new JSONObject();
             metadata.put("interface", interfaceName);
+        }
+        // 携带当前的流量预算，节点重建服务后继续在本地限制
+        Long budget = ByteBudget.current(name + "_" + protocol);
+        if (budget != null) {
+            metadata.put("budget", String.valueOf(budget));
+        }
+        if (!metadata.isEmpty()) {
             service.put("metadata", metadata);
         }
 
 
-        // 添加限流器配置
-        if (limiter != null) {
-            service.put("limiter", limiter.toString());
+        // 添加限流器配置，设置了总带宽的用户引用用户限流器
+        String limiterName = UserBandwidth.limiterName(parseUserId(name), limiter);
+        if (limiterName != null) {
+            service.put("limiter", limiterName);
         }
 
         // 配置处理器
@@ -329,7 +416,7 @@ public class GostUtil {
 
         // 端口转发需要配置转发器
         if (isPortForwarding(fow_type)) {
-            JSONObject forwarder = createForwarder(remoteAddr, strategy);
+            JSONObject forwarder = createForwarder(name, remoteAddr, strategy);
             service.put("forwarder", forwarder);
         }
         return service;
@@ -358,16 +445,27 @@ public class GostUtil {
         return listener;
     }
 
-    private static JSONObject createForwarder(String remoteAddr, String strategy) {
+    private static JSONObject createForwarder(String name, String remoteAddr, String strategy) {
         JSONObject forwarder = new JSONObject();
         JSONArray nodes = new JSONArray();
 
         String[] split = remoteAddr.split(",");
+        int[] weights = getTargetWeights(name, remoteAddr);
         int num = 1;
         for (String addr : split) {
             JSONObject node = new JSONObject();
             node.put("name", "node_" + num );
             node.put("addr", addr);
+            if (weights != null) {
+                JSONObject metadata = new JSONObject();
+                if (weights[num - 1] > 0) {
+                    metadata.put("weight", weights[num - 1]);
+                } else {
+                    // 节点把0权重当作1处理，不可达的目标改为备用节点，由BackupFilter排除
+                    metadata.put("backup", true);
+                }
+                node.put("metadata", metadata);
+            }
             nodes.add(node);
             num ++;
         }
@@ -376,16 +474,77 @@ public class GostUtil {
             strategy = "fifo";
         }
 
+        // 有测速权重时按权重从高到低排列节点，fifo策略会优先选择最快的健康目标
+        if (weights != null) {
+            nodes.sort((a, b) -> Integer.compare(
+                    ((JSONObject) b).getJSONObject("metadata").getIntValue("weight"),
+                    ((JSONObject) a).getJSONObject("metadata").getIntValue("weight")));
+        }
+
         forwarder.put("nodes", nodes);
 
         JSONObject selector = new JSONObject();
         selector.put("strategy", strategy);
         selector.put("maxFails", 1);
-        selector.put("failTimeout", "600s");
+        // 面板会周期性探测目标健康状态，此时无需长时间屏蔽偶发失败的目标
+        selector.put("failTimeout", weights != null ? WEIGHTED_FAIL_TIMEOUT : "600s");
         forwarder.put("selector", selector);
         return forwarder;
     }
 
+    /**
+     * 设置多目标转发的测速权重，之后下发该服务配置时会携带节点权重
+     * @param name 服务名称（不含协议后缀）
+     * @param remoteAddr 权重对应的目标地址，地址变化后权重自动失效
+     * @param weights 与目标地址一一对应的权重，0表示目标不可达（下发为备用节点）
+     */
+    public static void setTargetWeights(String name, String remoteAddr, int[] weights) {
+        TARGET_WEIGHTS.put(name, new TargetWeights(remoteAddr, weights.clone()));
+    }
+
+    public static void removeTargetWeights(String name) {
+        TARGET_WEIGHTS.remove(name);
+    }
+
+    private static int[] getTargetWeights(String name, String remoteAddr) {
+        if (name == null) {
+            return null;
+        }
+        TargetWeights targetWeights = TARGET_WEIGHTS.get(name);
+        if (targetWeights == null || !Objects.equals(targetWeights.remoteAddr, remoteAddr)) {
+            return null;
+        }
+        if (targetWeights.weights.length != remoteAddr.split(",").length) {
+            return null;
+        }
+        return targetWeights.weights;
+    }
+
+    private static class TargetWeights {
+        private final String remoteAddr;
+        private final int[] weights;
+
+        private TargetWeights(String remoteAddr, int[] weights) {
+            this.remoteAddr = remoteAddr;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * 从服务基础名称（转发ID_用户ID_用户隧道ID）中取出用户ID，管理员的转发不受总带宽限制，返回null
+     */
+    private static Long parseUserId(String name) {
+        String[] parts = name.split("_");
+        if (parts.length < 3 || "0".equals(parts[2])) {
+            return null;
+        }
+        try {
+            return Long.valueOf(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private static boolean isPortForwarding(Integer fow_type) {
         return fow_type != null && fow_type == 1;
     }
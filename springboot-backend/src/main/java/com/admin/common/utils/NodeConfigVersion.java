@@ -0,0 +1,20 @@
+package com.admin.common.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点期望配置版本号
+ * 转发、隧道、限速规则或用户隧道权限发生变化时递增，节点配置哈希缓存据此判断是否需要重新计算
+ */
+public class NodeConfigVersion {
+
+    private static final AtomicLong version = new AtomicLong();
+
+    public static long current() {
+        return version.get();
+    }
+
+    public static void bump() {
+        version.incrementAndGet();
+    }
+}
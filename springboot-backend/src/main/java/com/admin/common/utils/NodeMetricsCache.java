@@ -0,0 +1,92 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点实时指标缓存
+ * 保存每个节点最近一次上报的系统信息，并根据网卡累计字节数计算实时带宽，同时写入时序存储
+ */
+@Slf4j
+public class NodeMetricsCache {
+
+    private static final ConcurrentHashMap<Long, NodeMetrics> metricsMap = new ConcurrentHashMap<>();
+
+    /**
+     * 解析节点上报的系统信息并更新缓存
+     * @param nodeId 节点ID
+     * @param payload 系统信息JSON
+     */
+    public static void update(Long nodeId, String payload) {
+        try {
+            JSONObject info = JSONObject.parseObject(payload);
+            long now = System.currentTimeMillis();
+            long bytesReceived = info.getLongValue("bytes_received");
+            long bytesTransmitted = info.getLongValue("bytes_transmitted");
+
+            NodeMetrics current = metricsMap.compute(nodeId, (k, last) -> {
+                NodeMetrics metrics = new NodeMetrics();
+                metrics.setNodeId(nodeId);
+                metrics.setCpuUsage(info.getDoubleValue("cpu_usage"));
+                metrics.setMemoryUsage(info.getDoubleValue("memory_usage"));
+                metrics.setUptime(info.getLongValue("uptime"));
+                metrics.setBytesReceived(bytesReceived);
+                metrics.setBytesTransmitted(bytesTransmitted);
+                metrics.setTimestamp(now);
+                if (last != null && now > last.getTimestamp()) {
+                    double seconds = (now - last.getTimestamp()) / 1000.0;
+                    // 累计值变小说明节点重启或网卡计数器归零，本次不计算带宽
+                    if (bytesReceived >= last.getBytesReceived() && bytesTransmitted >= last.getBytesTransmitted()) {
+                        metrics.setReceiveRate((long) ((bytesReceived - last.getBytesReceived()) / seconds));
+                        metrics.setTransmitRate((long) ((bytesTransmitted - last.getBytesTransmitted()) / seconds));
+                    } else {
+                        metrics.setReceiveRate(last.getReceiveRate());
+                        metrics.setTransmitRate(last.getTransmitRate());
+                    }
+                }
+                return metrics;
+            });
+            NodeTelemetryStore.record(nodeId, now, current.getCpuUsage(), current.getMemoryUsage(),
+                    current.getReceiveRate(), current.getTransmitRate());
+        } catch (Exception e) {
+            log.info("解析节点 {} 系统信息失败: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取节点最近一次的指标，节点未上报时返回null
+     */
+    public static NodeMetrics get(Long nodeId) {
+        return metricsMap.get(nodeId);
+    }
+
+    /**
+     * 获取所有在线节点最近一次的指标
+     */
+    public static List<NodeMetrics> all() {
+        return new ArrayList<>(metricsMap.values());
+    }
+
+    public static void remove(Long nodeId) {
+        metricsMap.remove(nodeId);
+    }
+
+    @Data
+    public static class NodeMetrics {
+        private Long nodeId;
+        private double cpuUsage;
+        private double memoryUsage;
+        private long uptime;
+        private long bytesReceived;
+        private long bytesTransmitted;
+        // 接收/发送速率（字节/秒）
+        private long receiveRate;
+        private long transmitRate;
+        private long timestamp;
+    }
+}
@@ -0,0 +1,169 @@
+package com.admin.common.utils;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点监控时序存储
+ * 每个节点固定两组环形缓冲：1秒粒度保留10分钟，1分钟粒度保留24小时，
+ * 数据全部存放在基本类型数组中，每个节点约占用60KB内存且不随时间增长
+ */
+public class NodeTelemetryStore {
+
+    public static final String RESOLUTION_SECOND = "1s";
+    public static final String RESOLUTION_MINUTE = "1m";
+
+    private static final int SECOND_CAPACITY = 600;
+    private static final int MINUTE_CAPACITY = 1440;
+
+    private static final ConcurrentHashMap<Long, NodeSeries> seriesMap = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次节点上报
+     * @param nodeId 节点ID
+     * @param timestamp 上报时间（毫秒）
+     * @param receiveRate 接收速率（字节/秒）
+     * @param transmitRate 发送速率（字节/秒）
+     */
+    public static void record(Long nodeId, long timestamp, double cpuUsage, double memoryUsage, long receiveRate, long transmitRate) {
+        NodeSeries series = seriesMap.computeIfAbsent(nodeId, k -> new NodeSeries());
+        long seconds = timestamp / 1000;
+        series.second.record(seconds, (float) cpuUsage, (float) memoryUsage, receiveRate, transmitRate);
+        series.minute.record(seconds / 60, (float) cpuUsage, (float) memoryUsage, receiveRate, transmitRate);
+    }
+
+    /**
+     * 查询节点历史数据
+     * @param resolution 粒度，1s或1m
+     * @param startTime 开始时间（毫秒），为空时取缓冲区最早时间
+     * @param endTime 结束时间（毫秒），为空时取当前时间
+     * @return 节点没有数据时返回null
+     */
+    public static NodeHistory query(Long nodeId, String resolution, Long startTime, Long endTime) {
+        NodeSeries series = seriesMap.get(nodeId);
+        if (series == null) {
+            return null;
+        }
+        boolean minute = RESOLUTION_MINUTE.equals(resolution);
+        RingSeries ring = minute ? series.minute : series.second;
+        long unit = minute ? 60 : 1;
+
+        long end = (endTime != null ? endTime : System.currentTimeMillis()) / 1000 / unit;
+        long start = startTime != null ? startTime / 1000 / unit : end - ring.capacity + 1;
+        NodeHistory history = ring.range(Math.max(start, end - ring.capacity + 1), end, unit);
+        history.setNodeId(nodeId);
+        history.setResolution(minute ? RESOLUTION_MINUTE : RESOLUTION_SECOND);
+        return history;
+    }
+
+    public static void remove(Long nodeId) {
+        seriesMap.remove(nodeId);
+    }
+
+    private static class NodeSeries {
+        private final RingSeries second = new RingSeries(SECOND_CAPACITY);
+        private final RingSeries minute = new RingSeries(MINUTE_CAPACITY);
+    }
+
+    /**
+     * 按时间取模定位槽位的环形缓冲，槽位中记录的时间与查询时间不一致说明数据已被覆盖或从未写入
+     * 同一时间片内的多次上报取平均值
+     */
+    private static class RingSeries {
+        private final int capacity;
+        private final long[] times;
+        private final int[] counts;
+        private final float[] cpu;
+        private final float[] memory;
+        private final float[] receiveRate;
+        private final float[] transmitRate;
+
+        private RingSeries(int capacity) {
+            this.capacity = capacity;
+            this.times = new long[capacity];
+            this.counts = new int[capacity];
+            this.cpu = new float[capacity];
+            this.memory = new float[capacity];
+            this.receiveRate = new float[capacity];
+            this.transmitRate = new float[capacity];
+        }
+
+        private synchronized void record(long time, float cpuValue, float memoryValue, long rxRate, long txRate) {
+            int slot = (int) (time % capacity);
+            if (times[slot] != time) {
+                times[slot] = time;
+                counts[slot] = 0;
+                cpu[slot] = 0;
+                memory[slot] = 0;
+                receiveRate[slot] = 0;
+                transmitRate[slot] = 0;
+            }
+            int n = ++counts[slot];
+            cpu[slot] += (cpuValue - cpu[slot]) / n;
+            memory[slot] += (memoryValue - memory[slot]) / n;
+            receiveRate[slot] += (rxRate - receiveRate[slot]) / n;
+            transmitRate[slot] += (txRate - transmitRate[slot]) / n;
+        }
+
+        private synchronized NodeHistory range(long start, long end, long unit) {
+            List<Long> timeList = new ArrayList<>();
+            List<Float> cpuList = new ArrayList<>();
+            List<Float> memoryList = new ArrayList<>();
+            List<Long> rxList = new ArrayList<>();
+            List<Long> txList = new ArrayList<>();
+            long rxSum = 0, txSum = 0, rxPeak = 0, txPeak = 0;
+
+            for (long time = start; time <= end; time++) {
+                int slot = (int) (time % capacity);
+                if (time <= 0 || times[slot] != time || counts[slot] == 0) {
+                    continue;
+                }
+                long rx = (long) receiveRate[slot];
+                long tx = (long) transmitRate[slot];
+                timeList.add(time * unit * 1000);
+                cpuList.add(cpu[slot]);
+                memoryList.add(memory[slot]);
+                rxList.add(rx);
+                txList.add(tx);
+                rxSum += rx;
+                txSum += tx;
+                rxPeak = Math.max(rxPeak, rx);
+                txPeak = Math.max(txPeak, tx);
+            }
+
+            NodeHistory history = new NodeHistory();
+            history.setTimes(timeList);
+            history.setCpuUsage(cpuList);
+            history.setMemoryUsage(memoryList);
+            history.setReceiveRate(rxList);
+            history.setTransmitRate(txList);
+            int points = timeList.size();
+            history.setAvgReceiveRate(points == 0 ? 0 : rxSum / points);
+            history.setAvgTransmitRate(points == 0 ? 0 : txSum / points);
+            history.setPeakReceiveRate(rxPeak);
+            history.setPeakTransmitRate(txPeak);
+            return history;
+        }
+    }
+
+    /**
+     * 节点历史数据，按列返回以减少响应体积，速率单位为字节/秒
+     */
+    @Data
+    public static class NodeHistory {
+        private Long nodeId;
+        private String resolution;
+        private List<Long> times;
+        private List<Float> cpuUsage;
+        private List<Float> memoryUsage;
+        private List<Long> receiveRate;
+        private List<Long> transmitRate;
+        private long avgReceiveRate;
+        private long avgTransmitRate;
+        private long peakReceiveRate;
+        private long peakTransmitRate;
+    }
+}
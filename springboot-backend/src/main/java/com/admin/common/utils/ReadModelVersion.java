@@ -0,0 +1,25 @@
+package com.admin.common.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 列表读模型版本号
+ * 转发、用户、隧道表发生流量累加以外的写入时递增对应的版本号，内存中的列表读模型据此判断是否需要重新加载
+ */
+public class ReadModelVersion {
+
+    public static final String FORWARD = "forward";
+    public static final String USER = "user";
+    public static final String TUNNEL = "tunnel";
+
+    private static final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public static long current(String model) {
+        return versions.computeIfAbsent(model, k -> new AtomicLong()).get();
+    }
+
+    public static void bump(String model) {
+        versions.computeIfAbsent(model, k -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -0,0 +1,80 @@
+package com.admin.common.utils;
+
+/**
+ * 节点流量上报节奏建议
+ * 节点按服务定时上报流量，面板根据当前上报负载和用户离配额的远近给出建议：
+ * 距上次上报超过interval秒时上报，累计字节数达到threshold时提前上报。
+ * 空闲或离配额较远的转发上报间隔拉长，接近配额的转发靠阈值及时上报，面板的上报处理量与实际流量相关
+ */
+public class ReportPolicy {
+
+    // 节点默认的统计周期（秒），也是建议间隔的下限
+    public static final int MIN_INTERVAL = 5;
+    public static final int MAX_INTERVAL = 60;
+
+    // 单次上报的最大累计字节数
+    public static final long MAX_THRESHOLD = 512L * 1024 * 1024;
+
+    // 阈值取剩余配额的几分之一，限制两次上报之间可能超出配额的流量
+    private static final int HEADROOM_DIVISOR = 10;
+
+    // 按当前速率超过该时长才会用完配额时视为离配额较远（秒）
+    private static final long FAR_FROM_LIMIT_SECONDS = 60 * 60;
+
+    private static volatile double targetRate = 200;
+
+    private static double uploadRate;
+    private static long updated = System.currentTimeMillis();
+
+    /**
+     * 设置面板期望承受的上报速率（次/秒），超过时按比例拉长上报间隔
+     */
+    public static void setTargetRate(double rate) {
+        if (rate > 0) {
+            targetRate = rate;
+        }
+    }
+
+    /**
+     * 记录一次流量上报
+     */
+    public static synchronized void recordUpload() {
+        long now = System.currentTimeMillis();
+        uploadRate = Ewma.update(uploadRate, now - updated, 1);
+        updated = Math.max(updated, now);
+    }
+
+    /**
+     * 当前平滑后的上报速率（次/秒）
+     */
+    public static synchronized double uploadRate() {
+        return uploadRate * Ewma.decay(System.currentTimeMillis() - updated);
+    }
+
+    /**
+     * 按上报负载计算的基础间隔（秒），负载未超过期望值时为节点默认周期
+     */
+    public static int baseInterval() {
+        double factor = Math.max(1, uploadRate() / targetRate);
+        return (int) Math.min(MAX_INTERVAL, Math.ceil(MIN_INTERVAL * factor));
+    }
+
+    /**
+     * 计算某个转发的上报建议
+     * @param rate 转发当前的速率（字节/秒）
+     * @param remaining 剩余配额（字节），不限流量时为Long.MAX_VALUE
+     * @return [间隔秒数, 阈值字节数]
+     */
+    public static long[] forForward(long rate, long remaining) {
+        long threshold = remaining == Long.MAX_VALUE ? MAX_THRESHOLD
+                : Math.min(MAX_THRESHOLD, Math.max(1, remaining / HEADROOM_DIVISOR));
+        long interval;
+        if (rate <= 0 || remaining / Math.max(rate, 1) > FAR_FROM_LIMIT_SECONDS) {
+            // 空闲或离配额较远，按最长间隔上报，流量突增时由阈值触发
+            interval = MAX_INTERVAL;
+        } else {
+            interval = baseInterval();
+        }
+        return new long[]{interval, threshold};
+    }
+}
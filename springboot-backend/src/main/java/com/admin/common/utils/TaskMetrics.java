@@ -0,0 +1,51 @@
+package com.admin.common.utils;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 定时任务运行指标
+ * 保存每个任务最近一次运行的开始时间、耗时和各阶段计数，供管理端查看
+ */
+public class TaskMetrics {
+
+    private static final ConcurrentHashMap<String, TaskRun> runs = new ConcurrentHashMap<>();
+
+    /**
+     * 开始一次任务运行，结束时调用 {@link TaskRun#finish()} 写入指标
+     */
+    public static TaskRun start(String task) {
+        TaskRun run = new TaskRun();
+        run.setTask(task);
+        run.setStartTime(System.currentTimeMillis());
+        return run;
+    }
+
+    public static List<TaskRun> all() {
+        return new ArrayList<>(runs.values());
+    }
+
+    @Data
+    public static class TaskRun {
+        private String task;
+        private long startTime;
+        private long durationMs;
+        // 各阶段的计数和耗时，按写入顺序展示
+        private Map<String, Long> counters = new LinkedHashMap<>();
+
+        public TaskRun put(String name, long value) {
+            counters.put(name, value);
+            return this;
+        }
+
+        public void finish() {
+            durationMs = System.currentTimeMillis() - startTime;
+            runs.put(task, this);
+        }
+    }
+}
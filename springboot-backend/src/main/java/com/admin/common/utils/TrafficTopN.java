@@ -0,0 +1,233 @@
+package com.admin.common.utils;
+
+import lombok.Data;
+
+import java.util.*;
+
+/**
+ * 实时流量排行
+ * 每次流量上报按实际传输字节数累加到转发、用户、隧道三个维度，
+ * 每个维度按1分钟、5分钟、1小时三个滑动窗口统计，窗口由若干时间片组成，
+ * 每个时间片是一个固定容量的Space-Saving摘要，内存占用与转发/用户数量无关。
+ * 结果为近似值：单个时间片内被挤出摘要的对象计数会由新对象继承，该时间片的计数可能多计，多计不超过error；
+ * 窗口合并多个时间片，对象在某些时间片中被挤出时这部分流量会丢失，合并结果既可能多计也可能少计
+ */
+public class TrafficTopN {
+
+    public static final int TYPE_FORWARD = 1;
+    public static final int TYPE_USER = 2;
+    public static final int TYPE_TUNNEL = 3;
+
+    public static final String WINDOW_1M = "1m";
+    public static final String WINDOW_5M = "5m";
+    public static final String WINDOW_1H = "1h";
+
+    // 每个时间片保留的对象数，远大于查询上限以保证排行靠前的对象计数准确
+    private static final int CAPACITY = 128;
+
+    private static final Map<Integer, Map<String, SlidingWindow>> dimensions = new HashMap<>();
+
+    static {
+        for (int type : new int[]{TYPE_FORWARD, TYPE_USER, TYPE_TUNNEL}) {
+            Map<String, SlidingWindow> windows = new HashMap<>();
+            windows.put(WINDOW_1M, new SlidingWindow(10 * 1000L, 6));
+            windows.put(WINDOW_5M, new SlidingWindow(30 * 1000L, 10));
+            windows.put(WINDOW_1H, new SlidingWindow(5 * 60 * 1000L, 12));
+            dimensions.put(type, windows);
+        }
+    }
+
+    /**
+     * 记录一次流量上报
+     * @param tunnelId 隧道ID，转发不存在时传null
+     * @param bytes 上下行字节数之和
+     */
+    public static void record(long forwardId, long userId, Long tunnelId, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        add(TYPE_FORWARD, forwardId, bytes, now);
+        add(TYPE_USER, userId, bytes, now);
+        if (tunnelId != null) {
+            add(TYPE_TUNNEL, tunnelId, bytes, now);
+        }
+    }
+
+    /**
+     * 查询某个维度在指定窗口内流量最大的对象
+     * @return 按流量降序，窗口名无效时返回空列表
+     */
+    public static List<TopEntry> query(int type, String window, int limit) {
+        Map<String, SlidingWindow> windows = dimensions.get(type);
+        SlidingWindow sliding = windows == null ? null : windows.get(window);
+        if (sliding == null) {
+            return Collections.emptyList();
+        }
+        return sliding.top(limit, System.currentTimeMillis());
+    }
+
+    private static void add(int type, long id, long bytes, long now) {
+        for (SlidingWindow window : dimensions.get(type).values()) {
+            window.add(id, bytes, now);
+        }
+    }
+
+    @Data
+    public static class TopEntry {
+        private long id;
+        // 窗口内的字节数（近似值，多计部分不超过error，被挤出的时间片中的流量不计入）
+        private long bytes;
+        private long error;
+        // 窗口内平均速率（字节/秒）
+        private long rate;
+    }
+
+    /**
+     * 由固定数量时间片组成的滑动窗口，过期的时间片在下次写入时清空复用
+     */
+    private static class SlidingWindow {
+        private final long slotMillis;
+        private final long[] slotIds;
+        private final SpaceSaving[] slots;
+
+        private SlidingWindow(long slotMillis, int slotCount) {
+            this.slotMillis = slotMillis;
+            this.slotIds = new long[slotCount];
+            this.slots = new SpaceSaving[slotCount];
+            Arrays.fill(slotIds, -1);
+            for (int i = 0; i < slotCount; i++) {
+                slots[i] = new SpaceSaving(CAPACITY);
+            }
+        }
+
+        private synchronized void add(long id, long bytes, long now) {
+            long slotId = now / slotMillis;
+            int i = (int) (slotId % slots.length);
+            if (slotIds[i] != slotId) {
+                slots[i].clear();
+                slotIds[i] = slotId;
+            }
+            slots[i].add(id, bytes);
+        }
+
+        private List<TopEntry> top(int limit, long now) {
+            long current = now / slotMillis;
+            Map<Long, long[]> merged = new HashMap<>();
+            synchronized (this) {
+                for (int i = 0; i < slots.length; i++) {
+                    if (slotIds[i] > current - slots.length) {
+                        slots[i].mergeInto(merged);
+                    }
+                }
+            }
+            long seconds = slotMillis * slots.length / 1000;
+            List<TopEntry> entries = new ArrayList<>(merged.size());
+            for (Map.Entry<Long, long[]> entry : merged.entrySet()) {
+                TopEntry top = new TopEntry();
+                top.setId(entry.getKey());
+                top.setBytes(entry.getValue()[0]);
+                top.setError(entry.getValue()[1]);
+                top.setRate(entry.getValue()[0] / seconds);
+                entries.add(top);
+            }
+            entries.sort((a, b) -> Long.compare(b.getBytes(), a.getBytes()));
+            return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+        }
+    }
+
+    /**
+     * Space-Saving摘要：最多保留capacity个对象，满时替换计数最小的对象并继承其计数，
+     * 计数用小顶堆维护，每次更新O(log capacity)。非线程安全，由SlidingWindow加锁
+     */
+    private static class SpaceSaving {
+        private final long[] keys;
+        private final long[] counts;
+        private final long[] errors;
+        private final Map<Long, Integer> index;
+        private int size;
+
+        private SpaceSaving(int capacity) {
+            keys = new long[capacity];
+            counts = new long[capacity];
+            errors = new long[capacity];
+            index = new HashMap<>(capacity * 2);
+        }
+
+        private void add(long key, long weight) {
+            Integer i = index.get(key);
+            if (i != null) {
+                counts[i] += weight;
+                siftDown(i);
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = weight;
+                errors[size] = 0;
+                index.put(key, size);
+                siftUp(size++);
+                return;
+            }
+            // 替换计数最小的对象，新对象继承其计数作为误差
+            long min = counts[0];
+            index.remove(keys[0]);
+            keys[0] = key;
+            counts[0] = min + weight;
+            errors[0] = min;
+            index.put(key, 0);
+            siftDown(0);
+        }
+
+        private void clear() {
+            size = 0;
+            index.clear();
+        }
+
+        private void mergeInto(Map<Long, long[]> merged) {
+            for (int i = 0; i < size; i++) {
+                long[] value = merged.computeIfAbsent(keys[i], k -> new long[2]);
+                value[0] += counts[i];
+                value[1] += errors[i];
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (counts[parent] <= counts[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int child = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+                if (counts[i] <= counts[child]) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a], count = counts[a], error = errors[a];
+            keys[a] = keys[b];
+            counts[a] = counts[b];
+            errors[a] = errors[b];
+            keys[b] = key;
+            counts[b] = count;
+            errors[b] = error;
+            index.put(keys[a], a);
+            index.put(keys[b], b);
+        }
+    }
+}
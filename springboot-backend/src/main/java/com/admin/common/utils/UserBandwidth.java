@@ -0,0 +1,172 @@
+package com.admin.common.utils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户跨节点总带宽协调
+ * 限速规则的限流器只作用于单个入口节点，用户的转发分布在多个节点上时总带宽是各节点限速之和。
+ * 设置了总带宽的用户，其转发服务改为引用每个节点上的用户限流器（u+用户ID），
+ * 面板按流量上报估算用户在各节点上的速率，把总带宽按需求分给各节点：
+ * 每个节点先保底一小份，其余按 速率×余量 水位填充，剩余部分按已分配比例追加，各节点份额之和不超过总带宽
+ * （节点上限都未触及时等于总带宽）。
+ * 只有某个节点的份额变化超过一定比例时才整体下发，避免频繁调整限流器
+ */
+public class UserBandwidth {
+
+    public static final String LIMITER_PREFIX = "u";
+
+    // 按当前速率的多少倍估计需求，给速率上升留出空间
+    private static final double HEADROOM = 1.5;
+
+    // 每个节点保底 总带宽/(节点数×该值)，空闲节点出现流量时不至于卡死
+    private static final int FLOOR_DIVISOR = 4;
+
+    // 单个节点保底份额的最小值（字节/秒），总带宽不够每个节点分到该值时按节点数平分
+    private static final long MIN_SHARE = 64 * 1024;
+
+    // 份额相对变化超过该比例才重新下发
+    private static final double CHANGE_RATIO = 0.2;
+
+    // 用户ID -> 总带宽（字节/秒）
+    private static final Map<Long, Long> caps = new ConcurrentHashMap<>();
+
+    // 用户ID -> 节点ID -> [平滑速率, 更新时间]
+    private static final Map<Long, Map<Long, double[]>> rates = new HashMap<>();
+
+    // 用户ID -> 节点ID -> 已下发的份额（字节/秒）
+    private static final Map<Long, Map<Long, Long>> shares = new HashMap<>();
+
+    /**
+     * 替换设置了总带宽的用户
+     * @param newCaps 用户ID -> 总带宽（字节/秒）
+     */
+    public static synchronized void setCaps(Map<Long, Long> newCaps) {
+        caps.keySet().retainAll(newCaps.keySet());
+        caps.putAll(newCaps);
+        rates.keySet().retainAll(newCaps.keySet());
+        shares.keySet().retainAll(newCaps.keySet());
+    }
+
+    /**
+     * 是否为用户限流器的名称（u+用户ID）
+     */
+    public static boolean isLimiterName(String name) {
+        return name != null && name.length() > LIMITER_PREFIX.length() && name.startsWith(LIMITER_PREFIX)
+                && name.substring(LIMITER_PREFIX.length()).chars().allMatch(Character::isDigit);
+    }
+
+    /**
+     * 当前设置了总带宽的用户
+     */
+    public static Set<Long> cappedUsers() {
+        return new HashSet<>(caps.keySet());
+    }
+
+    /**
+     * 服务应引用的限流器名称，设置了总带宽的用户使用用户限流器，否则使用限速规则
+     * @param ruleLimiter 用户隧道的限速规则ID
+     */
+    public static String limiterName(Long userId, Integer ruleLimiter) {
+        if (userId != null && caps.containsKey(userId)) {
+            return LIMITER_PREFIX + userId;
+        }
+        return ruleLimiter != null ? ruleLimiter.toString() : null;
+    }
+
+    /**
+     * 记录用户在某个节点上一次上报的字节数，未设置总带宽的用户不记录
+     */
+    public static synchronized void record(long userId, long nodeId, long bytes) {
+        if (bytes <= 0 || !caps.containsKey(userId)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        double[] rate = rates.computeIfAbsent(userId, k -> new HashMap<>()).computeIfAbsent(nodeId, k -> new double[]{0, now});
+        rate[0] = Ewma.update(rate[0], now - (long) rate[1], bytes);
+        rate[1] = Math.max(rate[1], now);
+    }
+
+    /**
+     * 已下发给某个节点的份额，没有时返回null
+     */
+    public static synchronized Long share(long userId, long nodeId) {
+        Map<Long, Long> userShares = shares.get(userId);
+        return userShares == null ? null : userShares.get(nodeId);
+    }
+
+    /**
+     * 重新分配用户在各节点的份额
+     * @param ceilings 用户转发所在的节点ID -> 该节点份额的上限（字节/秒），没有上限时为Long.MAX_VALUE
+     * @return 需要下发的节点份额，变化不明显时为空
+     */
+    public static synchronized Map<Long, Long> rebalance(long userId, Map<Long, Long> ceilings) {
+        Long cap = caps.get(userId);
+        if (cap == null || ceilings.isEmpty()) {
+            shares.remove(userId);
+            return Collections.emptyMap();
+        }
+        Map<Long, Long> next = allocate(cap, ceilings, rates.getOrDefault(userId, Collections.emptyMap()));
+        Map<Long, Long> current = shares.getOrDefault(userId, Collections.emptyMap());
+
+        boolean significant = !current.keySet().equals(next.keySet());
+        for (Map.Entry<Long, Long> entry : next.entrySet()) {
+            Long old = current.get(entry.getKey());
+            if (old == null || Math.abs(entry.getValue() - old) > old * CHANGE_RATIO) {
+                significant = true;
+            }
+        }
+        if (!significant) {
+            return Collections.emptyMap();
+        }
+
+        // 整体替换，已下发的份额之和始终来自同一次分配
+        Map<Long, Long> changed = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : next.entrySet()) {
+            if (!Objects.equals(current.get(entry.getKey()), entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        shares.put(userId, next);
+        return changed;
+    }
+
+    static Map<Long, Long> allocate(long cap, Map<Long, Long> ceilings, Map<Long, double[]> nodeRates) {
+        long now = System.currentTimeMillis();
+        int n = ceilings.size();
+        // 保底不超过平均份额，水位填充中每个节点至少分到保底，份额之和不会超过总带宽
+        long floor = Math.min(cap / n, Math.max(MIN_SHARE, cap / ((long) FLOOR_DIVISOR * n)));
+
+        // 1. 各节点的需求：保底与 速率×余量 取大，不超过节点上限
+        List<long[]> wants = new ArrayList<>(n);
+        for (Map.Entry<Long, Long> entry : ceilings.entrySet()) {
+            double[] rate = nodeRates.get(entry.getKey());
+            long demand = rate == null ? 0 : (long) (rate[0] * Ewma.decay(now - (long) rate[1]) * HEADROOM);
+            wants.add(new long[]{entry.getKey(), Math.min(entry.getValue(), Math.max(floor, demand))});
+        }
+
+        // 2. 水位填充：需求小的节点先满足，剩余带宽在其余节点间平分
+        wants.sort(Comparator.comparingLong(w -> w[1]));
+        Map<Long, Long> result = new HashMap<>();
+        long remaining = cap;
+        int left = n;
+        for (long[] want : wants) {
+            long give = Math.min(want[1], remaining / left);
+            result.put(want[0], give);
+            remaining -= give;
+            left--;
+        }
+
+        // 3. 剩余带宽按已分配比例追加，忙的节点得到更多上升空间
+        long allocated = cap - remaining;
+        if (remaining > 0 && allocated > 0) {
+            long extra = remaining;
+            for (Map.Entry<Long, Long> entry : result.entrySet()) {
+                long add = (long) ((double) extra * entry.getValue() / allocated);
+                long value = Math.min(ceilings.get(entry.getKey()), entry.getValue() + add);
+                entry.setValue(value);
+            }
+        }
+        return result;
+    }
+}
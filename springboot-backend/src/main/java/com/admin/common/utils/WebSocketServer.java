@@ -4,20 +4,25 @@ package com.admin.common.utils;
 import com.admin.common.dto.GostConfigDto;
 import com.admin.common.dto.GostDto;
 import com.admin.common.task.CheckGostConfigAsync;
-import com.admin.entity.Node;
-import com.admin.service.NodeService;
+import com.admin.common.task.NodeStatusFlushAsync;
+import com.admin.common.task.ReportPolicyAsync;
+import com.admin.service.NodeConfigService;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,7 +34,18 @@ import java.util.UUID;
 public class WebSocketServer extends TextWebSocketHandler {
 
     @Resource
-    NodeService nodeService;
+    @Lazy
+    NodeStatusFlushAsync nodeStatusFlushAsync;
+
+    @Resource
+    @Lazy
+    NodeConfigService nodeConfigService;
+
+    @Resource
+    @Lazy
+    ReportPolicyAsync reportPolicyAsync;
+
+    private static final int ADMIN_ROLE_ID = 0;
 
     // 存储所有活跃的 WebSocket 连接（
     private static final CopyOnWriteArraySet<WebSocketSession> activeSessions = new CopyOnWriteArraySet<>();
@@ -79,6 +95,9 @@ public class WebSocketServer extends TextWebSocketHandler {
                 if (decryptedPayload.contains("memory_usage")){
                     // 先发送确认消息
                     sendToUser(session, "{\"type\":\"call\"}", nodeSecret);
+                    if (Objects.equals(type, "1")) {
+                        NodeMetricsCache.update(Long.valueOf(id), decryptedPayload);
+                    }
                 }else if (decryptedPayload.contains("requestId")) {
                     log.info("收到消息: {}", decryptedPayload);
                     // 处理命令响应消息
@@ -220,6 +239,8 @@ public class WebSocketServer extends TextWebSocketHandler {
                 // 网页管理员连接
                 activeSessions.add(session);
                 log.info("管理员连接建立，sessionId: {}", session.getId());
+                // 立即推送各节点最近一次的指标，页面无需等待下一次上报
+                sendMetricsSnapshot(session);
             } else {
                 // 客户端节点连接
                 Long nodeId = Long.valueOf(id);
@@ -248,33 +269,15 @@ public class WebSocketServer extends TextWebSocketHandler {
                     }
                 }
                 
-                // 更新节点状态为在线
-                Node node = nodeService.getById(nodeId);
-                if (node != null) {
-                    // 更新状态和版本信息
-                    node.setStatus(1);
-                    if (version != null) {
-                        node.setVersion(version);
-                    }
-                    boolean updateResult = nodeService.updateById(node);
-                    
-                    if (updateResult) {
-                        log.info("节点 {} 连接建立成功，状态更新为在线，版本: {}", nodeId, version);
-                        
-                        // 广播节点上线状态给所有管理员
-                        JSONObject res = new JSONObject();
-                        res.put("id", id);
-                        res.put("type", "status");
-                        res.put("data", 1);
-                        broadcastMessage(res.toJSONString());
-                    } else {
-                        log.info("节点 {} 状态更新失败", nodeId);
-                    }
-                } else {
-                    log.info("节点 {} 不存在，无法更新状态", nodeId);
-                    // 移除无效的会话
-                    nodeSessions.remove(nodeId);
-                }
+                // 节点已在握手阶段通过secret校验，状态写库和广播交给批量任务合并处理
+                nodeStatusFlushAsync.submit(nodeId, 1, version);
+                log.info("节点 {} 连接建立成功，版本: {}", nodeId, version);
+
+                // 节点重连后一次性下发期望配置，修复节点离线期间的配置差异
+                nodeConfigService.pushSnapshot(nodeId);
+
+                // 面板负载较高时补发默认上报间隔
+                reportPolicyAsync.pushTo(nodeId);
             }
 
         } catch (Exception e) {
@@ -294,6 +297,20 @@ public class WebSocketServer extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 向管理员推送所有在线节点的最新指标快照
+     */
+    private void sendMetricsSnapshot(WebSocketSession session) {
+        List<NodeMetricsCache.NodeMetrics> metricsList = NodeMetricsCache.all();
+        if (metricsList.isEmpty()) {
+            return;
+        }
+        JSONObject res = new JSONObject();
+        res.put("type", "snapshot");
+        res.put("data", metricsList);
+        sendToUser(session, res.toJSONString());
+    }
+
     // 连接关闭后
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
@@ -323,27 +340,10 @@ public class WebSocketServer extends TextWebSocketHandler {
                 log.info("节点 {} 当前活跃连接关闭，开始验证并更新状态", nodeId);
                 
                     nodeSessions.remove(nodeId);
+                    NodeMetricsCache.remove(nodeId);
                     
                     // 更新节点状态为离线
-                    Node node = nodeService.getById(nodeId);
-                    if (node != null) {
-                        node.setStatus(0);
-                        boolean updateResult = nodeService.updateById(node);
-                        
-                        if (updateResult) {
-                            log.info("节点 {} 状态更新为离线成功", nodeId);
-                            
-                            JSONObject res = new JSONObject();
-                            res.put("id", id);
-                            res.put("type", "status");
-                            res.put("data", 0);
-                            broadcastMessage(res.toJSONString());
-                        } else {
-                            log.info("节点 {} 状态更新为离线失败", nodeId);
-                        }
-                    } else {
-                        log.info("节点 {} 不存在，无法更新离线状态", nodeId);
-                    }
+                    nodeStatusFlushAsync.submit(nodeId, 0, null);
             }
             
             // 清理session锁对象
@@ -413,6 +413,33 @@ public class WebSocketServer extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 是否有管理员页面在线
+     */
+    public static boolean hasAdminSessions() {
+        for (WebSocketSession session : activeSessions) {
+            if (isAdminSession(session)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只向管理员页面广播，包含所有用户数据的消息不能发给普通用户
+     */
+    public static void broadcastToAdmins(String message) {
+        for (WebSocketSession session : activeSessions) {
+            if (isAdminSession(session)) {
+                sendToUser(session, message);
+            }
+        }
+    }
+
+    private static boolean isAdminSession(WebSocketSession session) {
+        return Objects.equals(session.getAttributes().get("roleId"), ADMIN_ROLE_ID);
+    }
+
     // 广播消息
     public static void broadcastMessage(String message) {
         for (WebSocketSession session : activeSessions) {
@@ -422,6 +449,35 @@ public class WebSocketServer extends TextWebSocketHandler {
 
 
 
+    /**
+     * 判断节点是否在线
+     */
+    public static boolean isNodeOnline(Long node_id) {
+        WebSocketSession nodeSession = nodeSessions.get(node_id);
+        return nodeSession != null && nodeSession.isOpen();
+    }
+
+    /**
+     * 当前在线的节点ID
+     */
+    public static Set<Long> onlineNodeIds() {
+        return new HashSet<>(nodeSessions.keySet());
+    }
+
+    /**
+     * 向节点发送不需要回复的消息
+     */
+    public static void sendToNode(Long node_id, Object msg, String type) {
+        WebSocketSession nodeSession = nodeSessions.get(node_id);
+        if (nodeSession == null) {
+            return;
+        }
+        JSONObject data = new JSONObject();
+        data.put("type", type);
+        data.put("data", msg);
+        sendToUser(nodeSession, data.toJSONString(), (String) nodeSession.getAttributes().get("nodeSecret"));
+    }
+
     public static GostDto send_msg(Long node_id, Object msg, String type) {
         WebSocketSession nodeSession = nodeSessions.get(node_id);
 
@@ -1,5 +1,7 @@
 package com.admin.config;
 
+import com.admin.common.interceptor.NodeConfigChangeInterceptor;
+import com.admin.common.interceptor.ReadModelChangeInterceptor;
 import com.baomidou.mybatisplus.autoconfigure.ConfigurationCustomizer;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.BlockAttackInnerInterceptor;
@@ -20,6 +22,16 @@ public class MybatisPlusConfig {
         return interceptor;
     }
 
+    @Bean
+    public NodeConfigChangeInterceptor nodeConfigChangeInterceptor() {
+        return new NodeConfigChangeInterceptor(); // 节点配置版本号维护
+    }
+
+    @Bean
+    public ReadModelChangeInterceptor readModelChangeInterceptor() {
+        return new ReadModelChangeInterceptor(); // 列表读模型版本号维护
+    }
+
     @Bean
     public ConfigurationCustomizer configurationCustomizer() {
         return configuration -> configuration.setUseDeprecatedExecutor(false);
@@ -7,7 +7,9 @@ import com.admin.entity.Node;
 import com.admin.service.NodeService;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
@@ -27,6 +29,18 @@ public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
     @Resource
     NodeService nodeService;
 
+    // 节点连接准入速率（每秒）和突发容量，面板重启或网络抖动时避免所有节点同时查库
+    @Value("${node-connect.rate:20}")
+    private double admitRate;
+
+    @Value("${node-connect.burst:50}")
+    private double admitBurst;
+
+    // 令牌桶状态，tokens为当前可用令牌，backlog为被拒绝后等待重连的节点数估计
+    private double tokens = -1;
+    private double backlog;
+    private long lastRefill;
+
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception ex) {
 
@@ -39,6 +53,13 @@ public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
         String type = serverHttpRequest.getServletRequest().getParameter("type");
         String version = serverHttpRequest.getServletRequest().getParameter("version");
         if (Objects.equals(type, "1")) {
+            long retryAfter = tryAdmit();
+            if (retryAfter > 0) {
+                // 超出准入速率，返回503和建议的重试秒数，节点在此基础上加随机抖动后重连
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().add("Retry-After", String.valueOf(retryAfter));
+                return false;
+            }
             System.out.println("type: " + type + " - version: " + version + " - secret: " + secret + " - IP: " + getClientIp(request));
             Node node = nodeService.getOne(new QueryWrapper<Node>().eq("secret", secret));
             if (node == null) {
@@ -54,11 +75,35 @@ public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
             boolean b = JwtUtil.validateToken(secret);
             if (!b) return false;
             attributes.put("id", JwtUtil.getUserIdFromToken(secret));
+            attributes.put("roleId", JwtUtil.getRoleIdFromToken(secret));
         }
         attributes.put("type", type);
         return true;
     }
 
+    /**
+     * 令牌桶准入
+     * @return 0表示允许连接，否则为建议节点等待的秒数，按排队节点数和准入速率估算
+     */
+    private synchronized long tryAdmit() {
+        long now = System.currentTimeMillis();
+        if (tokens < 0) {
+            tokens = admitBurst;
+            lastRefill = now;
+        }
+        double refill = (now - lastRefill) / 1000.0 * admitRate;
+        tokens = Math.min(admitBurst, tokens + refill);
+        backlog = Math.max(0, backlog - refill);
+        lastRefill = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        backlog += 1;
+        return Math.min(60, Math.max(1, (long) Math.ceil(backlog / admitRate)));
+    }
+
     public String getClientIp(ServerHttpRequest request) {
         InetSocketAddress remoteAddress = request.getRemoteAddress();
         if (remoteAddress != null) {
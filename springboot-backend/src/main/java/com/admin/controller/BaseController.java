@@ -23,4 +23,13 @@ public class BaseController {
     @Autowired
     ViteConfigService viteConfigService;
 
+    @Autowired
+    FlowRollupService flowRollupService;
+
+    @Autowired
+    FlowArchiveService flowArchiveService;
+
+    @Autowired
+    UserFlowShardService userFlowShardService;
+
 }
@@ -0,0 +1,28 @@
+package com.admin.controller;
+
+import com.admin.common.aop.LogAnnotation;
+import com.admin.common.dto.FlowArchiveQueryDto;
+import com.admin.common.lang.R;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * <p>
+ * 历史流量报表前端控制器
+ * </p>
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/flow-archive")
+public class FlowArchiveController extends BaseController {
+
+    /**
+     * 用户或转发的月度、年度流量报表
+     * 普通用户只能查询自己和自己的转发
+     */
+    @LogAnnotation
+    @PostMapping("/report")
+    public R report(@Validated @RequestBody FlowArchiveQueryDto queryDto) {
+        return flowArchiveService.report(queryDto);
+    }
+}
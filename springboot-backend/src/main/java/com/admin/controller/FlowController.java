@@ -5,18 +5,30 @@ import com.admin.common.dto.FlowDto;
 import com.admin.common.dto.GostConfigDto;
 import com.admin.common.lang.R;
 import com.admin.common.task.CheckGostConfigAsync;
+import com.admin.common.task.TrafficCounterAsync;
 import com.admin.common.utils.AESCrypto;
+import com.admin.common.utils.ByteBudget;
+import com.admin.common.utils.FlowRateEstimator;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.HttpContextUtils;
+import com.admin.common.utils.ReportPolicy;
+import com.admin.common.utils.TrafficTopN;
+import com.admin.common.utils.UserBandwidth;
+import com.admin.service.FlowRollupService;
+import com.admin.service.ListReadModelService;
 import com.admin.entity.*;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
@@ -40,8 +52,8 @@ import java.util.stream.Collectors;
  * <p>
  * 并发安全解决方案：
  * 1. 使用UpdateWrapper进行数据库层面的原子更新操作，避免读取-修改-写入的竞态条件
- * 2. 使用synchronized锁确保同一用户/隧道的流量更新串行执行
- * 3. 这样可以避免相同用户相同隧道不同转发同时上报时流量统计丢失的问题
+ * 2. 使用synchronized锁确保同一转发/用户隧道的流量更新串行执行
+ * 3. 用户流量按转发散列累加到分片行（user_flow_shard），同一用户不同转发的上报不再争用user表的同一行
  */
 @RestController
 @RequestMapping("/flow")
@@ -53,9 +65,11 @@ public class FlowController extends BaseController {
     private static final String SUCCESS_RESPONSE = "ok";
     private static final String DEFAULT_USER_TUNNEL_ID = "0";
     private static final long BYTES_TO_GB = 1024L * 1024L * 1024L;
+    private static final String REPORT_INTERVAL_HEADER = "X-Report-Interval";
+    private static final String REPORT_THRESHOLD_HEADER = "X-Report-Threshold";
+    private static final String BYTE_BUDGET_HEADER = "X-Byte-Budget";
 
     // 用于同步相同用户和隧道的流量更新操作
-    private static final ConcurrentHashMap<String, Object> USER_LOCKS = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, Object> TUNNEL_LOCKS = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, Object> FORWARD_LOCKS = new ConcurrentHashMap<>();
 
@@ -65,6 +79,15 @@ public class FlowController extends BaseController {
     @Resource
     CheckGostConfigAsync checkGostConfigAsync;
 
+    @Resource
+    TrafficCounterAsync trafficCounterAsync;
+
+    @Resource
+    ListReadModelService listReadModelService;
+
+    @Resource
+    TransactionTemplate transactionTemplate;
+
     /**
      * 加密消息包装器
      */
@@ -133,13 +156,14 @@ public class FlowController extends BaseController {
      *
      * @param rawData 原始数据（可能是加密的）
      * @param secret  节点密钥
-     * @return 处理结果
+     * @return 处理结果，建议的下次上报间隔和阈值通过响应头返回
      */
     @RequestMapping("/upload")
     @LogAnnotation
     public String uploadFlowData(@RequestBody String rawData, String secret) {
         // 1. 验证节点权限
-        if (!isValidNode(secret)) {
+        Long nodeId = getNodeIdBySecret(secret);
+        if (nodeId == null) {
             return SUCCESS_RESPONSE;
         }
 
@@ -154,8 +178,9 @@ public class FlowController extends BaseController {
 
         // 记录日志
         log.info("节点上报流量数据{}", flowDataList);
+        ReportPolicy.recordUpload();
         // 4. 处理流量数据
-        return processFlowData(flowDataList);
+        return processFlowData(nodeId, flowDataList);
     }
 
     /**
@@ -212,59 +237,148 @@ public class FlowController extends BaseController {
     /**
      * 处理流量数据的核心逻辑
      */
-    private String processFlowData(FlowDto flowDataList) {
+    private String processFlowData(Long nodeId, FlowDto flowDataList) {
         String[] serviceIds = parseServiceName(flowDataList.getN());
         String forwardId = serviceIds[0];
         String userId = serviceIds[1];
         String userTunnelId = serviceIds[2];
 
-        Forward forward = forwardService.getById(forwardId);
-
-        // 获取流量计费类型
-        int flowType = getFlowType(forward);
-
-        //  处理流量倍率及单双向计算
-        FlowDto flowStats = filterFlowData(flowDataList, forward, flowType);
+        // 节点带序号重发的上报已经处理过，直接确认，不重复计数
+        Long seq = flowDataList.getS();
+        // 序号按服务实例递增，重建后的新实例不会使旧实例关闭时补发的上报被当作重发
+        String stream = flowDataList.getE() != null ? flowDataList.getN() + "#" + flowDataList.getE() : flowDataList.getN();
+        if (!trafficCounterAsync.claimSequence(nodeId, stream, seq)) {
+            log.info("节点 {} 重发的流量上报 {} 序号 {} 已处理，跳过", nodeId, flowDataList.getN(), seq);
+            return SUCCESS_RESPONSE;
+        }
 
-        // 先更新所有流量统计 - 确保流量数据的一致性
-        updateForwardFlow(forwardId, flowStats);
-        updateUserFlow(userId, flowStats);
-        updateUserTunnelFlow(userTunnelId, flowStats);
+        Forward forward;
+        FlowDto flowStats;
+        long rawIn;
+        long rawOut;
+        Long tunnelId;
+        try {
+            forward = forwardService.getById(forwardId);
+
+            // 获取流量计费类型
+            int flowType = getFlowType(forward);
+
+            // 倍率处理会修改上报对象，节点汇总使用处理前的原始字节数
+            rawIn = flowDataList.getD();
+            rawOut = flowDataList.getU();
+
+            //  处理流量倍率及单双向计算
+            flowStats = filterFlowData(flowDataList, forward, flowType);
+
+            // 写库、写入流量日志和计入列表读模型在读模型的流量锁内完成，列表重新加载不会与之交错
+            FlowDto stats = flowStats;
+            tunnelId = forward != null ? Long.valueOf(forward.getTunnelId()) : null;
+            listReadModelService.writeFlow(() -> {
+                // 先更新所有流量统计，三项在同一事务中提交，失败时都不计入
+                transactionTemplate.executeWithoutResult(status -> {
+                    updateForwardFlow(forwardId, stats);
+                    updateUserFlow(userId, forwardId, stats);
+                    updateUserTunnelFlow(userTunnelId, stats);
+                });
+                // 写入流量日志后该上报才算处理完成，序号随之持久化；以下两步只操作内存，不会抛出异常
+                trafficCounterAsync.submit(tunnelId, nodeId, stream, seq,
+                        stats.getD(), stats.getU(), rawIn, rawOut);
+                // 已写入的流量同步计入列表读模型，列表不因流量上报重新加载
+                listReadModelService.recordFlow(Long.parseLong(forwardId), Long.parseLong(userId), tunnelId,
+                        stats.getD(), stats.getU(), rawIn, rawOut);
+            });
+        } catch (RuntimeException e) {
+            // 事务已回滚，上报没有计入任何对象，释放序号由节点重发时重新处理
+            trafficCounterAsync.releaseSequence(nodeId, stream, seq);
+            throw e;
+        }
+        recordFlowRollups(nodeId, forwardId, userTunnelId, forward, flowStats, rawIn, rawOut);
+        TrafficTopN.record(Long.parseLong(forwardId), Long.parseLong(userId), tunnelId, rawIn + rawOut);
+        recordFlowRates(forwardId, userTunnelId, forward, rawIn, rawOut);
+        UserBandwidth.record(Long.parseLong(userId), nodeId, rawIn + rawOut);
 
         // 7. 检查和服务暂停操作
         String name = buildServiceName(forwardId, userId, userTunnelId);
+        long userRemaining = Long.MAX_VALUE;
+        long userTunnelRemaining = Long.MAX_VALUE;
         if (!Objects.equals(userTunnelId, DEFAULT_USER_TUNNEL_ID)) { // 非管理员的转发需要检测流量限制
-            checkUserRelatedLimits(userId, name);
-            checkUserTunnelRelatedLimits(userTunnelId, name, userId);
+            userRemaining = checkUserRelatedLimits(userId, name);
+            userTunnelRemaining = checkUserTunnelRelatedLimits(userTunnelId, name, userId);
+        }
+
+        // 8. 按转发速率和剩余配额建议下次上报的节奏，并追加节点本地的流量预算
+        long[] rate = FlowRateEstimator.rate(FlowRateEstimator.TYPE_FORWARD, Long.parseLong(forwardId));
+        long[] policy = ReportPolicy.forForward(rate[0] + rate[1], Math.min(userRemaining, userTunnelRemaining));
+        long budget = ByteBudget.grant(flowDataList.getN(), Long.parseLong(userId), Long.parseLong(userTunnelId),
+                userRemaining, userTunnelRemaining);
+        HttpServletResponse response = HttpContextUtils.getHttpServletResponse();
+        if (response != null) {
+            response.setHeader(REPORT_INTERVAL_HEADER, String.valueOf(policy[0]));
+            response.setHeader(REPORT_THRESHOLD_HEADER, String.valueOf(policy[1]));
+            response.setHeader(BYTE_BUDGET_HEADER, String.valueOf(budget));
         }
 
         return SUCCESS_RESPONSE;
     }
 
-    private void checkUserRelatedLimits(String userId, String name) {
+    /**
+     * 累加到流量汇总，转发、用户隧道、隧道按计费后的流量，节点按实际传输的字节数
+     */
+    private void recordFlowRollups(Long nodeId, String forwardId, String userTunnelId, Forward forward,
+                                   FlowDto flowStats, long rawIn, long rawOut) {
+        flowRollupService.record(FlowRollupService.SCOPE_FORWARD, Long.parseLong(forwardId), flowStats.getD(), flowStats.getU());
+        if (!Objects.equals(userTunnelId, DEFAULT_USER_TUNNEL_ID)) {
+            flowRollupService.record(FlowRollupService.SCOPE_USER_TUNNEL, Long.parseLong(userTunnelId), flowStats.getD(), flowStats.getU());
+        }
+        if (forward != null) {
+            flowRollupService.record(FlowRollupService.SCOPE_TUNNEL, forward.getTunnelId(), flowStats.getD(), flowStats.getU());
+        }
+        flowRollupService.record(FlowRollupService.SCOPE_NODE, nodeId, rawIn, rawOut);
+    }
+
+    /**
+     * 更新实时速率，按实际传输的字节数计算
+     */
+    private void recordFlowRates(String forwardId, String userTunnelId, Forward forward, long rawIn, long rawOut) {
+        FlowRateEstimator.record(FlowRateEstimator.TYPE_FORWARD, Long.parseLong(forwardId), rawIn, rawOut);
+        if (!Objects.equals(userTunnelId, DEFAULT_USER_TUNNEL_ID)) {
+            FlowRateEstimator.record(FlowRateEstimator.TYPE_USER_TUNNEL, Long.parseLong(userTunnelId), rawIn, rawOut);
+        }
+        if (forward != null) {
+            FlowRateEstimator.record(FlowRateEstimator.TYPE_TUNNEL, forward.getTunnelId(), rawIn, rawOut);
+        }
+    }
+
+    /**
+     * @return 用户剩余流量（字节），服务已暂停时为0
+     */
+    private long checkUserRelatedLimits(String userId, String name) {
 
         // 重新查询用户以获取最新的流量数据
         User updatedUser = userService.getById(userId);
-        if (updatedUser == null) return;
+        if (updatedUser == null) return Long.MAX_VALUE;
+        userFlowShardService.applyUnmerged(Collections.singletonList(updatedUser));
 
         // 检查用户总流量限制
         long userFlowLimit = updatedUser.getFlow() * BYTES_TO_GB;
         long userCurrentFlow = updatedUser.getInFlow() + updatedUser.getOutFlow();
         if (userFlowLimit < userCurrentFlow) {
             pauseAllUserServices(userId, name);
-            return;
+            return 0;
         }
 
         // 检查用户到期时间
         if (updatedUser.getExpTime() != null && updatedUser.getExpTime() <= new Date().getTime()) {
             pauseAllUserServices(userId, name);
-            return;
+            return 0;
         }
 
         // 检查用户状态
         if (updatedUser.getStatus() != 1) {
             pauseAllUserServices(userId, name);
+            return 0;
         }
+        return userFlowLimit - userCurrentFlow;
     }
 
     public void pauseAllUserServices(String userId, String name) {
@@ -272,26 +386,30 @@ public class FlowController extends BaseController {
         pauseService(forwardList, name);
     }
 
-    public void checkUserTunnelRelatedLimits(String userTunnelId, String name, String userId) {
+    /**
+     * @return 用户隧道剩余流量（字节），服务已暂停时为0
+     */
+    public long checkUserTunnelRelatedLimits(String userTunnelId, String name, String userId) {
 
         UserTunnel userTunnel = userTunnelService.getById(userTunnelId);
-        if (userTunnel == null) return;
+        if (userTunnel == null) return Long.MAX_VALUE;
         long flow = userTunnel.getInFlow() + userTunnel.getOutFlow();
         if (flow >= userTunnel.getFlow() *  BYTES_TO_GB) {
             pauseSpecificForward(userTunnel.getTunnelId(), name, userId);
-            return;
+            return 0;
         }
 
         if (userTunnel.getExpTime() != null && userTunnel.getExpTime() <= System.currentTimeMillis()) {
             pauseSpecificForward(userTunnel.getTunnelId(), name, userId);
-            return;
+            return 0;
         }
 
         if (userTunnel.getStatus() != 1) {
             pauseSpecificForward(userTunnel.getTunnelId(), name, userId);
+            return 0;
         }
 
-
+        return userTunnel.getFlow() * BYTES_TO_GB - flow;
     }
 
     private void pauseSpecificForward(Integer tunnelId, String name, String userId) {
@@ -352,17 +470,9 @@ public class FlowController extends BaseController {
         }
     }
 
-    private void updateUserFlow(String userId, FlowDto flowStats) {
-        // 对相同用户的流量更新进行同步，避免并发覆盖
-        synchronized (getUserLock(userId)) {
-            UpdateWrapper<User> updateWrapper = new UpdateWrapper<>();
-            updateWrapper.eq("id", userId);
-
-            updateWrapper.setSql("in_flow = in_flow + " + flowStats.getD());
-            updateWrapper.setSql("out_flow = out_flow + " + flowStats.getU());
-
-            userService.update(null, updateWrapper);
-        }
+    private void updateUserFlow(String userId, String forwardId, FlowDto flowStats) {
+        // 按转发写入用户的分片行，由定时任务合并回用户表
+        userFlowShardService.addFlow(Long.valueOf(userId), Long.parseLong(forwardId), flowStats.getD(), flowStats.getU());
     }
 
     private void updateUserTunnelFlow(String userTunnelId, FlowDto flowStats) {
@@ -380,10 +490,6 @@ public class FlowController extends BaseController {
         }
     }
 
-    private Object getUserLock(String userId) {
-        return USER_LOCKS.computeIfAbsent(userId, k -> new Object());
-    }
-
     private Object getTunnelLock(String userTunnelId) {
         return TUNNEL_LOCKS.computeIfAbsent(userTunnelId, k -> new Object());
     }
@@ -392,9 +498,12 @@ public class FlowController extends BaseController {
         return FORWARD_LOCKS.computeIfAbsent(forwardId, k -> new Object());
     }
 
-    private boolean isValidNode(String secret) {
-        int nodeCount = nodeService.count(new QueryWrapper<Node>().eq("secret", secret));
-        return nodeCount > 0;
+    /**
+     * 根据密钥获取节点ID，密钥无效时返回null
+     */
+    private Long getNodeIdBySecret(String secret) {
+        Node node = nodeService.getOne(new QueryWrapper<Node>().select("id").eq("secret", secret));
+        return node == null ? null : node.getId();
     }
 
     private String[] parseServiceName(String serviceName) {
@@ -0,0 +1,29 @@
+package com.admin.controller;
+
+import com.admin.common.aop.LogAnnotation;
+import com.admin.common.dto.FlowRollupQueryDto;
+import com.admin.common.lang.R;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * <p>
+ * 流量汇总查询前端控制器
+ * </p>
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/flow-rollup")
+public class FlowRollupController extends BaseController {
+
+    /**
+     * 查询转发、用户隧道、隧道或节点的流量曲线
+     * 普通用户只能查询自己的转发和用户隧道
+     * @return 所选粒度和时间桶列表
+     */
+    @LogAnnotation
+    @PostMapping("/range")
+    public R range(@Validated @RequestBody FlowRollupQueryDto queryDto) {
+        return flowRollupService.queryRange(queryDto);
+    }
+}
@@ -4,6 +4,7 @@ import com.admin.common.aop.LogAnnotation;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.lang.R;
 import com.admin.service.ForwardService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +41,12 @@ public class ForwardController extends BaseController {
         return forwardService.getAllForwards();
     }
 
+    @LogAnnotation
+    @PostMapping("/page")
+    public R page(@Validated @RequestBody ListQueryDto query) {
+        return forwardService.getForwardPage(query);
+    }
+
     @LogAnnotation
     @PostMapping("/update")
     public R update(@Validated @RequestBody ForwardUpdateDto forwardUpdateDto) {
@@ -0,0 +1,42 @@
+package com.admin.controller;
+
+import com.admin.common.annotation.RequireRole;
+import com.admin.common.dto.TopTrafficQueryDto;
+import com.admin.common.lang.R;
+import com.admin.common.utils.TaskMetrics;
+import com.admin.common.utils.TrafficTopN;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * <p>
+ * 运行监控前端控制器
+ * </p>
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/monitor")
+public class MonitorController extends BaseController {
+
+    /**
+     * 获取各定时任务最近一次运行的耗时和计数
+     * @return 任务指标列表
+     */
+    @RequireRole
+    @PostMapping("/tasks")
+    public R taskMetrics() {
+        return R.ok(TaskMetrics.all());
+    }
+
+    /**
+     * 获取指定窗口内流量最大的转发、用户或隧道
+     * @return 按窗口内字节数降序的排行
+     */
+    @RequireRole
+    @PostMapping("/top")
+    public R topTraffic(@Validated @RequestBody TopTrafficQueryDto queryDto) {
+        String window = queryDto.getWindow() != null ? queryDto.getWindow() : TrafficTopN.WINDOW_1M;
+        int limit = queryDto.getLimit() != null ? queryDto.getLimit() : 10;
+        return R.ok(TrafficTopN.query(queryDto.getType(), window, limit));
+    }
+}
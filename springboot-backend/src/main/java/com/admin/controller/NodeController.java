@@ -4,6 +4,7 @@ package com.admin.controller;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.dto.NodeDto;
+import com.admin.common.dto.NodeHistoryQueryDto;
 import com.admin.common.dto.NodeUpdateDto;
 import com.admin.common.lang.R;
 import org.springframework.validation.annotation.Validated;
@@ -62,4 +63,10 @@ public class NodeController extends BaseController {
         return nodeService.getInstallCommand(id);
     }
 
+    @RequireRole
+    @PostMapping("/history")
+    public R history(@Validated @RequestBody NodeHistoryQueryDto queryDto) {
+        return nodeService.getNodeHistory(queryDto);
+    }
+
 }
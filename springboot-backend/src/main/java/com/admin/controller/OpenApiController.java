@@ -12,6 +12,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
 import java.util.Objects;
 
 @RestController
@@ -48,6 +49,7 @@ public class OpenApiController extends BaseController {
         if (!Objects.equals(pwdMd5, userInfo.getPwd())) {
             return R.err("鉴权失败");
         }
+        userFlowShardService.applyUnmerged(Collections.singletonList(userInfo));
 
         final long GIGA = 1024L * 1024L * 1024L;
         String headerValue;
@@ -0,0 +1,43 @@
+package com.admin.controller;
+
+import com.admin.common.annotation.RequireRole;
+import com.admin.common.aop.LogAnnotation;
+import com.admin.common.lang.R;
+import com.admin.service.PlacementService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * <p>
+ * 转发放置调度前端控制器
+ * </p>
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/placement")
+public class PlacementController extends BaseController {
+
+    @Autowired
+    private PlacementService placementService;
+
+    /**
+     * 获取节点负载评分
+     * @return 节点负载列表
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/nodes")
+    public R nodeLoads() {
+        return placementService.getNodeLoads();
+    }
+
+    /**
+     * 获取当前用户可用隧道的放置建议
+     * @return 隧道放置建议列表，第一个可用隧道为推荐隧道
+     */
+    @LogAnnotation
+    @PostMapping("/tunnels")
+    public R suggestTunnels() {
+        return placementService.suggestTunnels();
+    }
+}
@@ -2,6 +2,7 @@ package com.admin.controller;
 
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.annotation.RequireRole;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.TunnelDto;
 import com.admin.common.dto.TunnelUpdateDto;
 
@@ -50,6 +51,13 @@ public class TunnelController extends BaseController {
         return tunnelService.getAllTunnels();
     }
 
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/page")
+    public R page(@Validated @RequestBody ListQueryDto query) {
+        return tunnelService.getTunnelPage(query);
+    }
+
     @LogAnnotation
     @RequireRole
     @PostMapping("/update")
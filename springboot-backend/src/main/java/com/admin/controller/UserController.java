@@ -5,6 +5,8 @@ import com.admin.common.aop.LogAnnotation;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
+import com.admin.service.CascadeDeleteService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,6 +25,9 @@ import java.util.Map;
 @RequestMapping("/api/v1/user")
 public class UserController extends BaseController {
 
+    @Autowired
+    private CascadeDeleteService cascadeDeleteService;
+
     @LogAnnotation
     @PostMapping("/login")
     public R login(@Validated @RequestBody LoginDto loginDto) {
@@ -44,6 +49,13 @@ public class UserController extends BaseController {
         return userService.getAllUsers();
     }
 
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/page")
+    public R page(@Validated @RequestBody ListQueryDto query) {
+        return userService.getUserPage(query);
+    }
+
     @LogAnnotation
     @RequireRole
     @PostMapping("/update")
@@ -59,6 +71,17 @@ public class UserController extends BaseController {
         return userService.deleteUser(id);
     }
 
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/delete-job")
+    public R deleteJob(@RequestBody Map<String, Object> params) {
+        Object jobId = params.get("jobId");
+        if (jobId == null) {
+            return R.err("任务ID不能为空");
+        }
+        return cascadeDeleteService.getJob(jobId.toString());
+    }
+
     @LogAnnotation
     @PostMapping("/package")
     public R getUserPackageInfo() {
@@ -0,0 +1,45 @@
+package com.admin.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 流量汇总桶，按对象和时间粒度累计上下行流量
+ * </p>
+ */
+@Data
+public class FlowRollup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 汇总对象类型（1：转发，2：用户隧道，3：隧道，4：节点）
+     */
+    private Integer scope;
+
+    /**
+     * 汇总对象ID
+     */
+    private Long targetId;
+
+    /**
+     * 时间粒度（1：分钟，2：小时，3：天）
+     */
+    private Integer resolution;
+
+    /**
+     * 时间桶起始时间（毫秒时间戳）
+     */
+    private Long bucketTime;
+
+    private Long inFlow;
+
+    private Long outFlow;
+}
@@ -0,0 +1,26 @@
+package com.admin.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 流量日志写库进度，与隧道、节点流量计数在同一事务中更新，重启重放时跳过已写库的日志段
+ * </p>
+ */
+@Data
+public class FlowWalState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @TableId(value = "id", type = IdType.INPUT)
+    private Integer id;
+
+    /**
+     * 代号小于该值的日志段中的增量都已写入数据库
+     */
+    private Long generation;
+}
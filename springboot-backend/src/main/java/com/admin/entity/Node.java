@@ -1,6 +1,9 @@
 package com.admin.entity;
 
 import java.io.Serializable;
+
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
+import com.baomidou.mybatisplus.annotation.TableField;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -32,4 +35,33 @@ public class Node extends BaseEntity {
 
     private Integer portEnd;
 
+    /**
+     * 上行带宽（Mbps），0为未设置，用于自适应限速判断拥塞
+     */
+    private Integer bandwidth;
+
+    /**
+     * 累计入站流量（字节，已按所属隧道倍率和计费方式计算），由该节点的流量上报批量累加，不随实体更新写回
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long inFlow;
+
+    /**
+     * 累计出站流量（字节，已按所属隧道倍率和计费方式计算）
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long outFlow;
+
+    /**
+     * 累计实际入站字节数
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long rawInFlow;
+
+    /**
+     * 累计实际出站字节数
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long rawOutFlow;
+
 }
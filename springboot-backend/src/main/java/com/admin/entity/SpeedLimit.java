@@ -50,4 +50,9 @@ public class SpeedLimit implements Serializable {
 
     private String tunnelName;
 
+    /**
+     * 自适应（0：关闭，1：开启），开启后入口节点拥塞时按占用自动收紧，负载下降后逐步恢复
+     */
+    private Integer adaptive;
+
 }
@@ -2,6 +2,9 @@ package com.admin.entity;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
+import com.baomidou.mybatisplus.annotation.TableField;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -70,4 +73,38 @@ public class Tunnel extends BaseEntity {
     private String udpListenAddr;
 
     private String interfaceName;
+
+    /**
+     * 自动选择出口节点（0-关闭，1-开启，仅隧道转发有效）
+     */
+    private Integer autoOut;
+
+    /**
+     * 候选出口节点ID，逗号分隔
+     */
+    private String outNodeIds;
+
+    /**
+     * 累计入站流量（字节，已按隧道倍率和计费方式计算），由流量上报批量累加，不随实体更新写回
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long inFlow;
+
+    /**
+     * 累计出站流量（字节，已按隧道倍率和计费方式计算）
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long outFlow;
+
+    /**
+     * 累计实际入站字节数
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long rawInFlow;
+
+    /**
+     * 累计实际出站字节数
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long rawOutFlow;
 }
@@ -1,7 +1,9 @@
 package com.admin.entity;
 
 
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -51,13 +53,24 @@ public class User extends BaseEntity {
 
     private Long flow;
 
+    /**
+     * 已合并的入站流量，上报流量先写入user_flow_shard分片，读取时需加上分片中未合并的部分；
+     * 只通过SQL累加或清零，不随updateById写回
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
     private Long inFlow;
 
+    @TableField(updateStrategy = FieldStrategy.NEVER)
     private Long outFlow;
 
     private Integer num;
 
     private Long flowResetTime;
 
+    /**
+     * 所有节点合计的带宽上限（Mbps），0为不限
+     */
+    private Integer speed;
+
 
 }
@@ -0,0 +1,33 @@
+package com.admin.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 用户流量分片计数，流量上报按转发散列到不同分片累加，由定时任务合并回用户表
+ * </p>
+ */
+@Data
+public class UserFlowShard implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long userId;
+
+    /**
+     * 分片序号
+     */
+    private Integer shard;
+
+    /**
+     * 尚未合并到用户表的入站流量
+     */
+    private Long inFlow;
+
+    /**
+     * 尚未合并到用户表的出站流量
+     */
+    private Long outFlow;
+}
@@ -0,0 +1,26 @@
+package com.admin.mapper;
+
+import com.admin.entity.FlowRollup;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface FlowRollupMapper extends BaseMapper<FlowRollup> {
+
+    /**
+     * 批量累加流量，时间桶不存在时插入
+     */
+    int upsertBatch(@Param("list") List<FlowRollup> list);
+
+    /**
+     * 删除指定粒度中早于截止时间的时间桶，每次最多删除limit条
+     */
+    int deleteExpired(@Param("resolution") int resolution, @Param("cutoff") long cutoff, @Param("limit") int limit);
+
+}
@@ -0,0 +1,13 @@
+package com.admin.mapper;
+
+import com.admin.entity.FlowWalState;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * <p>
+ * 流量日志写库进度 Mapper 接口
+ * </p>
+ */
+public interface FlowWalStateMapper extends BaseMapper<FlowWalState> {
+
+}
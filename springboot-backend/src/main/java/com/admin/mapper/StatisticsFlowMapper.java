@@ -3,6 +3,8 @@ package com.admin.mapper;
 import com.admin.entity.StatisticsFlow;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
+import java.util.List;
+
 /**
  * <p>
  *  Mapper 接口
@@ -13,4 +15,9 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface StatisticsFlowMapper extends BaseMapper<StatisticsFlow> {
 
+    /**
+     * 查询每个用户最近一条统计记录，只填充userId和totalFlow
+     */
+    List<StatisticsFlow> selectLatestTotalFlows();
+
 }
@@ -2,6 +2,9 @@ package com.admin.mapper;
 
 import com.admin.entity.Tunnel;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,9 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface TunnelMapper extends BaseMapper<Tunnel> {
 
+    /**
+     * 批量累加流量计数，只使用id和四个流量字段
+     */
+    int addFlows(@Param("list") List<Tunnel> list);
+
 }
@@ -0,0 +1,42 @@
+package com.admin.mapper;
+
+import com.admin.entity.UserFlowShard;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * 用户流量分片 Mapper 接口
+ * </p>
+ */
+public interface UserFlowShardMapper extends BaseMapper<UserFlowShard> {
+
+    /**
+     * 累加到指定分片，分片行不存在时插入
+     */
+    int addFlow(@Param("userId") Long userId, @Param("shard") int shard,
+                @Param("inFlow") long inFlow, @Param("outFlow") long outFlow);
+
+    /**
+     * 查询有未合并流量的分片，按 (user_id, shard) 排序
+     */
+    List<UserFlowShard> selectPending(@Param("limit") int limit);
+
+    /**
+     * 从分片中减去已合并的流量，合并期间新增的流量保留在分片中
+     */
+    int subtractBatch(@Param("list") List<UserFlowShard> list);
+
+    /**
+     * 按用户汇总未合并的流量，userIds为空时汇总所有用户；只填充userId、inFlow、outFlow
+     */
+    List<UserFlowShard> selectUnmerged(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 清零当天需要重置流量的用户的分片
+     */
+    int resetByResetDay(@Param("currentDay") int currentDay, @Param("lastDayOfMonth") int lastDayOfMonth);
+}
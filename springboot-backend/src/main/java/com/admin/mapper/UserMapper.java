@@ -36,4 +36,9 @@ public interface UserMapper extends BaseMapper<User> {
      * @return 隧道列表
      */
     List<UserPackageDto.UserTunnelDetailDto> getAllTunnelsForAdmin();
+
+    /**
+     * 批量累加用户流量，只使用id、inFlow、outFlow
+     */
+    int addFlowBatch(@Param("list") List<User> list);
 }
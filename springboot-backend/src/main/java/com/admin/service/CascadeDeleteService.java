@@ -0,0 +1,31 @@
+package com.admin.service;
+
+import com.admin.common.lang.R;
+import com.admin.entity.Forward;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 级联删除服务类
+ * 按节点分组批量删除转发对应的Gost服务，各节点并行执行
+ * </p>
+ */
+public interface CascadeDeleteService {
+
+    /**
+     * 删除转发记录并提交节点清理任务
+     * 服务名称在提交时计算，调用方可以在返回后立即删除用户或用户隧道权限记录
+     * @param target 删除对象描述，用于任务查询
+     * @param forwards 需要删除的转发
+     * @return 任务ID
+     */
+    String submit(String target, List<Forward> forwards);
+
+    /**
+     * 查询级联删除任务进度
+     * @param jobId 任务ID
+     * @return 结果
+     */
+    R getJob(String jobId);
+}
@@ -0,0 +1,32 @@
+package com.admin.service;
+
+import com.admin.common.dto.FlowArchiveQueryDto;
+import com.admin.common.lang.R;
+
+/**
+ * <p>
+ * 历史流量归档服务类
+ * </p>
+ */
+public interface FlowArchiveService {
+
+    int TYPE_USER = 1;
+    int TYPE_FORWARD = 2;
+
+    /**
+     * 将早于cutoff且尚未归档的用户小时流量写入归档段
+     * @return 归档的行数，失败时返回-1，此时调用方不应删除数据库中的记录
+     */
+    int archiveUserFlows(long cutoff);
+
+    /**
+     * 将早于cutoff且尚未归档的转发小时汇总写入归档段
+     * @return 归档的行数，失败时返回-1，此时调用方不应删除数据库中的记录
+     */
+    int archiveForwardRollups(long cutoff);
+
+    /**
+     * 用户或转发的月度（按天）、年度（按月）流量报表，合并归档和数据库中尚未归档的数据
+     */
+    R report(FlowArchiveQueryDto queryDto);
+}
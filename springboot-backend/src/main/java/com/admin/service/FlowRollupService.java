@@ -0,0 +1,43 @@
+package com.admin.service;
+
+import com.admin.common.dto.FlowRollupQueryDto;
+import com.admin.common.lang.R;
+import com.admin.entity.FlowRollup;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ * 流量汇总服务类
+ * </p>
+ */
+public interface FlowRollupService extends IService<FlowRollup> {
+
+    int SCOPE_FORWARD = 1;
+    int SCOPE_USER_TUNNEL = 2;
+    int SCOPE_TUNNEL = 3;
+    int SCOPE_NODE = 4;
+
+    int RESOLUTION_MINUTE = 1;
+    int RESOLUTION_HOUR = 2;
+    int RESOLUTION_DAY = 3;
+
+    /**
+     * 记录一次流量上报，先在内存中按分钟合并，由定时任务批量写入
+     */
+    void record(int scope, long targetId, long inFlow, long outFlow);
+
+    /**
+     * 将内存中累计的流量写入分钟、小时、天三个粒度
+     */
+    void flush();
+
+    /**
+     * 按各粒度的保留时间清理过期数据
+     */
+    void cleanup();
+
+    /**
+     * 查询流量曲线，按时间范围自动选择满足条件的最粗粒度
+     */
+    R queryRange(FlowRollupQueryDto queryDto);
+}
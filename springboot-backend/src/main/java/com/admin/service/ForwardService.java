@@ -2,6 +2,7 @@ package com.admin.service;
 
 import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.lang.R;
 import com.admin.entity.Forward;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -30,6 +31,13 @@ public interface ForwardService extends IService<Forward> {
      */
     R getAllForwards();
 
+    /**
+     * 按游标分页查询端口转发，普通用户只能查询自己的转发
+     * @param query 分页及筛选条件
+     * @return 结果
+     */
+    R getForwardPage(ListQueryDto query);
+
     /**
      * 更新端口转发
      * @param forwardUpdateDto 更新数据
@@ -82,4 +90,13 @@ public interface ForwardService extends IService<Forward> {
 
 
     void updateForwardA(Forward forward);
+
+    /**
+     * 切换隧道的出口节点
+     * 在新出口节点创建远程服务并将入口链指向新出口，成功后删除原出口节点上的远程服务
+     * @param tunnelId 隧道ID
+     * @param outNodeId 新出口节点ID
+     * @return 结果
+     */
+    R switchTunnelOutNode(Long tunnelId, Long outNodeId);
 }
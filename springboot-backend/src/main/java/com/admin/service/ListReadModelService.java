@@ -0,0 +1,59 @@
+package com.admin.service;
+
+import com.admin.common.dto.ForwardWithTunnelDto;
+import com.admin.common.dto.ListPageDto;
+import com.admin.common.dto.ListQueryDto;
+import com.admin.entity.Tunnel;
+import com.admin.entity.User;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 列表读模型服务类
+ * 转发、用户、隧道列表缓存在内存中，表写入后重新加载；流量列在加载后的增量由流量上报直接计入
+ * </p>
+ */
+public interface ListReadModelService {
+
+    /**
+     * 转发列表（含隧道信息），按ID倒序
+     * @param userId 只返回该用户的转发，为空时返回全部
+     */
+    List<ForwardWithTunnelDto> allForwards(Integer userId);
+
+    /**
+     * 普通用户列表，按ID倒序
+     */
+    List<User> allUsers();
+
+    /**
+     * 隧道列表，按ID倒序
+     */
+    List<Tunnel> allTunnels();
+
+    /**
+     * 按游标分页查询转发
+     * @param userId 限定的用户，为空时按查询条件中的用户筛选
+     */
+    ListPageDto<ForwardWithTunnelDto> pageForwards(ListQueryDto query, Integer userId);
+
+    ListPageDto<User> pageUsers(ListQueryDto query);
+
+    ListPageDto<Tunnel> pageTunnels(ListQueryDto query);
+
+    /**
+     * 记录一次已写入的流量上报，加到读模型的流量列上
+     * @param inFlow 计费后的入站流量
+     * @param outFlow 计费后的出站流量
+     * @param rawInFlow 原始入站字节数（隧道统计用）
+     * @param rawOutFlow 原始出站字节数
+     */
+    void recordFlow(long forwardId, long userId, Long tunnelId, long inFlow, long outFlow, long rawInFlow, long rawOutFlow);
+
+    /**
+     * 在流量锁内执行一次流量上报的写库和recordFlow，列表重新加载与之互斥，
+     * 同一上报不会既出现在重新加载的行中又计入新的增量
+     */
+    void writeFlow(Runnable write);
+}
@@ -0,0 +1,32 @@
+package com.admin.service;
+
+import com.admin.common.dto.NodeConfigSnapshotDto;
+
+/**
+ * <p>
+ * 节点配置服务类
+ * 根据数据库计算节点的期望配置并下发
+ * </p>
+ */
+public interface NodeConfigService {
+
+    /**
+     * 计算节点的期望配置快照（服务、链和限流器）
+     * @param nodeId 节点ID
+     * @return 配置快照
+     */
+    NodeConfigSnapshotDto buildSnapshot(Long nodeId);
+
+    /**
+     * 获取节点期望配置的哈希，配置未变化时直接返回缓存
+     * @param nodeId 节点ID
+     * @return 哈希（十六进制SHA-256）
+     */
+    String getDesiredHash(Long nodeId);
+
+    /**
+     * 异步向节点推送期望配置快照
+     * @param nodeId 节点ID
+     */
+    void pushSnapshot(Long nodeId);
+}
@@ -1,6 +1,7 @@
 package com.admin.service;
 
 import com.admin.common.dto.NodeDto;
+import com.admin.common.dto.NodeHistoryQueryDto;
 import com.admin.common.dto.NodeUpdateDto;
 import com.admin.common.lang.R;
 import com.admin.entity.Node;
@@ -28,4 +29,6 @@ public interface NodeService extends IService<Node> {
 
     R getInstallCommand(Long id);
 
+    R getNodeHistory(NodeHistoryQueryDto queryDto);
+
 }
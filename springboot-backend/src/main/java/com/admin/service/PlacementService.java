@@ -0,0 +1,32 @@
+package com.admin.service;
+
+import com.admin.common.lang.R;
+
+/**
+ * <p>
+ * 转发放置调度服务类
+ * 根据节点实时负载为新转发推荐或自动选择隧道
+ * </p>
+ */
+public interface PlacementService {
+
+    /**
+     * 获取所有节点的负载评分
+     * @return 结果
+     */
+    R getNodeLoads();
+
+    /**
+     * 获取当前用户可用隧道的放置建议，按负载从低到高排序
+     * @return 结果
+     */
+    R suggestTunnels();
+
+    /**
+     * 为用户自动选择负载最低的可用隧道
+     * @param userId 用户ID
+     * @param roleId 角色ID
+     * @return 隧道ID，没有可用隧道时返回null
+     */
+    Integer pickTunnel(Integer userId, Integer roleId);
+}
@@ -1,5 +1,6 @@
 package com.admin.service;
 
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.dto.TunnelDto;
 import com.admin.common.dto.TunnelUpdateDto;
 
@@ -30,6 +31,13 @@ public interface TunnelService extends IService<Tunnel> {
      */
     R getAllTunnels();
 
+    /**
+     * 按游标分页查询隧道
+     * @param query 分页及筛选条件
+     * @return 结果
+     */
+    R getTunnelPage(ListQueryDto query);
+
     /**
      * 更新隧道（只允许修改名称、流量计费、端口范围）
      * @param tunnelUpdateDto 更新数据
@@ -0,0 +1,51 @@
+package com.admin.service;
+
+import com.admin.entity.User;
+import com.admin.entity.UserFlowShard;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * 用户流量分片计数服务类
+ * </p>
+ */
+public interface UserFlowShardService extends IService<UserFlowShard> {
+
+    /**
+     * 记录一次上报的用户流量，按转发ID选择分片
+     */
+    void addFlow(Long userId, long forwardId, long inFlow, long outFlow);
+
+    /**
+     * 把分片中尚未合并的流量加到用户对象上（只修改内存对象），用于读取用户已用流量
+     */
+    void applyUnmerged(List<User> users);
+
+    /**
+     * 与合并任务互斥地查询用户并加上未合并的分片流量，两次查询之间不会有分片被合并进用户表
+     * @param loader 查询用户的操作
+     */
+    List<User> listWithUnmerged(Supplier<List<User>> loader);
+
+    /**
+     * 把分片中的流量合并回用户表
+     * @return 合并的分片行数
+     */
+    int compact();
+
+    /**
+     * 清零单个用户的流量：分片和用户表在同一事务中清零，并与合并任务互斥
+     */
+    void resetUser(Long userId);
+
+    /**
+     * 每月流量重置：清零当天需要重置流量的用户的分片，并在同一事务中执行用户表的清零，与合并任务互斥
+     * @param resetUsers 清零用户表流量字段的操作，返回重置的用户数
+     * @return 重置的用户数
+     */
+    long resetByResetDay(int currentDay, int lastDayOfMonth, LongSupplier resetUsers);
+}
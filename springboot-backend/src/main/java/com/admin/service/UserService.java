@@ -21,6 +21,8 @@ public interface UserService extends IService<User> {
 
     R getAllUsers();
 
+    R getUserPage(ListQueryDto query);
+
     R updateUser(UserUpdateDto userUpdateDto);
 
     R deleteUser(Long id);
@@ -0,0 +1,241 @@
+package com.admin.service.impl;
+
+import com.admin.common.dto.CascadeDeleteJobDto;
+import com.admin.common.dto.GostDto;
+import com.admin.common.lang.R;
+import com.admin.common.utils.GostUtil;
+import com.admin.entity.Forward;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.service.CascadeDeleteService;
+import com.admin.service.ForwardService;
+import com.admin.service.TunnelService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 级联删除服务实现类
+ * 一次性查询转发涉及的隧道和用户隧道权限，按节点汇总需要删除的服务和链，
+ * 每个节点只下发一条批量删除命令，节点之间并行执行
+ * </p>
+ */
+@Slf4j
+@Service
+public class CascadeDeleteServiceImpl implements CascadeDeleteService {
+
+    // ========== 常量定义 ==========
+
+    private static final String GOST_SUCCESS_MSG = "OK";
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+
+    /** 任务状态常量 */
+    private static final int JOB_STATUS_RUNNING = 0;
+    private static final int JOB_STATUS_SUCCESS = 1;
+    private static final int JOB_STATUS_PARTIAL_FAILED = 2;
+
+    /** 已完成任务的保留时间 */
+    private static final long JOB_RETENTION_MS = 60 * 60 * 1000L;
+
+    private static final int NODE_THREADS = 8;
+
+    private final ExecutorService nodeExecutor = Executors.newFixedThreadPool(NODE_THREADS);
+
+    private final Map<String, CascadeDeleteJobDto> jobs = new ConcurrentHashMap<>();
+
+    // ========== 依赖注入 ==========
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    // ========== 公共接口实现 ==========
+
+    @Override
+    public String submit(String target, List<Forward> forwards) {
+        cleanExpiredJobs();
+
+        CascadeDeleteJobDto job = new CascadeDeleteJobDto();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setTarget(target);
+        job.setStatus(JOB_STATUS_RUNNING);
+        job.setForwardCount(forwards.size());
+        job.setFinishedNodes(0);
+        job.setCreatedTime(System.currentTimeMillis());
+
+        Map<Long, NodeBatch> plan = buildPlan(forwards);
+        job.setTotalNodes(plan.size());
+        jobs.put(job.getJobId(), job);
+
+        // 服务名称已经计算完成，直接按ID批量删除转发记录
+        if (!forwards.isEmpty()) {
+            forwardService.removeByIds(forwards.stream().map(Forward::getId).collect(Collectors.toList()));
+        }
+
+        if (plan.isEmpty()) {
+            finishJob(job);
+            return job.getJobId();
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<Long, NodeBatch> entry : plan.entrySet()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                String error = executeNodeBatch(entry.getKey(), entry.getValue());
+                synchronized (job) {
+                    job.setFinishedNodes(job.getFinishedNodes() + 1);
+                    if (error != null) {
+                        job.getErrors().add("节点 " + entry.getKey() + ": " + error);
+                    }
+                }
+            }, nodeExecutor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, e) -> finishJob(job));
+
+        log.info("级联删除任务 {} 已提交，对象: {}，转发数: {}，节点数: {}", job.getJobId(), target, forwards.size(), plan.size());
+        return job.getJobId();
+    }
+
+    @Override
+    public R getJob(String jobId) {
+        CascadeDeleteJobDto job = jobs.get(jobId);
+        if (job == null) {
+            return R.err("任务不存在或已过期");
+        }
+        synchronized (job) {
+            return R.ok(job);
+        }
+    }
+
+    // ========== 私有辅助方法 ==========
+
+    /**
+     * 按节点汇总需要删除的服务和链
+     *
+     * @param forwards 需要删除的转发
+     * @return 节点ID到删除批次的映射
+     */
+    private Map<Long, NodeBatch> buildPlan(List<Forward> forwards) {
+        if (forwards.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<Integer> tunnelIds = forwards.stream().map(Forward::getTunnelId).collect(Collectors.toSet());
+        Set<Integer> userIds = forwards.stream().map(Forward::getUserId).collect(Collectors.toSet());
+        Map<Long, Tunnel> tunnelMap = tunnelService.listByIds(tunnelIds).stream()
+                .collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+        Map<String, Integer> userTunnelIds = userTunnelService.list(new QueryWrapper<UserTunnel>()
+                        .in("tunnel_id", tunnelIds)
+                        .in("user_id", userIds))
+                .stream()
+                .collect(Collectors.toMap(ut -> ut.getUserId() + "_" + ut.getTunnelId(), UserTunnel::getId, (a, b) -> a));
+
+        Map<Long, NodeBatch> plan = new HashMap<>();
+        for (Forward forward : forwards) {
+            Tunnel tunnel = tunnelMap.get(forward.getTunnelId().longValue());
+            if (tunnel == null) {
+                continue;
+            }
+            int userTunnelId = userTunnelIds.getOrDefault(forward.getUserId() + "_" + forward.getTunnelId(), 0);
+            String serviceName = forward.getId() + "_" + forward.getUserId() + "_" + userTunnelId;
+
+            NodeBatch inBatch = plan.computeIfAbsent(tunnel.getInNodeId(), k -> new NodeBatch());
+            inBatch.services.add(serviceName + "_tcp");
+            inBatch.services.add(serviceName + "_udp");
+            if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+                inBatch.chains.add(serviceName);
+                plan.computeIfAbsent(tunnel.getOutNodeId(), k -> new NodeBatch()).services.add(serviceName + "_tls");
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * 在单个节点上执行批量删除
+     *
+     * @param nodeId 节点ID
+     * @param batch 删除批次
+     * @return 错误信息，成功时返回null
+     */
+    private String executeNodeBatch(Long nodeId, NodeBatch batch) {
+        try {
+            String error = deleteServices(nodeId, batch.services);
+            if (error != null) {
+                return error;
+            }
+            return deleteChains(nodeId, batch.chains);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * 批量删除服务，节点跳过已不存在的服务，一次往返完成
+     */
+    private String deleteServices(Long nodeId, List<String> services) {
+        if (services.isEmpty()) {
+            return null;
+        }
+        GostDto result = GostUtil.DeleteServices(nodeId, services);
+        return Objects.equals(result.getMsg(), GOST_SUCCESS_MSG) ? null : result.getMsg();
+    }
+
+    /**
+     * 批量删除链，节点不支持批量删除时逐个删除，不存在的链视为已删除
+     */
+    private String deleteChains(Long nodeId, List<String> names) {
+        if (names.isEmpty()) {
+            return null;
+        }
+        GostDto result = GostUtil.DeleteChainsBatch(nodeId, names);
+        if (Objects.equals(result.getMsg(), GOST_SUCCESS_MSG)) {
+            return null;
+        }
+        for (String name : names) {
+            GostDto single = GostUtil.DeleteChains(nodeId, name);
+            if (!Objects.equals(single.getMsg(), GOST_SUCCESS_MSG) && (single.getMsg() == null || !single.getMsg().contains("not found"))) {
+                return single.getMsg();
+            }
+        }
+        return null;
+    }
+
+    private void finishJob(CascadeDeleteJobDto job) {
+        synchronized (job) {
+            job.setStatus(job.getErrors().isEmpty() ? JOB_STATUS_SUCCESS : JOB_STATUS_PARTIAL_FAILED);
+            job.setFinishedTime(System.currentTimeMillis());
+        }
+        log.info("级联删除任务 {} 完成，失败节点数: {}", job.getJobId(), job.getErrors().size());
+    }
+
+    private void cleanExpiredJobs() {
+        long expireBefore = System.currentTimeMillis() - JOB_RETENTION_MS;
+        jobs.values().removeIf(job -> job.getFinishedTime() != null && job.getFinishedTime() < expireBefore);
+    }
+
+    /**
+     * 单个节点上需要删除的服务和链
+     */
+    private static class NodeBatch {
+        private final List<String> services = new ArrayList<>();
+        private final List<String> chains = new ArrayList<>();
+    }
+}
@@ -0,0 +1,294 @@
+package com.admin.service.impl;
+
+import com.admin.common.dto.FlowArchiveQueryDto;
+import com.admin.common.lang.R;
+import com.admin.common.utils.FlowArchiveStore;
+import com.admin.common.utils.JwtUtil;
+import com.admin.entity.FlowRollup;
+import com.admin.entity.Forward;
+import com.admin.entity.StatisticsFlow;
+import com.admin.service.FlowArchiveService;
+import com.admin.service.FlowRollupService;
+import com.admin.service.ForwardService;
+import com.admin.service.StatisticsFlowService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * <p>
+ * 历史流量归档服务实现类
+ * 用户小时流量（statistics_flow）和转发小时汇总（flow_rollup）超出数据库保留期时，
+ * 按整天写入本地归档段后再从数据库删除；报表查询水位之前读归档，水位之后读数据库
+ * </p>
+ */
+@Slf4j
+@Service
+public class FlowArchiveServiceImpl implements FlowArchiveService {
+
+    private static final int PAGE_SIZE = 5000;
+    private static final int ADMIN_ROLE_ID = 0;
+
+    private static final String ERROR_NO_PERMISSION = "无权查看该对象的流量";
+
+    @Value("${flow-archive.dir:${log-dir:logs}/flow-archive}")
+    private String archiveDir;
+
+    // 用户段只有一列总流量，转发段为入、出两列
+    private FlowArchiveStore userStore;
+    private FlowArchiveStore forwardStore;
+
+    @Resource
+    @Lazy
+    private StatisticsFlowService statisticsFlowService;
+
+    @Resource
+    @Lazy
+    private FlowRollupService flowRollupService;
+
+    @Resource
+    @Lazy
+    private ForwardService forwardService;
+
+    @PostConstruct
+    public void init() throws IOException {
+        userStore = new FlowArchiveStore(Paths.get(archiveDir, "user"), 1);
+        forwardStore = new FlowArchiveStore(Paths.get(archiveDir, "forward"), 2);
+        log.info("流量归档目录 {}，用户段 {} 个，转发段 {} 个", archiveDir, userStore.getSegmentCount(), forwardStore.getSegmentCount());
+    }
+
+    /**
+     * 按天逐段归档，每写入一天水位随之推进，首次运行积压多天时内存只保留一天的数据
+     */
+    @Override
+    public int archiveUserFlows(long cutoff) {
+        int total = 0;
+        Long first;
+        while ((first = firstUserFlowTime(userStore.getWatermark(), cutoff)) != null) {
+            int archived = append(userStore, loadUserFlows(userStore.getWatermark(), Math.min(nextDay(first), cutoff)), "用户");
+            if (archived <= 0) {
+                return archived < 0 ? -1 : total;
+            }
+            total += archived;
+        }
+        return total;
+    }
+
+    @Override
+    public int archiveForwardRollups(long cutoff) {
+        int total = 0;
+        Long first;
+        while ((first = firstForwardRollupTime(forwardStore.getWatermark(), cutoff)) != null) {
+            int archived = append(forwardStore, loadForwardRollups(forwardStore.getWatermark(), Math.min(nextDay(first), cutoff)), "转发");
+            if (archived <= 0) {
+                return archived < 0 ? -1 : total;
+            }
+            total += archived;
+        }
+        return total;
+    }
+
+    private Long firstUserFlowTime(long watermark, long cutoff) {
+        List<Long> times = statisticsFlowService.listObjs(new QueryWrapper<StatisticsFlow>()
+                .select("MIN(created_time)")
+                .gt("created_time", watermark)
+                .lt("created_time", cutoff), o -> ((Number) o).longValue());
+        return times.isEmpty() ? null : times.get(0);
+    }
+
+    private FlowArchiveStore.Batch loadUserFlows(long watermark, long end) {
+        FlowArchiveStore.Batch batch = new FlowArchiveStore.Batch(1, PAGE_SIZE);
+        long lastId = 0;
+        List<StatisticsFlow> page;
+        do {
+            page = statisticsFlowService.list(new QueryWrapper<StatisticsFlow>()
+                    .select("id", "user_id", "flow", "created_time")
+                    .gt("created_time", watermark)
+                    .lt("created_time", end)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + PAGE_SIZE));
+            for (StatisticsFlow record : page) {
+                batch.add(record.getUserId(), record.getCreatedTime(), record.getFlow());
+                lastId = record.getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        return batch;
+    }
+
+    private Long firstForwardRollupTime(long watermark, long cutoff) {
+        List<Long> times = flowRollupService.listObjs(new QueryWrapper<FlowRollup>()
+                .select("MIN(bucket_time)")
+                .eq("scope", FlowRollupService.SCOPE_FORWARD)
+                .eq("resolution", FlowRollupService.RESOLUTION_HOUR)
+                .gt("bucket_time", watermark)
+                .lt("bucket_time", cutoff), o -> ((Number) o).longValue());
+        return times.isEmpty() ? null : times.get(0);
+    }
+
+    private FlowArchiveStore.Batch loadForwardRollups(long watermark, long end) {
+        FlowArchiveStore.Batch batch = new FlowArchiveStore.Batch(2, PAGE_SIZE);
+        long lastId = 0;
+        List<FlowRollup> page;
+        do {
+            page = flowRollupService.list(new QueryWrapper<FlowRollup>()
+                    .select("id", "target_id", "bucket_time", "in_flow", "out_flow")
+                    .eq("scope", FlowRollupService.SCOPE_FORWARD)
+                    .eq("resolution", FlowRollupService.RESOLUTION_HOUR)
+                    .gt("bucket_time", watermark)
+                    .lt("bucket_time", end)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + PAGE_SIZE));
+            for (FlowRollup rollup : page) {
+                batch.add(rollup.getTargetId(), rollup.getBucketTime(), rollup.getInFlow(), rollup.getOutFlow());
+                lastId = rollup.getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        return batch;
+    }
+
+    /**
+     * 给定时间所在自然日的下一天零点
+     */
+    private long nextDay(long time) {
+        ZoneId zone = ZoneId.systemDefault();
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public R report(FlowArchiveQueryDto queryDto) {
+        int type = queryDto.getType();
+        long targetId = queryDto.getTargetId();
+        if (!hasPermission(type, targetId)) {
+            return R.err(ERROR_NO_PERMISSION);
+        }
+
+        // 月报按天分桶，年报按月分桶
+        boolean monthly = queryDto.getMonth() != null;
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate first = LocalDate.of(queryDto.getYear(), monthly ? queryDto.getMonth() : 1, 1);
+        LocalDate next = monthly ? first.plusMonths(1) : first.plusYears(1);
+        long start = first.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = next.atStartOfDay(zone).toInstant().toEpochMilli();
+        int bucketCount = monthly ? first.lengthOfMonth() : 12;
+
+        boolean user = type == TYPE_USER;
+        FlowArchiveStore store = user ? userStore : forwardStore;
+        long watermark = store.getWatermark();
+        long[] inFlows = new long[bucketCount];
+        long[] outFlows = new long[bucketCount];
+
+        // 水位之前读归档段
+        store.scan(targetId, start, Math.min(end, watermark + 1), (time, values) -> {
+            int bucket = bucketIndex(time, zone, monthly);
+            inFlows[bucket] += values[0];
+            if (!user) {
+                outFlows[bucket] += values[1];
+            }
+        });
+
+        // 水位之后读数据库
+        long liveStart = Math.max(start, watermark + 1);
+        if (liveStart < end) {
+            if (user) {
+                List<StatisticsFlow> records = statisticsFlowService.list(new QueryWrapper<StatisticsFlow>()
+                        .select("flow", "created_time")
+                        .eq("user_id", targetId)
+                        .ge("created_time", liveStart)
+                        .lt("created_time", end));
+                for (StatisticsFlow record : records) {
+                    inFlows[bucketIndex(record.getCreatedTime(), zone, monthly)] += record.getFlow();
+                }
+            } else {
+                List<FlowRollup> rollups = flowRollupService.list(new QueryWrapper<FlowRollup>()
+                        .select("bucket_time", "in_flow", "out_flow")
+                        .eq("scope", FlowRollupService.SCOPE_FORWARD)
+                        .eq("target_id", targetId)
+                        .eq("resolution", FlowRollupService.RESOLUTION_HOUR)
+                        .ge("bucket_time", liveStart)
+                        .lt("bucket_time", end));
+                for (FlowRollup rollup : rollups) {
+                    int bucket = bucketIndex(rollup.getBucketTime(), zone, monthly);
+                    inFlows[bucket] += rollup.getInFlow();
+                    outFlows[bucket] += rollup.getOutFlow();
+                }
+            }
+        }
+
+        long total = 0, totalIn = 0, totalOut = 0;
+        List<Map<String, Object>> points = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            Map<String, Object> point = new HashMap<>();
+            point.put("time", monthly ? first.plusDays(i).toString() : first.plusMonths(i).toString().substring(0, 7));
+            if (user) {
+                point.put("flow", inFlows[i]);
+            } else {
+                point.put("inFlow", inFlows[i]);
+                point.put("outFlow", outFlows[i]);
+                point.put("flow", inFlows[i] + outFlows[i]);
+                totalIn += inFlows[i];
+                totalOut += outFlows[i];
+            }
+            total += inFlows[i] + outFlows[i];
+            points.add(point);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("type", type);
+        result.put("targetId", targetId);
+        result.put("period", monthly ? "month" : "year");
+        result.put("points", points);
+        result.put("totalFlow", total);
+        if (!user) {
+            result.put("totalInFlow", totalIn);
+            result.put("totalOutFlow", totalOut);
+        }
+        return R.ok(result);
+    }
+
+    private int append(FlowArchiveStore store, FlowArchiveStore.Batch batch, String name) {
+        if (batch.size() == 0) {
+            return 0;
+        }
+        try {
+            long bytes = store.append(batch);
+            log.info("归档{}流量 {} 行，段大小 {} 字节", name, batch.size(), bytes);
+            return batch.size();
+        } catch (IOException | RuntimeException e) {
+            log.error("归档{}流量失败", name, e);
+            return -1;
+        }
+    }
+
+    private int bucketIndex(long time, ZoneId zone, boolean monthly) {
+        LocalDate date = Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+        return monthly ? date.getDayOfMonth() - 1 : date.getMonthValue() - 1;
+    }
+
+    /**
+     * 管理员可查看所有对象，普通用户只能查看自己和自己的转发
+     */
+    private boolean hasPermission(int type, long targetId) {
+        if (Objects.equals(JwtUtil.getRoleIdFromToken(), ADMIN_ROLE_ID)) {
+            return true;
+        }
+        Integer userId = JwtUtil.getUserIdFromToken();
+        if (type == TYPE_USER) {
+            return userId != null && userId == targetId;
+        }
+        Forward forward = forwardService.getById(targetId);
+        return forward != null && Objects.equals(forward.getUserId(), userId);
+    }
+}
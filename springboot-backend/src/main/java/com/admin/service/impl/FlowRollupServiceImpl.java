@@ -0,0 +1,262 @@
+package com.admin.service.impl;
+
+import com.admin.common.dto.FlowRollupQueryDto;
+import com.admin.common.lang.R;
+import com.admin.common.utils.JwtUtil;
+import com.admin.entity.FlowRollup;
+import com.admin.entity.Forward;
+import com.admin.entity.UserTunnel;
+import com.admin.mapper.FlowRollupMapper;
+import com.admin.service.FlowArchiveService;
+import com.admin.service.FlowRollupService;
+import com.admin.service.ForwardService;
+import com.admin.service.UserTunnelService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * 流量汇总服务实现类
+ * 流量上报时先在内存中按 对象+分钟 合并，定时批量累加到分钟、小时、天三个粒度的时间桶，
+ * 各粒度按配置的天数保留，查询时按时间范围选用数据点不超过上限的最细粒度
+ * </p>
+ */
+@Slf4j
+@Service
+public class FlowRollupServiceImpl extends ServiceImpl<FlowRollupMapper, FlowRollup> implements FlowRollupService {
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    /** 单次查询返回的最大数据点数，超过时改用更粗的粒度 */
+    private static final int MAX_POINTS = 400;
+    private static final int UPSERT_BATCH_SIZE = 500;
+    private static final int DELETE_BATCH_SIZE = 5000;
+    private static final int ADMIN_ROLE_ID = 0;
+
+    private static final String ERROR_TIME_RANGE = "时间范围错误";
+    private static final String ERROR_NO_PERMISSION = "无权查看该对象的流量";
+
+    // 各粒度保留天数
+    @Value("${flow-rollup.retention.minute:2}")
+    private int minuteRetentionDays;
+
+    @Value("${flow-rollup.retention.hour:30}")
+    private int hourRetentionDays;
+
+    @Value("${flow-rollup.retention.day:400}")
+    private int dayRetentionDays;
+
+    // 尚未写库的流量，key为 对象+分钟桶，value为 [入流量, 出流量]
+    private final Map<PendingKey, long[]> pending = new ConcurrentHashMap<>();
+
+    @Resource
+    @Lazy
+    private ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    private UserTunnelService userTunnelService;
+
+    @Resource
+    @Lazy
+    private FlowArchiveService flowArchiveService;
+
+    @Override
+    public void record(int scope, long targetId, long inFlow, long outFlow) {
+        if (inFlow == 0 && outFlow == 0) {
+            return;
+        }
+        long minute = System.currentTimeMillis() / MINUTE_MS * MINUTE_MS;
+        pending.compute(new PendingKey(scope, targetId, minute), (k, flows) -> {
+            if (flows == null) {
+                flows = new long[2];
+            }
+            flows[0] += inFlow;
+            flows[1] += outFlow;
+            return flows;
+        });
+    }
+
+    @Override
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // 同一对象的多个分钟桶在小时和天粒度上先合并，减少写入行数
+        Map<BucketKey, FlowRollup> rows = new LinkedHashMap<>();
+        for (PendingKey key : new ArrayList<>(pending.keySet())) {
+            long[] flows = pending.remove(key);
+            if (flows == null) {
+                continue;
+            }
+            addRow(rows, key, RESOLUTION_MINUTE, key.minute, flows);
+            addRow(rows, key, RESOLUTION_HOUR, key.minute / HOUR_MS * HOUR_MS, flows);
+            addRow(rows, key, RESOLUTION_DAY, startOfDay(key.minute), flows);
+        }
+
+        List<FlowRollup> list = new ArrayList<>(rows.values());
+        for (int i = 0; i < list.size(); i += UPSERT_BATCH_SIZE) {
+            try {
+                this.baseMapper.upsertBatch(list.subList(i, Math.min(i + UPSERT_BATCH_SIZE, list.size())));
+            } catch (Exception e) {
+                // 汇总数据只用于展示，写入失败时丢弃本批，计费以各对象的流量字段为准
+                log.info("写入流量汇总失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        deleteExpired(RESOLUTION_MINUTE, now - minuteRetentionDays * DAY_MS);
+        // 转发的小时数据按整天归档后再删除，归档失败时保留到下次重试
+        long hourCutoff = startOfDay(now - hourRetentionDays * DAY_MS);
+        if (flowArchiveService.archiveForwardRollups(hourCutoff) >= 0) {
+            deleteExpired(RESOLUTION_HOUR, hourCutoff);
+        }
+        deleteExpired(RESOLUTION_DAY, now - dayRetentionDays * DAY_MS);
+    }
+
+    @Override
+    public R queryRange(FlowRollupQueryDto queryDto) {
+        long end = queryDto.getEndTime() != null ? queryDto.getEndTime() : System.currentTimeMillis();
+        long start = queryDto.getStartTime() != null ? queryDto.getStartTime() : end - DAY_MS;
+        if (start >= end) {
+            return R.err(ERROR_TIME_RANGE);
+        }
+        if (!hasPermission(queryDto.getScope(), queryDto.getTargetId())) {
+            return R.err(ERROR_NO_PERMISSION);
+        }
+
+        int resolution = chooseResolution(start, end);
+        long bucketStart = resolution == RESOLUTION_DAY ? startOfDay(start) : start / bucketSize(resolution) * bucketSize(resolution);
+        List<FlowRollup> buckets = this.list(new QueryWrapper<FlowRollup>()
+                .select("bucket_time", "in_flow", "out_flow")
+                .eq("scope", queryDto.getScope())
+                .eq("target_id", queryDto.getTargetId())
+                .eq("resolution", resolution)
+                .ge("bucket_time", bucketStart)
+                .le("bucket_time", end)
+                .orderByAsc("bucket_time"));
+
+        long totalIn = 0, totalOut = 0;
+        List<Map<String, Object>> points = new ArrayList<>(buckets.size());
+        for (FlowRollup bucket : buckets) {
+            Map<String, Object> point = new HashMap<>();
+            point.put("time", bucket.getBucketTime());
+            point.put("inFlow", bucket.getInFlow());
+            point.put("outFlow", bucket.getOutFlow());
+            points.add(point);
+            totalIn += bucket.getInFlow();
+            totalOut += bucket.getOutFlow();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("resolution", resolutionName(resolution));
+        result.put("startTime", start);
+        result.put("endTime", end);
+        result.put("points", points);
+        result.put("totalInFlow", totalIn);
+        result.put("totalOutFlow", totalOut);
+        return R.ok(result);
+    }
+
+    /**
+     * 选择粒度：数据点不超过上限且保留期覆盖开始时间的最细粒度，否则使用天粒度
+     */
+    private int chooseResolution(long start, long end) {
+        long now = System.currentTimeMillis();
+        if ((end - start) / MINUTE_MS <= MAX_POINTS && start >= now - minuteRetentionDays * DAY_MS) {
+            return RESOLUTION_MINUTE;
+        }
+        if ((end - start) / HOUR_MS <= MAX_POINTS && start >= now - hourRetentionDays * DAY_MS) {
+            return RESOLUTION_HOUR;
+        }
+        return RESOLUTION_DAY;
+    }
+
+    /**
+     * 管理员可查看所有对象，普通用户只能查看自己的转发和用户隧道
+     */
+    private boolean hasPermission(int scope, long targetId) {
+        if (Objects.equals(JwtUtil.getRoleIdFromToken(), ADMIN_ROLE_ID)) {
+            return true;
+        }
+        Integer userId = JwtUtil.getUserIdFromToken();
+        if (scope == SCOPE_FORWARD) {
+            Forward forward = forwardService.getById(targetId);
+            return forward != null && Objects.equals(forward.getUserId(), userId);
+        }
+        if (scope == SCOPE_USER_TUNNEL) {
+            UserTunnel userTunnel = userTunnelService.getById(targetId);
+            return userTunnel != null && Objects.equals(userTunnel.getUserId(), userId);
+        }
+        return false;
+    }
+
+    private void deleteExpired(int resolution, long cutoff) {
+        int deleted;
+        do {
+            deleted = this.baseMapper.deleteExpired(resolution, cutoff, DELETE_BATCH_SIZE);
+        } while (deleted >= DELETE_BATCH_SIZE);
+    }
+
+    private void addRow(Map<BucketKey, FlowRollup> rows, PendingKey key, int resolution, long bucketTime, long[] flows) {
+        FlowRollup row = rows.computeIfAbsent(new BucketKey(key.scope, key.targetId, resolution, bucketTime), k -> {
+            FlowRollup rollup = new FlowRollup();
+            rollup.setScope(key.scope);
+            rollup.setTargetId(key.targetId);
+            rollup.setResolution(resolution);
+            rollup.setBucketTime(bucketTime);
+            rollup.setInFlow(0L);
+            rollup.setOutFlow(0L);
+            return rollup;
+        });
+        row.setInFlow(row.getInFlow() + flows[0]);
+        row.setOutFlow(row.getOutFlow() + flows[1]);
+    }
+
+    private long startOfDay(long time) {
+        return Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDate()
+                .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private long bucketSize(int resolution) {
+        return resolution == RESOLUTION_MINUTE ? MINUTE_MS : resolution == RESOLUTION_HOUR ? HOUR_MS : DAY_MS;
+    }
+
+    private String resolutionName(int resolution) {
+        return resolution == RESOLUTION_MINUTE ? "1m" : resolution == RESOLUTION_HOUR ? "1h" : "1d";
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class PendingKey {
+        private final int scope;
+        private final long targetId;
+        private final long minute;
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class BucketKey {
+        private final int scope;
+        private final long targetId;
+        private final int resolution;
+        private final long bucketTime;
+    }
+}
@@ -2,8 +2,8 @@ package com.admin.service.impl;
 
 import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
-import com.admin.common.dto.ForwardWithTunnelDto;
 import com.admin.common.dto.GostDto;
+import com.admin.common.dto.ListQueryDto;
 import com.admin.common.lang.R;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.JwtUtil;
@@ -63,12 +63,29 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     @Resource
     NodeService nodeService;
 
+    @Resource
+    @Lazy
+    PlacementService placementService;
+
+    @Resource
+    @Lazy
+    ListReadModelService listReadModelService;
+
 
     @Override
     public R createForward(ForwardDto forwardDto) {
         // 1. 获取当前用户信息
         UserInfo currentUser = getCurrentUserInfo();
 
+        // 未指定隧道时按节点负载自动选择
+        if (forwardDto.getTunnelId() == null) {
+            Integer tunnelId = placementService.pickTunnel(currentUser.getUserId(), currentUser.getRoleId());
+            if (tunnelId == null) {
+                return R.err("暂无可用隧道");
+            }
+            forwardDto.setTunnelId(tunnelId);
+        }
+
         // 2. 检查隧道是否存在和可用
         Tunnel tunnel = validateTunnel(forwardDto.getTunnelId());
         if (tunnel == null) {
@@ -117,15 +134,15 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     @Override
     public R getAllForwards() {
         UserInfo currentUser = getCurrentUserInfo();
+        Integer userId = currentUser.getRoleId() != ADMIN_ROLE_ID ? currentUser.getUserId() : null;
+        return R.ok(listReadModelService.allForwards(userId));
+    }
 
-        List<ForwardWithTunnelDto> forwardList;
-        if (currentUser.getRoleId() != ADMIN_ROLE_ID) {
-            forwardList = baseMapper.selectForwardsWithTunnelByUserId(currentUser.getUserId());
-        } else {
-            forwardList = baseMapper.selectAllForwardsWithTunnel();
-        }
-
-        return R.ok(forwardList);
+    @Override
+    public R getForwardPage(ListQueryDto query) {
+        UserInfo currentUser = getCurrentUserInfo();
+        Integer userId = currentUser.getRoleId() != ADMIN_ROLE_ID ? currentUser.getUserId() : null;
+        return R.ok(listReadModelService.pageForwards(query, userId));
     }
 
     @Override
@@ -1402,6 +1419,109 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     }
 
 
+    @Override
+    public R switchTunnelOutNode(Long tunnelId, Long outNodeId) {
+        Tunnel tunnel = tunnelService.getById(tunnelId);
+        if (tunnel == null) {
+            return R.err("隧道不存在");
+        }
+        if (tunnel.getType() != TUNNEL_TYPE_TUNNEL_FORWARD) {
+            return R.err("仅隧道转发支持切换出口节点");
+        }
+        if (Objects.equals(tunnel.getOutNodeId(), outNodeId)) {
+            return R.ok();
+        }
+        if (Objects.equals(tunnel.getInNodeId(), outNodeId)) {
+            return R.err("隧道转发模式下，入口和出口不能是同一个节点");
+        }
+        Node inNode = nodeService.getById(tunnel.getInNodeId());
+        Node oldOutNode = nodeService.getById(tunnel.getOutNodeId());
+        Node newOutNode = nodeService.getById(outNodeId);
+        if (inNode == null || newOutNode == null) {
+            return R.err("节点不存在");
+        }
+
+        List<Forward> forwards = this.list(new QueryWrapper<Forward>().eq("tunnel_id", tunnelId));
+        Map<Integer, UserTunnel> userTunnelMap = userTunnelService.list(new QueryWrapper<UserTunnel>().eq("tunnel_id", tunnelId))
+                .stream()
+                .collect(Collectors.toMap(UserTunnel::getUserId, ut -> ut, (a, b) -> a));
+
+        // 一次性计算新出口节点的已占用端口，切换过程中分配的端口同样加入集合
+        Set<Integer> usedPorts = getAllUsedPortsOnNode(outNodeId, null);
+        List<Forward> switched = new ArrayList<>();
+        Map<Long, Integer> oldOutPorts = new HashMap<>();
+        String error = null;
+        for (Forward forward : forwards) {
+            Integer outPort = null;
+            for (int port = newOutNode.getPortSta(); port <= newOutNode.getPortEnd(); port++) {
+                if (!usedPorts.contains(port)) {
+                    outPort = port;
+                    break;
+                }
+            }
+            if (outPort == null) {
+                error = "新出口节点端口已满，无法分配新端口";
+                break;
+            }
+
+            String serviceName = buildServiceName(forward.getId(), forward.getUserId(), userTunnelMap.get(forward.getUserId()));
+            oldOutPorts.put(forward.getId(), forward.getOutPort());
+            forward.setOutPort(outPort);
+
+            R remoteResult = createRemoteService(newOutNode, serviceName, forward, tunnel.getProtocol(), forward.getInterfaceName());
+            if (remoteResult.getCode() != 0) {
+                forward.setOutPort(oldOutPorts.get(forward.getId()));
+                error = remoteResult.getMsg();
+                break;
+            }
+            R chainResult = updateChainService(inNode, serviceName, newOutNode.getServerIp(), outPort, tunnel.getProtocol(), tunnel.getInterfaceName());
+            if (chainResult.getCode() != 0) {
+                GostUtil.DeleteRemoteService(newOutNode.getId(), serviceName);
+                forward.setOutPort(oldOutPorts.get(forward.getId()));
+                error = chainResult.getMsg();
+                break;
+            }
+            if (forward.getStatus() != null && forward.getStatus() == FORWARD_STATUS_PAUSED) {
+                GostUtil.PauseRemoteService(newOutNode.getId(), serviceName);
+            }
+            usedPorts.add(outPort);
+            switched.add(forward);
+        }
+
+        if (error != null) {
+            // 回滚已切换的转发，入口链重新指向原出口节点
+            for (Forward forward : switched) {
+                String serviceName = buildServiceName(forward.getId(), forward.getUserId(), userTunnelMap.get(forward.getUserId()));
+                if (oldOutNode != null) {
+                    updateChainService(inNode, serviceName, oldOutNode.getServerIp(), oldOutPorts.get(forward.getId()), tunnel.getProtocol(), tunnel.getInterfaceName());
+                }
+                GostUtil.DeleteRemoteService(newOutNode.getId(), serviceName);
+            }
+            log.info("隧道 {} 切换出口节点到 {} 失败: {}", tunnelId, outNodeId, error);
+            return R.err("切换出口节点失败: " + error);
+        }
+
+        // 全部切换成功后再清理原出口节点并落库
+        for (Forward forward : switched) {
+            if (oldOutNode != null) {
+                String serviceName = buildServiceName(forward.getId(), forward.getUserId(), userTunnelMap.get(forward.getUserId()));
+                GostUtil.DeleteRemoteService(oldOutNode.getId(), serviceName);
+            }
+            Forward update = new Forward();
+            update.setId(forward.getId());
+            update.setOutPort(forward.getOutPort());
+            update.setUpdatedTime(System.currentTimeMillis());
+            this.updateById(update);
+        }
+        tunnel.setOutNodeId(outNodeId);
+        tunnel.setOutIp(newOutNode.getServerIp());
+        tunnel.setUpdatedTime(System.currentTimeMillis());
+        tunnelService.updateById(tunnel);
+        log.info("隧道 {} 出口节点已切换: {} -> {}", tunnelId, oldOutNode != null ? oldOutNode.getId() : null, outNodeId);
+        return R.ok();
+    }
+
+
     // ========== 内部数据类 ==========
 
     /**
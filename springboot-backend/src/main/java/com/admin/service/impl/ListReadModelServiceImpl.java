@@ -0,0 +1,377 @@
+package com.admin.service.impl;
+
+import com.admin.common.dto.ForwardWithTunnelDto;
+import com.admin.common.dto.ListPageDto;
+import com.admin.common.dto.ListQueryDto;
+import com.admin.common.task.TrafficCounterAsync;
+import com.admin.common.utils.FlowRateEstimator;
+import com.admin.common.utils.ReadModelVersion;
+import com.admin.entity.Tunnel;
+import com.admin.entity.User;
+import com.admin.mapper.ForwardMapper;
+import com.admin.mapper.TunnelMapper;
+import com.admin.mapper.UserMapper;
+import com.admin.service.ListReadModelService;
+import com.admin.service.UserFlowShardService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * 列表读模型服务实现类
+ * 每个列表在内存中保存一份按ID倒序的快照和版本号，ReadModelChangeInterceptor递增版本号后，下次读取时整体重新加载。
+ * 流量上报对流量列的累加不使版本号变化，而是记录在快照对应的增量表中，读取时叠加到返回的副本上。
+ * 重新加载持有流量锁的写锁，流量上报的写库和记录增量持有读锁，换上新的增量表后查询到的行与增量不会重叠或遗漏；
+ * 快照超过一定时间后即使版本号未变也重新加载，纠正增量与数据库之间可能残留的误差
+ * </p>
+ */
+@Slf4j
+@Service
+public class ListReadModelServiceImpl implements ListReadModelService {
+
+    private static final int ADMIN_ROLE_ID = 0;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    // 快照的最长使用时间（毫秒），到期后重新加载流量列
+    private static final long MAX_SNAPSHOT_AGE_MS = 5 * 60 * 1000L;
+
+    @Resource
+    ForwardMapper forwardMapper;
+
+    @Resource
+    UserMapper userMapper;
+
+    @Resource
+    TunnelMapper tunnelMapper;
+
+    @Resource
+    @Lazy
+    UserFlowShardService userFlowShardService;
+
+    @Resource
+    @Lazy
+    TrafficCounterAsync trafficCounterAsync;
+
+    // 流量锁：上报写库并记录增量时持有读锁，列表重新加载时持有写锁
+    private final ReadWriteLock flowLock = new ReentrantReadWriteLock();
+
+    private final Model<ForwardWithTunnelDto> forwards = new Model<>(ReadModelVersion.FORWARD, ForwardWithTunnelDto::getId, flowLock);
+    private final Model<User> users = new Model<>(ReadModelVersion.USER, User::getId, flowLock);
+    private final Model<Tunnel> tunnels = new Model<>(ReadModelVersion.TUNNEL, Tunnel::getId, flowLock);
+
+    @Override
+    public List<ForwardWithTunnelDto> allForwards(Integer userId) {
+        return all(forwards.snapshot(this::loadForwards), forwardFilter(null, userId), this::viewForward);
+    }
+
+    @Override
+    public List<User> allUsers() {
+        return all(users.snapshot(this::loadUsers), user -> true, this::viewUser);
+    }
+
+    @Override
+    public List<Tunnel> allTunnels() {
+        return all(tunnels.snapshot(this::loadTunnels), tunnel -> true, this::viewTunnel);
+    }
+
+    @Override
+    public ListPageDto<ForwardWithTunnelDto> pageForwards(ListQueryDto query, Integer userId) {
+        return page(forwards.snapshot(this::loadForwards), query, forwardFilter(query, userId), this::viewForward);
+    }
+
+    @Override
+    public ListPageDto<User> pageUsers(ListQueryDto query) {
+        String keyword = normalize(query.getKeyword());
+        Predicate<User> filter = user -> (query.getStatus() == null || Objects.equals(user.getStatus(), query.getStatus()))
+                && (keyword == null || contains(user.getUser(), keyword));
+        return page(users.snapshot(this::loadUsers), query, filter, this::viewUser);
+    }
+
+    @Override
+    public ListPageDto<Tunnel> pageTunnels(ListQueryDto query) {
+        String keyword = normalize(query.getKeyword());
+        Predicate<Tunnel> filter = tunnel -> (query.getStatus() == null || Objects.equals(tunnel.getStatus(), query.getStatus()))
+                && (keyword == null || contains(tunnel.getName(), keyword) || contains(tunnel.getInIp(), keyword));
+        return page(tunnels.snapshot(this::loadTunnels), query, filter, this::viewTunnel);
+    }
+
+    @Override
+    public void recordFlow(long forwardId, long userId, Long tunnelId, long inFlow, long outFlow, long rawInFlow, long rawOutFlow) {
+        forwards.record(forwardId, new long[]{inFlow, outFlow});
+        users.record(userId, new long[]{inFlow, outFlow});
+        if (tunnelId != null) {
+            tunnels.record(tunnelId, new long[]{inFlow, outFlow, rawInFlow, rawOutFlow});
+        }
+    }
+
+    @Override
+    public void writeFlow(Runnable write) {
+        flowLock.readLock().lock();
+        try {
+            write.run();
+        } finally {
+            flowLock.readLock().unlock();
+        }
+    }
+
+    // ========== 加载 ==========
+
+    private List<ForwardWithTunnelDto> loadForwards() {
+        return forwardMapper.selectAllForwardsWithTunnel();
+    }
+
+    /**
+     * 用户行与未合并分片的查询与合并任务互斥，两次查询之间不会有分片被合并进用户表
+     */
+    private List<User> loadUsers() {
+        return userFlowShardService.listWithUnmerged(
+                () -> userMapper.selectList(new QueryWrapper<User>().ne("role_id", ADMIN_ROLE_ID)));
+    }
+
+    /**
+     * 隧道表的流量由TrafficCounterAsync定时批量写入，加载时补上尚未写库的部分；
+     * 加载恰逢批量写库时可能有一轮的误差，快照到期重新加载时纠正
+     */
+    private List<Tunnel> loadTunnels() {
+        List<Tunnel> list = tunnelMapper.selectList(null);
+        Map<Long, long[]> pending = trafficCounterAsync.pendingTunnelFlows();
+        for (Tunnel tunnel : list) {
+            long[] delta = pending.get(tunnel.getId());
+            if (delta != null) {
+                addTunnelFlow(tunnel, delta);
+            }
+        }
+        return list;
+    }
+
+    // ========== 返回副本 ==========
+
+    private ForwardWithTunnelDto viewForward(ForwardWithTunnelDto row, long[] delta) {
+        ForwardWithTunnelDto view = new ForwardWithTunnelDto();
+        BeanUtils.copyProperties(row, view);
+        if (delta != null) {
+            view.setInFlow(plus(view.getInFlow(), delta[0]));
+            view.setOutFlow(plus(view.getOutFlow(), delta[1]));
+        }
+        long[] rate = FlowRateEstimator.rate(FlowRateEstimator.TYPE_FORWARD, view.getId());
+        view.setInRate(rate[0]);
+        view.setOutRate(rate[1]);
+        return view;
+    }
+
+    private User viewUser(User row, long[] delta) {
+        User view = new User();
+        BeanUtils.copyProperties(row, view);
+        if (delta != null) {
+            view.setInFlow(plus(view.getInFlow(), delta[0]));
+            view.setOutFlow(plus(view.getOutFlow(), delta[1]));
+        }
+        return view;
+    }
+
+    private Tunnel viewTunnel(Tunnel row, long[] delta) {
+        Tunnel view = new Tunnel();
+        BeanUtils.copyProperties(row, view);
+        if (delta != null) {
+            addTunnelFlow(view, delta);
+        }
+        return view;
+    }
+
+    private static void addTunnelFlow(Tunnel tunnel, long[] delta) {
+        tunnel.setInFlow(plus(tunnel.getInFlow(), delta[0]));
+        tunnel.setOutFlow(plus(tunnel.getOutFlow(), delta[1]));
+        tunnel.setRawInFlow(plus(tunnel.getRawInFlow(), delta[2]));
+        tunnel.setRawOutFlow(plus(tunnel.getRawOutFlow(), delta[3]));
+    }
+
+    private static long plus(Long value, long delta) {
+        return (value == null ? 0 : value) + delta;
+    }
+
+    // ========== 筛选与分页 ==========
+
+    private Predicate<ForwardWithTunnelDto> forwardFilter(ListQueryDto query, Integer userId) {
+        Integer status = query != null ? query.getStatus() : null;
+        Integer ownerId = userId != null ? userId : (query != null ? query.getUserId() : null);
+        Integer tunnelId = query != null ? query.getTunnelId() : null;
+        String keyword = query != null ? normalize(query.getKeyword()) : null;
+        return forward -> (status == null || Objects.equals(forward.getStatus(), status))
+                && (ownerId == null || Objects.equals(forward.getUserId(), ownerId))
+                && (tunnelId == null || Objects.equals(forward.getTunnelId(), tunnelId))
+                && (keyword == null
+                || contains(forward.getName(), keyword)
+                || contains(forward.getUserName(), keyword)
+                || contains(forward.getRemoteAddr(), keyword)
+                || contains(forward.getTunnelName(), keyword)
+                || (forward.getInPort() != null && forward.getInPort().toString().equals(keyword)));
+    }
+
+    private static <T> List<T> all(Snapshot<T> snapshot, Predicate<T> filter, BiFunction<T, long[], T> view) {
+        List<T> result = new ArrayList<>();
+        for (int i = 0; i < snapshot.rows.size(); i++) {
+            T row = snapshot.rows.get(i);
+            if (filter.test(row)) {
+                result.add(view.apply(row, snapshot.deltas.get(snapshot.ids[i])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 游标分页：从ID小于游标的第一条开始取满一页，同时统计符合条件的总数
+     */
+    private static <T> ListPageDto<T> page(Snapshot<T> snapshot, ListQueryDto query, Predicate<T> filter,
+                                           BiFunction<T, long[], T> view) {
+        int size = query.getSize() != null ? query.getSize() : DEFAULT_PAGE_SIZE;
+        int start = query.getCursor() != null ? snapshot.firstBelow(query.getCursor()) : 0;
+        List<T> list = new ArrayList<>(size);
+        Long nextCursor = null;
+        long lastId = 0;
+        int total = 0;
+        for (int i = 0; i < snapshot.rows.size(); i++) {
+            T row = snapshot.rows.get(i);
+            if (!filter.test(row)) {
+                continue;
+            }
+            total++;
+            if (i < start) {
+                continue;
+            }
+            if (list.size() < size) {
+                list.add(view.apply(row, snapshot.deltas.get(snapshot.ids[i])));
+                lastId = snapshot.ids[i];
+            } else if (nextCursor == null) {
+                // 本页之后还有符合条件的记录
+                nextCursor = lastId;
+            }
+        }
+        ListPageDto<T> page = new ListPageDto<>();
+        page.setList(list);
+        page.setNextCursor(nextCursor);
+        page.setTotal(total);
+        return page;
+    }
+
+    private static String normalize(String keyword) {
+        return keyword == null || keyword.trim().isEmpty() ? null : keyword.trim().toLowerCase();
+    }
+
+    private static boolean contains(String value, String keyword) {
+        return value != null && value.toLowerCase().contains(keyword);
+    }
+
+    // ========== 读模型 ==========
+
+    /**
+     * 单个列表的读模型
+     */
+    private static class Model<T> {
+        private final String name;
+        private final Function<T, Long> idOf;
+        private final ReadWriteLock flowLock;
+        private volatile Snapshot<T> current;
+        // 流量增量写入的目标，重新加载前先替换
+        private volatile Map<Long, long[]> deltas = new ConcurrentHashMap<>();
+
+        private Model(String name, Function<T, Long> idOf, ReadWriteLock flowLock) {
+            this.name = name;
+            this.idOf = idOf;
+            this.flowLock = flowLock;
+        }
+
+        private Snapshot<T> snapshot(Supplier<List<T>> loader) {
+            Snapshot<T> snapshot = current;
+            if (isFresh(snapshot, ReadModelVersion.current(name))) {
+                return snapshot;
+            }
+            synchronized (this) {
+                snapshot = current;
+                long version = ReadModelVersion.current(name);
+                if (isFresh(snapshot, version)) {
+                    return snapshot;
+                }
+                List<T> rows;
+                Map<Long, long[]> fresh = new ConcurrentHashMap<>();
+                flowLock.writeLock().lock();
+                try {
+                    deltas = fresh;
+                    rows = new ArrayList<>(loader.get());
+                } finally {
+                    flowLock.writeLock().unlock();
+                }
+                rows.sort(Comparator.comparing(idOf, Comparator.reverseOrder()));
+                snapshot = new Snapshot<>(version, rows, idOf, fresh);
+                current = snapshot;
+                log.debug("列表读模型 {} 重新加载 {} 条", name, rows.size());
+                return snapshot;
+            }
+        }
+
+        private static boolean isFresh(Snapshot<?> snapshot, long version) {
+            return snapshot != null && snapshot.version == version
+                    && System.currentTimeMillis() - snapshot.loadedAt < MAX_SNAPSHOT_AGE_MS;
+        }
+
+        private void record(long id, long[] delta) {
+            deltas.merge(id, delta, (a, b) -> {
+                long[] sum = a.clone();
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += b[i];
+                }
+                return sum;
+            });
+        }
+    }
+
+    /**
+     * 某一版本的列表快照，行只读
+     */
+    private static class Snapshot<T> {
+        private final long version;
+        private final long loadedAt = System.currentTimeMillis();
+        private final List<T> rows;
+        private final long[] ids;
+        private final Map<Long, long[]> deltas;
+
+        private Snapshot(long version, List<T> rows, Function<T, Long> idOf, Map<Long, long[]> deltas) {
+            this.version = version;
+            this.rows = Collections.unmodifiableList(rows);
+            this.ids = new long[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                ids[i] = idOf.apply(rows.get(i));
+            }
+            this.deltas = deltas;
+        }
+
+        /**
+         * 第一条ID小于游标的位置，ID按倒序排列
+         */
+        private int firstBelow(long cursor) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] >= cursor) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
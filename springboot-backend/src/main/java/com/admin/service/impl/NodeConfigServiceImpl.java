@@ -0,0 +1,260 @@
+package com.admin.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.admin.common.dto.GostDto;
+import com.admin.common.dto.NodeConfigSnapshotDto;
+import com.admin.common.utils.AdaptiveLimiter;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.NodeConfigVersion;
+import com.admin.common.utils.UserBandwidth;
+import com.admin.entity.Forward;
+import com.admin.entity.SpeedLimit;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.service.*;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 节点配置服务实现类
+ * 一次性查询节点相关的隧道、转发、用户隧道权限和限速规则，按与增量下发相同的规则构建完整配置
+ * </p>
+ */
+@Slf4j
+@Service
+public class NodeConfigServiceImpl implements NodeConfigService {
+
+    // ========== 常量定义 ==========
+
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+    private static final int FORWARD_STATUS_ACTIVE = 1;
+    private static final int FORWARD_STATUS_PAUSED = 0;
+    private static final double BITS_TO_BYTES_RATIO = 8.0;
+    private static final String GOST_SUCCESS_MSG = "OK";
+
+    // 各节点期望配置哈希缓存，配置版本号变化后重新计算
+    private final Map<Long, CachedHash> hashCache = new ConcurrentHashMap<>();
+
+    // ========== 依赖注入 ==========
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    @Lazy
+    UserTunnelService userTunnelService;
+
+    @Resource
+    @Lazy
+    SpeedLimitService speedLimitService;
+
+    // ========== 公共接口实现 ==========
+
+    @Override
+    public NodeConfigSnapshotDto buildSnapshot(Long nodeId) {
+        NodeConfigSnapshotDto snapshot = new NodeConfigSnapshotDto();
+        snapshot.setVersion(System.currentTimeMillis());
+
+        // 1. 以该节点为入口或出口的隧道
+        List<Tunnel> tunnels = tunnelService.list(new QueryWrapper<Tunnel>()
+                .eq("in_node_id", nodeId)
+                .or(w -> w.eq("out_node_id", nodeId).eq("type", TUNNEL_TYPE_TUNNEL_FORWARD)));
+        if (tunnels.isEmpty()) {
+            return snapshot;
+        }
+        Map<Long, Tunnel> tunnelMap = tunnels.stream().collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+        List<Long> inTunnelIds = tunnels.stream()
+                .filter(t -> Objects.equals(t.getInNodeId(), nodeId))
+                .map(Tunnel::getId)
+                .collect(Collectors.toList());
+
+        // 2. 限流器：限速规则只下发到隧道入口节点，被自适应收紧的规则使用当前值
+        if (!inTunnelIds.isEmpty()) {
+            for (SpeedLimit speedLimit : speedLimitService.list(new QueryWrapper<SpeedLimit>().in("tunnel_id", inTunnelIds))) {
+                Long tightened = AdaptiveLimiter.current(speedLimit.getId());
+                snapshot.getLimiters().add(tightened != null
+                        ? GostUtil.createLimiterData(speedLimit.getId().toString(), tightened)
+                        : GostUtil.createLimiterData(speedLimit.getId(), convertBitsToMBps(speedLimit.getSpeed())));
+            }
+        }
+
+        // 3. 转发及其用户隧道权限
+        List<Forward> forwards = forwardService.list(new QueryWrapper<Forward>()
+                .in("tunnel_id", tunnelMap.keySet())
+                .in("status", FORWARD_STATUS_ACTIVE, FORWARD_STATUS_PAUSED));
+        if (forwards.isEmpty()) {
+            return snapshot;
+        }
+        Map<String, UserTunnel> userTunnelMap = userTunnelService.list(new QueryWrapper<UserTunnel>().in("tunnel_id", tunnelMap.keySet()))
+                .stream()
+                .collect(Collectors.toMap(ut -> ut.getUserId() + "_" + ut.getTunnelId(), Function.identity(), (a, b) -> a));
+
+        for (Forward forward : forwards) {
+            Tunnel tunnel = tunnelMap.get(forward.getTunnelId().longValue());
+            if (tunnel == null) {
+                continue;
+            }
+            appendForward(snapshot, nodeId, forward, tunnel, userTunnelMap.get(forward.getUserId() + "_" + forward.getTunnelId()));
+        }
+
+        // 4. 设置了总带宽的用户在该节点上的限流器，使用已分配的份额
+        Set<Long> userIds = new HashSet<>();
+        for (Forward forward : forwards) {
+            Tunnel tunnel = tunnelMap.get(forward.getTunnelId().longValue());
+            if (tunnel != null && Objects.equals(tunnel.getInNodeId(), nodeId)) {
+                userIds.add(forward.getUserId().longValue());
+            }
+        }
+        for (Long userId : userIds) {
+            Long share = UserBandwidth.share(userId, nodeId);
+            if (share != null) {
+                snapshot.getLimiters().add(GostUtil.createUserLimiterData(userId, share));
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String getDesiredHash(Long nodeId) {
+        // 先读取版本号再计算，计算期间发生的变更会使本次缓存在下次读取时失效
+        long version = NodeConfigVersion.current();
+        CachedHash cached = hashCache.get(nodeId);
+        if (cached != null && cached.version == version) {
+            return cached.hash;
+        }
+        String hash = computeHash(buildSnapshot(nodeId));
+        hashCache.put(nodeId, new CachedHash(version, hash));
+        return hash;
+    }
+
+    @Async
+    @Override
+    public void pushSnapshot(Long nodeId) {
+        try {
+            long start = System.currentTimeMillis();
+            NodeConfigSnapshotDto snapshot = buildSnapshot(nodeId);
+            GostDto result = GostUtil.SyncConfig(nodeId, snapshot);
+            if (Objects.equals(result.getMsg(), GOST_SUCCESS_MSG)) {
+                log.info("节点 {} 配置快照 {} 下发成功，服务 {} 个，链 {} 条，限流器 {} 个，耗时 {}ms", nodeId, snapshot.getVersion(),
+                        snapshot.getServices().size(), snapshot.getChains().size(), snapshot.getLimiters().size(),
+                        System.currentTimeMillis() - start);
+            } else {
+                log.info("节点 {} 配置快照下发失败: {}", nodeId, result.getMsg());
+            }
+        } catch (Exception e) {
+            log.error("节点 {} 配置快照构建失败: {}", nodeId, e.getMessage(), e);
+        }
+    }
+
+    // ========== 私有辅助方法 ==========
+
+    /**
+     * 将单个转发在该节点上的服务和链加入快照
+     */
+    private void appendForward(NodeConfigSnapshotDto snapshot, Long nodeId, Forward forward, Tunnel tunnel, UserTunnel userTunnel) {
+        String serviceName = buildServiceName(forward.getId(), forward.getUserId(), userTunnel);
+        boolean paused = Objects.equals(forward.getStatus(), FORWARD_STATUS_PAUSED);
+        boolean tunnelForward = tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD;
+
+        // 入口节点：主服务，隧道转发还需要链
+        if (Objects.equals(tunnel.getInNodeId(), nodeId)) {
+            if (tunnelForward) {
+                snapshot.getChains().add(GostUtil.buildChainConfig(serviceName,
+                        formatAddress(tunnel.getOutIp(), forward.getOutPort()), tunnel.getProtocol(), tunnel.getInterfaceName()));
+            }
+            Integer limiter = userTunnel != null ? userTunnel.getSpeedId() : null;
+            String interfaceName = tunnelForward ? null : forward.getInterfaceName();
+            snapshot.getServices().addAll(GostUtil.buildServiceConfigs(serviceName, forward.getInPort(), limiter,
+                    forward.getRemoteAddr(), tunnel.getType(), tunnel, forward.getStrategy(), interfaceName));
+            if (paused) {
+                snapshot.getPaused().add(serviceName + "_tcp");
+                snapshot.getPaused().add(serviceName + "_udp");
+            }
+        }
+
+        // 出口节点：隧道转发的远程服务
+        if (tunnelForward && Objects.equals(tunnel.getOutNodeId(), nodeId)) {
+            snapshot.getServices().add(GostUtil.buildRemoteServiceConfig(serviceName, forward.getOutPort(),
+                    forward.getRemoteAddr(), tunnel.getProtocol(), forward.getStrategy(), forward.getInterfaceName()));
+            if (paused) {
+                snapshot.getPaused().add(serviceName + "_tls");
+            }
+        }
+    }
+
+    /**
+     * 计算快照中配置项的哈希，与节点上报配置哈希的规则一致：
+     * 覆盖对账时比较的全部字段（服务的名称、监听地址、限流器和暂停状态，链的名称，限流器的名称和规则），
+     * 按 s:/c:/l: 前缀排序后以换行拼接做 SHA-256
+     */
+    static String computeHash(NodeConfigSnapshotDto snapshot) {
+        List<String> items = new ArrayList<>();
+        Set<String> paused = new HashSet<>(snapshot.getPaused());
+        for (Object item : snapshot.getServices()) {
+            JSONObject service = (JSONObject) item;
+            String name = service.getString("name");
+            items.add("s:" + name + "|" + StringUtils.defaultString(service.getString("addr"))
+                    + "|" + StringUtils.defaultString(service.getString("limiter"))
+                    + (paused.contains(name) ? "|p" : ""));
+        }
+        for (Object chain : snapshot.getChains()) {
+            items.add("c:" + ((JSONObject) chain).getString("name"));
+        }
+        for (Object item : snapshot.getLimiters()) {
+            JSONObject limiter = (JSONObject) item;
+            JSONArray limits = limiter.getJSONArray("limits");
+            items.add("l:" + limiter.getString("name") + "|"
+                    + (limits != null ? String.join(",", limits.toJavaList(String.class)) : ""));
+        }
+        Collections.sort(items);
+        return DigestUtil.sha256Hex(String.join("\n", items));
+    }
+
+    private String buildServiceName(Long forwardId, Integer userId, UserTunnel userTunnel) {
+        int userTunnelId = (userTunnel != null) ? userTunnel.getId() : 0;
+        return forwardId + "_" + userId + "_" + userTunnelId;
+    }
+
+    private String formatAddress(String ip, Integer port) {
+        if (ip.contains(":")) {
+            return "[" + ip + "]:" + port;
+        }
+        return ip + ":" + port;
+    }
+
+    private String convertBitsToMBps(Integer speedInBits) {
+        double mbs = speedInBits / BITS_TO_BYTES_RATIO;
+        BigDecimal bd = new BigDecimal(mbs).setScale(1, RoundingMode.HALF_UP);
+        return bd.doubleValue() + "";
+    }
+
+    private static class CachedHash {
+        private final long version;
+        private final String hash;
+
+        private CachedHash(long version, String hash) {
+            this.version = version;
+            this.hash = hash;
+        }
+    }
+}
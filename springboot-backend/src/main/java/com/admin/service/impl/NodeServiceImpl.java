@@ -3,8 +3,10 @@ package com.admin.service.impl;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
 import com.admin.common.dto.NodeDto;
+import com.admin.common.dto.NodeHistoryQueryDto;
 import com.admin.common.dto.NodeUpdateDto;
 import com.admin.common.lang.R;
+import com.admin.common.utils.NodeTelemetryStore;
 import com.admin.entity.Node;
 import com.admin.entity.Tunnel;
 import com.admin.entity.ViteConfig;
@@ -165,9 +167,29 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
 
         // 3. 执行删除操作
         boolean result = this.removeById(id);
+        if (result) {
+            NodeTelemetryStore.remove(id);
+        }
         return result ? R.ok(SUCCESS_DELETE_MSG) : R.err(ERROR_DELETE_MSG);
     }
 
+    /**
+     * 查询节点监控历史
+     * 数据来自内存时序存储，面板重启后从头累积
+     *
+     * @param queryDto 查询条件
+     * @return 按列组织的历史数据及区间平均/峰值速率
+     */
+    @Override
+    public R getNodeHistory(NodeHistoryQueryDto queryDto) {
+        if (!isNodeExists(queryDto.getId())) {
+            return R.err(ERROR_NODE_NOT_FOUND);
+        }
+        NodeTelemetryStore.NodeHistory history = NodeTelemetryStore.query(
+                queryDto.getId(), queryDto.getResolution(), queryDto.getStartTime(), queryDto.getEndTime());
+        return R.ok(history);
+    }
+
     /**
      * 根据ID获取节点信息
      * 
@@ -225,6 +247,7 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         node.setServerIp(nodeUpdateDto.getServerIp());
         node.setPortSta(nodeUpdateDto.getPortSta());
         node.setPortEnd(nodeUpdateDto.getPortEnd());
+        node.setBandwidth(nodeUpdateDto.getBandwidth());
         
         // 验证端口范围
         validatePortRange(node.getPortSta(), node.getPortEnd());
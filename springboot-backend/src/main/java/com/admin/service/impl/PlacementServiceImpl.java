@@ -0,0 +1,252 @@
+package com.admin.service.impl;
+
+import com.admin.common.dto.NodeLoadDto;
+import com.admin.common.dto.TunnelPlacementDto;
+import com.admin.common.lang.R;
+import com.admin.common.utils.JwtUtil;
+import com.admin.common.utils.NodeMetricsCache;
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.Forward;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.service.*;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 转发放置调度服务实现类
+ * 综合转发数量、端口占用率、实时带宽、CPU和内存使用率为节点打分，
+ * 隧道得分取入口和出口节点中负载较高的一个
+ * </p>
+ */
+@Slf4j
+@Service
+public class PlacementServiceImpl implements PlacementService {
+
+    // ========== 常量定义 ==========
+
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+    private static final int TUNNEL_STATUS_ACTIVE = 1;
+    private static final int USER_TUNNEL_STATUS_ACTIVE = 1;
+    private static final int ADMIN_ROLE_ID = 0;
+
+    /** 各项负载指标的权重，合计为1 */
+    private static final double WEIGHT_FORWARDS = 0.25;
+    private static final double WEIGHT_PORTS = 0.15;
+    private static final double WEIGHT_BANDWIDTH = 0.30;
+    private static final double WEIGHT_CPU = 0.15;
+    private static final double WEIGHT_MEMORY = 0.15;
+
+    // ========== 依赖注入 ==========
+
+    @Resource
+    NodeService nodeService;
+
+    @Resource
+    @Lazy
+    TunnelService tunnelService;
+
+    @Resource
+    @Lazy
+    ForwardService forwardService;
+
+    @Resource
+    UserTunnelService userTunnelService;
+
+    // ========== 公共接口实现 ==========
+
+    @Override
+    public R getNodeLoads() {
+        List<NodeLoadDto> loads = new ArrayList<>(calculateNodeLoads().values());
+        loads.sort(Comparator.comparing(NodeLoadDto::getScore));
+        return R.ok(loads);
+    }
+
+    @Override
+    public R suggestTunnels() {
+        Integer userId = JwtUtil.getUserIdFromToken();
+        Integer roleId = JwtUtil.getRoleIdFromToken();
+        return R.ok(scoreTunnels(getAccessibleTunnels(userId, roleId)));
+    }
+
+    @Override
+    public Integer pickTunnel(Integer userId, Integer roleId) {
+        List<TunnelPlacementDto> placements = scoreTunnels(getAccessibleTunnels(userId, roleId));
+        if (placements.isEmpty() || !placements.get(0).isAvailable()) {
+            return null;
+        }
+        TunnelPlacementDto best = placements.get(0);
+        log.info("自动放置：用户 {} 选择隧道 {}，负载得分 {}", userId, best.getTunnelId(), best.getScore());
+        return best.getTunnelId().intValue();
+    }
+
+    // ========== 私有辅助方法 ==========
+
+    /**
+     * 为隧道打分并排序，可用且负载低的隧道排在前面
+     *
+     * @param tunnels 候选隧道
+     * @return 放置建议列表
+     */
+    private List<TunnelPlacementDto> scoreTunnels(List<Tunnel> tunnels) {
+        if (tunnels.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, NodeLoadDto> nodeLoads = calculateNodeLoads();
+
+        List<TunnelPlacementDto> placements = new ArrayList<>();
+        for (Tunnel tunnel : tunnels) {
+            TunnelPlacementDto placement = new TunnelPlacementDto();
+            placement.setTunnelId(tunnel.getId());
+            placement.setTunnelName(tunnel.getName());
+            placement.setTunnelType(tunnel.getType());
+            placement.setInNodeId(tunnel.getInNodeId());
+            placement.setOutNodeId(tunnel.getOutNodeId());
+
+            List<NodeLoadDto> involved = new ArrayList<>();
+            involved.add(nodeLoads.get(tunnel.getInNodeId()));
+            if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+                involved.add(nodeLoads.get(tunnel.getOutNodeId()));
+            }
+
+            String reason = null;
+            double score = 0;
+            for (NodeLoadDto load : involved) {
+                if (load == null) {
+                    reason = "节点不存在";
+                    break;
+                }
+                if (!load.isOnline()) {
+                    reason = "节点 " + load.getNodeName() + " 离线";
+                } else if (load.getUsedPorts() >= load.getTotalPorts()) {
+                    reason = "节点 " + load.getNodeName() + " 端口已满";
+                }
+                score = Math.max(score, load.getScore());
+            }
+            placement.setAvailable(reason == null);
+            placement.setReason(reason);
+            placement.setScore(score);
+            placements.add(placement);
+        }
+
+        placements.sort(Comparator.comparing(TunnelPlacementDto::isAvailable).reversed()
+                .thenComparing(TunnelPlacementDto::getScore));
+        if (placements.get(0).isAvailable()) {
+            placements.get(0).setRecommended(true);
+        }
+        return placements;
+    }
+
+    /**
+     * 计算所有节点的负载得分
+     *
+     * @return 节点ID到负载信息的映射
+     */
+    private Map<Long, NodeLoadDto> calculateNodeLoads() {
+        List<Node> nodes = nodeService.list();
+        Map<Long, Tunnel> tunnelMap = tunnelService.list().stream()
+                .collect(Collectors.toMap(Tunnel::getId, Function.identity()));
+        List<Forward> forwards = forwardService.list(new QueryWrapper<Forward>().select("tunnel_id", "in_port", "out_port"));
+
+        // 统计每个节点承载的转发数和占用端口
+        Map<Long, Integer> forwardCounts = new HashMap<>();
+        Map<Long, Set<Integer>> usedPorts = new HashMap<>();
+        for (Forward forward : forwards) {
+            Tunnel tunnel = tunnelMap.get(forward.getTunnelId().longValue());
+            if (tunnel == null) {
+                continue;
+            }
+            forwardCounts.merge(tunnel.getInNodeId(), 1, Integer::sum);
+            if (forward.getInPort() != null) {
+                usedPorts.computeIfAbsent(tunnel.getInNodeId(), k -> new HashSet<>()).add(forward.getInPort());
+            }
+            if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+                forwardCounts.merge(tunnel.getOutNodeId(), 1, Integer::sum);
+                if (forward.getOutPort() != null) {
+                    usedPorts.computeIfAbsent(tunnel.getOutNodeId(), k -> new HashSet<>()).add(forward.getOutPort());
+                }
+            }
+        }
+
+        // 转发数和带宽没有固定上限，按所有节点中的最大值归一化
+        int maxForwards = 1;
+        long maxBandwidth = 1;
+        for (Node node : nodes) {
+            maxForwards = Math.max(maxForwards, forwardCounts.getOrDefault(node.getId(), 0));
+            NodeMetricsCache.NodeMetrics metrics = NodeMetricsCache.get(node.getId());
+            if (metrics != null) {
+                maxBandwidth = Math.max(maxBandwidth, metrics.getReceiveRate() + metrics.getTransmitRate());
+            }
+        }
+
+        Map<Long, NodeLoadDto> loads = new HashMap<>();
+        for (Node node : nodes) {
+            NodeLoadDto load = new NodeLoadDto();
+            load.setNodeId(node.getId());
+            load.setNodeName(node.getName());
+            load.setOnline(WebSocketServer.isNodeOnline(node.getId()));
+            load.setForwardCount(forwardCounts.getOrDefault(node.getId(), 0));
+            load.setUsedPorts(usedPorts.getOrDefault(node.getId(), Collections.emptySet()).size());
+            load.setTotalPorts(Math.max(node.getPortEnd() - node.getPortSta() + 1, 0));
+
+            NodeMetricsCache.NodeMetrics metrics = NodeMetricsCache.get(node.getId());
+            double cpu = 0;
+            double memory = 0;
+            long bandwidth = 0;
+            if (metrics != null) {
+                cpu = metrics.getCpuUsage();
+                memory = metrics.getMemoryUsage();
+                bandwidth = metrics.getReceiveRate() + metrics.getTransmitRate();
+            }
+            load.setCpuUsage(cpu);
+            load.setMemoryUsage(memory);
+            load.setBandwidth(bandwidth);
+
+            double portRatio = load.getTotalPorts() > 0 ? (double) load.getUsedPorts() / load.getTotalPorts() : 1;
+            double score = WEIGHT_FORWARDS * load.getForwardCount() / maxForwards
+                    + WEIGHT_PORTS * portRatio
+                    + WEIGHT_BANDWIDTH * bandwidth / maxBandwidth
+                    + WEIGHT_CPU * Math.min(cpu, 100) / 100
+                    + WEIGHT_MEMORY * Math.min(memory, 100) / 100;
+            load.setScore(Math.round(score * 10000) / 100.0);
+            loads.put(node.getId(), load);
+        }
+        return loads;
+    }
+
+    /**
+     * 获取用户可以创建转发的隧道
+     *
+     * @param userId 用户ID
+     * @param roleId 角色ID
+     * @return 隧道列表
+     */
+    private List<Tunnel> getAccessibleTunnels(Integer userId, Integer roleId) {
+        if (roleId == ADMIN_ROLE_ID) {
+            return tunnelService.list(new QueryWrapper<Tunnel>().eq("status", TUNNEL_STATUS_ACTIVE));
+        }
+        long now = System.currentTimeMillis();
+        List<Integer> tunnelIds = userTunnelService.list(new QueryWrapper<UserTunnel>()
+                        .eq("user_id", userId)
+                        .eq("status", USER_TUNNEL_STATUS_ACTIVE))
+                .stream()
+                .filter(ut -> ut.getExpTime() == null || ut.getExpTime() > now)
+                .map(UserTunnel::getTunnelId)
+                .collect(Collectors.toList());
+        if (tunnelIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return tunnelService.list(new QueryWrapper<Tunnel>()
+                .in("id", tunnelIds)
+                .eq("status", TUNNEL_STATUS_ACTIVE));
+    }
+}
@@ -4,6 +4,7 @@ import com.admin.common.dto.GostDto;
 import com.admin.common.dto.SpeedLimitDto;
 import com.admin.common.dto.SpeedLimitUpdateDto;
 import com.admin.common.lang.R;
+import com.admin.common.utils.AdaptiveLimiter;
 import com.admin.common.utils.GostUtil;
 import com.admin.entity.Node;
 import com.admin.entity.SpeedLimit;
@@ -153,11 +154,12 @@ public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLi
         // 3. 更新限速规则数据
         updateSpeedLimitEntity(speedLimitUpdateDto, speedLimit);
 
-        // 4. 调用Gost API更新限速器
+        // 4. 调用Gost API更新限速器，按新配置下发后清除自适应收紧的状态
         R gostResult = updateGostLimiter(speedLimit, tunnelValidation.getTunnel());
         if (gostResult.getCode() != 0) {
             return gostResult;
         }
+        AdaptiveLimiter.reset(speedLimit.getId());
 
         // 5. 保存更新
         boolean result = this.updateById(speedLimit);
@@ -196,6 +198,7 @@ public class SpeedLimitServiceImpl extends ServiceImpl<SpeedLimitMapper, SpeedLi
         deleteGostLimiter(id, tunnel);
 
         // 5. 删除限速规则
+        AdaptiveLimiter.reset(id);
         boolean result = this.removeById(id);
         return result ? R.ok(SUCCESS_DELETE_MSG) : R.err(ERROR_DELETE_MSG);
     }
@@ -15,6 +15,7 @@ import com.admin.entity.UserTunnel;
 import com.admin.mapper.TunnelMapper;
 import com.admin.mapper.UserTunnelMapper;
 import com.admin.service.ForwardService;
+import com.admin.service.ListReadModelService;
 import com.admin.service.NodeService;
 import com.admin.service.TunnelService;
 import com.admin.service.UserTunnelService;
@@ -24,6 +25,7 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -53,6 +55,10 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
     /** 隧道状态常量 */
     private static final int TUNNEL_STATUS_ACTIVE = 1;      // 启用状态
     
+    /** 自动选择出口节点常量 */
+    private static final int AUTO_OUT_DISABLED = 0;
+    private static final int AUTO_OUT_ENABLED = 1;
+
     /** 节点状态常量 */
     private static final int NODE_STATUS_ONLINE = 1;        // 节点在线状态
     
@@ -72,6 +78,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
     private static final String ERROR_OUT_NODE_NOT_FOUND = "出口节点不存在";
     private static final String ERROR_OUT_NODE_REQUIRED = "出口节点不能为空";
     private static final String ERROR_OUT_PORT_REQUIRED = "出口端口不能为空";
+    private static final String ERROR_OUT_NODE_CANDIDATES_REQUIRED = "开启自动选择出口节点时，候选出口节点不能为空";
     private static final String ERROR_SAME_NODE_NOT_ALLOWED = "隧道转发模式下，入口和出口不能是同一个节点";
     private static final String ERROR_IN_PORT_RANGE_INVALID = "入口端口开始不能大于结束端口";
     private static final String ERROR_OUT_PORT_RANGE_INVALID = "出口端口开始不能大于结束端口";
@@ -97,6 +104,10 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
     @Resource
     UserTunnelService userTunnelService;
 
+    @Resource
+    @Lazy
+    ListReadModelService listReadModelService;
+
     // ========== 公共接口实现 ==========
 
     /**
@@ -116,6 +127,14 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
 
         // 2. 验证隧道转发类型的必要参数
         if (tunnelDto.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+            R autoOutValidationResult = validateAutoOutCandidates(tunnelDto.getAutoOut(), tunnelDto.getOutNodeIds(), tunnelDto.getInNodeId());
+            if (autoOutValidationResult.getCode() != 0) {
+                return autoOutValidationResult;
+            }
+            // 自动选择出口节点且未指定初始出口时，使用第一个候选节点
+            if (isAutoOutEnabled(tunnelDto.getAutoOut()) && tunnelDto.getOutNodeId() == null) {
+                tunnelDto.setOutNodeId(tunnelDto.getOutNodeIds().get(0));
+            }
             R tunnelForwardValidationResult = validateTunnelForwardCreate(tunnelDto);
             if (tunnelForwardValidationResult.getCode() != 0) {
                 return tunnelForwardValidationResult;
@@ -137,7 +156,10 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
             return outNodeSetupResult;
         }
 
-        // 6. 设置默认属性并保存
+        // 6. 设置自动选择出口节点参数
+        setupAutoOutParameters(tunnel, tunnelDto.getAutoOut(), tunnelDto.getOutNodeIds());
+
+        // 7. 设置默认属性并保存
         setDefaultTunnelProperties(tunnel);
         boolean result = this.save(tunnel);
         
@@ -151,8 +173,18 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
      */
     @Override
     public R getAllTunnels() {
-        List<Tunnel> tunnelList = this.list();
-        return R.ok(tunnelList);
+        return R.ok(listReadModelService.allTunnels());
+    }
+
+    /**
+     * 按游标分页查询隧道
+     * 
+     * @param query 分页及筛选条件
+     * @return 包含一页隧道的响应对象
+     */
+    @Override
+    public R getTunnelPage(ListQueryDto query) {
+        return R.ok(listReadModelService.pageTunnels(query));
     }
 
     /**
@@ -183,6 +215,15 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
         }
 
 
+        // 3. 更新自动选择出口节点设置
+        if (tunnelUpdateDto.getAutoOut() != null && existingTunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
+            R autoOutValidationResult = validateAutoOutCandidates(tunnelUpdateDto.getAutoOut(), tunnelUpdateDto.getOutNodeIds(), existingTunnel.getInNodeId());
+            if (autoOutValidationResult.getCode() != 0) {
+                return autoOutValidationResult;
+            }
+            setupAutoOutParameters(existingTunnel, tunnelUpdateDto.getAutoOut(), tunnelUpdateDto.getOutNodeIds());
+        }
+
         // 5. 更新允许修改的字段
         existingTunnel.setName(tunnelUpdateDto.getName());
         existingTunnel.setFlow(tunnelUpdateDto.getFlow());
@@ -461,6 +502,54 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
         return R.ok();
     }
 
+    /**
+     * 验证自动选择出口节点的候选节点
+     *
+     * @param autoOut 是否开启自动选择出口节点
+     * @param outNodeIds 候选出口节点ID
+     * @param inNodeId 入口节点ID
+     * @return 验证结果响应
+     */
+    private R validateAutoOutCandidates(Integer autoOut, List<Long> outNodeIds, Long inNodeId) {
+        if (!isAutoOutEnabled(autoOut)) {
+            return R.ok();
+        }
+        if (outNodeIds == null || outNodeIds.isEmpty()) {
+            return R.err(ERROR_OUT_NODE_CANDIDATES_REQUIRED);
+        }
+        if (outNodeIds.contains(inNodeId)) {
+            return R.err(ERROR_SAME_NODE_NOT_ALLOWED);
+        }
+        int nodeCount = nodeService.count(new QueryWrapper<Node>().in("id", outNodeIds));
+        if (nodeCount != new HashSet<>(outNodeIds).size()) {
+            return R.err(ERROR_OUT_NODE_NOT_FOUND);
+        }
+        return R.ok();
+    }
+
+    /**
+     * 设置自动选择出口节点参数，当前出口节点始终包含在候选节点中
+     *
+     * @param tunnel 隧道对象
+     * @param autoOut 是否开启自动选择出口节点
+     * @param outNodeIds 候选出口节点ID
+     */
+    private void setupAutoOutParameters(Tunnel tunnel, Integer autoOut, List<Long> outNodeIds) {
+        if (tunnel.getType() != TUNNEL_TYPE_TUNNEL_FORWARD || !isAutoOutEnabled(autoOut)) {
+            tunnel.setAutoOut(AUTO_OUT_DISABLED);
+            tunnel.setOutNodeIds(null);
+            return;
+        }
+        Set<Long> candidates = new LinkedHashSet<>(outNodeIds);
+        candidates.add(tunnel.getOutNodeId());
+        tunnel.setAutoOut(AUTO_OUT_ENABLED);
+        tunnel.setOutNodeIds(candidates.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    private boolean isAutoOutEnabled(Integer autoOut) {
+        return autoOut != null && autoOut == AUTO_OUT_ENABLED;
+    }
+
     /**
      * 设置隧道默认属性
      * 
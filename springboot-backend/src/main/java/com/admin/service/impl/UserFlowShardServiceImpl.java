@@ -0,0 +1,169 @@
+package com.admin.service.impl;
+
+import com.admin.entity.User;
+import com.admin.entity.UserFlowShard;
+import com.admin.mapper.UserFlowShardMapper;
+import com.admin.mapper.UserMapper;
+import com.admin.service.UserFlowShardService;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * 用户流量分片计数服务实现类
+ * 流量上报不再直接累加user表的同一行，而是按转发ID散列到 (user_id, shard) 分片行，
+ * 同一用户不同转发的并发上报落在不同行上不会互相等待行锁；
+ * 读取时用户表的值加上各分片的和，定时任务再把分片合并回用户表
+ * </p>
+ */
+@Slf4j
+@Service
+public class UserFlowShardServiceImpl extends ServiceImpl<UserFlowShardMapper, UserFlowShard> implements UserFlowShardService {
+
+    private static final int SHARD_COUNT = 16;
+    private static final int COMPACT_BATCH_SIZE = 500;
+    // 用户数超过该值时直接汇总全部分片，避免过长的IN列表
+    private static final int IN_LIST_LIMIT = 500;
+
+    @Resource
+    UserMapper userMapper;
+
+    @Resource
+    TransactionTemplate transactionTemplate;
+
+    // 合并与清零互斥：合并读到的分片值若在清零后才提交，分片会被减成负数，用户得到负的已用流量；
+    // 列表读模型加载用户时也持有该锁，用户行与分片之和不会因中间的合并而重复或遗漏
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    @Override
+    public void addFlow(Long userId, long forwardId, long inFlow, long outFlow) {
+        if (inFlow == 0 && outFlow == 0) {
+            return;
+        }
+        int shard = (int) Math.floorMod(forwardId, (long) SHARD_COUNT);
+        this.baseMapper.addFlow(userId, shard, inFlow, outFlow);
+    }
+
+    @Override
+    public void applyUnmerged(List<User> users) {
+        if (users == null || users.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = null;
+        if (users.size() <= IN_LIST_LIMIT) {
+            userIds = new ArrayList<>(users.size());
+            for (User user : users) {
+                userIds.add(user.getId());
+            }
+        }
+        Map<Long, UserFlowShard> unmerged = new HashMap<>();
+        for (UserFlowShard sum : this.baseMapper.selectUnmerged(userIds)) {
+            unmerged.put(sum.getUserId(), sum);
+        }
+        if (unmerged.isEmpty()) {
+            return;
+        }
+        for (User user : users) {
+            UserFlowShard sum = unmerged.get(user.getId());
+            if (sum != null) {
+                user.setInFlow((user.getInFlow() != null ? user.getInFlow() : 0) + sum.getInFlow());
+                user.setOutFlow((user.getOutFlow() != null ? user.getOutFlow() : 0) + sum.getOutFlow());
+            }
+        }
+    }
+
+    @Override
+    public List<User> listWithUnmerged(Supplier<List<User>> loader) {
+        compactLock.lock();
+        try {
+            List<User> users = loader.get();
+            applyUnmerged(users);
+            return users;
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    @Override
+    public int compact() {
+        int total = 0;
+        List<UserFlowShard> pending;
+        do {
+            compactLock.lock();
+            try {
+                pending = this.baseMapper.selectPending(COMPACT_BATCH_SIZE);
+                if (pending.isEmpty()) {
+                    break;
+                }
+                mergeBatch(pending);
+            } finally {
+                compactLock.unlock();
+            }
+            total += pending.size();
+        } while (pending.size() == COMPACT_BATCH_SIZE);
+        return total;
+    }
+
+    /**
+     * 在同一事务中从分片减去读到的值并加到用户表，两边始终一致；
+     * 减去的是读到的值而不是清零，合并期间的新增流量留在分片中等待下次合并
+     */
+    private void mergeBatch(List<UserFlowShard> shards) {
+        Map<Long, User> users = new LinkedHashMap<>();
+        for (UserFlowShard shard : shards) {
+            User user = users.computeIfAbsent(shard.getUserId(), id -> {
+                User u = new User();
+                u.setId(id);
+                u.setInFlow(0L);
+                u.setOutFlow(0L);
+                return u;
+            });
+            user.setInFlow(user.getInFlow() + shard.getInFlow());
+            user.setOutFlow(user.getOutFlow() + shard.getOutFlow());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            this.baseMapper.subtractBatch(shards);
+            userMapper.addFlowBatch(new ArrayList<>(users.values()));
+        });
+    }
+
+    @Override
+    public void resetUser(Long userId) {
+        compactLock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                this.update(null, new UpdateWrapper<UserFlowShard>()
+                        .eq("user_id", userId)
+                        .setSql("in_flow = 0, out_flow = 0"));
+                userMapper.update(null, new UpdateWrapper<User>()
+                        .eq("id", userId)
+                        .setSql("in_flow = 0, out_flow = 0"));
+            });
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    @Override
+    public long resetByResetDay(int currentDay, int lastDayOfMonth, LongSupplier resetUsers) {
+        compactLock.lock();
+        try {
+            Long users = transactionTemplate.execute(status -> {
+                this.baseMapper.resetByResetDay(currentDay, lastDayOfMonth);
+                return resetUsers.getAsLong();
+            });
+            return users != null ? users : 0;
+        } finally {
+            compactLock.unlock();
+        }
+    }
+}
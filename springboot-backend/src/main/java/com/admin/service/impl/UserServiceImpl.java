@@ -6,7 +6,7 @@ import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
-import com.admin.common.utils.GostUtil;
+import com.admin.common.task.ExpiryScheduler;
 import com.admin.common.utils.JwtUtil;
 import com.admin.common.utils.Md5Util;
 import com.admin.entity.*;
@@ -25,6 +25,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -52,13 +53,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     private static final int USER_STATUS_ACTIVE = 1;   // 用户启用状态
     private static final int USER_STATUS_DISABLED = 0; // 用户停用状态
     
-    /** 隧道类型常量 */
-    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2; // 隧道转发类型
-    
     /** 成功响应消息 */
     private static final String SUCCESS_CREATE_MSG = "用户创建成功";
     private static final String SUCCESS_UPDATE_MSG = "用户更新成功";
-    private static final String SUCCESS_DELETE_MSG = "用户及关联数据删除成功";
     
     /** 错误响应消息 */
     private static final String ERROR_LOGIN_CREDENTIALS = "账号或密码错误";
@@ -115,6 +112,21 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Resource
     StatisticsFlowService statisticsFlowService;
 
+    @Resource
+    UserFlowShardService userFlowShardService;
+
+    @Resource
+    @Lazy
+    CascadeDeleteService cascadeDeleteService;
+
+    @Resource
+    @Lazy
+    ExpiryScheduler expiryScheduler;
+
+    @Resource
+    @Lazy
+    ListReadModelService listReadModelService;
+
     @Resource
     private ImageCaptchaApplication application;
 
@@ -182,6 +194,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         
         if (result) {
             // 3. 添加到期时间延时任务
+            expiryScheduler.scheduleUser(user.getId(), user.getExpTime());
             return R.ok(SUCCESS_CREATE_MSG);
         } else {
             return R.err(ERROR_CREATE_FAILED);
@@ -196,7 +209,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      */
     @Override
     public R getAllUsers() {
-        return R.ok(this.list(new QueryWrapper<User>().ne("role_id", ADMIN_ROLE_ID)));
+        return R.ok(listReadModelService.allUsers());
+    }
+
+    /**
+     * 按游标分页查询用户
+     * 数据来自内存中的用户列表读模型，支持按用户名和状态筛选
+     *
+     * @param query 分页及筛选条件
+     * @return 分页用户列表响应
+     */
+    @Override
+    public R getUserPage(ListQueryDto query) {
+        return R.ok(listReadModelService.pageUsers(query));
     }
 
     /**
@@ -230,7 +255,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         boolean result = this.updateById(updateUser);
         
         if (result) {
-            // 5. 处理到期时间延时任务
+            // 5. 处理到期时间延时任务，以保存后的数据为准，停用的用户取消调度
+            User savedUser = this.getById(updateUser.getId());
+            expiryScheduler.scheduleUser(savedUser.getId(),
+                    Objects.equals(savedUser.getStatus(), USER_STATUS_ACTIVE) ? savedUser.getExpTime() : null);
             return R.ok(SUCCESS_UPDATE_MSG);
         } else {
             return R.err(ERROR_UPDATE_FAILED);
@@ -253,12 +281,13 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         }
 
         try {
-            // 2. 级联删除用户相关数据
-            deleteUserRelatedData(id);
+            // 2. 级联删除用户相关数据，节点上的服务清理在后台执行，可通过任务ID查询进度
+            String jobId = deleteUserRelatedData(id);
             statisticsFlowService.remove(new QueryWrapper<StatisticsFlow>().eq("user_id", id));
+            userFlowShardService.remove(new QueryWrapper<UserFlowShard>().eq("user_id", id));
             // 3. 删除用户
             boolean result = this.removeById(id);
-            return result ? R.ok(SUCCESS_DELETE_MSG) : R.err(ERROR_DELETE_FAILED);
+            return result ? R.ok(jobId) : R.err(ERROR_DELETE_FAILED);
             
         } catch (Exception e) {
             e.printStackTrace();
@@ -348,9 +377,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (resetFlowDto.getType() == 1){ // 清零账号流量
             User user = this.getById(resetFlowDto.getId());
             if (user == null) return R.err(ERROR_USER_NOT_FOUND);
-            user.setInFlow(0L);
-            user.setOutFlow(0L);
-            this.updateById(user);
+            // 流量字段不随updateById写回，分片中未合并的流量一起清零
+            userFlowShardService.resetUser(user.getId());
         }else { // 清零隧道流量
             UserTunnel tunnel = userTunnelService.getById(resetFlowDto.getId());
             if (tunnel == null) return R.err("隧道不存在");
@@ -520,110 +548,21 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
     /**
      * 删除用户相关的所有数据
+     * 转发和对应的Gost服务交由级联删除任务按节点批量清理
      * 
      * @param userId 用户ID
+     * @return 级联删除任务ID
      */
-    private void deleteUserRelatedData(Long userId) {
+    private String deleteUserRelatedData(Long userId) {
         // 1. 删除用户的所有转发和对应的Gost服务
-        deleteUserForwardsAndGostServices(userId);
+        List<Forward> userForwards = forwardMapper.selectList(new QueryWrapper<Forward>().eq("user_id", userId));
+        String jobId = cascadeDeleteService.submit("user:" + userId, userForwards);
         
         // 2. 删除用户隧道权限
         deleteUserTunnelPermissions(userId);
+        return jobId;
     }
 
-    /**
-     * 删除用户转发和对应的Gost服务
-     * 
-     * @param userId 用户ID
-     */
-    private void deleteUserForwardsAndGostServices(Long userId) {
-        QueryWrapper<Forward> forwardQuery = new QueryWrapper<>();
-        forwardQuery.eq("user_id", userId);
-        List<Forward> userForwards = forwardMapper.selectList(forwardQuery);
-        
-        for (Forward forward : userForwards) {
-            try {
-                // 删除Gost服务
-                deleteGostServicesForForward(forward, userId);
-            } catch (Exception e) {
-                // 记录错误但继续删除，避免因为Gost服务删除失败而阻断用户删除
-                System.err.println("删除用户转发对应的Gost服务失败，转发ID: " + forward.getId() + ", 错误: " + e.getMessage());
-            }
-            
-            // 删除数据库中的转发记录
-            forwardMapper.deleteById(forward.getId());
-        }
-    }
-
-    /**
-     * 删除转发对应的Gost服务
-     * 
-     * @param forward 转发对象
-     * @param userId 用户ID
-     */
-    private void deleteGostServicesForForward(Forward forward, Long userId) {
-        Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
-        if (tunnel == null) return;
-
-        Node inNode = nodeService.getNodeById(tunnel.getInNodeId());
-        if (inNode == null) return;
-
-        // 获取用户隧道关系
-        UserTunnel userTunnel = getUserTunnelRelation(userId, tunnel.getId());
-        if (userTunnel == null) return;
-
-        String serviceName = buildServiceName(forward.getId(), userId, userTunnel.getId());
-
-        // 删除主服务
-        GostUtil.DeleteService(inNode.getId(), serviceName);
-
-        // 如果是隧道转发，还需要删除链和远程服务
-        if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
-            deleteGostTunnelForwardServices(tunnel, serviceName, inNode);
-        }
-    }
-
-    /**
-     * 删除隧道转发相关的Gost服务
-     * 
-     * @param tunnel 隧道对象
-     * @param serviceName 服务名称
-     * @param inNode 入口节点
-     */
-    private void deleteGostTunnelForwardServices(Tunnel tunnel, String serviceName, Node inNode) {
-        Node outNode = nodeService.getNodeById(tunnel.getOutNodeId());
-        if (outNode != null) {
-            GostUtil.DeleteChains(inNode.getId(), serviceName);
-            GostUtil.DeleteRemoteService(outNode.getId(), serviceName);
-        }
-    }
-
-    /**
-     * 获取用户隧道关系
-     * 
-     * @param userId 用户ID
-     * @param tunnelId 隧道ID
-     * @return 用户隧道关系对象
-     */
-    private UserTunnel getUserTunnelRelation(Long userId, Long tunnelId) {
-        return userTunnelService.getOne(new QueryWrapper<UserTunnel>()
-                .eq("user_id", userId)
-                .eq("tunnel_id", tunnelId));
-    }
-
-    /**
-     * 构建服务名称
-     * 
-     * @param forwardId 转发ID
-     * @param userId 用户ID
-     * @param userTunnelId 用户隧道ID
-     * @return 服务名称
-     */
-    private String buildServiceName(Long forwardId, Long userId, Integer userTunnelId) {
-        return forwardId + "_" + userId + "_" + userTunnelId;
-    }
-
-
     /**
      * 删除用户隧道权限
      * 
@@ -666,7 +605,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         User user = currentUser.getUser();
         Integer roleId = currentUser.getRoleId();
         
-        // 1. 构造用户基本信息
+        // 1. 构造用户基本信息，已用流量包含分片中尚未合并的部分
+        userFlowShardService.applyUnmerged(Collections.singletonList(user));
         UserPackageDto.UserInfoDto userInfo = buildUserInfoDto(user);
         
         // 2. 获取隧道权限详情
@@ -1,10 +1,12 @@
 package com.admin.service.impl;
 
+import com.admin.common.dto.GostDto;
 import com.admin.common.dto.UserTunnelDto;
 import com.admin.common.dto.UserTunnelQueryDto;
 import com.admin.common.dto.UserTunnelUpdateDto;
 import com.admin.common.dto.UserTunnelWithDetailDto;
 import com.admin.common.lang.R;
+import com.admin.common.task.ExpiryScheduler;
 import com.admin.entity.UserTunnel;
 import com.admin.mapper.TunnelMapper;
 import com.admin.mapper.UserTunnelMapper;
@@ -12,22 +14,30 @@ import com.admin.service.TunnelService;
 import com.admin.service.UserTunnelService;
 import com.admin.service.ForwardService;
 import com.admin.service.NodeService;
+import com.admin.service.CascadeDeleteService;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.UserBandwidth;
 import com.admin.entity.Forward;
 import com.admin.entity.Tunnel;
-import com.admin.entity.Node;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * <p>
@@ -39,6 +49,7 @@ import java.util.Map;
  * @author QAQ
  * @since 2025-06-03
  */
+@Slf4j
 @Service
 public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTunnel> implements UserTunnelService {
 
@@ -46,7 +57,6 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     
     /** 成功响应消息 */
     private static final String SUCCESS_ASSIGN_MSG = "用户隧道权限分配成功";
-    private static final String SUCCESS_REMOVE_MSG = "用户隧道权限删除成功";
     private static final String SUCCESS_UPDATE_FLOW_MSG = "用户隧道流量限制更新成功";
     private static final String SUCCESS_UPDATE_MSG = "用户隧道权限更新成功";
     
@@ -58,6 +68,9 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     private static final String ERROR_NOT_EXISTS = "不存在";
     private static final String ERROR_UPDATE_FAILED = "用户隧道权限更新失败";
 
+    /** 旧版本节点不支持的命令返回的错误信息 */
+    private static final String UNKNOWN_COMMAND_MSG = "未知命令类型";
+
     // ========== 依赖注入 ==========
     
     @Autowired
@@ -71,6 +84,14 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     @Autowired
     private NodeService nodeService;
 
+    @Autowired
+    @Lazy
+    private CascadeDeleteService cascadeDeleteService;
+
+    @Autowired
+    @Lazy
+    private ExpiryScheduler expiryScheduler;
+
     // ========== 公共接口实现 ==========
 
     /**
@@ -94,6 +115,9 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         boolean success = this.save(userTunnel);
         
         if (success) {
+            if (isEnabledAndHasExpTime(userTunnel)) {
+                expiryScheduler.scheduleUserTunnel(userTunnel.getId(), userTunnel.getExpTime());
+            }
             return R.ok(SUCCESS_ASSIGN_MSG);
         }
         
@@ -127,17 +151,15 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
             return R.err(ERROR_PERMISSION_NOT_FOUND);
         }
         
-        // 2. 删除该用户在该隧道下的所有转发
-        try {
-            removeUserTunnelForwards(userTunnel.getUserId(), userTunnel.getTunnelId());
-        } catch (Exception e) {
-            // 转发删除失败，记录日志但不阻止权限删除
-        }
+        // 2. 删除该用户在该隧道下的所有转发，节点上的服务清理在后台按节点批量执行
+        List<Forward> userTunnelForwards = forwardService.list(new QueryWrapper<Forward>()
+                .eq("user_id", userTunnel.getUserId())
+                .eq("tunnel_id", userTunnel.getTunnelId()));
+        String jobId = cascadeDeleteService.submit("user_tunnel:" + id, userTunnelForwards);
 
-        
-        // 4. 删除用户隧道权限记录
+        // 3. 删除用户隧道权限记录
         boolean success = this.removeById(id);
-        return success ? R.ok(SUCCESS_REMOVE_MSG) : R.err(ERROR_PERMISSION_NOT_FOUND);
+        return success ? R.ok(jobId) : R.err(ERROR_PERMISSION_NOT_FOUND);
     }
 
 
@@ -166,6 +188,10 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         boolean success = this.updateById(existingUserTunnel);
         
         if (success) {
+            // 5. 刷新到期调度，停用或取消到期时间的权限不再调度
+            expiryScheduler.scheduleUserTunnel(existingUserTunnel.getId(),
+                    isEnabledAndHasExpTime(existingUserTunnel) ? existingUserTunnel.getExpTime() : null);
+
             // 6. 如果限速规则发生变化，更新该用户隧道下的所有转发
             if (speedChanged) {
                 updateUserTunnelForwardsSpeed(existingUserTunnel.getUserId(), existingUserTunnel.getTunnelId(), updateDto.getSpeedId());
@@ -250,91 +276,6 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     
 
     
-    /**
-     * 删除用户在指定隧道下的所有转发
-     * 
-     * @param userId 用户ID
-     * @param tunnelId 隧道ID
-     */
-    private void removeUserTunnelForwards(Integer userId, Integer tunnelId) {
-        // 查询该用户在该隧道下的所有转发
-        QueryWrapper<Forward> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("user_id", userId).eq("tunnel_id", tunnelId);
-
-        List<Forward> userTunnelForwards = forwardService.list(queryWrapper);
-
-        if (!userTunnelForwards.isEmpty()) {
-            // 获取用户隧道权限信息，用于构建服务名称
-            UserTunnel userTunnel = getUserTunnelByUserAndTunnel(userId, tunnelId);
-
-            for (Forward forward : userTunnelForwards) {
-                try {
-                    // 先调用GostUtil删除/停止服务
-                    stopForwardService(forward, userId, userTunnel != null ? userTunnel.getId() : 0);
-
-                    // 然后删除数据库记录
-                    forwardService.removeById(forward.getId());
-
-                } catch (Exception e) {
-                    // 单个转发删除失败，记录错误但继续处理其他转发
-                }
-            }
-
-        }
-    }
-    
-    /**
-     * 删除转发服务（按创建的反向顺序删除：主服务 -> 远端服务 -> 转发链）
-     * 
-     * @param forward 转发对象
-     * @param userId 用户ID
-     * @param userTunnelId 用户隧道ID
-     */
-    private void stopForwardService(Forward forward, Integer userId, Integer userTunnelId) {
-        try {
-            Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
-            if (tunnel == null) {
-                return;
-            }
-
-            Node inNode = nodeService.getById(tunnel.getInNodeId());
-            Node outNode = nodeService.getById(tunnel.getOutNodeId());
-            
-            String serviceName = buildServiceName(forward.getId(), Long.valueOf(userId), userTunnelId);
-            
-            // 1. 先删除主服务
-            if (inNode != null) {
-                try {
-                    GostUtil.DeleteService(inNode.getId(), serviceName);
-                } catch (Exception e) {
-                    // 主服务删除失败，记录但继续
-                }
-            }
-            
-            // 2. 如果是隧道转发，删除远端服务
-            if (tunnel.getType() == 1 && outNode != null && !outNode.getId().equals(inNode != null ? inNode.getId() : null)) {
-                try {
-                    GostUtil.DeleteRemoteService(outNode.getId(), serviceName);
-                } catch (Exception e) {
-                    // 远端服务删除失败，记录但继续
-                }
-            }
-            
-            // 3. 如果是隧道转发，最后删除转发链
-            if (tunnel.getType() == 1 && inNode != null) {
-                try {
-                    GostUtil.DeleteChains(inNode.getId(), serviceName);
-                } catch (Exception e) {
-                    // 转发链删除失败，记录但继续
-                }
-            }
-            
-        } catch (Exception e) {
-            // 服务删除失败，记录错误
-            throw new RuntimeException("删除转发服务失败，转发ID：" + forward.getId() + "，错误：" + e.getMessage(), e);
-        }
-    }
-    
     /**
      * 根据用户ID和隧道ID获取用户隧道权限
      * 
@@ -396,6 +337,7 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     /**
      * 更新用户隧道下所有转发的限速规则
      * 管理员操作，不需要权限检查，直接查出该用户在该隧道下的所有转发并应用新的限速
+     * 通过SetServiceLimiter只替换服务的限流器引用，不再逐个转发下发完整的服务配置
      * 
      * @param userId 用户ID
      * @param tunnelId 隧道ID
@@ -423,25 +365,82 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
             return;
         }
 
-        // 4. 获取入口节点信息
-        Node inNode = nodeService.getById(tunnel.getInNodeId());
+        // 4. 限速只作用于入口节点的主服务，同一隧道的转发都在同一入口节点上，一条命令完成
+        setNodeServicesLimiter(tunnel.getInNodeId(), userTunnelForwards, tunnel, userTunnel.getId(), speedId);
+    }
+
+    /**
+     * 在单个节点上批量设置服务的限流器
+     * 节点不支持SetServiceLimiter时逐个转发下发完整的UpdateService；
+     * 节点跳过不存在的服务并继续处理其余服务，切换失败的服务改为下发完整的UpdateService，
+     * 节点上缺失的服务由配置同步按数据库重新创建
+     * 
+     * @param nodeId 入口节点ID
+     * @param forwards 该节点上的转发
+     * @param tunnel 隧道
+     * @param userTunnelId 用户隧道ID
+     * @param speedId 新的限速规则ID
+     */
+    private void setNodeServicesLimiter(Long nodeId, List<Forward> forwards, Tunnel tunnel, Integer userTunnelId, Integer speedId) {
+        List<String> serviceNames = new ArrayList<>();
+        for (Forward forward : forwards) {
+            serviceNames.add(buildServiceName(forward.getId(), Long.valueOf(forward.getUserId()), userTunnelId));
+        }
+
+        // 设置了总带宽的用户仍引用用户限流器，新规则由总带宽协调任务计入该节点的份额上限
+        String limiter = UserBandwidth.limiterName(Long.valueOf(forwards.get(0).getUserId()), speedId);
+        GostDto result = GostUtil.SetServiceLimiter(nodeId, serviceNames, limiter);
+        if (result == null || result.getMsg() == null) {
+            return;
+        }
+        JSONObject data = result.getData() instanceof JSONObject ? (JSONObject) result.getData() : null;
+        if (data != null && data.getJSONArray("missing") != null) {
+            log.info("节点 {} 上不存在的服务未设置限流器，等待配置同步: {}", nodeId, data.getJSONArray("missing"));
+        }
+        if (Objects.equals(result.getMsg(), "OK")) {
+            return;
+        }
 
-        if (inNode == null) {
+        List<Forward> retry;
+        if (result.getMsg().contains(UNKNOWN_COMMAND_MSG)) {
+            retry = forwards;
+        } else if (data != null && data.getJSONArray("failed") != null) {
+            Set<String> failed = baseNames(data.getJSONArray("failed"));
+            retry = new ArrayList<>();
+            for (Forward forward : forwards) {
+                if (failed.contains(buildServiceName(forward.getId(), Long.valueOf(forward.getUserId()), userTunnelId))) {
+                    retry.add(forward);
+                }
+            }
+        } else {
+            log.info("节点 {} 设置服务限流器失败，等待配置同步: {}", nodeId, result.getMsg());
             return;
         }
 
-        // 5. 批量更新该用户在该隧道下所有转发的限速配置（只更新入口节点）
-        for (Forward forward : userTunnelForwards) {
-            String serviceName = buildServiceName(forward.getId(), Long.valueOf(userId), userTunnel.getId());
+        for (Forward forward : retry) {
+            String serviceName = buildServiceName(forward.getId(), Long.valueOf(forward.getUserId()), userTunnelId);
 
             String interfaceName = null;
-            // 创建主服务
             if (tunnel.getType() != 2) { // 不是隧道转发服务才会存在网络接口
                 interfaceName = forward.getInterfaceName();
             }
+            GostDto update = GostUtil.UpdateService(nodeId, serviceName, forward.getInPort(), speedId, forward.getRemoteAddr(), tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
+            if (!Objects.equals(update.getMsg(), "OK")) {
+                log.info("节点 {} 服务 {} 限速更新失败，等待配置同步: {}", nodeId, serviceName, update.getMsg());
+            }
+        }
+    }
 
-            // 6. 更新入口节点的主服务限速配置（使用批量UpdateService接口）
-            GostUtil.UpdateService(inNode.getId(), serviceName, forward.getInPort(), speedId, forward.getRemoteAddr(), tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
+    /**
+     * 节点返回的完整服务名（含_tcp/_udp后缀）转换为服务基础名称
+     */
+    private static Set<String> baseNames(JSONArray services) {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < services.size(); i++) {
+            String name = services.getString(i);
+            int idx = name.lastIndexOf('_');
+            names.add(idx > 0 ? name.substring(0, idx) : name);
         }
+        return names;
     }
 }
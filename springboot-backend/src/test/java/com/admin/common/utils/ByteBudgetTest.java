@@ -0,0 +1,80 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流量预算租约：同一用户/用户隧道的租约之和不超过剩余流量
+ */
+class ByteBudgetTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    void unlimitedWhenNoQuota() {
+        assertEquals(ByteBudget.UNLIMITED, ByteBudget.grant("t-unlimited", 400_001L, 400_001L, Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void leasesNeverExceedRemaining() {
+        long userId = 400_002L;
+        long remaining = 1000;
+        long total = 0;
+        for (int i = 0; i < 20; i++) {
+            total += ByteBudget.grant("t-share-" + i, userId, userId, remaining, Long.MAX_VALUE);
+            assertTrue(total <= remaining);
+        }
+        // 余量分完后不再分配，节点暂停对应服务
+        assertEquals(0, ByteBudget.grant("t-share-extra", userId, userId, remaining, Long.MAX_VALUE));
+    }
+
+    @Test
+    void tunnelRemainingAlsoLimitsLeases() {
+        long userId = 400_003L;
+        long tunnelRemaining = 100;
+        long total = 0;
+        for (int i = 0; i < 20; i++) {
+            total += ByteBudget.grant("t-tunnel-" + i, userId, userId, Long.MAX_VALUE - 1, tunnelRemaining);
+        }
+        assertTrue(total <= tunnelRemaining);
+    }
+
+    @Test
+    void regrantReplacesOwnLease() {
+        long userId = 400_004L;
+        long first = ByteBudget.grant("t-regrant", userId, userId, 1000, Long.MAX_VALUE);
+        assertEquals(500, first);
+        // 同一服务再次上报时先归还原租约，不与自己争抢余量
+        assertEquals(first, ByteBudget.grant("t-regrant", userId, userId, 1000, Long.MAX_VALUE));
+        assertEquals(first, ByteBudget.current("t-regrant"));
+    }
+
+    @Test
+    void grantIsCappedPerLease() {
+        long budget = ByteBudget.grant("t-large", 400_005L, 400_005L, 100 * GB, Long.MAX_VALUE);
+        assertEquals(GB, budget);
+    }
+
+    @Test
+    void randomGrantsStayWithinRemaining() {
+        long userId = 400_006L;
+        Random random = new Random(3);
+        long[] held = new long[8];
+        for (int round = 0; round < 5000; round++) {
+            long remaining = 1 + random.nextInt(1_000_000);
+            int service = random.nextInt(held.length);
+            held[service] = ByteBudget.grant("t-random-" + service, userId, userId, remaining, Long.MAX_VALUE);
+            long others = 0;
+            for (int i = 0; i < held.length; i++) {
+                if (i != service) {
+                    others += held[i];
+                }
+            }
+            // 本次分配只使用其他租约之外的余量
+            assertTrue(held[service] <= Math.max(0, remaining - others));
+        }
+    }
+}
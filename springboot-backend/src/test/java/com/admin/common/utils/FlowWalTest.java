@@ -0,0 +1,155 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流量预写日志的追加、重放、切换与删除旧段
+ */
+class FlowWalTest {
+
+    // 段头16字节 + 两条记录
+    private static final int SMALL_CAPACITY = 16 + 72 * 2;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysAppendedRecordsWithGeneration() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        long first = wal.rotate();
+        wal.append(record(1, 100));
+        wal.append(record(2, 200));
+        long second = wal.rotate();
+        // 超过初始容量，段自动扩容
+        for (int i = 0; i < 5; i++) {
+            wal.append(record(3, 300 + i));
+        }
+        wal.force();
+
+        List<long[]> replayed = new ArrayList<>();
+        int count = new FlowWal(dir, SMALL_CAPACITY).replay((gen, r) -> replayed.add(new long[]{gen, r.getNodeId(), r.getInFlow()}));
+
+        assertEquals(7, count);
+        assertArrayEquals(new long[]{first, 1, 100}, replayed.get(0));
+        assertArrayEquals(new long[]{first, 2, 200}, replayed.get(1));
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(new long[]{second, 3, 300 + i}, replayed.get(2 + i));
+        }
+    }
+
+    @Test
+    void replayKeepsAllFields() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        wal.rotate();
+        FlowWal.Record record = record(7, 11);
+        record.setStream(42);
+        record.setSeq(99);
+        record.setTunnelId(5);
+        record.setOutFlow(12);
+        record.setRawInFlow(13);
+        record.setRawOutFlow(14);
+        wal.append(record);
+
+        List<FlowWal.Record> replayed = new ArrayList<>();
+        new FlowWal(dir, SMALL_CAPACITY).replay((gen, r) -> replayed.add(r));
+
+        assertEquals(1, replayed.size());
+        assertEquals(record, replayed.get(0));
+    }
+
+    @Test
+    void replayStopsAtTornRecord() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        long gen = wal.rotate();
+        wal.append(record(1, 100));
+        wal.append(record(2, 200));
+        wal.force();
+
+        // 破坏第二条记录的数据，校验失败后该段后续内容作废
+        try (FileChannel channel = FileChannel.open(segment(gen), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 16 + 72 + 40);
+        }
+
+        List<Long> nodes = new ArrayList<>();
+        int count = new FlowWal(dir, SMALL_CAPACITY).replay((g, r) -> nodes.add(r.getNodeId()));
+        assertEquals(1, count);
+        assertEquals(List.of(1L), nodes);
+    }
+
+    @Test
+    void truncateBeforeDeletesOnlyOlderSegments() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        long first = wal.rotate();
+        wal.append(record(1, 100));
+        long second = wal.rotate();
+        wal.append(record(2, 200));
+        long third = wal.rotate();
+
+        wal.truncateBefore(third);
+
+        assertFalse(Files.exists(segment(first)));
+        assertFalse(Files.exists(segment(second)));
+        assertTrue(Files.exists(segment(third)));
+        assertEquals(0, new FlowWal(dir, SMALL_CAPACITY).replay((g, r) -> fail("旧段应已删除")));
+    }
+
+    @Test
+    void reopenedWalContinuesAfterExistingSegments() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        wal.rotate();
+        long last = wal.rotate();
+
+        FlowWal reopened = new FlowWal(dir, SMALL_CAPACITY);
+        long next = reopened.rotate();
+        assertEquals(last + 1, next);
+        reopened.truncateBefore(next);
+        assertEquals(List.of(segment(next)), segments());
+    }
+
+    @Test
+    void skipToRaisesNextGeneration() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        wal.skipTo(50);
+        assertEquals(51, wal.rotate());
+        // 不会回退
+        wal.skipTo(10);
+        assertEquals(52, wal.rotate());
+    }
+
+    @Test
+    void appendRequiresActiveSegment() throws IOException {
+        FlowWal wal = new FlowWal(dir, SMALL_CAPACITY);
+        assertThrows(IllegalStateException.class, () -> wal.append(record(1, 1)));
+    }
+
+    private Path segment(long gen) {
+        return dir.resolve("wal-" + gen + ".log");
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static FlowWal.Record record(long nodeId, long inFlow) {
+        FlowWal.Record record = new FlowWal.Record();
+        record.setNodeId(nodeId);
+        record.setInFlow(inFlow);
+        return record;
+    }
+}
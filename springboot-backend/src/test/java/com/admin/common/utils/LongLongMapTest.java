@@ -0,0 +1,58 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 开放寻址哈希表与HashMap对照
+ */
+class LongLongMapTest {
+
+    @Test
+    void getReturnsDefaultForMissingKey() {
+        LongLongMap map = new LongLongMap(4);
+        assertEquals(-7, map.get(1, -7));
+        assertFalse(map.containsKey(1));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void putOverwritesAndAddAccumulates() {
+        LongLongMap map = new LongLongMap(4);
+        map.put(5, 10);
+        map.put(5, 20);
+        map.add(5, 3);
+        map.add(-9, 4);
+        assertEquals(23, map.get(5, 0));
+        assertEquals(4, map.get(-9, 0));
+        assertTrue(map.containsKey(-9));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void matchesHashMapAcrossResizes() {
+        LongLongMap map = new LongLongMap(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            // 键集中在较小范围内，既有新增也有累加
+            long key = random.nextInt(5000) - 2500L;
+            long delta = random.nextInt(1000);
+            map.add(key, delta);
+            expected.merge(key, delta, Long::sum);
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().longValue(), map.get(entry.getKey(), -1));
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        map.forEach((key, value) -> assertNull(visited.put(key, value)));
+        assertEquals(expected, visited);
+    }
+}
@@ -0,0 +1,60 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 实时流量排行：对象数远超摘要容量时大流量对象仍排在前面
+ */
+class TrafficTopNTest {
+
+    @Test
+    void heavyHittersSurviveManySmallObjects() {
+        long heavy = 900_001L;
+        long second = 900_002L;
+        TrafficTopN.record(1, heavy, null, 10_000_000L);
+        TrafficTopN.record(1, second, null, 5_000_000L);
+        // 远超单个时间片容量的小流量用户
+        for (long id = 1; id <= 1000; id++) {
+            TrafficTopN.record(1, 800_000L + id, null, 1000L);
+        }
+        TrafficTopN.record(1, heavy, null, 10_000_000L);
+
+        List<TrafficTopN.TopEntry> top = TrafficTopN.query(TrafficTopN.TYPE_USER, TrafficTopN.WINDOW_1H, 2);
+        assertEquals(2, top.size());
+        assertEquals(heavy, top.get(0).getId());
+        assertEquals(second, top.get(1).getId());
+        // 被挤出的对象不会挤掉计数远大于它们的对象，多计部分不超过error
+        assertTrue(top.get(0).getBytes() >= 20_000_000L);
+        assertTrue(top.get(0).getBytes() - top.get(0).getError() <= 20_000_000L);
+    }
+
+    @Test
+    void resultsAreSortedAndLimited() {
+        TrafficTopN.record(700_001L, 1, 700_001L, 3_000L);
+        TrafficTopN.record(700_002L, 1, 700_002L, 1_000L);
+        TrafficTopN.record(700_003L, 1, 700_003L, 2_000L);
+
+        List<TrafficTopN.TopEntry> top = TrafficTopN.query(TrafficTopN.TYPE_TUNNEL, TrafficTopN.WINDOW_1M, 10);
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).getBytes() >= top.get(i).getBytes());
+        }
+        assertEquals(1, TrafficTopN.query(TrafficTopN.TYPE_TUNNEL, TrafficTopN.WINDOW_1M, 1).size());
+    }
+
+    @Test
+    void unknownWindowOrTypeReturnsEmpty() {
+        assertTrue(TrafficTopN.query(TrafficTopN.TYPE_FORWARD, "2h", 10).isEmpty());
+        assertTrue(TrafficTopN.query(99, TrafficTopN.WINDOW_1M, 10).isEmpty());
+    }
+
+    @Test
+    void ignoresEmptyReports() {
+        TrafficTopN.record(600_001L, 600_001L, null, 0);
+        assertTrue(TrafficTopN.query(TrafficTopN.TYPE_FORWARD, TrafficTopN.WINDOW_1H, 10_000).stream()
+                .noneMatch(entry -> entry.getId() == 600_001L));
+    }
+}
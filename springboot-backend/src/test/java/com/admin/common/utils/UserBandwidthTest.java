@@ -0,0 +1,107 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用户总带宽在节点间的分配：份额之和不超过总带宽，单个份额不超过节点上限
+ */
+class UserBandwidthTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void idleNodesSplitCapEvenly() {
+        Map<Long, Long> ceilings = new HashMap<>();
+        ceilings.put(1L, Long.MAX_VALUE);
+        ceilings.put(2L, Long.MAX_VALUE);
+        ceilings.put(3L, Long.MAX_VALUE);
+
+        Map<Long, Long> shares = UserBandwidth.allocate(30 * MB, ceilings, Collections.emptyMap());
+
+        assertEquals(ceilings.keySet(), shares.keySet());
+        shares.values().forEach(share -> assertEquals(10 * MB, share));
+    }
+
+    @Test
+    void busyNodeGetsLargerShare() {
+        Map<Long, Long> ceilings = new HashMap<>();
+        ceilings.put(1L, Long.MAX_VALUE);
+        ceilings.put(2L, Long.MAX_VALUE);
+        Map<Long, double[]> rates = new HashMap<>();
+        rates.put(1L, new double[]{8 * MB, System.currentTimeMillis()});
+
+        Map<Long, Long> shares = UserBandwidth.allocate(10 * MB, ceilings, rates);
+
+        assertTrue(shares.get(1L) > shares.get(2L));
+        assertTrue(shares.get(2L) > 0);
+        assertTrue(sum(shares) <= 10 * MB);
+    }
+
+    @Test
+    void sharesRespectCeilings() {
+        Map<Long, Long> ceilings = new HashMap<>();
+        ceilings.put(1L, MB);
+        ceilings.put(2L, Long.MAX_VALUE);
+
+        Map<Long, Long> shares = UserBandwidth.allocate(10 * MB, ceilings, Collections.emptyMap());
+
+        assertEquals(MB, shares.get(1L));
+        assertTrue(sum(shares) <= 10 * MB);
+    }
+
+    @Test
+    void sharesNeverExceedCap() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int round = 0; round < 2000; round++) {
+            long cap = 1 + random.nextInt(100) * (random.nextBoolean() ? MB : 1024);
+            int nodes = 1 + random.nextInt(20);
+            Map<Long, Long> ceilings = new HashMap<>();
+            Map<Long, double[]> rates = new HashMap<>();
+            for (long node = 1; node <= nodes; node++) {
+                ceilings.put(node, random.nextInt(4) == 0 ? 1 + random.nextInt(50) * MB : Long.MAX_VALUE);
+                if (random.nextBoolean()) {
+                    rates.put(node, new double[]{random.nextDouble() * 200 * MB, now - random.nextInt(60_000)});
+                }
+            }
+
+            Map<Long, Long> shares = UserBandwidth.allocate(cap, ceilings, rates);
+
+            assertEquals(ceilings.keySet(), shares.keySet());
+            assertTrue(sum(shares) <= cap, "份额之和超过总带宽: cap=" + cap + " shares=" + shares);
+            for (Map.Entry<Long, Long> entry : shares.entrySet()) {
+                assertTrue(entry.getValue() >= 0);
+                assertTrue(entry.getValue() <= ceilings.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void rebalanceOnlyReturnsSignificantChanges() {
+        long userId = 500_001L;
+        UserBandwidth.setCaps(Collections.singletonMap(userId, 20 * MB));
+        Map<Long, Long> ceilings = new HashMap<>();
+        ceilings.put(1L, Long.MAX_VALUE);
+        ceilings.put(2L, Long.MAX_VALUE);
+
+        Map<Long, Long> first = UserBandwidth.rebalance(userId, ceilings);
+        assertEquals(ceilings.keySet(), first.keySet());
+        assertEquals(first.get(1L), UserBandwidth.share(userId, 1L));
+        assertTrue(UserBandwidth.rebalance(userId, ceilings).isEmpty());
+
+        UserBandwidth.setCaps(Collections.emptyMap());
+        assertTrue(UserBandwidth.rebalance(userId, ceilings).isEmpty());
+        assertNull(UserBandwidth.share(userId, 1L));
+    }
+
+    private static long sum(Map<Long, Long> shares) {
+        return shares.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,66 @@
+package com.admin.service.impl;
+
+import com.admin.common.dto.NodeConfigSnapshotDto;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 期望配置哈希测试，期望值与节点端 config_hash_test.go 一致，两端哈希规则不一致时其中一端的测试会失败
+ */
+class NodeConfigServiceImplTest {
+
+    private static final String EXPECTED_HASH = "d6ce289b4847df5483a1ae999053aa339806b9a78ac94e18f93dfe2e1e723932";
+
+    @Test
+    void computeHashMatchesNode() {
+        assertEquals(EXPECTED_HASH, NodeConfigServiceImpl.computeHash(buildSnapshot()));
+    }
+
+    @Test
+    void computeHashCoversLimits() {
+        NodeConfigSnapshotDto snapshot = buildSnapshot();
+        snapshot.getLimiters().getJSONObject(1).put("limits", JSONArray.parseArray("[\"$ 1MB 1MB\"]"));
+        assertNotEquals(EXPECTED_HASH, NodeConfigServiceImpl.computeHash(snapshot));
+    }
+
+    @Test
+    void computeHashCoversPaused() {
+        NodeConfigSnapshotDto snapshot = buildSnapshot();
+        snapshot.getPaused().add("1_1_3_tcp");
+        assertEquals("a28b9affb66431154070e514c2df049df7f9892a1a2044129d97c716dd5ddb02",
+                NodeConfigServiceImpl.computeHash(snapshot));
+    }
+
+    private NodeConfigSnapshotDto buildSnapshot() {
+        NodeConfigSnapshotDto snapshot = new NodeConfigSnapshotDto();
+        snapshot.getServices().add(service("1_1_3_tcp"));
+        snapshot.getServices().add(service("1_1_3_udp"));
+        JSONObject chain = new JSONObject();
+        chain.put("name", "1_1_3_chains");
+        snapshot.getChains().add(chain);
+        snapshot.getLimiters().add(limiter("5", "$ 1.0MB 1.0MB"));
+        snapshot.getLimiters().add(limiter("u1", "$ 512KB 512KB"));
+        return snapshot;
+    }
+
+    private JSONObject service(String name) {
+        JSONObject service = new JSONObject();
+        service.put("name", name);
+        service.put("addr", "0.0.0.0:10000");
+        service.put("limiter", "u1");
+        return service;
+    }
+
+    private JSONObject limiter(String name, String limit) {
+        JSONObject limiter = new JSONObject();
+        limiter.put("name", name);
+        JSONArray limits = new JSONArray();
+        limits.add(limit);
+        limiter.put("limits", limits);
+        return limiter;
+    }
+}
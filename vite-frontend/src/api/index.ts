@@ -21,6 +21,7 @@ export const createUser = (data: any) => Network.post("/user/create", data);
 export const getAllUsers = (pageData: any = {}) => Network.post("/user/list", pageData);
 export const updateUser = (data: any) => Network.post("/user/update", data);
 export const deleteUser = (id: number) => Network.post("/user/delete", { id });
+export const getDeleteJob = (jobId: string) => Network.post("/user/delete-job", { jobId });
 export const getUserPackageInfo = () => Network.post("/user/package");
 
 // 节点CRUD操作 - 全部使用POST请求
@@ -29,6 +30,7 @@ export const getNodeList = () => Network.post("/node/list");
 export const updateNode = (data: any) => Network.post("/node/update", data);
 export const deleteNode = (id: number) => Network.post("/node/delete", { id });
 export const getNodeInstallCommand = (id: number) => Network.post("/node/install", { id });
+export const getNodeHistory = (data: { id: number; resolution?: '1s' | '1m'; startTime?: number; endTime?: number }) => Network.post("/node/history", data);
 export const checkNodeStatus = (nodeId?: number) => {
   const params = nodeId ? { nodeId } : {};
   return Network.post("/node/check-status", params);
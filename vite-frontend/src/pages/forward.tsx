@@ -59,6 +59,8 @@ interface Forward {
   status: number;
   inFlow: number;
   outFlow: number;
+  inRate?: number;
+  outRate?: number;
   serviceRunning: boolean;
   createdTime: string;
   userName?: string;
@@ -692,6 +694,15 @@ export default function ForwardPage() {
     return (value / (1024 * 1024 * 1024)).toFixed(2) + ' GB';
   };
 
+  // 格式化速率（字节/秒 转为 bps）
+  const formatRate = (value: number): string => {
+    const bits = value * 8;
+    if (bits < 1000) return bits + ' bps';
+    if (bits < 1000 * 1000) return (bits / 1000).toFixed(1) + ' Kbps';
+    if (bits < 1000 * 1000 * 1000) return (bits / (1000 * 1000)).toFixed(1) + ' Mbps';
+    return (bits / (1000 * 1000 * 1000)).toFixed(2) + ' Gbps';
+  };
+
   // 格式化入口地址
   const formatInAddress = (ipString: string, port: number): string => {
     if (!ipString || !port) return '';
@@ -1277,11 +1288,13 @@ export default function ForwardPage() {
               <div className="flex items-center gap-1">
                 <Chip variant="flat" size="sm" className="text-xs" color="primary">
                   ↑{formatFlow(forward.inFlow || 0)}
+                  {forward.inRate ? ` · ${formatRate(forward.inRate)}` : ''}
                 </Chip>
                
               </div>
               <Chip variant="flat" size="sm" className="text-xs" color="success">
                   ↓{formatFlow(forward.outFlow || 0)}
+                  {forward.outRate ? ` · ${formatRate(forward.outRate)}` : ''}
                 </Chip>
             </div>
           </div>
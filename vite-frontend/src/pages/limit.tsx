@@ -6,6 +6,7 @@ import { Select, SelectItem } from "@heroui/select";
 import { Modal, ModalContent, ModalHeader, ModalBody, ModalFooter } from "@heroui/modal";
 import { Chip } from "@heroui/chip";
 import { Spinner } from "@heroui/spinner";
+import { Switch } from "@heroui/switch";
 import toast from 'react-hot-toast';
 
 
@@ -24,6 +25,7 @@ interface SpeedLimitRule {
   status: number;
   tunnelId: number;
   tunnelName: string;
+  adaptive?: number;
   createdTime: string;
   updatedTime: string;
 }
@@ -40,6 +42,7 @@ interface SpeedLimitForm {
   tunnelId: number | null;
   tunnelName: string;
   status: number;
+  adaptive: number;
 }
 
 export default function LimitPage() {
@@ -61,7 +64,8 @@ export default function LimitPage() {
     speed: 100,
     tunnelId: null,
     tunnelName: '',
-    status: 1
+    status: 1,
+    adaptive: 0
   });
   
   // 表单验证错误
@@ -129,7 +133,8 @@ export default function LimitPage() {
       speed: 100,
       tunnelId: null,
       tunnelName: '',
-      status: 1
+      status: 1,
+      adaptive: 0
     });
     setErrors({});
     setModalOpen(true);
@@ -144,7 +149,8 @@ export default function LimitPage() {
       speed: rule.speed,
       tunnelId: rule.tunnelId,
       tunnelName: rule.tunnelName,
-      status: rule.status
+      status: rule.status,
+      adaptive: rule.adaptive ?? 0
     });
     setErrors({});
     setModalOpen(true);
@@ -266,6 +272,14 @@ export default function LimitPage() {
                         {rule.speed} Mbps
                       </Chip>
                     </div>
+                    {rule.adaptive === 1 && (
+                      <div className="flex justify-between items-center">
+                        <span className="text-small text-default-600">自适应</span>
+                        <Chip color="warning" variant="flat" size="sm">
+                          拥塞时收紧
+                        </Chip>
+                      </div>
+                    )}
                     <div className="flex justify-between items-center">
                       <span className="text-small text-default-600">绑定隧道</span>
                       {rule.tunnelName ? (
@@ -409,6 +423,14 @@ export default function LimitPage() {
                         </SelectItem>
                       ))}
                     </Select>
+
+                    <Switch
+                      size="sm"
+                      isSelected={form.adaptive === 1}
+                      onValueChange={(value) => setForm(prev => ({ ...prev, adaptive: value ? 1 : 0 }))}
+                    >
+                      <span className="text-small">自适应：入口节点拥塞时自动收紧占用最高的规则</span>
+                    </Switch>
                   </div>
                 </ModalBody>
                 <ModalFooter>
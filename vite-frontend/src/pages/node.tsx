@@ -27,8 +27,11 @@ interface Node {
   serverIp: string;
   portSta: number;
   portEnd: number;
+  bandwidth?: number; // 上行带宽(Mbps)，0为未设置
   version?: string;
   status: number; // 1: 在线, 0: 离线
+  rawInFlow?: number;
+  rawOutFlow?: number;
   connectionStatus: 'online' | 'offline';
   systemInfo?: {
     cpuUsage: number;
@@ -49,6 +52,7 @@ interface NodeForm {
   serverIp: string;
   portSta: number;
   portEnd: number;
+  bandwidth: number;
 }
 
 export default function NodePage() {
@@ -64,7 +68,8 @@ export default function NodePage() {
     ipString: '',
     serverIp: '',
     portSta: 1000,
-    portEnd: 65535
+    portEnd: 65535,
+    bandwidth: 0
   });
   const [errors, setErrors] = useState<Record<string, string>>({});
   
@@ -169,6 +174,44 @@ export default function NodePage() {
         }
         return node;
       }));
+    } else if (type === 'status_batch') {
+      // 后端合并后的节点状态变化：[{id, status}]
+      const statusMap = new Map<string, number>();
+      (messageData || []).forEach((item: any) => statusMap.set(String(item.id), item.status));
+      setNodeList(prev => prev.map(node => {
+        const status = statusMap.get(String(node.id));
+        if (status === undefined) {
+          return node;
+        }
+        return {
+          ...node,
+          connectionStatus: status === 1 ? 'online' : 'offline',
+          systemInfo: status === 0 ? null : node.systemInfo
+        };
+      }));
+    } else if (type === 'snapshot') {
+      // 连接建立时后端推送的各节点最新指标，速率由后端计算
+      const metricsMap = new Map<string, any>();
+      (messageData || []).forEach((item: any) => metricsMap.set(String(item.nodeId), item));
+      setNodeList(prev => prev.map(node => {
+        const metrics = metricsMap.get(String(node.id));
+        if (!metrics) {
+          return node;
+        }
+        return {
+          ...node,
+          connectionStatus: 'online',
+          systemInfo: {
+            cpuUsage: metrics.cpuUsage || 0,
+            memoryUsage: metrics.memoryUsage || 0,
+            uploadTraffic: metrics.bytesTransmitted || 0,
+            downloadTraffic: metrics.bytesReceived || 0,
+            uploadSpeed: metrics.transmitRate || 0,
+            downloadSpeed: metrics.receiveRate || 0,
+            uptime: metrics.uptime || 0
+          }
+        };
+      }));
     } else if (type === 'info') {
       setNodeList(prev => prev.map(node => {
         if (node.id == id) {
@@ -413,7 +456,8 @@ export default function NodePage() {
       ipString: node.ip ? node.ip.split(',').map(ip => ip.trim()).join('\n') : '',
       serverIp: node.serverIp || '',
       portSta: node.portSta,
-      portEnd: node.portEnd
+      portEnd: node.portEnd,
+      bandwidth: node.bandwidth ?? 0
     });
     setDialogVisible(true);
   };
@@ -501,7 +545,8 @@ export default function NodePage() {
         ip: ipString,
         serverIp: form.serverIp,
         portSta: form.portSta,
-        portEnd: form.portEnd
+        portEnd: form.portEnd,
+        bandwidth: form.bandwidth
       };
       
       const res = await apiCall(data);
@@ -517,7 +562,8 @@ export default function NodePage() {
               ip: ipString,
               serverIp: form.serverIp,
               portSta: form.portSta,
-              portEnd: form.portEnd
+              portEnd: form.portEnd,
+              bandwidth: form.bandwidth
             } : n
           ));
         } else {
@@ -541,7 +587,8 @@ export default function NodePage() {
       ipString: '',
       serverIp: '',
       portSta: 1000,
-      portEnd: 65535
+      portEnd: 65535,
+      bandwidth: 0
     });
     setErrors({});
   };
@@ -741,6 +788,12 @@ export default function NodePage() {
                         </div>
                       </div>
                     </div>
+                    <div className="flex justify-between text-xs text-default-500 px-1">
+                      <span>转发流量</span>
+                      <span className="font-mono">
+                        ↑{formatTraffic(node.rawInFlow || 0)} ↓{formatTraffic(node.rawOutFlow || 0)}
+                      </span>
+                    </div>
                   </div>
 
                   {/* 操作按钮 */}
@@ -854,6 +907,17 @@ export default function NodePage() {
                   />
                 </div>
 
+                <Input
+                  label="上行带宽(Mbps)"
+                  type="number"
+                  placeholder="0"
+                  value={form.bandwidth.toString()}
+                  onChange={(e) => setForm(prev => ({ ...prev, bandwidth: Math.max(parseInt(e.target.value) || 0, 0) }))}
+                  variant="bordered"
+                  min={0}
+                  description="用于自适应限速判断拥塞，0为未设置"
+                />
+
 
 
                 
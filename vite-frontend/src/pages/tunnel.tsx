@@ -34,6 +34,8 @@ interface Tunnel {
   interfaceName?: string;
   flow: number; // 1: 单向, 2: 双向
   trafficRatio: number;
+  inFlow?: number;
+  outFlow?: number;
   status: number;
   createdTime: string;
 }
@@ -397,6 +399,15 @@ export default function TunnelPage() {
     }
   };
 
+  // 格式化流量
+  const formatFlow = (value: number): string => {
+    if (value === 0) return '0 B';
+    if (value < 1024) return value + ' B';
+    if (value < 1024 * 1024) return (value / 1024).toFixed(2) + ' KB';
+    if (value < 1024 * 1024 * 1024) return (value / (1024 * 1024)).toFixed(2) + ' MB';
+    return (value / (1024 * 1024 * 1024)).toFixed(2) + ' GB';
+  };
+
 
   // 获取连接质量
   const getQualityDisplay = (averageTime?: number, packetLoss?: number) => {
@@ -522,6 +533,11 @@ export default function TunnelPage() {
                             {getFlowDisplay(tunnel.flow)}
                           </div>
                         </div>
+                        <div className="text-center">
+                          <div className="text-xs font-mono text-default-600">
+                            ↑{formatFlow(tunnel.inFlow || 0)} ↓{formatFlow(tunnel.outFlow || 0)}
+                          </div>
+                        </div>
                         <div className="text-right">
                           <div className="text-xs font-medium text-foreground">
                             {tunnel.trafficRatio}x
@@ -33,6 +33,7 @@ import {
   UserTunnelForm, 
   Tunnel, 
   SpeedLimit, 
+  CascadeDeleteJob,
   Pagination as PaginationType 
 } from '@/types';
 import {
@@ -40,6 +41,7 @@ import {
   createUser,
   updateUser,
   deleteUser,
+  getDeleteJob,
   getTunnelList,
   assignUserTunnel,
   getUserTunnelList,
@@ -69,6 +71,41 @@ const formatDate = (timestamp: number): string => {
   return new Date(timestamp).toLocaleString();
 };
 
+// 删除的记录立即生效，节点上的服务清理在后台执行，轮询删除任务直到完成后再提示结果
+const DELETE_JOB_POLL_MS = 1000;
+const DELETE_JOB_MAX_POLLS = 120;
+
+const trackDeleteJob = async (jobId?: string) => {
+  if (!jobId) {
+    toast.success('删除成功');
+    return;
+  }
+  const toastId = toast.loading('正在清理节点上的转发...');
+  for (let i = 0; i < DELETE_JOB_MAX_POLLS; i++) {
+    try {
+      const response = await getDeleteJob(jobId);
+      if (response.code !== 0) {
+        toast.error(response.msg || '查询删除进度失败', { id: toastId });
+        return;
+      }
+      const job = response.data as CascadeDeleteJob;
+      if (job.status === 1) {
+        toast.success('删除成功', { id: toastId });
+        return;
+      }
+      if (job.status === 2) {
+        toast.error(`删除完成，部分节点清理失败：${job.errors.join('；')}`, { id: toastId });
+        return;
+      }
+      toast.loading(`正在清理节点上的转发 (${job.finishedNodes}/${job.totalNodes})`, { id: toastId });
+    } catch (error) {
+      // 查询失败时下一轮继续
+    }
+    await new Promise(resolve => setTimeout(resolve, DELETE_JOB_POLL_MS));
+  }
+  toast.error('节点清理仍在进行，请稍后刷新查看', { id: toastId });
+};
+
 const getExpireStatus = (expTime: number) => {
   const now = Date.now();
   if (expTime < now) {
@@ -123,7 +160,8 @@ export default function UserPage() {
     flow: 100,
     num: 10,
     expTime: null,
-    flowResetTime: 0
+    flowResetTime: 0,
+    speed: 0
   });
   const [userFormLoading, setUserFormLoading] = useState(false);
 
@@ -254,7 +292,8 @@ export default function UserPage() {
       flow: 100,
       num: 10,
       expTime: null,
-      flowResetTime: 0
+      flowResetTime: 0,
+      speed: 0
     });
     onUserModalOpen();
   };
@@ -270,7 +309,8 @@ export default function UserPage() {
       flow: user.flow,
       num: user.num,
       expTime: user.expTime ? new Date(user.expTime) : null,
-      flowResetTime: user.flowResetTime ?? 0
+      flowResetTime: user.flowResetTime ?? 0,
+      speed: user.speed ?? 0
     });
     onUserModalOpen();
   };
@@ -286,7 +326,7 @@ export default function UserPage() {
     try {
       const response = await deleteUser(userToDelete.id);
       if (response.code === 0) {
-        toast.success('删除成功');
+        trackDeleteJob(response.data);
         loadUsers();
         onDeleteModalClose();
         setUserToDelete(null);
@@ -435,7 +475,7 @@ export default function UserPage() {
     try {
       const response = await removeUserTunnel({ id: tunnelToDelete.id });
       if (response.code === 0) {
-        toast.success('删除成功');
+        trackDeleteJob(response.data);
         if (currentUser) {
           loadUserTunnels(currentUser.id);
         }
@@ -658,6 +698,10 @@ export default function UserPage() {
                         <span className="text-default-600">重置日期</span>
                         <span className="text-xs">{user.flowResetTime === 0 ? '不重置' : `每月${user.flowResetTime}号`}</span>
                       </div>
+                      <div className="flex justify-between text-sm">
+                        <span className="text-default-600">总带宽</span>
+                        <span className="text-xs">{user.speed ? `${user.speed} Mbps` : '不限'}</span>
+                      </div>
                       {user.expTime && (
                         <div className="flex justify-between text-sm">
                           <span className="text-default-600">过期时间</span>
@@ -792,6 +836,18 @@ export default function UserPage() {
                 max="99999"
                 isRequired
               />
+              <Input
+                label="总带宽(Mbps)"
+                type="number"
+                value={userForm.speed.toString()}
+                onChange={(e) => {
+                  const value = Math.min(Math.max(Number(e.target.value) || 0, 0), 1000000);
+                  setUserForm(prev => ({ ...prev, speed: value }));
+                }}
+                min="0"
+                max="1000000"
+                description="所有节点合计的带宽上限，0为不限"
+              />
               <Select
                 label="流量重置日期"
                 selectedKeys={[userForm.flowResetTime.toString()]}
@@ -15,6 +15,7 @@ export interface User {
   num: number; // 转发数量
   expTime?: number; // 过期时间戳
   flowResetTime?: number; // 流量重置日期(1-31号)
+  speed?: number; // 所有节点合计的带宽上限(Mbps)，0为不限
   createdTime?: number; // 创建时间戳
   inFlow?: number; // 下载流量(字节)
   outFlow?: number; // 上传流量(字节)
@@ -30,6 +31,7 @@ export interface UserForm {
   num: number;
   expTime: Date | null;
   flowResetTime: number;
+  speed: number;
 }
 
 export interface UserTunnel {
@@ -77,6 +79,17 @@ export interface SpeedLimit {
   downloadSpeed: number;
 }
 
+// 级联删除任务进度
+export interface CascadeDeleteJob {
+  jobId: string;
+  target: string;
+  status: number; // 0-执行中, 1-完成, 2-部分节点清理失败
+  forwardCount: number;
+  totalNodes: number;
+  finishedNodes: number;
+  errors: string[];
+}
+
 export interface Pagination {
   current: number;
   size: number;